@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -85,17 +86,18 @@ public class Avro {
       return obj;
     }
     final Class<?> clazz = clazz(type);
-    if (clazz == boolean.class || clazz == Integer.class ||
+    if (clazz == boolean.class || clazz == Boolean.class ||
         clazz == byte.class || clazz == Byte.class ||
         clazz == short.class || clazz == Short.class ||
         clazz == int.class || clazz == Integer.class ||
         clazz == long.class || clazz == Long.class ||
         clazz == float.class || clazz == Float.class ||
         clazz == double.class || clazz == Double.class ||
-        clazz == byte[].class ||
         clazz == String.class ||
         clazz.isEnum()) {
       return obj;
+    } else if (clazz == byte[].class) { // Avro bytes are byte buffers
+      return ByteBuffer.wrap((byte[])obj);
     } else { // bean
       final Schema schema = forType(type);
       final Struct<Object> bean = Struct.forType(type);
@@ -120,6 +122,11 @@ public class Avro {
         values[i] = unwrap(record.get(props[i].name()), props[i].type());
       }
       return bean.build(values);
+    } else if (data instanceof ByteBuffer) { // Avro bytes
+      final ByteBuffer buffer = (ByteBuffer)data;
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.duplicate().get(bytes);
+      return bytes;
     } else {
       return data; // not a bean
     }
@@ -185,7 +192,7 @@ public class Avro {
 
   private static Schema build(final Type type, final Stack<Type> stack) {
     final Class<?> clazz = clazz(type);
-    if (clazz == boolean.class || clazz == Integer.class) {
+    if (clazz == boolean.class || clazz == Boolean.class) {
       return SchemaBuilder.builder().booleanType();
     } else if (
         clazz == byte.class || clazz == Byte.class ||
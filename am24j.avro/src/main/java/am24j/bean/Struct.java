@@ -17,16 +17,25 @@ package am24j.bean;
 
 import java.beans.Transient;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -128,6 +137,62 @@ public class Struct<T>  {
     }
   }
 
+  /**
+   * Returns a deep copy of the object - built of the deep copies (see {@link #deepCopy(Object)}) of its property values
+   */
+  public T copy(final T obj) {
+    final Object[] values = values(obj);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = deepCopy(values[i]);
+    }
+    return build(values);
+  }
+
+  /**
+   * Returns a deep copy of the value. The immutable values (primitive wrappers, strings, enums, ...) are returned as
+   * they are, the arrays, collections, maps and optionals are copied with deep copies of their elements, and the beans
+   * - by their structures. Cyclic graphs are not supported.
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> V deepCopy(final V value) {
+    if (value == null || immutable(value)) {
+      return value;
+    }
+    final Class<?> clazz = value.getClass();
+    if (clazz.isArray()) {
+      final int length = Array.getLength(value);
+      if (clazz.getComponentType().isPrimitive()) {
+        final Object copy = Array.newInstance(clazz.getComponentType(), length);
+        System.arraycopy(value, 0, copy, 0, length);
+        return (V)copy;
+      }
+      final Object[] copy = (Object[])Array.newInstance(clazz.getComponentType(), length);
+      for (int i = 0; i < length; i++) {
+        copy[i] = deepCopy(((Object[])value)[i]);
+      }
+      return (V)copy;
+    } else if (value instanceof Optional) {
+      return (V)((Optional<?>)value).map(Struct::deepCopy);
+    } else if (value instanceof Map) {
+      final Map<Object, Object> copy = new LinkedHashMap<>();
+      ((Map<?, ?>)value).forEach((k, v) -> copy.put(deepCopy(k), deepCopy(v)));
+      return (V)copy;
+    } else if (value instanceof Collection) {
+      final Collection<Object> copy = value instanceof Set ? new LinkedHashSet<>() : new ArrayList<>(((Collection<?>)value).size());
+      ((Collection<?>)value).forEach(element -> copy.add(deepCopy(element)));
+      return (V)copy;
+    } else {
+      return ((Struct<V>)forClass(clazz)).copy(value);
+    }
+  }
+
+  private static boolean immutable(final Object value) {
+    return value instanceof String || value instanceof Boolean || value instanceof Character ||
+      value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long ||
+      value instanceof Float || value instanceof Double || value instanceof BigInteger || value instanceof BigDecimal ||
+      value instanceof Enum || value instanceof UUID || value instanceof Class || value instanceof TemporalAccessor;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("Bean (");
@@ -79,6 +79,17 @@ public class AvroTest {
     check(builder.build());
   }
 
+  @Test
+  public void bytes() throws Throwable {
+    final byte[] bytes = new byte[256];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte)i;
+    }
+    for (final Encoding encoding : Encoding.values()) {
+      Assert.assertArrayEquals(bytes, Avro.decode(Avro.encode(bytes, encoding), byte[].class, encoding));
+    }
+  }
+
   private static void check(final Object bean) throws IOException {
     {
       final byte[] ba = Avro.encode(bean, Encoding.Json);
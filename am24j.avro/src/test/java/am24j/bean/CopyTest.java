@@ -0,0 +1,96 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.bean;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CopyTest {
+
+  @Test
+  public void deepCopy() {
+    final Node node = new Node()
+      .name("root")
+      .children(Arrays.asList(new Node().name("child-0"), new Node().name("child-1")))
+      .attrs(Collections.singletonMap("key", new Node().name("attr")));
+    final Node copy = Struct.forClass(Node.class).copy(node);
+
+    Assert.assertEquals(node, copy);
+    Assert.assertNotSame(node, copy);
+    Assert.assertNotSame(node.children(), copy.children());
+    Assert.assertNotSame(node.children().get(0), copy.children().get(0));
+    Assert.assertNotSame(node.attrs().get("key"), copy.attrs().get("key"));
+    Assert.assertSame(node.name(), copy.name()); // immutable
+
+    copy.children().get(0).name("changed");
+    Assert.assertEquals("child-0", node.children().get(0).name());
+  }
+
+  @Test
+  public void deepCopyValues() {
+    Assert.assertNull(Struct.deepCopy(null));
+    Assert.assertSame("str", Struct.deepCopy("str"));
+    Assert.assertEquals(Optional.of(new Node().name("opt")), Struct.deepCopy(Optional.of(new Node().name("opt"))));
+    final byte[] bytes = {1, 2, 3};
+    final byte[] bytesCopy = Struct.deepCopy(bytes);
+    Assert.assertArrayEquals(bytes, bytesCopy);
+    Assert.assertNotSame(bytes, bytesCopy);
+    final Object[] array = {new Node().name("0"), 1, "2"};
+    final Object[] arrayCopy = Struct.deepCopy(array);
+    Assert.assertArrayEquals(array, arrayCopy);
+    Assert.assertNotSame(array[0], arrayCopy[0]);
+  }
+
+  public static class Node extends Bean<Node> {
+
+    private String name;
+    private List<Node> children;
+    private Map<String, Node> attrs;
+
+    public String name() {
+      return name;
+    }
+
+    public Node name(final String name) {
+      this.name = name;
+      return this;
+    }
+
+    public List<Node> children() {
+      return children;
+    }
+
+    public Node children(final List<Node> children) {
+      this.children = children;
+      return this;
+    }
+
+    public Map<String, Node> attrs() {
+      return attrs;
+    }
+
+    public Node attrs(final Map<String, Node> attrs) {
+      this.attrs = attrs;
+      return this;
+    }
+  }
+}
@@ -18,11 +18,15 @@ package am24j.commons;
 import java.util.Iterator;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 /**
@@ -88,21 +92,67 @@ public class ASync {
     return future;
   }
 
+  /**
+   * Returns if the stage is already completed, i.e. if its result is available without waiting.
+   */
+  public static boolean isDone(final CompletionStage<?> stage) {
+    try {
+      return stage.toCompletableFuture().isDone();
+    } catch (final UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Executes the action in the calling thread if the stage is already completed. Otherwise, executes it asynchronously
+   * via the executor when the stage completes.
+   */
+  public static <T> CompletionStage<T> whenComplete(
+      final CompletionStage<T> stage, final BiConsumer<? super T, ? super Throwable> action, final Executor executor) {
+    return isDone(stage) ? stage.whenComplete(action) : stage.whenCompleteAsync(action, executor);
+  }
+
   private static <T> void next(final boolean get, final Iterator<CompletionStage<T>> i, final CompletableFuture<T> future) {
-    if (i.hasNext()) {
-      i.next().whenCompleteAsync((r, e) -> { // asyn in order to prevent StackOverflowError if many are completed in same thread
-        if (e == null) {
-          if (get && r != null) {
-            future.complete(r);
-          } else {
+    while (i.hasNext()) {
+      final CompletionStage<T> stage = i.next();
+      if (!isDone(stage)) {
+        stage.whenCompleteAsync((r, e) -> { // asyn in order to prevent StackOverflowError if many are completed in same thread
+          if (complete(get, r, e, future)) {
             next(get, i, future);
           }
-        } else {
-          future.completeExceptionally(e);
-        }
-      });
+        });
+        return;
+      }
+      // completed - continue inline (in loop, so no stack growth)
+      final CompletableFuture<T> done = stage.toCompletableFuture();
+      T r = null;
+      Throwable e = null;
+      try {
+        r = done.join();
+      } catch (final CompletionException ce) {
+        e = ce.getCause() == null ? ce : ce.getCause();
+      } catch (final CancellationException ce) {
+        e = ce;
+      }
+      if (!complete(get, r, e, future)) {
+        return;
+      }
+    }
+    future.complete(null);
+  }
+
+  // returns true if shall continue with the next
+  private static <T> boolean complete(final boolean get, final T r, final Throwable e, final CompletableFuture<T> future) {
+    if (e == null) {
+      if (get && r != null) {
+        future.complete(r);
+        return false;
+      } else {
+        return true;
+      }
     } else {
-      future.complete(null);
+      future.completeExceptionally(e);
+      return false;
     }
   }
 
@@ -34,6 +34,7 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
@@ -256,6 +257,42 @@ public class Ctx {
     return Optional.ofNullable((T)ctxMap.put(key, ctx));
   }
 
+  /**
+   * Returns runnable that runs in the call context of the current thread (e.g. for an async continuation)
+   */
+  public static Runnable wrap(final Runnable runnable) {
+    final Executor captured = capture();
+    return () -> captured.execute(runnable);
+  }
+
+  /**
+   * Returns executor that runs the tasks inline, in the call context of the current thread (e.g. for an async
+   * continuation which is not known yet)
+   */
+  public static Executor capture() {
+    final Map<Class<?>, ?> ctxMap = THREAD_CTX.get();
+    if (ctxMap == null || ctxMap.isEmpty()) {
+      return Runnable::run;
+    }
+    final Map<Class<?>, ?> captured = new HashMap<>(ctxMap);
+    return task -> {
+      final Map<Class<?>, ?> current = THREAD_CTX.get();
+      THREAD_CTX.set(new HashMap<>(captured)); // the task could change it
+      try {
+        task.run();
+      } finally {
+        THREAD_CTX.set(current);
+      }
+    };
+  }
+
+  /**
+   * Returns executor that runs the tasks in the call context of the thread that submits them
+   */
+  public static Executor wrap(final Executor executor) {
+    return task -> executor.execute(wrap(task));
+  }
+
   /**
    * Substitute context in string. For instance if string is "x${y:=5}" and no y property, then string is "x5", if
    * y is 10 then - "x10"
@@ -15,7 +15,6 @@
  */
 package am24j.commons;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -32,6 +31,7 @@ public class JsonReader {
 
       private int depth;
       private boolean inString;
+      private boolean escaped;
       private boolean end;
 
       @Override
@@ -44,16 +44,14 @@ public class JsonReader {
         }
 
         if (inString) {
-          if (read == '\\') {
-            final int escaped = is.read();
-            if (read == -1) throw new EOFException("Illegal end of stream (after escaping)!");
-            return escaped;
-          } else {
-            if (read == '\"') {
-              inString = false;
-            }
-            return read;
+          if (escaped) { // passed as is, with the escaping backslash
+            escaped = false;
+          } else if (read == '\\') {
+            escaped = true;
+          } else if (read == '\"') {
+            inString = false;
           }
+          return read;
         } else {
           switch (read) {
             case '\"': {
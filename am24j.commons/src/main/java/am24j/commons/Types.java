@@ -34,7 +34,7 @@ public class Types {
    * @param type class of the required type
    * @return converted value
    */
-  @SuppressWarnings("unchecked")
+  @SuppressWarnings({ "unchecked", "rawtypes" })
   public static <T> T toType(final String str, final Class<T> type) {
     if (type == boolean.class || type == Boolean.class) {
       return (T)(Boolean)Boolean.parseBoolean(str);
@@ -58,6 +58,8 @@ public class Types {
       return (T)Duration.parse(str);
     } else if (type == String.class) {
       return (T)str;
+    } else if (type.isEnum()) {
+      return (T)Enum.valueOf(type.asSubclass(Enum.class), str);
     }
     throw new UnsupportedOperationException("Can't convert to " + type + "!");
   }
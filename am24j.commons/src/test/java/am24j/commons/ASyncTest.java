@@ -19,8 +19,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 /**
@@ -38,4 +40,47 @@ public class ASyncTest {
     }
     ASync.sequentially(Utils.map(all.iterator(), Supplier::get)).toCompletableFuture().join();
   }
+
+  @Test
+  public void seqGetCompletedInline() {
+    final List<CompletionStage<String>> all = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      final CompletableFuture<String> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new IllegalStateException());
+      all.add(failed);
+    }
+    all.add(CompletableFuture.completedFuture("result"));
+    final CompletionStage<String> result = ASync.sequentiallyGetSkipErrors(all.iterator());
+    Assert.assertTrue(ASync.isDone(result)); // no async hops
+    Assert.assertEquals("result", result.toCompletableFuture().join());
+  }
+
+  @Test
+  public void seqGetPending() {
+    final CompletableFuture<String> pending = new CompletableFuture<>();
+    final List<CompletionStage<String>> all = new ArrayList<>();
+    all.add(CompletableFuture.completedFuture(null));
+    all.add(pending);
+    all.add(CompletableFuture.completedFuture("next"));
+    final CompletionStage<String> result = ASync.sequentiallyGetSkipErrors(all.iterator());
+    Assert.assertFalse(ASync.isDone(result));
+    pending.complete(null);
+    Assert.assertEquals("next", result.toCompletableFuture().join());
+  }
+
+  @Test
+  public void whenCompleteInline() {
+    final Thread thread = Thread.currentThread();
+    final AtomicReference<Thread> executed = new AtomicReference<>();
+    ASync.whenComplete(CompletableFuture.completedFuture("done"), (r, t) -> executed.set(Thread.currentThread()), Runnable::run);
+    Assert.assertSame(thread, executed.get());
+
+    final CompletableFuture<String> pending = new CompletableFuture<>();
+    final List<Runnable> scheduled = new ArrayList<>();
+    ASync.whenComplete(pending, (r, t) -> executed.set(null), scheduled::add);
+    pending.complete("done");
+    Assert.assertEquals(1, scheduled.size()); // via the executor
+    scheduled.get(0).run();
+    Assert.assertNull(executed.get());
+  }
 }
@@ -26,6 +26,7 @@ import am24j.hz.HZInstance;
 import am24j.inject.Starter;
 import am24j.rpc.Auth;
 import am24j.rpc.AuthVerfier;
+import am24j.rpc.MetricsCmd;
 import am24j.rpc.grpc.Cmd;
 import am24j.rpc.grpc.Common;
 import am24j.vertx.HZCluster;
@@ -72,7 +73,8 @@ public class Server {
       am24j.rpc.http.Server.class,
 
       Cmd.class,
-      am24j.rpc.http.Cmd.class);
+      am24j.rpc.http.Cmd.class,
+      MetricsCmd.class);
 
     final String httpPort = Ctx.intProp("node.id", 0) == 0 ? "" : ":8" + Ctx.intProp("node.id", 0);
     final String rpcClientConf = Ctx.intProp("node.id", 0) == 0 ? "" :  " -Dnode.id=" + Ctx.intProp("node.id", 0);
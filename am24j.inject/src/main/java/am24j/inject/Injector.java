@@ -167,8 +167,13 @@ public class Injector {
     return "Injector (Resolvers: " + resolvers + ", interceptors: " + interceptors + ")";
   }
 
-  @SuppressWarnings("unchecked")
+  // records the resolution as a flight recorder event (if available and enabled)
   private <T> T getInstance(final Key key, final Optional<Point> point) {
+    return Jfr.AVAILABLE ? ResolveEvent.record(key, point, () -> getInstance0(key, point)) : getInstance0(key, point);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T getInstance0(final Key key, final Optional<Point> point) {
     log.debug("[{}][{}] getInstance ...", key, point);
     Provider<T> provider;
     synchronized (bindings) { // compute if absent may fall in reqursive update
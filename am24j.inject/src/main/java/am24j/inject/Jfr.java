@@ -0,0 +1,38 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.inject;
+
+/**
+ * Checks (once) if the Java Flight Recorder is available. The module targets Java 8 where there is no <code>jdk.jfr</code>,
+ * so the flight recorder event classes shall be loaded only if this is <code>true</code>.
+ *
+ * @author avgustinmm
+ */
+final class Jfr {
+
+  static final boolean AVAILABLE = available();
+
+  private Jfr() {}
+
+  private static boolean available() {
+    try {
+      Class.forName("jdk.jfr.Event", false, Jfr.class.getClassLoader());
+      return true;
+    } catch (final ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+}
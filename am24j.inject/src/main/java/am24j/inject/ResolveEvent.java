@@ -0,0 +1,59 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.inject;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of an instance resolution by the {@link Injector} - the duration includes the resolution
+ * of the dependencies (recorded as nested events) and the instance creation. Shall be used only if {@link Jfr#AVAILABLE}.
+ *
+ * @author avgustinmm
+ */
+@Name("am24j.inject.Resolve")
+@Label("Injector Resolution")
+@Category({ "AM24j", "Injector" })
+class ResolveEvent extends Event {
+
+  @Label("Key")
+  String key;
+
+  @Label("Injection Point")
+  @Description("The constructor, method or field (and parameter index) the instance is resolved for, if any")
+  String point;
+
+  static <T> T record(final Object key, final Optional<?> point, final Supplier<T> resolve) {
+    final ResolveEvent event = new ResolveEvent();
+    event.begin();
+    try {
+      return resolve.get();
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.key = key.toString();
+        event.point = point.map(Object::toString).orElse(null);
+        event.commit();
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.jcl;
+
+import java.security.CodeSource;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of a class definition by the {@link JarClassLoader} - finding, reading and defining
+ * the class from an internal jar. Shall be used only if {@link Jfr#AVAILABLE}.
+ *
+ * @author avgustinmm
+ */
+@Name("am24j.jcl.DefineClass")
+@Label("Jar Class Definition")
+@Category({ "AM24j", "Class Loading" })
+@StackTrace(false)
+class DefineClassEvent extends Event {
+
+  @Label("Jar")
+  String jar;
+
+  @Label("Class")
+  String className;
+
+  static Class<?> record(final String name, final Finder finder) throws ClassNotFoundException {
+    final DefineClassEvent event = new DefineClassEvent();
+    event.begin();
+    final Class<?> clazz = finder.find(name);
+    event.end();
+    if (event.shouldCommit()) {
+      final CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+      event.jar = codeSource == null || codeSource.getLocation() == null ? null : codeSource.getLocation().toString();
+      event.className = name;
+      event.commit();
+    }
+    return clazz;
+  }
+
+  interface Finder {
+
+    Class<?> find(final String name) throws ClassNotFoundException;
+  }
+}
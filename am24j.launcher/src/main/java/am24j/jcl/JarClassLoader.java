@@ -75,6 +75,12 @@ public class JarClassLoader extends URLClassLoader {
 
   private final ConcurrentHashMap<URL, ConcurrentHashMap<String, Boolean>> usage = new ConcurrentHashMap<>();
 
+  @Override
+  protected Class<?> findClass(final String name) throws ClassNotFoundException {
+    // records the definition as a flight recorder event (if available and enabled)
+    return Jfr.AVAILABLE ? DefineClassEvent.record(name, super::findClass) : super.findClass(name);
+  }
+
   @Override
   protected Package definePackage(final String name, final Manifest man, final URL url) throws IllegalArgumentException {
     usage.computeIfAbsent(url, u -> new ConcurrentHashMap<>()).put(name, Boolean.TRUE);
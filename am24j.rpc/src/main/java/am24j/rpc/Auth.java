@@ -29,4 +29,20 @@ public class Auth extends RunAs {
   protected Auth() {
     super(Auth.class);
   }
+
+  /**
+   * Priority of the calls made with this auth when the servers shed load (see {@link ConcurrencyLimiter}). The calls
+   * with priority greater than 0 could use the reserved share of the limit.
+   */
+  public int priority() {
+    return 0;
+  }
+
+  /**
+   * Name of the principal, for diagnostics (e.g. flight recorder events) and for coalescing of the
+   * {@link Idempotent#byAuth()} calls, <code>null</code> if not known
+   */
+  public String principal() {
+    return this == ANONYMOUS ? "anonymous" : null;
+  }
 }
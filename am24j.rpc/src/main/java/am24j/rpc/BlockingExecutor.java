@@ -0,0 +1,146 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Executor of the {@link Blocking} service methods. Runs the tasks on virtual threads (if enabled and the JDK has them)
+ * or on a Vertx worker pool, at most <code>maxConcurrency</code> at a time - the rest are queued. Configured by the
+ * server config {@link #CONFIG}: <code>{"maxConcurrency": 20, "virtualThreads": true}</code>.
+ *
+ * @author avgustinmm
+ */
+public class BlockingExecutor implements Executor, AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.blocking");
+
+  public static final String CONFIG = "blocking";
+
+  private final int maxConcurrency;
+  private final ExecutorService virtualThreads; // null if not used
+  private final WorkerExecutor workerPool; // null if virtual threads are used
+
+  private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger running = new AtomicInteger();
+
+  public BlockingExecutor(final JsonObject config, final Vertx vertx) {
+    maxConcurrency = Math.max(1, config.getInteger("maxConcurrency", 20));
+    virtualThreads = config.getBoolean("virtualThreads", true) ? virtualThreads() : null;
+    workerPool = virtualThreads == null ? vertx.createSharedWorkerExecutor("am24j.rpc.blocking", maxConcurrency) : null;
+    LOG.info("Start (max concurrency: {}, on {})", maxConcurrency, virtualThreads == null ? "worker pool" : "virtual threads");
+  }
+
+  /**
+   * Creates executor by the {@link #CONFIG} of the server config (defaults if missing)
+   */
+  public static BlockingExecutor create(final JsonObject config, final Vertx vertx) {
+    return new BlockingExecutor(config.getJsonObject(CONFIG, new JsonObject()), vertx);
+  }
+
+  /**
+   * Returns if the method (of service interface), the interface, the implementation or its method is {@link Blocking}
+   */
+  public static boolean isBlocking(final Method method, final Object service) {
+    if (method.isAnnotationPresent(Blocking.class) || method.getDeclaringClass().isAnnotationPresent(Blocking.class)) {
+      return true;
+    }
+    final Class<?> implClass = service.getClass();
+    if (implClass.isAnnotationPresent(Blocking.class)) {
+      return true;
+    }
+    try {
+      return implClass.getMethod(method.getName(), method.getParameterTypes()).isAnnotationPresent(Blocking.class);
+    } catch (final NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void execute(final Runnable task) {
+    queue.offer(task);
+    drain();
+  }
+
+  @Override
+  public void close() {
+    if (virtualThreads == null) {
+      workerPool.close();
+    } else {
+      virtualThreads.shutdown();
+    }
+  }
+
+  private void drain() {
+    while (!queue.isEmpty()) {
+      final int current = running.get();
+      if (current >= maxConcurrency) {
+        return; // a completing task drains
+      }
+      if (running.compareAndSet(current, current + 1)) {
+        final Runnable task = queue.poll();
+        if (task == null) {
+          running.decrementAndGet(); // taken by another - recheck
+        } else {
+          dispatch(() -> {
+            try {
+              task.run();
+            } catch (final Throwable t) {
+              LOG.error("Blocking task failed!", t);
+            } finally {
+              running.decrementAndGet();
+              drain();
+            }
+          });
+        }
+      }
+    }
+  }
+
+  private void dispatch(final Runnable task) {
+    if (virtualThreads == null) {
+      workerPool.executeBlocking(promise -> {
+        task.run();
+        promise.complete();
+      }, false, ar -> {});
+    } else {
+      virtualThreads.execute(task);
+    }
+  }
+
+  // Executors.newVirtualThreadPerTaskExecutor() if available (JDK 21+)
+  private static ExecutorService virtualThreads() {
+    try {
+      return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (final ReflectiveOperationException e) {
+      LOG.debug("No virtual threads, use worker pool");
+      return null;
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a unary service method which responses are cached cluster wide by the servers (if they have a
+ * {@link ResponseCache}). The responses are cached encoded, by service, method and encoded arguments - a hit skips both
+ * the invocation and the encoding. The cache is not per {@link Auth} so the response must not depend on the caller.
+ * Failed calls are not cached.
+ *
+ * @author avgustinmm
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+
+  /**
+   * Time to live of the cached responses in milliseconds.
+   */
+  public long ttl();
+
+  /**
+   * Max number of the cached responses (per cluster member).
+   */
+  public int maxSize() default 10_000;
+}
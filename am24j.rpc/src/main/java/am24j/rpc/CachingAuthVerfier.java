@@ -0,0 +1,162 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.rpc.grpc.Common;
+import io.grpc.Metadata;
+import io.vertx.core.http.HttpServerRequest;
+
+/**
+ * {@link AuthVerfier} decorator that caches the verification results by the credential value. Successful verifications
+ * are kept for the TTL, rejected - for the (shorter) negative TTL. Concurrent verifications of the same credential share
+ * a single delegate call (so a burst of calls with a new token is verified once).
+ *
+ * @author avgustinmm
+ */
+public class CachingAuthVerfier<T> implements AuthVerfier<T> {
+
+  public static final Function<Metadata, String> GRPC_CREDENTIAL = headers -> headers.get(Common.WWW_AUTHENTICATE);
+  public static final Function<HttpServerRequest, String> HTTP_CREDENTIAL = request -> request.getHeader("Authorization");
+
+  private static final Logger LOG = Ctx.logger("rpc.auth.cache");
+
+  private final AuthVerfier<T> delegate;
+  private final Function<T, String> credential;
+  private final int maxSize;
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+
+  private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+  public CachingAuthVerfier(
+      final AuthVerfier<T> delegate, final Function<T, String> credential,
+      final int maxSize, final Duration ttl, final Duration negativeTtl) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive: " + maxSize + "!");
+    }
+    this.delegate = delegate;
+    this.credential = credential;
+    this.maxSize = maxSize;
+    ttlNanos = ttl.toNanos();
+    negativeTtlNanos = negativeTtl.toNanos();
+  }
+
+  public static CachingAuthVerfier<Metadata> grpc(
+      final AuthVerfier<Metadata> delegate, final int maxSize, final Duration ttl, final Duration negativeTtl) {
+    return new CachingAuthVerfier<>(delegate, GRPC_CREDENTIAL, maxSize, ttl, negativeTtl);
+  }
+
+  public static CachingAuthVerfier<HttpServerRequest> http(
+      final AuthVerfier<HttpServerRequest> delegate, final int maxSize, final Duration ttl, final Duration negativeTtl) {
+    return new CachingAuthVerfier<>(delegate, HTTP_CREDENTIAL, maxSize, ttl, negativeTtl);
+  }
+
+  @Override
+  public CompletionStage<Auth> verify(final T auth) {
+    final String key = credential.apply(auth);
+    if (key == null) { // no credential - nothing to cache by
+      return delegate.verify(auth);
+    }
+
+    final long now = System.nanoTime();
+    final Entry existing = cache.get(key);
+    if (existing != null && !existing.expired(now)) {
+      return existing.future.minimalCompletionStage();
+    }
+
+    final Entry entry = new Entry();
+    final Entry current = cache.compute(key, (k, e) -> e == null || e.expired(now) ? entry : e);
+    if (current == entry) { // this thread loads
+      if (cache.size() > maxSize) {
+        evict(now);
+      }
+      load(entry, auth);
+    }
+    return current.future.minimalCompletionStage();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  public void invalidate(final String key) {
+    cache.remove(key);
+  }
+
+  public void invalidateAll() {
+    cache.clear();
+  }
+
+  private void load(final Entry entry, final T auth) {
+    CompletionStage<Auth> stage;
+    try {
+      stage = delegate.verify(auth);
+    } catch (final Throwable t) {
+      stage = CompletableFuture.failedFuture(t);
+    }
+    stage.whenComplete((r, t) -> {
+      entry.expiresNanos = System.nanoTime() + (t == null ? ttlNanos : negativeTtlNanos);
+      if (t == null) {
+        entry.future.complete(r);
+      } else {
+        LOG.debug("Rejected credential cached for {} ms", Duration.ofNanos(negativeTtlNanos).toMillis(), t);
+        entry.future.completeExceptionally(t);
+      }
+    });
+  }
+
+  // removes expired entries first and then, if still over the limit, the ones which expire first (down to 90% of the
+  // max size, so the sort is amortized over the next inserts)
+  private void evict(final long now) {
+    cache.entrySet().removeIf(e -> e.getValue().expired(now));
+    final int excess = cache.size() - (maxSize - maxSize / 10);
+    if (excess > 0) {
+      final List<Map.Entry<String, Entry>> entries = new ArrayList<>(cache.entrySet());
+      entries.sort(Comparator.comparingLong(e -> e.getValue().ttl(now)));
+      for (int i = 0; i < excess && i < entries.size(); i++) {
+        final Map.Entry<String, Entry> e = entries.get(i);
+        cache.remove(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  private static class Entry {
+
+    private final CompletableFuture<Auth> future = new CompletableFuture<>();
+    private volatile long expiresNanos = Long.MAX_VALUE; // in flight - never expires
+
+    private boolean expired(final long now) {
+      return future.isDone() && expiresNanos - now <= 0;
+    }
+
+    private long ttl(final long now) {
+      return future.isDone() ? expiresNanos - now : Long.MAX_VALUE;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of an RPC call - started with the call and committed on its end (from the thread that
+ * ends it). Created only when the event type is enabled (see {@link Metrics}), so disabled recording costs a flag check
+ * per call.
+ *
+ * @author avgustinmm
+ */
+@Category({ "AM24j", "RPC" })
+@StackTrace(false)
+abstract class CallEvent extends Event {
+
+  @Label("Metrics")
+  @Description("Name of the metrics of the server / client, e.g. grpc.server")
+  String metrics;
+
+  @Label("Service")
+  String service;
+
+  @Label("Method")
+  String method;
+
+  @Label("Principal")
+  String principal;
+
+  @Label("Status")
+  String status;
+
+  @Label("Request Bytes")
+  @DataAmount
+  long requestBytes;
+
+  @Label("Response Bytes")
+  @DataAmount
+  long responseBytes;
+
+  @Label("Stream Items")
+  long items;
+
+  @Label("Queue")
+  @Timespan
+  long queue;
+
+  @Label("Decode")
+  @Timespan
+  long decode;
+
+  @Label("Invoke")
+  @Timespan
+  long invoke;
+
+  @Label("Encode")
+  @Timespan
+  long encode;
+}
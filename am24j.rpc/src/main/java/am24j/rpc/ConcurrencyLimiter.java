@@ -0,0 +1,175 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Adaptive (AIMD) concurrency limiter of the server unary calls, per method. The limit is increased by <code>1/limit</code>
+ * when a call completes in time while the method is loaded (in-flight calls at least half of the limit), i.e. by about
+ * one per limit calls, and is multiplicatively decreased when a call is dropped (e.g. cancelled, timed out) or its latency
+ * exceeds <code>tolerance</code> times the long term average latency. The decrease is applied at most once per window -
+ * the calls started before the last decrease don't decrease it again (e.g. a burst of slow calls backs off once). Calls
+ * over the limit are rejected (before their arguments are decoded). Calls with
+ * {@link Auth#priority()} 0 could use the limit without the reserved share, the ones with higher priority - the whole limit.
+ * <br>
+ * Configured by the server config {@link #CONFIG}:
+ * <code>{"initialLimit": 20, "minLimit": 1, "maxLimit": 1000, "backoffRatio": 0.9, "tolerance": 2.0, "reserved": 0.2}</code>
+ *
+ * @author avgustinmm
+ */
+public class ConcurrencyLimiter {
+
+  private static final Logger LOG = Ctx.logger("rpc.limiter");
+
+  public static final String CONFIG = "limiter";
+
+  private final double initialLimit;
+  private final double minLimit;
+  private final double maxLimit;
+  private final double backoffRatio;
+  private final double tolerance;
+  private final double reserved;
+
+  private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+  public ConcurrencyLimiter(final JsonObject config) {
+    minLimit = Math.max(1, config.getDouble("minLimit", 1.0));
+    maxLimit = Math.max(minLimit, config.getDouble("maxLimit", 1000.0));
+    initialLimit = Math.min(maxLimit, Math.max(minLimit, config.getDouble("initialLimit", 20.0)));
+    backoffRatio = Math.min(0.99, Math.max(0.5, config.getDouble("backoffRatio", 0.9)));
+    tolerance = Math.max(1, config.getDouble("tolerance", 2.0));
+    reserved = Math.min(0.9, Math.max(0, config.getDouble("reserved", 0.2)));
+  }
+
+  /**
+   * Creates limiter if the server config has {@link #CONFIG}, otherwise returns null
+   */
+  public static ConcurrencyLimiter create(final JsonObject config) {
+    final JsonObject limiter = config.getJsonObject(CONFIG);
+    return limiter == null ? null : new ConcurrencyLimiter(limiter);
+  }
+
+  /**
+   * Acquires a permit for a call of the method (<code>&lt;service&gt;/&lt;method&gt;</code>). Returns null if the call
+   * is rejected, otherwise the permit which shall be released when the call completes.
+   */
+  public Permit acquire(final String method, final Auth auth) {
+    return limits.computeIfAbsent(method, Limit::new).acquire(auth == null ? 0 : auth.priority());
+  }
+
+  /**
+   * Returns the current limits - per method the limit, in-flight, accepted and rejected calls
+   */
+  public JsonObject stats() {
+    final JsonObject stats = new JsonObject();
+    limits.values().forEach(limit -> stats.put(limit.method, limit.stats()));
+    return stats;
+  }
+
+  public class Permit {
+
+    private final Limit limit;
+    private final long startNanos = System.nanoTime();
+    private final int inFlight;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(final Limit limit, final int inFlight) {
+      this.limit = limit;
+      this.inFlight = inFlight;
+    }
+
+    /**
+     * Releases the permit - only the first release counts.
+     *
+     * @param dropped true if the call is dropped (cancelled, timed out ...)
+     */
+    public void release(final boolean dropped) {
+      if (released.compareAndSet(false, true)) {
+        limit.release(startNanos, System.nanoTime() - startNanos, inFlight, dropped);
+      }
+    }
+  }
+
+  private class Limit {
+
+    private final String method;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile double limit = initialLimit;
+    private double avgLatency; // long term average, nanos - guarded by this
+    private long lastDecrease = System.nanoTime(); // guarded by this
+
+    private Limit(final String method) {
+      this.method = method;
+    }
+
+    private Permit acquire(final int priority) {
+      final double max = priority > 0 ? limit : limit * (1 - reserved);
+      while (true) {
+        final int current = inFlight.get();
+        if (current >= Math.max(1, (int)max)) {
+          rejected.increment();
+          LOG.debug("[{}] Rejected (limit: {}, in-flight: {}, priority: {})", method, (int)limit, current, priority);
+          return null;
+        }
+        if (inFlight.compareAndSet(current, current + 1)) {
+          accepted.increment();
+          return new Permit(this, current + 1);
+        }
+      }
+    }
+
+    private synchronized void release(final long startNanos, final long latency, final int inFlightOnStart, final boolean dropped) {
+      inFlight.decrementAndGet();
+      final boolean slow = avgLatency > 0 && latency > tolerance * avgLatency;
+      avgLatency = avgLatency == 0 ? latency : avgLatency * 0.95 + latency * 0.05;
+      if (dropped || slow) {
+        if (startNanos - lastDecrease < 0) { // started before the last decrease - already backed off for its window
+          return;
+        }
+        lastDecrease = System.nanoTime();
+        final double newLimit = Math.max(minLimit, limit * backoffRatio);
+        if ((int)newLimit != (int)limit) {
+          LOG.debug("[{}] Decrease limit: {} (dropped: {}, latency: {} us)", method, (int)newLimit, dropped, latency / 1_000);
+        }
+        limit = newLimit;
+      } else if (inFlightOnStart * 2 >= limit) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+    }
+
+    private JsonObject stats() {
+      return new JsonObject()
+        .put("limit", (int)limit)
+        .put("inFlight", inFlight.get())
+        .put("accepted", accepted.sum())
+        .put("rejected", rejected.sum());
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import am24j.commons.Ctx;
+import am24j.commons.Ctx.RunAs;
+
+/**
+ * Deadline of a call. On the server side the deadline of the current call is accessible via {@link #current()}.
+ * On the client side, if there is a current deadline (i.e. a call made from a service implementation) it is propagated
+ * to the downstream calls.
+ *
+ * @author avgustinmm
+ */
+public class Deadline extends RunAs {
+
+  public static final String HTTP_HEADER = "rpc-timeout"; // remaining milliseconds
+
+  private final long deadlineNanos;
+
+  private Deadline(final long deadlineNanos) {
+    super(Deadline.class);
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  public static Deadline after(final long timeout, final TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  public static Optional<Deadline> current() {
+    return Ctx.ctx(Deadline.class);
+  }
+
+  /**
+   * Resolves the deadline of a client call - the closest from the current deadline and the timeout. The timeout is the
+   * override (if not null) or the one declared by the {@link Timeout} of the method or of its interface.
+   */
+  public static Optional<Deadline> forCall(final Method method, final Duration override) {
+    final Optional<Deadline> current = current();
+    final long timeoutMillis;
+    if (override == null) {
+      Timeout timeout = method.getAnnotation(Timeout.class);
+      if (timeout == null) {
+        timeout = method.getDeclaringClass().getAnnotation(Timeout.class);
+      }
+      if (timeout == null) {
+        return current;
+      }
+      timeoutMillis = timeout.value();
+    } else {
+      timeoutMillis = override.toMillis();
+    }
+    final Deadline deadline = after(timeoutMillis, TimeUnit.MILLISECONDS);
+    return Optional.of(current.filter(c -> c.deadlineNanos - deadline.deadlineNanos < 0).orElse(deadline));
+  }
+
+  public long remaining(final TimeUnit unit) {
+    return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
+  public boolean expired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "Deadline(remaining: " + remaining(TimeUnit.MILLISECONDS) + " ms)";
+  }
+}
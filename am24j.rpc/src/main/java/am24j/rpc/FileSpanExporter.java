@@ -0,0 +1,65 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import am24j.commons.Ctx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Appends the spans, as JSON lines, to a file - for local use. Config: <code>{"file": "traces.jsonl"}</code>, relative
+ * paths are resolved in the {@link Ctx#RW_DIR}.
+ *
+ * @author avgustinmm
+ */
+public class FileSpanExporter implements SpanExporter {
+
+  public static final String TYPE = "file";
+
+  private final File file;
+
+  public FileSpanExporter(final JsonObject config) {
+    final String path = config.getString("file", "traces.jsonl");
+    file = new File(path).isAbsolute() ? new File(path) : Ctx.readWriteFile(path);
+  }
+
+  public File file() {
+    return file;
+  }
+
+  @Override
+  public void export(final List<Span> spans) {
+    final StringBuilder sb = new StringBuilder();
+    spans.forEach(span -> sb.append(span.toJson().encode()).append('\n'));
+    try { // single append - the exporters of the other servers / clients could share the file
+      Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FileSpanExporter(" + file + ")";
+  }
+}
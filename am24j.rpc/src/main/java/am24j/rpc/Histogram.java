@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Lock free log-linear histogram of non negative values (e.g. latencies in nanoseconds). Values are counted in buckets
+ * of 16 linear sub-buckets per power of two, so a percentile is reported with relative error up to ~6%. Recording is
+ * a couple of atomic increments, hence is cheap enough for the hot path.
+ *
+ * @author avgustinmm
+ */
+public class Histogram {
+
+  private static final int SUB_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a value, negative are ignored
+   */
+  public void record(final long value) {
+    if (value < 0) {
+      return;
+    }
+    counts.incrementAndGet(index(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    final long count = count();
+    return count == 0 ? 0 : (double)sum.sum() / count;
+  }
+
+  /**
+   * Returns the (approximate) value at the percentile (0 - 100), 0 if there are no values
+   */
+  public long percentile(final double percentile) {
+    long total = 0;
+    final long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long)Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(value(i), max());
+      }
+    }
+    return max();
+  }
+
+  /**
+   * Returns count, mean, p50, p90, p99, p999 and max, the values divided by the scale (e.g. 1000 for nanos to micros)
+   */
+  public JsonObject snapshot(final double scale) {
+    return new JsonObject()
+      .put("count", count())
+      .put("mean", round(mean() / scale))
+      .put("p50", round(percentile(50) / scale))
+      .put("p90", round(percentile(90) / scale))
+      .put("p99", round(percentile(99) / scale))
+      .put("p999", round(percentile(99.9) / scale))
+      .put("max", round(max() / scale));
+  }
+
+  // values < SUB_BUCKETS are exact, others - by the highest bit (exponent) and the next SUB_BITS bits
+  static int index(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int)value;
+    }
+    final int exp = 63 - Long.numberOfLeadingZeros(value);
+    final int sub = (int)(value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exp - SUB_BITS) * SUB_BUCKETS + sub;
+  }
+
+  // the middle of the bucket
+  static long value(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    final long lower = (long)(SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+    return lower + ((1L << shift) >>> 1);
+  }
+
+  private static double round(final double value) {
+    return Math.round(value * 10) / 10.0;
+  }
+}
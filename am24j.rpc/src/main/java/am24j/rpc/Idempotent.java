@@ -0,0 +1,39 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a unary service method as idempotent (e.g. read only). The servers coalesce the concurrent (in-flight) calls with
+ * equal encoded arguments into a single invocation and share its (encoded) response. There are no caching semantics -
+ * a call made after the invocation has completed invokes the method again.
+ *
+ * @author avgustinmm
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Idempotent {
+
+  /**
+   * If true only calls of the same principal (see {@link Auth#principal()}) are coalesced. Calls with auths that don't
+   * name their principal are not coalesced with others.
+   */
+  public boolean byAuth() default false;
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.commons.Ctx.RunAs;
+
+/**
+ * Invocation of the service methods, shared by the servers and the local dispatcher - in the call's contexts (auth,
+ * deadline, trace, partition), the {@link Blocking} methods by the server's {@link BlockingExecutor}.
+ *
+ * @author avgustinmm
+ */
+public final class Invoker {
+
+  private static final Logger LOG = Ctx.logger("rpc.invoker");
+
+  private Invoker() {}
+
+  /**
+   * Invokes the method in the contexts (the last is the outermost, the nulls are skipped). If the blocking executor is
+   * not null the method is invoked by it and the result is a stage completed with the invocation's result (null for
+   * streams) - its cancel cancels the invocation's.
+   */
+  @SuppressWarnings("unchecked")
+  public static Object invoke(
+      final Method method, final Object service, final Object[] args, final Executor blockingExecutor,
+      final RunAs... ctxs) throws ReflectiveOperationException {
+    if (blockingExecutor == null) {
+      return invoke0(method, service, args, ctxs);
+    }
+    final CompletableFuture<Object> result = new CompletableFuture<>();
+    blockingExecutor.execute(() -> {
+      try {
+        final Object invocation = invoke0(method, service, args, ctxs);
+        if (invocation instanceof CompletionStage) {
+          ((CompletionStage<Object>)invocation).whenComplete((r, t) -> {
+            if (t == null) {
+              result.complete(r);
+            } else {
+              result.completeExceptionally(t);
+            }
+          });
+          if (invocation instanceof CompletableFuture) { // cancels the call on cancel
+            result.whenComplete((r, t) -> {
+              if (result.isCancelled()) {
+                ((CompletableFuture<Object>)invocation).cancel(false);
+              }
+            });
+          }
+        } else {
+          result.complete(invocation);
+        }
+      } catch (final InvocationTargetException e) {
+        result.completeExceptionally(e.getCause() == null ? e : e.getCause());
+      } catch (final Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * As {@link #invoke(Method, Object, Object[], Executor, RunAs...)} of a method returning a stage - a failure (even if
+   * thrown) is returned as a failed stage.
+   */
+  @SuppressWarnings("unchecked")
+  public static CompletionStage<Object> invokeAsync(
+      final Method method, final Object service, final Object[] args, final Executor blockingExecutor, final RunAs... ctxs) {
+    try {
+      return (CompletionStage<Object>)invoke(method, service, args, blockingExecutor, ctxs);
+    } catch (final InvocationTargetException e) {
+      return CompletableFuture.failedFuture(e.getCause() == null ? e : e.getCause());
+    } catch (final Throwable t) {
+      return CompletableFuture.failedFuture(t);
+    }
+  }
+
+  /**
+   * Calls the supplier in the contexts (the last is the outermost, the nulls are skipped)
+   */
+  public static <T> T callAs(final RunAs[] ctxs, final Supplier<T> supplier) {
+    Supplier<T> call = supplier;
+    for (final RunAs ctx : ctxs) {
+      if (ctx != null) {
+        final Supplier<T> inner = call;
+        call = () -> ctx.callAs(inner);
+      }
+    }
+    return call.get();
+  }
+
+  /**
+   * Returns the deadline by the value of the {@link Deadline#HTTP_HEADER} header (remaining ms), null if missing or
+   * invalid.
+   */
+  public static Deadline deadline(final String timeout) {
+    if (timeout == null) {
+      return null;
+    }
+    try {
+      return Deadline.after(Long.parseLong(timeout), TimeUnit.MILLISECONDS);
+    } catch (final NumberFormatException e) {
+      LOG.warn("Invalid {} header: {}", Deadline.HTTP_HEADER, timeout);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the (Avro) error response of a failure
+   */
+  public static am24j.rpc.avro.RPCException rpcExc(final Throwable t) {
+    return new am24j.rpc.avro.RPCException().setUUID(RPCException.uuid()).setMessage(t.getMessage()).setType(t.getClass().getName());
+  }
+
+  private static Object invoke0(final Method method, final Object service, final Object[] args, final RunAs[] ctxs) throws ReflectiveOperationException {
+    try {
+      return callAs(ctxs, () -> {
+        try {
+          return method.invoke(service, args);
+        } catch (final ReflectiveOperationException e) {
+          throw new UndeclaredThrowableException(e);
+        }
+      });
+    } catch (final UndeclaredThrowableException e) {
+      throw (ReflectiveOperationException)e.getCause();
+    }
+  }
+}
@@ -0,0 +1,436 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Publisher;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.apache.avro.Protocol.Message;
+import org.slf4j.Logger;
+
+import am24j.bean.Struct;
+import am24j.commons.ASync;
+import am24j.commons.Ctx;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * In-process short-circuit of the calls to co-located services. The servers register their services (see
+ * {@link #register(List, Executor, Function)}) together with their blocking executor and an authenticator of the call
+ * credentials, and the clients with local mode dispatch the calls of the registered services straight to the
+ * implementation - no encoding, no network, on the caller thread ({@link Blocking} methods - on the server's
+ * {@link BlockingExecutor}, so under its concurrency cap). As over the network the credentials are
+ * verified by the server's verifiers and the call is invoked in its auth and deadline contexts, and an expired
+ * deadline fails (and cancels) the call.<br>
+ * Enabled by the client config {@link #CONFIG}: <code>{"copy": &lt;if true the arguments and the responses are deep
+ * copied, default false&gt;}</code>. Without copy the caller and the implementation share the objects.<br>
+ * The authentication and deadline failures are raised as by the client's remote calls - mapped by the client's errors
+ * function from the status ({@link #UNAUTHENTICATED} or {@link #DEADLINE_EXCEEDED}) and the message.
+ *
+ * @author avgustinmm
+ */
+public class Local {
+
+  private static final Logger LOG = Ctx.logger("rpc.local");
+
+  public static final String CONFIG = "local";
+
+  // failure statuses
+  public static final String UNAUTHENTICATED = "UNAUTHENTICATED";
+  public static final String DEADLINE_EXCEEDED = "DEADLINE_EXCEEDED";
+
+  private static final Map<Class<?>, Target> TARGETS = new ConcurrentHashMap<>(); // by service interface
+
+  private final boolean copy;
+  private final BiFunction<String, String, Throwable> errors; // (status, message) -> error
+  private final Vertx vertx;
+
+  /**
+   * Local dispatcher whose failures are {@link RPCException}-s of type the status
+   */
+  public Local(final boolean copy, final Vertx vertx) {
+    this(copy, (status, message) -> new RPCException(null, message, status), vertx);
+  }
+
+  public Local(final boolean copy, final BiFunction<String, String, Throwable> errors, final Vertx vertx) {
+    this.copy = copy;
+    this.errors = errors;
+    this.vertx = vertx;
+  }
+
+  /**
+   * Creates local dispatcher if the client config has {@link #CONFIG}, otherwise returns null. The failures are
+   * {@link RPCException}-s of type the status.
+   */
+  public static Local create(final JsonObject config, final Vertx vertx) {
+    return create(config, (status, message) -> new RPCException(null, message, status), vertx);
+  }
+
+  /**
+   * Creates local dispatcher if the client config has {@link #CONFIG}, otherwise returns null
+   */
+  public static Local create(final JsonObject config, final BiFunction<String, String, Throwable> errors, final Vertx vertx) {
+    final JsonObject local = config.getJsonObject(CONFIG);
+    return local == null ? null : new Local(local.getBoolean("copy", false), errors, vertx);
+  }
+
+  /**
+   * Registers the services (by their {@link Service} interfaces) as available for local calls. The {@link Blocking}
+   * methods are invoked by the blocking executor, the authenticator verifies the call credentials (could be null). If a
+   * service interface is already registered (e.g. by other server) the first registration is kept. Returns unregister.
+   */
+  public static Runnable register(
+      final List<Object> services, final Executor blockingExecutor, final Function<String, CompletionStage<Auth>> authenticator) {
+    final List<Runnable> unregister = new ArrayList<>();
+    services.forEach(service -> {
+      final Target target = new Target(service, blockingExecutor, authenticator);
+      Arrays.stream(service.getClass().getInterfaces()) // only directly declared interfaces
+        .filter(iClass -> Objects.nonNull(iClass.getAnnotation(Service.class)))
+        .forEach(iClass -> register(iClass, target, unregister));
+    });
+    return () -> unregister.forEach(Runnable::run);
+  }
+
+  // the interface and its super interfaces - the declaring class of the called method
+  private static void register(final Class<?> iClass, final Target target, final List<Runnable> unregister) {
+    if (TARGETS.putIfAbsent(iClass, target) == null) {
+      LOG.debug("Register: {}", iClass.getName());
+      unregister.add(() -> TARGETS.remove(iClass, target));
+    }
+    for (final Class<?> superClass : iClass.getInterfaces()) {
+      register(superClass, target, unregister);
+    }
+  }
+
+  /**
+   * Returns true if the service of the method is registered in this process
+   */
+  public boolean serves(final Method method) {
+    return TARGETS.containsKey(method.getDeclaringClass());
+  }
+
+  /**
+   * Calls the method of the local service - with the credentials and the timeout (if not null, overrides the
+   * {@link Timeout}) of the proxy.
+   */
+  @SuppressWarnings("unchecked")
+  public Object call(final Method method, final Object[] args, final String credentials, final Duration timeout) {
+    final Target target = TARGETS.get(method.getDeclaringClass());
+    if (target == null) {
+      throw new IllegalStateException("Not registered: " + method.getDeclaringClass().getName() + "!");
+    }
+    final Deadline deadline = Deadline.forCall(method, timeout).orElse(null);
+    final Object[] realArgs = args == null ? new Object[0] : new Object[args.length];
+    StreamSubscriber stream = null; // response stream subscriber
+    for (int i = 0; i < realArgs.length; i++) {
+      if (args[i] instanceof Subscriber && i == realArgs.length - 1) {
+        stream = new StreamSubscriber((Subscriber<Object>)args[i]);
+        realArgs[i] = stream;
+      } else if (args[i] instanceof Publisher) {
+        realArgs[i] = copy ? copying((Publisher<Object>)args[i]) : args[i];
+      } else {
+        realArgs[i] = copy ? Struct.deepCopy(args[i]) : args[i];
+      }
+    }
+    // if authenticated asynchronously - continues in the caller's context (e.g. trace)
+    final Executor callerCtx = Ctx.capture();
+    if (stream == null) {
+      final CompletableFuture<Object> future = new CompletableFuture<>();
+      ASync.whenComplete(
+        target.authenticator.apply(credentials),
+        (auth, error) -> dispatch(method, target, () -> unary(method, target, realArgs, auth, error, deadline, future)),
+        callerCtx);
+      return future;
+    } else {
+      final StreamSubscriber subscriber = stream;
+      ASync.whenComplete(
+        target.authenticator.apply(credentials),
+        (auth, error) -> dispatch(method, target, () -> stream(method, target.service, realArgs, auth, error, deadline, subscriber)),
+        callerCtx);
+      return null;
+    }
+  }
+
+  // inline, blocking - by the server's blocking executor (in the current context)
+  private static void dispatch(final Method method, final Target target, final Runnable call) {
+    if (BlockingExecutor.isBlocking(method, target.service)) {
+      target.blockingExecutor.execute(Ctx.wrap(call));
+    } else {
+      call.run();
+    }
+  }
+
+  private void unary(
+      final Method method, final Target target, final Object[] args, final Auth auth, final Throwable error,
+      final Deadline deadline, final CompletableFuture<Object> future) {
+    if (error != null) {
+      future.completeExceptionally(errors.apply(UNAUTHENTICATED, "Unauthenticated: " + error.getMessage()));
+      return;
+    }
+    if (deadline != null && deadline.expired()) {
+      future.completeExceptionally(errors.apply(DEADLINE_EXCEEDED, "Deadline expired before call start!"));
+      return;
+    }
+    final CompletionStage<Object> result;
+    if (method.isAnnotationPresent(Idempotent.class) && Arrays.stream(args).noneMatch(Publisher.class::isInstance)) {
+      // as the servers do - joins the equal in-flight (local) call, if any
+      final Message aMessage = Proto.protocol(method.getDeclaringClass()).getMessages().get(Proto.methodName(method));
+      result = target.singleFlight.call(
+        SingleFlight.key(method, Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false), auth, null),
+        () -> Invoker.invokeAsync(method, target.service, args, null, deadline, auth),
+        resp -> resp);
+    } else {
+      result = Invoker.invokeAsync(method, target.service, args, null, deadline, auth);
+    }
+    if (deadline != null) { // deadline reached - fail (and cancel) the call
+      final long timerId = vertx.setTimer(
+        Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)),
+        id -> {
+          if (future.completeExceptionally(errors.apply(DEADLINE_EXCEEDED, "Deadline expired!"))) {
+            result.toCompletableFuture().cancel(false);
+          }
+        });
+      future.whenComplete((r, t) -> vertx.cancelTimer(timerId));
+    }
+    future.whenComplete((r, t) -> {
+      if (t instanceof CancellationException) { // cancels the call
+        result.toCompletableFuture().cancel(false);
+      }
+    });
+    result.whenComplete((resp, t) -> {
+      if (t == null) {
+        future.complete(copy ? Struct.deepCopy(resp) : resp);
+      } else {
+        future.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+      }
+    });
+  }
+
+  private void stream(
+      final Method method, final Object service, final Object[] args, final Auth auth, final Throwable error,
+      final Deadline deadline, final StreamSubscriber subscriber) {
+    if (error != null) {
+      subscriber.fail(errors.apply(UNAUTHENTICATED, "Unauthenticated: " + error.getMessage()));
+      return;
+    }
+    if (deadline != null && deadline.expired()) {
+      subscriber.fail(errors.apply(DEADLINE_EXCEEDED, "Deadline expired before call start!"));
+      return;
+    }
+    if (deadline != null) { // deadline reached - fail and cancel the stream
+      final long timerId = vertx.setTimer(
+        Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)),
+        id -> subscriber.fail(errors.apply(DEADLINE_EXCEEDED, "Deadline expired!")));
+      subscriber.onEnd = () -> vertx.cancelTimer(timerId);
+    }
+    try {
+      Invoker.invoke(method, service, args, null, deadline, auth);
+    } catch (final InvocationTargetException e) {
+      subscriber.fail(e.getCause() == null ? e : e.getCause());
+    } catch (final Throwable t) {
+      subscriber.fail(t);
+    }
+  }
+
+  // request stream which items are deep copied
+  private static Publisher<Object> copying(final Publisher<Object> publisher) {
+    return subscriber -> publisher.subscribe(new Subscriber<Object>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscriber.onSubscribe(subscription);
+      }
+
+      @Override
+      public void onNext(final Object item) {
+        subscriber.onNext(Struct.deepCopy(item));
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        subscriber.onError(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        subscriber.onComplete();
+      }
+    });
+  }
+
+  private static class Target {
+
+    private final Object service;
+    private final Executor blockingExecutor;
+    private final Function<String, CompletionStage<Auth>> authenticator;
+    private final SingleFlight singleFlight = new SingleFlight(); // coalesces the idempotent calls
+
+    private Target(final Object service, final Executor blockingExecutor, final Function<String, CompletionStage<Auth>> authenticator) {
+      this.service = service;
+      this.blockingExecutor = blockingExecutor;
+      this.authenticator = authenticator;
+    }
+  }
+
+  // response stream - copies the items (if copy), ends once (e.g. deadline reached). As the servers do, requests
+  // the items one at a time from the implementation subscription, while there is demand by the caller. The caller
+  // always gets a subscription before the error - a no-op one if failed before the implementation subscribed
+  private class StreamSubscriber implements Subscriber<Object> {
+
+    private final Subscriber<Object> subscriber;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicBoolean subscribed = new AtomicBoolean(); // the caller got a subscription
+
+    private volatile Subscription subscription;
+    private volatile Runnable onEnd = () -> {};
+
+    // guarded by this
+    private long demand; // demanded by the caller and not received yet
+    private boolean requested; // an item is requested from the subscription
+    private boolean draining; // a thread requests in loop (instead of recursion on synchronous emit)
+
+    private StreamSubscriber(final Subscriber<Object> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void onSubscribe(final Subscription subscription) {
+      if (!subscribed.compareAndSet(false, true)) { // already failed (or subscribed)
+        subscription.cancel();
+        return;
+      }
+      this.subscription = subscription;
+      subscriber.onSubscribe(new Subscription() {
+
+        @Override
+        public void request(final long n) {
+          if (n <= 0) {
+            fail(new IllegalArgumentException("Non positive request: " + n));
+            return;
+          }
+          synchronized (StreamSubscriber.this) {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // if less, overflow
+          }
+          requestNext();
+        }
+
+        @Override
+        public void cancel() {
+          done.set(true);
+          subscription.cancel();
+        }
+      });
+      if (done.get()) {
+        subscription.cancel();
+      }
+    }
+
+    @Override
+    public void onNext(final Object item) {
+      if (!done.get()) {
+        synchronized (this) {
+          requested = false;
+          demand--;
+        }
+        subscriber.onNext(copy ? Struct.deepCopy(item) : item);
+        requestNext();
+      }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      if (done.compareAndSet(false, true)) {
+        onEnd.run();
+        ensureSubscribed();
+        subscriber.onError(throwable);
+      }
+    }
+
+    @Override
+    public void onComplete() {
+      if (done.compareAndSet(false, true)) {
+        onEnd.run();
+        ensureSubscribed();
+        subscriber.onComplete();
+      }
+    }
+
+    private void requestNext() {
+      synchronized (this) {
+        if (draining) {
+          return; // the draining thread will request next, if needed
+        }
+        draining = true;
+      }
+      while (true) {
+        synchronized (this) {
+          if (done.get() || requested || demand <= 0) {
+            draining = false;
+            return;
+          }
+          requested = true;
+        }
+        subscription.request(1);
+      }
+    }
+
+    private void fail(final Throwable throwable) {
+      if (done.compareAndSet(false, true)) {
+        onEnd.run();
+        final Subscription subscription = this.subscription;
+        if (subscription != null) {
+          subscription.cancel();
+        }
+        ensureSubscribed();
+        subscriber.onError(throwable);
+      }
+    }
+
+    // the caller must get onSubscribe before any other signal (RS 1.9)
+    private void ensureSubscribed() {
+      if (subscribed.compareAndSet(false, true)) {
+        subscriber.onSubscribe(new Subscription() {
+
+          @Override
+          public void request(final long n) {}
+
+          @Override
+          public void cancel() {}
+        });
+      }
+    }
+  }
+}
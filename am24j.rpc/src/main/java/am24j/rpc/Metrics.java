@@ -0,0 +1,352 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import jdk.jfr.EventType;
+
+/**
+ * Per method metrics of an RPC server or client - calls by status, in-flight calls, request / response bytes, streamed
+ * items and latency histograms of the whole call and of its phases:
+ * <ul>
+ * <li>queue - from the call start to the invocation (server: auth verification, limiter, blocking executor queue;
+ * client: connection, batch window)</li>
+ * <li>decode / encode - of the request / response messages (or stream items)</li>
+ * <li>invoke - from the invocation to the call end (client: the remote call)</li>
+ * </ul>
+ * The statuses are <code>OK</code>, <code>ERROR</code> (the service failed), <code>CANCELLED</code> and transport
+ * specific - the gRPC status code, the HTTP status code or <code>FAILED</code>.
+ * <br>
+ * The metrics are registered in the Vertx local map {@link #REGISTRY} by name (e.g. <code>grpc.server</code>), so
+ * all of them are available by {@link #snapshot(Vertx)}.
+ * <br>
+ * When enabled, each call is recorded as a Java Flight Recorder event too (<code>am24j.rpc.ServerCall</code> /
+ * <code>am24j.rpc.ClientCall</code>) with its own bytes and phase timings.
+ *
+ * @author avgustinmm
+ */
+public class Metrics implements Shareable, AutoCloseable {
+
+  public static final String REGISTRY = "am24j.rpc.metrics";
+
+  public static final String OK = "OK";
+  public static final String ERROR = "ERROR";
+  public static final String CANCELLED = "CANCELLED";
+  public static final String FAILED = "FAILED";
+
+  private static final double MICROS = 1_000;
+
+  private final String name;
+  private final boolean server;
+  private final Vertx vertx;
+
+  private final Map<String, Method> methods = new ConcurrentHashMap<>();
+
+  private Metrics(final String name, final boolean server, final Vertx vertx) {
+    this.name = name;
+    this.server = server;
+    this.vertx = vertx;
+  }
+
+  /**
+   * Creates and registers metrics - by name or, if there are already such, by name#&lt;n&gt;
+   */
+  public static Metrics register(final String name, final boolean server, final Vertx vertx) {
+    final LocalMap<String, Metrics> registry = vertx.sharedData().getLocalMap(REGISTRY);
+    for (int i = 1;; i++) {
+      final Metrics metrics = new Metrics(i == 1 ? name : name + '#' + i, server, vertx);
+      if (registry.putIfAbsent(metrics.name, metrics) == null) {
+        return metrics;
+      }
+    }
+  }
+
+  /**
+   * Returns snapshots of all registered metrics by name
+   */
+  public static JsonObject snapshot(final Vertx vertx) {
+    final LocalMap<String, Metrics> registry = vertx.sharedData().getLocalMap(REGISTRY);
+    final JsonObject snapshot = new JsonObject();
+    new TreeMap<>(registry).forEach((name, metrics) -> snapshot.put(name, metrics.snapshot()));
+    return snapshot;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns the metrics of the method (<code>&lt;service&gt;/&lt;method&gt;</code>)
+   */
+  public Method method(final String method) {
+    return methods.computeIfAbsent(method, Method::new);
+  }
+
+  /**
+   * Returns snapshot of the metrics by method, latencies are in microseconds
+   */
+  public JsonObject snapshot() {
+    final JsonObject snapshot = new JsonObject();
+    new TreeMap<>(methods).forEach((name, method) -> snapshot.put(name, method.snapshot()));
+    return snapshot;
+  }
+
+  @Override
+  public void close() {
+    vertx.sharedData().<String, Metrics>getLocalMap(REGISTRY).removeIfPresent(name, this);
+  }
+
+  public final class Method {
+
+    private final String name;
+
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder items = new LongAdder();
+
+    private final Histogram total = new Histogram();
+    private final Histogram queue = new Histogram();
+    private final Histogram decode = new Histogram();
+    private final Histogram invoke = new Histogram();
+    private final Histogram encode = new Histogram();
+
+    private Method(final String name) {
+      this.name = name;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    private CallEvent event() {
+      if ((server ? EventTypes.SERVER : EventTypes.CLIENT).isEnabled()) {
+        final CallEvent event = server ? new ServerCallEvent() : new ClientCallEvent();
+        event.begin();
+        return event;
+      }
+      return null;
+    }
+
+    Metrics metrics() {
+      return Metrics.this;
+    }
+
+    private boolean server() {
+      return server;
+    }
+
+    /**
+     * Starts a call, it shall be ended by {@link Call#end(String)}
+     */
+    public Call start() {
+      inFlight.increment();
+      return new Call(this, System.nanoTime(), event());
+    }
+
+    /**
+     * Records message (or stream item) decoding, the request on the server, the response on the client
+     */
+    public void decoded(final long nanos, final long bytes) {
+      decode.record(nanos);
+      (server ? requestBytes : responseBytes).add(bytes);
+    }
+
+    /**
+     * Records message (or stream item) encoding, the response on the server, the request on the client. Negative
+     * nanos means already encoded message (e.g. cached response) - only the bytes are counted
+     */
+    public void encoded(final long nanos, final long bytes) {
+      encode.record(nanos);
+      (server ? responseBytes : requestBytes).add(bytes);
+    }
+
+    public JsonObject snapshot() {
+      final JsonObject callsByStatus = new JsonObject();
+      new TreeMap<>(calls).forEach((status, count) -> callsByStatus.put(status, count.sum()));
+      return new JsonObject()
+        .put("calls", callsByStatus)
+        .put("inFlight", inFlight.sum())
+        .put("requestBytes", requestBytes.sum())
+        .put("responseBytes", responseBytes.sum())
+        .put("items", items.sum())
+        .put("latency", new JsonObject()
+          .put("total", total.snapshot(MICROS))
+          .put("queue", queue.snapshot(MICROS))
+          .put("decode", decode.snapshot(MICROS))
+          .put("invoke", invoke.snapshot(MICROS))
+          .put("encode", encode.snapshot(MICROS)));
+    }
+  }
+
+  // flight recorder event types, registered on the first call - not in the event classes, the instrumentation of such
+  // fails
+  private static final class EventTypes {
+
+    private static final EventType SERVER = EventType.getEventType(ServerCallEvent.class);
+    private static final EventType CLIENT = EventType.getEventType(ClientCallEvent.class);
+  }
+
+  /**
+   * A single call. Could be ended from any thread, only the first end counts.
+   */
+  public static final class Call {
+
+    private final Method method;
+    private final long start;
+    private final CallEvent event; // null if not recorded
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private volatile long invoked; // 0 - not invoked
+    private volatile Span span; // null if not sampled
+
+    private Call(final Method method, final long start, final CallEvent event) {
+      this.method = method;
+      this.start = start;
+      this.event = event;
+    }
+
+    /**
+     * Sets the principal of the call (recorded only by the flight recorder)
+     */
+    public void principal(final Auth auth) {
+      if (event != null && auth != null) {
+        event.principal = auth.principal();
+      }
+    }
+
+    /**
+     * Marks the end of the queueing and the start of the invocation
+     */
+    public void invoking() {
+      final long now = System.nanoTime();
+      if (invoked == 0) {
+        method.queue.record(now - start);
+        invoked = now;
+      }
+    }
+
+    /**
+     * Counts a streamed (request or response) item
+     */
+    public void item() {
+      method.items.increment();
+      if (event != null) {
+        synchronized (event) {
+          event.items++;
+        }
+      }
+    }
+
+    /**
+     * As {@link Method#decoded(long, long)} but counted for the call too
+     */
+    public void decoded(final long nanos, final long bytes) {
+      method.decoded(nanos, bytes);
+      recorded(true, nanos, bytes);
+    }
+
+    /**
+     * As {@link Method#encoded(long, long)} but counted for the call too
+     */
+    public void encoded(final long nanos, final long bytes) {
+      method.encoded(nanos, bytes);
+      recorded(false, nanos, bytes);
+    }
+
+    /**
+     * Counts for the call a message already recorded by the method (e.g. by a marshaller shared by all calls)
+     */
+    public void recorded(final boolean decoded, final long nanos, final long bytes) {
+      if (event != null) {
+        synchronized (event) {
+          if (decoded) {
+            event.decode += Math.max(0, nanos);
+          } else {
+            event.encode += Math.max(0, nanos);
+          }
+          if (decoded == method.server()) {
+            event.requestBytes += bytes;
+          } else {
+            event.responseBytes += bytes;
+          }
+        }
+      }
+    }
+
+    public Method method() {
+      return method;
+    }
+
+    long startNanos() {
+      return start;
+    }
+
+    // the span of the call, ended with it
+    void span(final Span span) {
+      this.span = span;
+    }
+
+    public boolean ended() {
+      return ended.get();
+    }
+
+    public void end(final String status) {
+      if (ended.compareAndSet(false, true)) {
+        final long now = System.nanoTime();
+        method.inFlight.decrement();
+        method.calls.computeIfAbsent(status, k -> new LongAdder()).increment();
+        method.total.record(now - start);
+        final long invoked = this.invoked;
+        if (invoked != 0) {
+          method.invoke.record(now - invoked);
+        }
+        if (event != null) {
+          commit(status, now, invoked);
+        }
+        final Span span = this.span;
+        if (span != null) {
+          span.end(status, now);
+        }
+      }
+    }
+
+    private void commit(final String status, final long now, final long invoked) {
+      synchronized (event) {
+        event.end();
+        if (event.shouldCommit()) {
+          final int slash = method.name.lastIndexOf('/');
+          event.metrics = method.metrics().name;
+          event.service = method.name.substring(0, Math.max(0, slash));
+          event.method = method.name.substring(slash + 1);
+          event.status = status;
+          event.queue = (invoked == 0 ? now : invoked) - start;
+          event.invoke = invoked == 0 ? 0 : now - invoked;
+          event.commit();
+        }
+      }
+    }
+  }
+}
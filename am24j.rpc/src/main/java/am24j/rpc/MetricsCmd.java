@@ -0,0 +1,95 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.shell.command.CommandBuilder;
+import io.vertx.ext.shell.command.CommandProcess;
+import io.vertx.ext.shell.command.CommandRegistry;
+
+/**
+ * Shell command <code>rpc_metrics [-j] [filter ...]</code> - prints the call {@link Metrics} of the RPC servers and
+ * clients, only of the methods containing any of the filters (if given), as text or, with <code>-j</code>, as JSON.
+ *
+ * @author avgustinmm
+ */
+public class MetricsCmd {
+
+  private static final String[] PHASES = {"total", "queue", "decode", "invoke", "encode"};
+
+  @Inject
+  public MetricsCmd(final Vertx vertx) {
+    final CommandBuilder cb = CommandBuilder.command("rpc_metrics");
+    cb.processHandler(process -> {
+      try {
+        final List<String> args = new ArrayList<>(process.args());
+        final boolean json = args.remove("-j");
+        final JsonObject snapshot = Metrics.snapshot(vertx);
+        snapshot.forEach(metrics -> ((JsonObject)metrics.getValue()).fieldNames().removeIf(method -> !matches(method, args)));
+        if (json) {
+          process.write(snapshot.encodePrettily());
+          process.write("\n");
+        } else {
+          snapshot.forEach(metrics -> {
+            process.write(metrics.getKey());
+            process.write("\n");
+            ((JsonObject)metrics.getValue()).forEach(method -> write(process, method.getKey(), (JsonObject)method.getValue()));
+          });
+        }
+      } catch (final Exception e) {
+        process.write(e.toString());
+        process.write("\n");
+      } finally {
+        process.end();
+      }
+    });
+    CommandRegistry.getShared(vertx).registerCommand(cb.build(vertx));
+  }
+
+  private static boolean matches(final String method, final List<String> filters) {
+    return filters.isEmpty() || filters.stream().anyMatch(method::contains);
+  }
+
+  private static void write(final CommandProcess process, final String method, final JsonObject metrics) {
+    process.write("  ");
+    process.write(method);
+    process.write("\n    calls: ");
+    process.write(metrics.getJsonObject("calls").encode());
+    process.write(", in flight: ");
+    process.write(String.valueOf(metrics.getLong("inFlight")));
+    process.write(", bytes (request / response): ");
+    process.write(metrics.getLong("requestBytes") + " / " + metrics.getLong("responseBytes"));
+    process.write(", items: ");
+    process.write(String.valueOf(metrics.getLong("items")));
+    process.write("\n");
+    final JsonObject latency = metrics.getJsonObject("latency");
+    for (final String phase : PHASES) {
+      final JsonObject histogram = latency.getJsonObject(phase);
+      if (histogram.getLong("count") > 0) {
+        process.write(String.format(
+          "    %-6s (us): count %d, mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p999 %.1f, max %.1f%n",
+          phase, histogram.getLong("count"), histogram.getDouble("mean"), histogram.getDouble("p50"), histogram.getDouble("p90"),
+          histogram.getDouble("p99"), histogram.getDouble("p999"), histogram.getDouble("max")));
+      }
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Client side (proxy) cache of the responses of the {@link Cached} methods, keyed by method, (Avro binary) encoded
+ * arguments and the caller's credentials - so a proxy never gets a response loaded with other credentials. The
+ * responses are kept encoded and are decoded on hit, so the callers don't share response objects. A hit is served on
+ * the caller thread - no network, no event loop.<br>
+ * An entry expires with the method's {@link Cached#ttl()}, as the server's cache entries, capped by the configured
+ * ttl. Earlier it is invalidated by messages published on the (clustered) event bus at {@link #ADDRESS} - see
+ * {@link #invalidate(Vertx, Method, Object...)}. Enabled by the client config {@link #CONFIG}: <code>{"maxSize":
+ * &lt;max entries, default 10000&gt;, "ttl": &lt;ms, max ttl, default 10 min&gt;}</code>
+ *
+ * @author avgustinmm
+ */
+public class NearCache implements AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.nearCache");
+
+  public static final String CONFIG = "nearCache";
+  public static final String ADDRESS = Ctx.prop("rpc.nearCache.address", "am24j.rpc.invalidate");
+
+  private static final String METHOD = "method";
+  private static final String ARGS = "args";
+
+  private final int maxSize;
+  private final long ttlNanos;
+
+  private final Map<Key, Entry> cache = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>(); // per method path, "" - all
+  private final MessageConsumer<JsonObject> consumer;
+
+  public NearCache(final int maxSize, final Duration ttl, final Vertx vertx) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive: " + maxSize + "!");
+    }
+    this.maxSize = maxSize;
+    ttlNanos = ttl.toNanos();
+    consumer = vertx.eventBus().consumer(ADDRESS, message -> invalidate(message.body()));
+  }
+
+  /**
+   * Creates near cache if the client config has {@link #CONFIG}, otherwise returns null
+   */
+  public static NearCache create(final JsonObject config, final Vertx vertx) {
+    final JsonObject nearCache = config.getJsonObject(CONFIG);
+    return nearCache == null ?
+      null :
+      new NearCache(nearCache.getInteger("maxSize", 10_000), Duration.ofMillis(nearCache.getLong("ttl", 600_000L)), vertx);
+  }
+
+  /**
+   * Publishes invalidation of the cached responses of a call with the args.
+   */
+  public static void invalidate(final Vertx vertx, final Method method, final Object... args) {
+    final Message aMessage = message(method);
+    vertx.eventBus().publish(
+      ADDRESS,
+      new JsonObject()
+        .put(METHOD, path(method))
+        .put(ARGS, Base64.getEncoder().encodeToString(Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false))));
+  }
+
+  /**
+   * Publishes invalidation of the cached responses of the method.
+   */
+  public static void invalidate(final Vertx vertx, final Method method) {
+    vertx.eventBus().publish(ADDRESS, new JsonObject().put(METHOD, path(method)));
+  }
+
+  /**
+   * Publishes invalidation of all the cached responses.
+   */
+  public static void invalidateAll(final Vertx vertx) {
+    vertx.eventBus().publish(ADDRESS, new JsonObject());
+  }
+
+  @Override
+  public void close() {
+    consumer.unregister();
+    cache.clear();
+  }
+
+  public boolean caches(final Method method) {
+    return method.isAnnotationPresent(Cached.class) && !Proto.isStream(method) && !Proto.isRequestStream(method);
+  }
+
+  /**
+   * Returns the cached response (decoded, on the caller thread) or calls the loader and caches its response. The
+   * entries are per credentials (null - unauthenticated). The cancel of the returned stage is forwarded to the loader's
+   * (so to the call).
+   */
+  public CompletionStage<Object> get(
+      final Method method, final Object[] args, final String credentials, final Supplier<CompletionStage<Object>> loader) {
+    final Message aMessage = message(method);
+    final Key key = new Key(method, Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false), credentials);
+    final Entry entry = cache.get(key);
+    final long now = System.nanoTime();
+    if (entry != null && entry.expiresNanos - now > 0) {
+      try {
+        final Object resp = Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), new ByteArrayInputStream(entry.encoded), false);
+        return CompletableFuture.completedFuture(resp);
+      } catch (final RuntimeException e) {
+        LOG.warn("Failed to decode cached response of {} - load", method, e);
+      }
+    }
+
+    final long generation = generation(key.path);
+    final long entryTtlNanos = Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(method.getAnnotation(Cached.class).ttl()));
+    final CompletionStage<Object> loading = loader.get();
+    final CompletableFuture<Object> result = new CompletableFuture<>();
+    // completes after caching - so a following call is a hit
+    loading.whenComplete((resp, t) -> {
+      if (t == null) {
+        try {
+          final Entry loaded = new Entry(
+            Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), resp, false),
+            System.nanoTime() + entryTtlNanos);
+          cache.put(key, loaded);
+          if (generation != generation(key.path)) { // invalidated while loading - may be stale
+            cache.remove(key, loaded);
+          } else if (cache.size() > maxSize) {
+            evict(System.nanoTime());
+          }
+        } catch (final RuntimeException e) {
+          LOG.warn("Failed to cache response of {}", method, e);
+        }
+        result.complete(resp);
+      } else {
+        result.completeExceptionally(t);
+      }
+    });
+    if (loading instanceof CompletableFuture) { // cancels the call on cancel
+      result.whenComplete((r, t) -> {
+        if (result.isCancelled()) {
+          ((CompletableFuture<?>)loading).cancel(false);
+        }
+      });
+    }
+    return result;
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  private void invalidate(final JsonObject invalidation) {
+    final String path = invalidation.getString(METHOD);
+    final String args = invalidation.getString(ARGS);
+    LOG.debug("Invalidate (method: {}, args: {})", path, args);
+    // increments first - so a concurrent load that would put a stale response notices it
+    generations.computeIfAbsent(path == null ? "" : path, k -> new AtomicLong()).incrementAndGet();
+    if (path == null) {
+      cache.clear();
+    } else if (args == null) {
+      cache.keySet().removeIf(key -> key.path.equals(path));
+    } else {
+      final byte[] encodedArgs = Base64.getDecoder().decode(args);
+      cache.keySet().removeIf(key -> key.path.equals(path) && Arrays.equals(key.encodedArgs, encodedArgs));
+    }
+  }
+
+  // changes on any invalidation of the method (including whole cache invalidations)
+  private long generation(final String path) {
+    final AtomicLong all = generations.get("");
+    final AtomicLong method = generations.get(path);
+    return (all == null ? 0 : all.get()) + (method == null ? 0 : method.get());
+  }
+
+  // removes expired entries first and then, if still over the limit, the ones which expire first (down to 90% of the
+  // max size, so the sort is amortized over the next inserts)
+  private void evict(final long now) {
+    cache.values().removeIf(entry -> entry.expiresNanos - now <= 0);
+    final int excess = cache.size() - (maxSize - maxSize / 10);
+    if (excess > 0) {
+      final List<Map.Entry<Key, Entry>> entries = new ArrayList<>(cache.entrySet());
+      entries.sort(Comparator.comparingLong(e -> e.getValue().expiresNanos - now));
+      for (int i = 0; i < excess && i < entries.size(); i++) {
+        final Map.Entry<Key, Entry> e = entries.get(i);
+        cache.remove(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  private static Message message(final Method method) {
+    return Proto.protocol(method.getDeclaringClass()).getMessages().get(Proto.methodName(method));
+  }
+
+  private static String path(final Method method) {
+    final Protocol aProto = Proto.protocol(method.getDeclaringClass());
+    return aProto.getName() + '/' + Proto.methodName(method);
+  }
+
+  private static class Key {
+
+    private final String path;
+    private final byte[] encodedArgs;
+    private final String credentials;
+    private final int hash;
+
+    private Key(final Method method, final byte[] encodedArgs, final String credentials) {
+      path = path(method);
+      this.encodedArgs = encodedArgs;
+      this.credentials = credentials;
+      hash = 31 * (31 * path.hashCode() + Arrays.hashCode(encodedArgs)) + Objects.hashCode(credentials);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key)obj;
+      return path.equals(other.path) && Arrays.equals(encodedArgs, other.encodedArgs) && Objects.equals(credentials, other.credentials);
+    }
+  }
+
+  private static class Entry {
+
+    private final byte[] encoded;
+    private final long expiresNanos;
+
+    private Entry(final byte[] encoded, final long expiresNanos) {
+      this.encoded = encoded;
+      this.expiresNanos = expiresNanos;
+    }
+  }
+}
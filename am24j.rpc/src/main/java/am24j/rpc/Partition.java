@@ -0,0 +1,86 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import am24j.commons.Ctx;
+import am24j.commons.Ctx.RunAs;
+
+/**
+ * Partition of the current call - the value of the {@link PartitionKey} argument and if its partition is owned by the
+ * local member. Implementations could use it to read the local data (e.g. local map entries) directly.
+ *
+ * @author avgustinmm
+ */
+public class Partition extends RunAs {
+
+  private static final Map<Method, Integer> KEY_INDEX = new ConcurrentHashMap<>();
+
+  private final Object key;
+  private final boolean local;
+
+  public Partition(final Object key, final boolean local) {
+    super(Partition.class);
+    this.key = key;
+    this.local = local;
+  }
+
+  public static Optional<Partition> current() {
+    return Ctx.ctx(Partition.class);
+  }
+
+  /**
+   * Returns if the current call's partition key is owned by the local member, false if unknown
+   */
+  public static boolean isLocal() {
+    return current().map(Partition::local).orElse(false);
+  }
+
+  /**
+   * Returns the index of the {@link PartitionKey} parameter or -1 if there is no such
+   */
+  public static int keyIndex(final Method method) {
+    return KEY_INDEX.computeIfAbsent(method, m -> {
+      final Annotation[][] paramAnnotations = m.getParameterAnnotations();
+      for (int i = 0; i < paramAnnotations.length; i++) {
+        for (final Annotation annotation : paramAnnotations[i]) {
+          if (annotation instanceof PartitionKey) {
+            return i;
+          }
+        }
+      }
+      return -1;
+    });
+  }
+
+  public Object key() {
+    return key;
+  }
+
+  public boolean local() {
+    return local;
+  }
+
+  @Override
+  public String toString() {
+    return "Partition(key: " + key + ", local: " + local + ")";
+  }
+}
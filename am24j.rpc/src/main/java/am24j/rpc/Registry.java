@@ -0,0 +1,313 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.cluster.MembershipListener;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+
+import am24j.commons.Ctx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Hazelcast based registry of the RPC endpoints. Servers register their advertised endpoints (host:port) per transport and
+ * service name. The registrations are bound to the cluster member - removed when the registry is closed, or by the
+ * remaining members when the member leaves the cluster.<br>
+ * Clients resolve the endpoints from a local snapshot, kept up to date by map entry listeners, so resolving never makes
+ * remote calls.
+ *
+ * @author avgustinmm
+ */
+@Singleton
+public class Registry implements AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.registry");
+
+  public static final String GRPC = "grpc";
+  public static final String HTTP = "http";
+
+  // optional server config keys - endpoint advertised to the clients, default to host / port
+  public static final String ADVERTISED_HOST = "advertisedHost";
+  public static final String ADVERTISED_PORT = "advertisedPort";
+
+  private static final String MAP_NAME = Ctx.prop("rpc.registry.map", "am24j.rpc.registry");
+
+  private static final String MEMBER = "member";
+  private static final String TRANSPORT = "transport";
+  private static final String SERVICE = "service";
+  private static final String ADDRESS = "address";
+
+  private final HazelcastInstance hazelcast;
+  private final IMap<String, String> map;
+  private final String localMember;
+
+  private final Map<String, JsonObject> snapshot = new ConcurrentHashMap<>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final Set<String> registered = ConcurrentHashMap.newKeySet();
+
+  private final UUID entryListenerId;
+  private final UUID membershipListenerId;
+
+  @Inject
+  public Registry(final HazelcastInstance hazelcast) {
+    this.hazelcast = hazelcast;
+    map = hazelcast.getMap(MAP_NAME);
+    localMember = hazelcast.getCluster().getLocalMember().getUuid().toString();
+    entryListenerId = map.addEntryListener(new EntryListener(), true);
+    map.forEach(this::put); // after listener is added - so nothing is missed
+    membershipListenerId = hazelcast.getCluster().addMembershipListener(new MembershipListener() {
+
+      @Override
+      public void memberAdded(final MembershipEvent membershipEvent) {}
+
+      @Override
+      public void memberRemoved(final MembershipEvent membershipEvent) {
+        removeMember(membershipEvent.getMember().getUuid().toString());
+      }
+    });
+    // cleanup registrations of members that have left while no one was there to remove them
+    final Set<String> members = hazelcast.getCluster().getMembers().stream().map(member -> member.getUuid().toString()).collect(Collectors.toSet());
+    snapshot.values().stream().map(value -> value.getString(MEMBER)).filter(member -> !members.contains(member)).distinct().forEach(this::removeMember);
+  }
+
+  @Override
+  public void close() {
+    LOG.info("Close");
+    registered.forEach(map::remove);
+    registered.clear();
+    map.removeEntryListener(entryListenerId);
+    hazelcast.getCluster().removeMembershipListener(membershipListenerId);
+  }
+
+  /**
+   * Registers an endpoint of the local member.
+   *
+   * @return unregister action
+   */
+  public Runnable register(final String transport, final String service, final String host, final int port) {
+    final String address = host + ':' + port;
+    final String key = localMember + '|' + transport + '|' + service + '|' + address;
+    LOG.info("Register {} endpoint {} of {}", transport, address, service);
+    map.set(key, new JsonObject().put(MEMBER, localMember).put(TRANSPORT, transport).put(SERVICE, service).put(ADDRESS, address).encode());
+    registered.add(key);
+    return () -> {
+      if (registered.remove(key)) {
+        LOG.info("Unregister {} endpoint {} of {}", transport, address, service);
+        map.delete(key);
+      }
+    };
+  }
+
+  /**
+   * Registers the advertised endpoint for all the services. If the server config doesn't have {@link #ADVERTISED_HOST} or
+   * {@link #ADVERTISED_PORT} its host / port are used (if host is not set or is a wildcard - local host address). A
+   * server listening only on an unix domain socket (<code>socketPath</code>, no port) is not reachable by the other
+   * members, so it is not registered unless it has {@link #ADVERTISED_PORT}.
+   *
+   * @return unregister action
+   */
+  public Runnable register(final String transport, final List<String> services, final JsonObject config) {
+    final Integer port = config.getInteger(ADVERTISED_PORT, config.getInteger("port"));
+    if (port == null) {
+      if (config.getString("socketPath") == null) {
+        throw new IllegalArgumentException("No " + ADVERTISED_PORT + " or port to register " + transport + " services " + services + "!");
+      }
+      LOG.info("Socket only {} server ({}) - services {} not registered", transport, config.getString("socketPath"), services);
+      return () -> {};
+    }
+    String host = config.getString(ADVERTISED_HOST, config.getString("host"));
+    if (host == null || "0.0.0.0".equals(host) || "::".equals(host)) {
+      try {
+        host = InetAddress.getLocalHost().getHostAddress();
+      } catch (final UnknownHostException e) {
+        host = "localhost";
+      }
+    }
+    final List<Runnable> unregister = new ArrayList<>();
+    for (final String service : services) {
+      unregister.add(register(transport, service, host, port));
+    }
+    return () -> unregister.forEach(Runnable::run);
+  }
+
+  /**
+   * Returns the endpoints (host:port) of the service from the local snapshot
+   */
+  public List<String> endpoints(final String transport, final String service) {
+    return snapshot.values().stream()
+      .filter(value -> transport.equals(value.getString(TRANSPORT)) && service.equals(value.getString(SERVICE)))
+      .map(value -> value.getString(ADDRESS))
+      .distinct()
+      .sorted()
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the endpoints (host:port) of the service registered by the member, from the local snapshot
+   */
+  public List<String> endpoints(final String transport, final String service, final String member) {
+    return snapshot.values().stream()
+      .filter(value -> member.equals(value.getString(MEMBER)) && transport.equals(value.getString(TRANSPORT)) && service.equals(value.getString(SERVICE)))
+      .map(value -> value.getString(ADDRESS))
+      .distinct()
+      .sorted()
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the member owning the partition of the key, empty if unknown (e.g. during migration)
+   */
+  public Optional<String> owner(final Object key) {
+    if (key == null) {
+      return Optional.empty();
+    }
+    final Member owner = hazelcast.getPartitionService().getPartition(key).getOwner();
+    return owner == null ? Optional.empty() : Optional.of(owner.getUuid().toString());
+  }
+
+  /**
+   * Returns the partition of the call - null if method has no {@link PartitionKey} parameter
+   */
+  public Partition partition(final Method method, final Object[] args) {
+    final int keyIndex = Partition.keyIndex(method);
+    if (keyIndex < 0) {
+      return null;
+    }
+    final Object key = args[keyIndex];
+    return new Partition(key, owner(key).map(localMember::equals).orElse(false));
+  }
+
+  /**
+   * Listens for the service endpoints. The listener is called with the current endpoints and then on every change.
+   *
+   * @return stop listening action
+   */
+  public Runnable listen(final String transport, final String service, final Consumer<List<String>> consumer) {
+    final Listener listener = new Listener(transport, service, consumer);
+    listeners.add(listener);
+    listener.update();
+    return () -> listeners.remove(listener);
+  }
+
+  private void put(final String key, final String value) {
+    snapshot.put(key, new JsonObject(value));
+    notifyListeners();
+  }
+
+  private void remove(final String key) {
+    if (snapshot.remove(key) != null) {
+      notifyListeners();
+    }
+  }
+
+  private void removeMember(final String member) {
+    LOG.info("Member {} left, remove its endpoints", member);
+    final String prefix = member + '|';
+    // all remaining members do that - delete is idempotent
+    new ArrayList<>(map.keySet()).stream().filter(key -> key.startsWith(prefix)).forEach(map::delete);
+    new ArrayList<>(snapshot.keySet()).stream().filter(key -> key.startsWith(prefix)).forEach(this::remove);
+  }
+
+  private void notifyListeners() {
+    listeners.forEach(Listener::update);
+  }
+
+  private class Listener {
+
+    private final String transport;
+    private final String service;
+    private final Consumer<List<String>> consumer;
+
+    private List<String> last;
+
+    private Listener(final String transport, final String service, final Consumer<List<String>> consumer) {
+      this.transport = transport;
+      this.service = service;
+      this.consumer = consumer;
+    }
+
+    private synchronized void update() {
+      final List<String> endpoints = endpoints(transport, service);
+      if (!Objects.equals(last, endpoints)) {
+        last = endpoints;
+        try {
+          consumer.accept(Collections.unmodifiableList(endpoints));
+        } catch (final RuntimeException e) {
+          LOG.error("Listener of {} / {} failed!", transport, service, e);
+        }
+      }
+    }
+  }
+
+  private class EntryListener implements
+      EntryAddedListener<String, String>, EntryUpdatedListener<String, String>, EntryRemovedListener<String, String>,
+      EntryEvictedListener<String, String>, EntryExpiredListener<String, String> {
+
+    @Override
+    public void entryAdded(final EntryEvent<String, String> event) {
+      put(event.getKey(), event.getValue());
+    }
+
+    @Override
+    public void entryUpdated(final EntryEvent<String, String> event) {
+      put(event.getKey(), event.getValue());
+    }
+
+    @Override
+    public void entryRemoved(final EntryEvent<String, String> event) {
+      remove(event.getKey());
+    }
+
+    @Override
+    public void entryEvicted(final EntryEvent<String, String> event) {
+      remove(event.getKey());
+    }
+
+    @Override
+    public void entryExpired(final EntryEvent<String, String> event) {
+      remove(event.getKey());
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.Method;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.slf4j.Logger;
+
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizePolicy;
+import com.hazelcast.core.DistributedObject;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import am24j.commons.Ctx;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Hazelcast based, cluster wide, cache of the encoded responses of the {@link Cached} methods. There is a map per method
+ * (named <code>&lt;prefix&gt;&lt;service&gt;.&lt;method&gt;</code>, by default prefix is <code>am24j.rpc.cache.</code>)
+ * keyed by the response encoding and the (Avro binary) encoded arguments. The map config is the one matching the name
+ * (so a near cache could be configured in hazelcast.json for <code>am24j.rpc.cache.*</code>) with max size from the
+ * {@link Cached} annotation.<br>
+ * Misses of equal calls on a member are loaded once.
+ *
+ * @author avgustinmm
+ */
+@Singleton
+public class ResponseCache {
+
+  private static final Logger LOG = Ctx.logger("rpc.cache");
+
+  public static final String MAP_PREFIX = Ctx.prop("rpc.cache.mapPrefix", "am24j.rpc.cache.");
+
+  private final HazelcastInstance hazelcast;
+  private final Vertx vertx; // if not null - evictions are published to the client near caches
+
+  private final Map<Method, MethodCache> caches = new ConcurrentHashMap<>();
+  private final SingleFlight loads = new SingleFlight();
+
+  public ResponseCache(final HazelcastInstance hazelcast) {
+    this(hazelcast, null);
+  }
+
+  /**
+   * The evictions are published on the vertx event bus so the client {@link NearCache}s are invalidated too.
+   */
+  @Inject
+  public ResponseCache(final HazelcastInstance hazelcast, final Vertx vertx) {
+    this.hazelcast = hazelcast;
+    this.vertx = vertx;
+  }
+
+  /**
+   * Returns the cached encoded response or loads (and caches) it by the loader. The loader is called by the executor
+   * (e.g. the caller's context or the {@link BlockingExecutor} of a {@link Blocking} method) - not on the Hazelcast
+   * thread completing the cache get.
+   */
+  public CompletionStage<byte[]> get(
+      final Method method, final Object[] args, final boolean json, final Executor executor, final Supplier<CompletionStage<byte[]>> loader) {
+    final MethodCache cache = cache(method);
+    final byte[] encodedArgs = cache.encodedArgs(args);
+    final String key = key(encodedArgs, json);
+    final CompletableFuture<byte[]> result = new CompletableFuture<>();
+    cache.map.getAsync(key).whenComplete((cached, t) -> {
+      if (t == null && cached != null) {
+        cache.hits.increment();
+        result.complete(cached);
+        return;
+      } else if (t != null) {
+        LOG.warn("[{}] Cache get failed - load!", cache.name, t);
+      }
+      cache.misses.increment();
+      executor.execute(() -> {
+        if (result.isDone()) { // cancelled meanwhile
+          return;
+        }
+        final CompletableFuture<byte[]> load = loads.call(SingleFlight.key(method, encodedArgs, null, json), () -> cache.load(key, loader), r -> r);
+        load.whenComplete((r, e) -> {
+          if (e == null) {
+            result.complete(r);
+          } else {
+            result.completeExceptionally(e);
+          }
+        });
+        result.whenComplete((r, e) -> {
+          if (result.isCancelled()) {
+            load.cancel(false);
+          }
+        });
+      });
+    });
+    return result;
+  }
+
+  /**
+   * Evicts the cached responses of the method.
+   */
+  public void evict(final Method method) {
+    LOG.info("Evict all of {}", method);
+    cache(method).map.clear();
+    if (vertx != null) {
+      NearCache.invalidate(vertx, method);
+    }
+  }
+
+  /**
+   * Evicts the cached response (in all the encodings) of a call with the args.
+   */
+  public void evict(final Method method, final Object... args) {
+    final MethodCache cache = cache(method);
+    final byte[] encodedArgs = cache.encodedArgs(args);
+    cache.map.delete(key(encodedArgs, false));
+    cache.map.delete(key(encodedArgs, true));
+    if (vertx != null) {
+      NearCache.invalidate(vertx, method, args);
+    }
+  }
+
+  /**
+   * Evicts the cached responses of all the methods (in the cluster).
+   */
+  public void evictAll() {
+    LOG.info("Evict all");
+    for (final DistributedObject object : hazelcast.getDistributedObjects()) {
+      if (object instanceof IMap && object.getName().startsWith(MAP_PREFIX)) {
+        ((IMap<?, ?>)object).clear();
+      }
+    }
+    if (vertx != null) {
+      NearCache.invalidateAll(vertx);
+    }
+  }
+
+  /**
+   * Returns the statistics of the method cache - hits, misses, hit rate, miss rate and load time (average and max, in
+   * milliseconds).
+   */
+  public JsonObject stats(final Method method) {
+    return cache(method).stats();
+  }
+
+  /**
+   * Returns the statistics of the method caches used by this member - per <code>&lt;service&gt;/&lt;method&gt;</code>
+   */
+  public JsonObject stats() {
+    final JsonObject stats = new JsonObject();
+    caches.values().forEach(cache -> stats.put(cache.path, cache.stats()));
+    return stats;
+  }
+
+  private MethodCache cache(final Method method) {
+    return caches.computeIfAbsent(method, MethodCache::new);
+  }
+
+  private static String key(final byte[] encodedArgs, final boolean json) {
+    return (json ? 'j' : 'b') + Base64.getEncoder().encodeToString(encodedArgs);
+  }
+
+  private class MethodCache {
+
+    private final Method method;
+    private final Message aMessage;
+    private final String name;
+    private final String path;
+    private final long ttl;
+    private final IMap<String, byte[]> map;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+    private final LongAccumulator maxLoadTime = new LongAccumulator(Math::max, 0);
+
+    private MethodCache(final Method method) {
+      final Cached cached = method.getAnnotation(Cached.class);
+      if (cached == null) {
+        throw new IllegalArgumentException("Method " + method + " is not @Cached!");
+      }
+      this.method = method;
+      final Protocol aProto = Proto.protocol(method.getDeclaringClass());
+      aMessage = aProto.getMessages().get(Proto.methodName(method));
+      name = MAP_PREFIX + aProto.getName() + '.' + aMessage.getName();
+      path = aProto.getName() + '/' + aMessage.getName();
+      ttl = cached.ttl();
+
+      // the configured (e.g. matched by wildcard, with near cache) config with max size of the method
+      final MapConfig mapConfig = new MapConfig(hazelcast.getConfig().findMapConfig(name)).setName(name);
+      mapConfig.setEvictionConfig(
+        new EvictionConfig(mapConfig.getEvictionConfig())
+          .setEvictionPolicy(EvictionPolicy.LRU)
+          .setMaxSizePolicy(MaxSizePolicy.PER_NODE)
+          .setSize(cached.maxSize()));
+      try {
+        hazelcast.getConfig().addMapConfig(mapConfig);
+      } catch (final RuntimeException e) { // e.g. already added with another config
+        LOG.warn("[{}] Failed to add map config - use existing!", name, e);
+      }
+      map = hazelcast.getMap(name);
+      LOG.info("[{}] Cache (ttl: {} ms, max size: {}, near cache: {})", name, ttl, cached.maxSize(), mapConfig.getNearCacheConfig() != null);
+    }
+
+    private byte[] encodedArgs(final Object[] args) {
+      return Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false);
+    }
+
+    private CompletionStage<byte[]> load(final String key, final Supplier<CompletionStage<byte[]>> loader) {
+      final long start = System.nanoTime();
+      CompletionStage<byte[]> stage;
+      try {
+        stage = loader.get();
+      } catch (final Throwable t) {
+        stage = CompletableFuture.failedFuture(t);
+      }
+      stage.whenComplete((r, t) -> {
+        if (t == null) {
+          final long time = System.nanoTime() - start;
+          loads.increment();
+          loadTime.add(time);
+          maxLoadTime.accumulate(time);
+          map.setAsync(key, r, ttl, TimeUnit.MILLISECONDS).whenComplete((v, e) -> {
+            if (e != null) {
+              LOG.warn("[{}] Cache put failed!", name, e);
+            }
+          });
+        }
+      });
+      return stage; // not the whenComplete stage - so the cancel reaches the loader
+    }
+
+    private JsonObject stats() {
+      final long hits = this.hits.sum();
+      final long misses = this.misses.sum();
+      final long calls = hits + misses;
+      final long loads = this.loads.sum();
+      return new JsonObject()
+        .put("hits", hits)
+        .put("misses", misses)
+        .put("hitRate", calls == 0 ? 0.0 : (double)hits / calls)
+        .put("missRate", calls == 0 ? 0.0 : (double)misses / calls)
+        .put("loads", loads)
+        .put("avgLoadTimeMs", loads == 0 ? 0.0 : loadTime.sum() / 1_000_000.0 / loads)
+        .put("maxLoadTimeMs", maxLoadTime.get() / 1_000_000.0);
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with equal keys into a single (in-flight) invocation, see {@link Idempotent}. Each caller
+ * gets its own future - cancelling it detaches the caller, and when all callers are detached the invocation is cancelled.
+ *
+ * @author avgustinmm
+ */
+public class SingleFlight {
+
+  private final Map<Key, Flight> flights = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the key of a call of an {@link Idempotent} method. If the method is {@link Idempotent#byAuth()} the
+   * principal of the call's auth (see {@link Auth#principal()}) is a part of the key. The extra (if not null) is a part
+   * of the key too (e.g. response encoding).
+   */
+  public static Key key(final Method method, final byte[] encodedArgs, final Auth auth, final Object extra) {
+    final Idempotent idempotent = method.getAnnotation(Idempotent.class);
+    return new Key(method, encodedArgs, idempotent != null && idempotent.byAuth() ? principal(auth == null ? Auth.ANONYMOUS : auth) : null, extra);
+  }
+
+  // the verifiers create an auth per call - so the key is its (type and) principal. If the auth doesn't name its
+  // principal - the auth itself, i.e. only the calls with the same auth instance are coalesced
+  private static Object principal(final Auth auth) {
+    final String principal = auth.principal();
+    return principal == null ? auth : auth.getClass().getName() + ':' + principal;
+  }
+
+  /**
+   * Joins the in-flight invocation with equal key or starts a new one. The result of the invocation is encoded (once)
+   * by the encoder, and the callers get the encoded result.
+   */
+  @SuppressWarnings("unchecked")
+  public <T, R> CompletableFuture<R> call(final Key key, final Supplier<CompletionStage<T>> invocation, final Function<T, R> encoder) {
+    while (true) {
+      final Flight existing = flights.get(key);
+      if (existing == null) {
+        final Flight flight = new Flight(key);
+        if (flights.putIfAbsent(key, flight) == null) {
+          final CompletableFuture<R> follower = (CompletableFuture<R>)flight.follow();
+          flight.start((Supplier<CompletionStage<Object>>)(Supplier<?>)invocation, (Function<Object, Object>)encoder);
+          return follower;
+        }
+      } else {
+        final CompletableFuture<Object> follower = existing.follow();
+        if (follower != null) {
+          return (CompletableFuture<R>)follower;
+        }
+        flights.remove(key, existing); // completed or cancelled - start new
+      }
+    }
+  }
+
+  public int inFlight() {
+    return flights.size();
+  }
+
+  private class Flight {
+
+    private final Key key;
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+    private CompletionStage<Object> source;
+    private int followers;
+    private boolean closed;
+
+    private Flight(final Key key) {
+      this.key = key;
+    }
+
+    private void start(final Supplier<CompletionStage<Object>> invocation, final Function<Object, Object> encoder) {
+      CompletionStage<Object> source;
+      try {
+        source = invocation.get();
+      } catch (final Throwable t) {
+        source = CompletableFuture.failedFuture(t);
+      }
+      synchronized (this) {
+        this.source = source;
+      }
+      source.whenComplete((r, t) -> {
+        synchronized (this) {
+          closed = true;
+        }
+        flights.remove(key, this);
+        if (t == null) {
+          try {
+            result.complete(encoder.apply(r));
+          } catch (final Throwable e) {
+            result.completeExceptionally(e);
+          }
+        } else {
+          result.completeExceptionally(t);
+        }
+      });
+    }
+
+    private synchronized CompletableFuture<Object> follow() {
+      if (closed) {
+        return null;
+      }
+      followers++;
+      final CompletableFuture<Object> follower = new CompletableFuture<>();
+      result.whenComplete((r, t) -> {
+        if (t == null) {
+          follower.complete(r);
+        } else {
+          follower.completeExceptionally(t);
+        }
+      });
+      follower.whenComplete((r, t) -> {
+        if (follower.isCancelled()) {
+          leave();
+        }
+      });
+      return follower;
+    }
+
+    private void leave() {
+      final CompletionStage<Object> toCancel;
+      synchronized (this) {
+        if (--followers > 0 || closed) {
+          return;
+        }
+        closed = true;
+        toCancel = source;
+      }
+      flights.remove(key, this);
+      if (toCancel instanceof CompletableFuture) {
+        ((CompletableFuture<Object>)toCancel).cancel(false);
+      }
+    }
+  }
+
+  public static final class Key {
+
+    private final Method method;
+    private final byte[] encodedArgs;
+    private final Object principal;
+    private final Object extra;
+    private final int hash;
+
+    private Key(final Method method, final byte[] encodedArgs, final Object principal, final Object extra) {
+      this.method = method;
+      this.encodedArgs = encodedArgs;
+      this.principal = principal;
+      this.extra = extra;
+      hash = Objects.hash(method, Arrays.hashCode(encodedArgs), principal, extra);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (obj instanceof Key) {
+        final Key key = (Key)obj;
+        return hash == key.hash &&
+          method.equals(key.method) &&
+          Arrays.equals(encodedArgs, key.encodedArgs) &&
+          Objects.equals(principal, key.principal) &&
+          Objects.equals(extra, key.extra);
+      } else {
+        return false;
+      }
+    }
+  }
+}
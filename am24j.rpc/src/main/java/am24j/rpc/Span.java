@@ -0,0 +1,122 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A sampled call span, created by the {@link Tracer} and ended with the call - exported (by a {@link SpanExporter})
+ * after it is ended.
+ *
+ * @author avgustinmm
+ */
+public final class Span {
+
+  public enum Kind { SERVER, CLIENT }
+
+  private final Tracer tracer;
+  private final Trace trace;
+  private final Trace parent; // null for root
+  private final Kind kind;
+  private final String name;
+  private final String component;
+  private final long startNanos;
+
+  private long startMicros; // epoch
+  private long durationMicros;
+  private String status;
+
+  Span(final Tracer tracer, final Trace trace, final Trace parent, final Kind kind, final String name, final String component, final long startNanos) {
+    this.tracer = tracer;
+    this.trace = trace;
+    this.parent = parent;
+    this.kind = kind;
+    this.name = name;
+    this.component = component;
+    this.startNanos = startNanos;
+  }
+
+  public String traceId() {
+    return trace.traceId();
+  }
+
+  public String spanId() {
+    return trace.spanId();
+  }
+
+  /**
+   * Returns the parent span id, null for root span
+   */
+  public String parentSpanId() {
+    return parent == null ? null : parent.spanId();
+  }
+
+  public Kind kind() {
+    return kind;
+  }
+
+  /**
+   * Returns <code>&lt;service&gt;/&lt;method&gt;</code>
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns the server / client metrics name, e.g. grpc.server
+   */
+  public String component() {
+    return component;
+  }
+
+  public long startMicros() {
+    return startMicros;
+  }
+
+  public long durationMicros() {
+    return durationMicros;
+  }
+
+  public String status() {
+    return status;
+  }
+
+  public JsonObject toJson() {
+    return new JsonObject()
+      .put("traceId", traceId())
+      .put("spanId", spanId())
+      .put("parentSpanId", parentSpanId())
+      .put("name", name)
+      .put("kind", kind.name())
+      .put("component", component)
+      .put("start", startMicros)
+      .put("duration", durationMicros)
+      .put("status", status);
+  }
+
+  @Override
+  public String toString() {
+    return "Span" + toJson().encode();
+  }
+
+  // called once, by the call end
+  void end(final String status, final long endNanos) {
+    this.status = status;
+    durationMicros = (endNanos - startNanos) / 1_000;
+    startMicros = tracer.epochMicros(startNanos);
+    tracer.export(this);
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.List;
+
+/**
+ * Exports the sampled spans. Called by the {@link Tracer} with batches of ended spans, off the call threads (on a Vertx
+ * worker), never concurrently.
+ * <br>
+ * Could be configured by class name (see {@link Tracer}) - then it shall have a public constructor with
+ * {@link io.vertx.core.json.JsonObject} (the exporter config) or a default one.
+ *
+ * @author avgustinmm
+ */
+public interface SpanExporter extends AutoCloseable {
+
+  void export(final List<Span> spans);
+
+  @Override
+  default void close() {}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import am24j.commons.Ctx;
+import am24j.commons.Ctx.RunAs;
+
+/**
+ * Trace context of a call (W3C trace context - <code>traceparent</code>: version, trace id, parent span id and flags).
+ * On the server side the trace of the current call (its span) is accessible via {@link #current()}, for async
+ * continuations on other threads it could be captured by {@link Ctx#wrap(java.util.concurrent.Executor)}. On the client
+ * side, if there is a current trace, the downstream calls are its children.
+ * <br>
+ * The trace is sent by the clients in the {@link #HEADER} header (HTTP header and gRPC metadata).
+ *
+ * @author avgustinmm
+ */
+public class Trace extends RunAs {
+
+  public static final String HEADER = "traceparent";
+
+  private static final String VERSION = "00";
+  private static final int SAMPLED = 0x01;
+
+  private final long traceIdHigh;
+  private final long traceIdLow;
+  private final long spanId;
+  private final int flags;
+
+  private Trace(final long traceIdHigh, final long traceIdLow, final long spanId, final int flags) {
+    super(Trace.class);
+    this.traceIdHigh = traceIdHigh;
+    this.traceIdLow = traceIdLow;
+    this.spanId = spanId;
+    this.flags = flags;
+  }
+
+  public static Optional<Trace> current() {
+    return Ctx.ctx(Trace.class);
+  }
+
+  /**
+   * Starts a new trace
+   */
+  public static Trace root(final boolean sampled) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    long traceIdLow;
+    while ((traceIdLow = random.nextLong()) == 0); // all zero is invalid
+    return new Trace(random.nextLong(), traceIdLow, spanId(random), sampled ? SAMPLED : 0);
+  }
+
+  /**
+   * Parses <code>traceparent</code> header value, returns null if missing or invalid
+   */
+  public static Trace parse(final String traceparent) {
+    // version (2) - trace id (32) - parent id (16) - flags (2), future versions could append fields after '-'
+    if (traceparent == null || traceparent.length() < 55 ||
+        traceparent.charAt(2) != '-' || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-' ||
+        (traceparent.length() > 55 && (traceparent.startsWith(VERSION) || traceparent.charAt(55) != '-')) ||
+        traceparent.startsWith("ff") || !lowerHex(traceparent)) {
+      return null;
+    }
+    try {
+      final long traceIdHigh = Long.parseUnsignedLong(traceparent.substring(3, 19), 16);
+      final long traceIdLow = Long.parseUnsignedLong(traceparent.substring(19, 35), 16);
+      final long spanId = Long.parseUnsignedLong(traceparent.substring(36, 52), 16);
+      final int flags = Integer.parseInt(traceparent.substring(53, 55), 16);
+      if ((traceIdHigh == 0 && traceIdLow == 0) || spanId == 0) {
+        return null;
+      }
+      return new Trace(traceIdHigh, traceIdLow, spanId, flags);
+    } catch (final NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a child - the same trace with a new span
+   */
+  public Trace child() {
+    return new Trace(traceIdHigh, traceIdLow, spanId(ThreadLocalRandom.current()), flags);
+  }
+
+  public boolean sampled() {
+    return (flags & SAMPLED) != 0;
+  }
+
+  public String traceId() {
+    return hex(traceIdHigh) + hex(traceIdLow);
+  }
+
+  public String spanId() {
+    return hex(spanId);
+  }
+
+  /**
+   * Returns the <code>traceparent</code> header value - with this as parent span
+   */
+  public String traceparent() {
+    final StringBuilder sb = new StringBuilder(55).append(VERSION).append('-');
+    appendHex(traceIdHigh, sb);
+    appendHex(traceIdLow, sb);
+    sb.append('-');
+    appendHex(spanId, sb);
+    sb.append('-').append(Character.forDigit(flags >> 4 & 0xF, 16)).append(Character.forDigit(flags & 0xF, 16));
+    return sb.toString();
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o instanceof Trace) {
+      final Trace t = (Trace)o;
+      return traceIdHigh == t.traceIdHigh && traceIdLow == t.traceIdLow && spanId == t.spanId && flags == t.flags;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(traceIdLow) * 31 + Long.hashCode(spanId);
+  }
+
+  @Override
+  public String toString() {
+    return "Trace(" + traceparent() + ")";
+  }
+
+  private static long spanId(final ThreadLocalRandom random) {
+    long spanId;
+    while ((spanId = random.nextLong()) == 0); // all zero is invalid
+    return spanId;
+  }
+
+  private static String hex(final long value) {
+    final StringBuilder sb = new StringBuilder(16);
+    appendHex(value, sb);
+    return sb.toString();
+  }
+
+  private static void appendHex(final long value, final StringBuilder sb) {
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      sb.append(Character.forDigit((int)(value >>> shift) & 0xF, 16));
+    }
+  }
+
+  // the fields (not the separators) are lower case hex
+  private static boolean lowerHex(final String traceparent) {
+    for (int i = 0; i < 55; i++) {
+      final char c = traceparent.charAt(i);
+      if (i != 2 && i != 35 && i != 52 && (c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Propagates the {@link Trace} of the calls and, if there is an exporter, samples and exports their spans. Configured
+ * by the server / client config {@link #CONFIG}:
+ * <code>{"sampleRatio": 0.01, "maxQueueSize": 2048, "batchSize": 512, "exportIntervalMs": 1000, "exporter": {"type": "file", "file": "traces.jsonl"}}</code>.
+ * The exporter type is <code>file</code> ({@link FileSpanExporter}) or a {@link SpanExporter} class name.
+ * <br>
+ * Without config (or exporter) the trace of the current call is only propagated to the downstream calls. With exporter
+ * the calls without incoming trace start a new one, sampled by the <code>sampleRatio</code> (head based sampling -
+ * the downstream calls follow the decision). Only the sampled calls create spans - they are queued (if the queue is full
+ * they are dropped) and exported in batches on a Vertx worker.
+ *
+ * @author avgustinmm
+ */
+public class Tracer implements AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.trace");
+
+  public static final String CONFIG = "tracing";
+
+  private final double sampleRatio;
+  private final SpanExporter exporter; // null - propagation only
+  private final int maxQueueSize;
+  private final int batchSize;
+  private final Vertx vertx;
+  private final long timerId;
+
+  private final Queue<Span> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicBoolean exporting = new AtomicBoolean();
+  private final LongAdder exported = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  // anchor of the span start epoch time
+  private final long epochNanos = System.currentTimeMillis() * 1_000_000;
+  private final long anchorNanos = System.nanoTime();
+
+  public Tracer(final JsonObject config, final SpanExporter exporter, final Vertx vertx) {
+    sampleRatio = Math.max(0, Math.min(1, config.getDouble("sampleRatio", 0.01)));
+    this.exporter = exporter;
+    maxQueueSize = Math.max(1, config.getInteger("maxQueueSize", 2048));
+    batchSize = Math.max(1, config.getInteger("batchSize", 512));
+    this.vertx = vertx;
+    timerId = exporter == null ? -1 : vertx.setPeriodic(Math.max(1, config.getLong("exportIntervalMs", 1_000L)), id -> flush());
+    if (exporter != null) {
+      LOG.info("Start (sample ratio: {}, exporter: {})", sampleRatio, exporter);
+    }
+  }
+
+  /**
+   * Creates tracer by the {@link #CONFIG} of the server / client config - propagation only if missing
+   */
+  public static Tracer create(final JsonObject config, final Vertx vertx) {
+    final JsonObject tracing = config.getJsonObject(CONFIG);
+    if (tracing == null) {
+      return new Tracer(new JsonObject(), null, vertx);
+    }
+    return new Tracer(tracing, exporter(tracing.getJsonObject("exporter", new JsonObject())), vertx);
+  }
+
+  /**
+   * Client side - returns the trace of a downstream call (child of the current or new one) or null. If sampled the span
+   * is ended with the call.
+   */
+  public Trace client(final Metrics.Call call) {
+    return trace(Trace.current().orElse(null), Span.Kind.CLIENT, call);
+  }
+
+  /**
+   * Server side - returns the trace of the call (child of the received <code>traceparent</code> or new one) or null.
+   * If sampled the span is ended with the call.
+   */
+  public Trace server(final String traceparent, final Metrics.Call call) {
+    return trace(Trace.parse(traceparent), Span.Kind.SERVER, call);
+  }
+
+  public long exported() {
+    return exported.sum();
+  }
+
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public void close() {
+    if (exporter != null) {
+      vertx.cancelTimer(timerId);
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5); // if vertx is closed it might never end
+      while (!exporting.compareAndSet(false, true) && System.nanoTime() - deadline < 0) { // wait for the running export
+        LockSupport.parkNanos(1_000_000);
+      }
+      try {
+        exportQueued();
+      } finally {
+        exporter.close();
+      }
+    }
+  }
+
+  private Trace trace(final Trace parent, final Span.Kind kind, final Metrics.Call call) {
+    final Trace trace;
+    if (parent != null) {
+      trace = parent.child();
+    } else if (exporter == null) {
+      return null; // nothing to propagate
+    } else {
+      trace = Trace.root(sampleRatio >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRatio);
+    }
+    if (exporter != null && trace.sampled()) {
+      call.span(new Span(this, trace, parent, kind, call.method().name(), call.method().metrics().name(), call.startNanos()));
+    }
+    return trace;
+  }
+
+  long epochMicros(final long nanos) {
+    return (epochNanos + nanos - anchorNanos) / 1_000;
+  }
+
+  // by ended span - just queued
+  void export(final Span span) {
+    if (queued.incrementAndGet() > maxQueueSize) {
+      queued.decrementAndGet();
+      dropped.increment();
+    } else {
+      queue.offer(span);
+    }
+  }
+
+  private void flush() {
+    if (!queue.isEmpty() && exporting.compareAndSet(false, true)) {
+      vertx.executeBlocking(promise -> {
+        try {
+          exportQueued();
+        } finally {
+          exporting.set(false);
+          promise.complete();
+        }
+      }, false, ar -> {});
+    }
+  }
+
+  private void exportQueued() {
+    List<Span> batch = new ArrayList<>(Math.min(batchSize, queued.get()));
+    for (Span span; (span = queue.poll()) != null;) {
+      queued.decrementAndGet();
+      batch.add(span);
+      if (batch.size() == batchSize) {
+        export(batch);
+        batch = new ArrayList<>();
+      }
+    }
+    if (!batch.isEmpty()) {
+      export(batch);
+    }
+  }
+
+  private void export(final List<Span> batch) {
+    try {
+      exporter.export(batch);
+      exported.add(batch.size());
+    } catch (final Throwable t) {
+      LOG.error("Failed to export {} spans!", batch.size(), t);
+      dropped.add(batch.size());
+    }
+  }
+
+  private static SpanExporter exporter(final JsonObject config) {
+    final String type = config.getString("type", FileSpanExporter.TYPE);
+    if (FileSpanExporter.TYPE.equals(type)) {
+      return new FileSpanExporter(config);
+    }
+    try {
+      final Class<?> clazz = Class.forName(type, true, Tracer.class.getClassLoader());
+      try {
+        return (SpanExporter)clazz.getConstructor(JsonObject.class).newInstance(config);
+      } catch (final NoSuchMethodException e) {
+        return (SpanExporter)clazz.getConstructor().newInstance();
+      }
+    } catch (final ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("Invalid span exporter: " + type + "!", e);
+    }
+  }
+}
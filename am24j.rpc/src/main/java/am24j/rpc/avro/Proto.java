@@ -18,6 +18,7 @@ package am24j.rpc.avro;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -30,6 +31,7 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow.Publisher;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -63,16 +65,25 @@ public class Proto {
   private Proto() {}
 
   public static void checkServiceMethod(final Method method) {
+    final Class<?>[] parameterTypes = method.getParameterTypes();
+    final int publisherIndex;
     if (method.getReturnType() == void.class || method.getReturnType() == Void.class) {
-      final Class<?>[] parameterTypes = method.getParameterTypes();
       if (parameterTypes.length == 0 || parameterTypes[parameterTypes.length - 1] != Subscriber.class || !(method.getGenericParameterTypes()[parameterTypes.length - 1] instanceof ParameterizedType)) {
         throw new IllegalArgumentException("Void method must be a stream so the last argument must be a Subscriber with generic type! Incompatible method: " + method + "!");
       }
+      publisherIndex = parameterTypes.length - 2;
     } else {
       final Class<?> returnType = method.getReturnType();
       if ((returnType != CompletionStage.class && returnType != CompletableFuture.class) || !(method.getGenericReturnType() instanceof ParameterizedType)) {
         throw new IllegalArgumentException("Call method must return CompletionStage or CompletableFuture with generic type! Incompatible method: " + method + "!");
       }
+      publisherIndex = parameterTypes.length - 1;
+    }
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (parameterTypes[i] == Publisher.class &&
+          (i != publisherIndex || !(method.getGenericParameterTypes()[i] instanceof ParameterizedType))) {
+        throw new IllegalArgumentException("Request stream must be a Publisher with generic type passed as last argument (or just before the response Subscriber)! Incompatible method: " + method + "!");
+      }
     }
   }
 
@@ -113,6 +124,10 @@ public class Proto {
     return method.getReturnType() == void.class || method.getReturnType() == Void.class;
   }
 
+  public static boolean isRequestStream(final Method method) {
+    return requestStreamIndex(method) != -1;
+  }
+
   public static String methodName(final Method method) {
     final List<Method> sameNameMethos = Reflect.findByName(method.getDeclaringClass(), method.getName()).collect(Collectors.toList());;
     if (sameNameMethos.size() == 1) {
@@ -188,10 +203,19 @@ public class Proto {
     });
   }
   public static byte[] encodeReqy(final Schema reqSchema, final Type[] types, final Object[] args, final boolean json) {
-    try (final ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encodeReqy(reqSchema, types, args, json, baos);
+    return baos.toByteArray();
+  }
+
+  /**
+   * Encodes the request straight to the output stream
+   */
+  public static void encodeReqy(final Schema reqSchema, final Type[] types, final Object[] args, final boolean json, final OutputStream os) {
+    try {
       final Encoder encoder = json ?
-        ENCODER_FACTORY.jsonEncoder(reqSchema, baos, true) :
-        ENCODER_FACTORY.binaryEncoder(baos, null);
+        ENCODER_FACTORY.jsonEncoder(reqSchema, os, true) :
+        ENCODER_FACTORY.binaryEncoder(os, null);
       final List<Schema.Field> params = reqSchema.getFields();
       if (args != null) {
         if (args.length != params.size()) {
@@ -202,7 +226,6 @@ public class Proto {
         }
       }
       encoder.flush();
-      return baos.toByteArray();
     } catch (final IOException e) {
       throw new RuntimeException(e);
     }
@@ -261,7 +284,43 @@ public class Proto {
     }
   }
 
+  /**
+   * Encodes the response straight to the output stream. Errors are encoded in memory first - a failed error could be
+   * replaced by a system error
+   */
+  public static void encodeResp(final Schema respSchema, final Schema errorSchema, final Type type, final Object resp, final boolean json, final OutputStream os) {
+    if (json) {
+      encodeReqy(
+        jsonRespScehma(respSchema, errorSchema),
+        new Type[] {type, RPCException.class},
+        new Object[] {resp instanceof Exception ? null : resp, resp instanceof Exception ? resp : null},
+        json,
+        os);
+      return;
+    }
+    try {
+      if (resp instanceof Exception) {
+        os.write(encodeResp(respSchema, errorSchema, type, resp, json));
+      } else {
+        final Encoder encoder = ENCODER_FACTORY.binaryEncoder(os, null);
+        encoder.writeBoolean(false);
+        Avro.write(resp, respSchema, type, encoder);
+        encoder.flush();
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public static Object decodeResp(final Schema respSchema, final Schema errorSchema, final Type type, final InputStream is, final boolean json) {
+    return decodeResp(respSchema, errorSchema, type, is, json, false);
+  }
+
+  /**
+   * Decodes a response of a stream of responses - if direct, reads (binary) no more than the response's bytes
+   */
+  public static Object decodeResp(
+      final Schema respSchema, final Schema errorSchema, final Type type, final InputStream is, final boolean json, final boolean direct) {
     try {
       if (json) {
         final Object[] valueAndError =
@@ -272,7 +331,7 @@ public class Proto {
             true);
         return valueAndError[1] == null ? valueAndError[0] : valueAndError[1];
       } else {
-        final Decoder deooder = DECODER_FACTORY.binaryDecoder(is, null);
+        final Decoder deooder = direct ? DECODER_FACTORY.directBinaryDecoder(is, null) : DECODER_FACTORY.binaryDecoder(is, null);
         if (deooder.readBoolean()) {
           final Object value = new SpecificDatumReader<>(errorSchema).read(null, deooder);
           if (value instanceof Exception) {
@@ -290,14 +349,51 @@ public class Proto {
 
   public static Type[] requestTypes(final Method method) {
     Type[] types = method.getGenericParameterTypes();
-    if (types.length > 0 && method.getParameterTypes()[types.length - 1] == Subscriber.class) {
-      final Type[] cutLast = new Type[types.length - 1];
+    int length = types.length;
+    if (length > 0 && method.getParameterTypes()[length - 1] == Subscriber.class) {
+      length--;
+    }
+    if (length > 0 && method.getParameterTypes()[length - 1] == Publisher.class) {
+      length--;
+    }
+    if (length != types.length) {
+      final Type[] cutLast = new Type[length];
       System.arraycopy(types, 0, cutLast, 0, cutLast.length);
       types = cutLast;
     }
     return types;
   }
 
+  // type of the items of the request stream, null if the method has no request stream
+  public static Type requestStreamType(final Method method) {
+    final int index = requestStreamIndex(method);
+    return index == -1 ? null : ((ParameterizedType)method.getGenericParameterTypes()[index]).getActualTypeArguments()[0];
+  }
+
+  public static byte[] encodeItem(final Schema itemSchema, final Type type, final Object item, final boolean json) {
+    try (final ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+      final Encoder encoder = json ?
+        ENCODER_FACTORY.jsonEncoder(itemSchema, baos, true) :
+        ENCODER_FACTORY.binaryEncoder(baos, null);
+      Avro.write(item, itemSchema, type, encoder);
+      encoder.flush();
+      return baos.toByteArray();
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static Object decodeItem(final Schema itemSchema, final Type type, final InputStream is, final boolean json) {
+    try {
+      final Decoder deooder = json ?
+        DECODER_FACTORY.jsonDecoder(itemSchema, is) :
+        DECODER_FACTORY.binaryDecoder(is, null);
+      return Avro.read(itemSchema, type, deooder);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public static Type responsType(final Method method) {
     final Type type = method.getGenericReturnType();
     Type realType = type;
@@ -319,6 +415,15 @@ public class Proto {
     return realType;
   }
 
+  private static int requestStreamIndex(final Method method) {
+    final Class<?>[] parameterTypes = method.getParameterTypes();
+    int index = parameterTypes.length - 1;
+    if (index >= 0 && parameterTypes[index] == Subscriber.class) {
+      index--;
+    }
+    return index >= 0 && parameterTypes[index] == Publisher.class ? index : -1;
+  }
+
   private static Schema requestSchema(final String namespace, final String name, final Method method, final Collection<Schema> protcolTypes) {
     final RecordBuilder<Schema> rTypeBuilder = SchemaBuilder.record(name + "_Req");
     rTypeBuilder.namespace(namespace); // empty namesoace is treated as null
@@ -333,6 +438,10 @@ public class Proto {
         .noDefault();
       addType(schema, protcolTypes);
     }
+    final Type streamType = requestStreamType(method);
+    if (streamType != null) {
+      addType(Avro.forType(streamType), protcolTypes);
+    }
     return fAssembler.endRecord();
   }
 
@@ -0,0 +1,360 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.eventbus;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.rpc.Deadline;
+import am24j.rpc.Local;
+import am24j.rpc.Metrics;
+import am24j.rpc.Timeout;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.avro.RPCException;
+import am24j.rpc.eventbus.Common.Frame;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Event bus RPC client. Unary calls are request-reply, response streams are sequences of messages sent to a call's
+ * address as demanded by the subscriber.
+ *
+ * @author avgustinmm
+ */
+@Singleton
+public class Client implements AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.eventbus.client");
+
+  public static final String SEND_TIMEOUT = "sendTimeout"; // ms, reply timeout of the calls without deadline
+
+  private final Vertx vertx;
+  private final Context context;
+  private final long sendTimeout;
+  private final Local local; // null if not enabled
+  private final Metrics metrics;
+  private final Tracer tracer;
+
+  private final String callIdPrefix = UUID.randomUUID().toString() + ':';
+  private final AtomicLong callIds = new AtomicLong();
+
+  public Client(final Vertx vertx) {
+    this(new JsonObject(), vertx);
+  }
+
+  @Inject
+  public Client(@Named("eventbus_client.json") final JsonObject config, final Vertx vertx) {
+    LOG.info("Start (config: {})", config);
+    this.vertx = vertx;
+    context = vertx.getOrCreateContext();
+    sendTimeout = config.getLong(SEND_TIMEOUT, DeliveryOptions.DEFAULT_TIMEOUT);
+    // as the remote calls fail - rejected by the server or timed out
+    local = Local.create(
+      config,
+      (status, message) -> Local.UNAUTHENTICATED.equals(status) ?
+        new ReplyException(ReplyFailure.RECIPIENT_FAILURE, Common.UNAUTHENTICATED, message) :
+        new ReplyException(ReplyFailure.TIMEOUT, message),
+      vertx);
+    metrics = Metrics.register("eventbus.client", false, vertx);
+    tracer = Tracer.create(config, vertx);
+    Common.registerCodec(vertx);
+  }
+
+  @Override
+  public void close() {
+    metrics.close();
+    tracer.close();
+  }
+
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
+  public <T> T service(final Supplier<String> credentialSupplier, final Class<T> clazz, final Class<?>... others) {
+    return service(credentialSupplier, null, clazz, others);
+  }
+
+  /**
+   * Creates service proxy which calls have the given timeout (if not null). Overrides the {@link Timeout} of the
+   * service interface and methods.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T service(final Supplier<String> credentialSupplier, final Duration timeout, final Class<T> clazz, final Class<?>... others) {
+    final Class<?>[] interfaces = new Class<?>[1 + others.length];
+    System.arraycopy(others, 0, interfaces, 0, others.length);
+    interfaces[others.length] = clazz;
+    return (T)Proxy.newProxyInstance(clazz.getClassLoader(), interfaces, new InvocationHandler() {
+
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (local != null && local.serves(method)) { // co-located - directly to the implementation
+          return local.call(method, args, credentialSupplier == null ? null : credentialSupplier.get(), timeout);
+        }
+        if (Proto.isRequestStream(method)) {
+          throw new UnsupportedOperationException("Request streams are not supported by event bus RPC! Method: " + method + "!");
+        }
+        final Protocol aProto = Proto.protocol(method.getDeclaringClass());
+        final Message aMessage = aProto.getMessages().get(Proto.methodName(method));
+        final String address = Common.address(aProto, method);
+        final Deadline deadline = Deadline.forCall(method, timeout).orElse(null);
+        final Metrics.Call metered = metrics.method(aProto.getName() + '/' + aMessage.getName()).start();
+        final Trace trace = tracer.client(metered); // on the caller thread - child of its current trace
+        final Type[] reqTypes = Proto.requestTypes(method);
+        final Type respType = Proto.responsType(method);
+        final Function<Object, byte[]> reqEncoder = reqArgs -> Proto.encodeReqy(aMessage.getRequest(), reqTypes, (Object[])reqArgs, false);
+        final Function<InputStream, Object> respDecoder = is -> Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), respType, is, false);
+        final DeliveryOptions options = new DeliveryOptions();
+        final String credentials = credentialSupplier == null ? null : credentialSupplier.get();
+        if (credentials != null) {
+          options.addHeader(Common.AUTHORIZATION, credentials);
+        }
+        if (deadline != null) {
+          final long remaining = Math.max(0, deadline.remaining(TimeUnit.MILLISECONDS));
+          options.addHeader(Deadline.HTTP_HEADER, String.valueOf(remaining));
+          options.setSendTimeout(Math.max(1, remaining)); // fails the call when expired
+        } else {
+          options.setSendTimeout(sendTimeout);
+        }
+        if (trace != null) {
+          options.addHeader(Trace.HEADER, trace.traceparent());
+        }
+        if (Proto.isStream(method)) {
+          final Object[] realArgs = new Object[args.length - 1];
+          System.arraycopy(args, 0, realArgs, 0, realArgs.length);
+          final Subscriber<Object> subscriber = (Subscriber<Object>)args[args.length - 1];
+          final RequestStream stream = new RequestStream(respDecoder, subscriber, metered);
+          subscriber.onSubscribe(stream);
+          context.runOnContext(v -> stream.start(address, new Frame(realArgs, reqEncoder, metered), options));
+          return null;
+        } else {
+          final String callId = callIdPrefix + callIds.incrementAndGet();
+          options.addHeader(Common.CALL_ID, callId);
+          final CompletableFuture<Object> future = new CompletableFuture<>();
+          future.whenComplete((r, t) -> {
+            metered.end(status(t));
+            if (future.isCancelled()) { // cancelled by the caller - cancel on the server too
+              vertx.eventBus().publish(Common.CANCEL_ADDRESS, null, new DeliveryOptions().addHeader(Common.CALL_ID, callId));
+            }
+          });
+          metered.invoking();
+          vertx.eventBus().<Frame>request(address, new Frame(args, reqEncoder, metered), options).onComplete(ar -> {
+            if (ar.succeeded()) {
+              try {
+                final Object resp = ar.result().body().value(respDecoder, metered);
+                if (resp instanceof RPCException) {
+                  future.completeExceptionally((RPCException)resp);
+                } else {
+                  future.complete(resp);
+                }
+              } catch (final Throwable t) {
+                future.completeExceptionally(t);
+              }
+            } else if (future.isCancelled()) {
+              LOG.debug("Call cancelled!");
+            } else {
+              LOG.error("Call failed!", ar.cause());
+              future.completeExceptionally(ar.cause());
+            }
+          });
+          return future;
+        }
+      }
+    });
+  }
+
+  private static String status(final Throwable error) {
+    if (error == null) {
+      return Metrics.OK;
+    } else if (error instanceof RPCException || error instanceof am24j.rpc.RPCException) {
+      return Metrics.ERROR;
+    } else if (error instanceof CancellationException) {
+      return Metrics.CANCELLED;
+    } else {
+      return Metrics.FAILED;
+    }
+  }
+
+  // receives the items (and the end) on its address and sends the demand to the server's control address - all on the
+  // client's context
+  private class RequestStream implements Subscription {
+
+    private final Function<InputStream, Object> respDecoder;
+    private final Subscriber<Object> subscriber;
+    private final Metrics.Call metered;
+    private final Executor vExecutor = command -> context.runOnContext(v -> command.run());
+    private final String streamAddress = Common.ROOT + "/_stream/" + UUID.randomUUID();
+
+    private MessageConsumer<Frame> consumer;
+    private String controlAddress; // null until the server accepts the call
+    private long requested; // demanded before the server accepts the call
+    private boolean cancelled;
+    private boolean done;
+
+    private RequestStream(final Function<InputStream, Object> respDecoder, final Subscriber<Object> subscriber, final Metrics.Call metered) {
+      this.respDecoder = respDecoder;
+      this.subscriber = subscriber;
+      this.metered = metered;
+    }
+
+    private void start(final String address, final Frame request, final DeliveryOptions options) {
+      final EventBus eventBus = vertx.eventBus();
+      consumer = eventBus.consumer(streamAddress, this::item);
+      consumer.completionHandler(registered -> {
+        if (registered.failed()) {
+          fail(registered.cause());
+          return;
+        }
+        metered.invoking();
+        eventBus.request(address, request, options.addHeader(Common.STREAM, streamAddress)).onComplete(ar -> vExecutor.execute(() -> {
+          if (ar.failed()) {
+            fail(ar.cause());
+          } else {
+            controlAddress = ar.result().headers().get(Common.CONTROL);
+            if (cancelled) {
+              eventBus.send(controlAddress, null);
+            } else if (!done && requested > 0) {
+              eventBus.send(controlAddress, null, new DeliveryOptions().addHeader(Common.REQUEST, String.valueOf(requested)));
+              requested = 0;
+            }
+          }
+        }));
+      });
+    }
+
+    private void item(final io.vertx.core.eventbus.Message<Frame> message) {
+      if (done) {
+        return; // drop
+      }
+      if (message.headers().contains(Common.PING)) { // alive
+        message.reply(null);
+        return;
+      }
+      final String end = message.headers().get(Common.END);
+      final Object decoded;
+      try {
+        decoded = message.body() == null ? null : message.body().value(respDecoder, metered);
+      } catch (final Throwable t) {
+        LOG.error("Failed to decode stream message!", t);
+        if (!cancelled) {
+          cancel();
+          fail(t);
+        }
+        return;
+      }
+      if (end == null) {
+        if (!cancelled) {
+          metered.item();
+          subscriber.onNext(decoded);
+        }
+      } else if (decoded instanceof RPCException) {
+        finish(Metrics.ERROR);
+        if (!cancelled) {
+          subscriber.onError(((RPCException)decoded).toRPC());
+        }
+      } else {
+        finish(Metrics.OK);
+        if (!cancelled) {
+          subscriber.onComplete();
+        }
+      }
+    }
+
+    @Override
+    public void request(final long n) {
+      vExecutor.execute(() -> {
+        if (n < 0) throw new IllegalArgumentException("Request must be non-negative! Found: " + n + "!");
+        if (n > 0 && !done && !cancelled) {
+          if (controlAddress == null) {
+            final long newRquested = requested + n;
+            requested = newRquested > requested ? newRquested : Long.MAX_VALUE; // if less, overflow
+          } else {
+            vertx.eventBus().send(controlAddress, null, new DeliveryOptions().addHeader(Common.REQUEST, String.valueOf(n)));
+          }
+        }
+      });
+    }
+
+    @Override
+    public void cancel() {
+      vExecutor.execute(() -> {
+        if (!done && !cancelled) {
+          cancelled = true;
+          if (controlAddress != null) { // otherwise - when the server accepts the call
+            vertx.eventBus().send(controlAddress, null);
+          }
+          LOG.debug("Stream cancelled!");
+          finish(Metrics.CANCELLED);
+        }
+      });
+    }
+
+    private void fail(final Throwable t) {
+      if (!done) {
+        LOG.error("Call failed!", t);
+        finish(Metrics.FAILED);
+        subscriber.onError(t);
+      }
+    }
+
+    private void finish(final String status) {
+      if (!done) {
+        done = true;
+        metered.end(status);
+        if (consumer != null) {
+          consumer.unregister();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.eventbus;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.function.Function;
+
+import org.apache.avro.Protocol;
+
+import am24j.commons.Ctx;
+import am24j.rpc.Metrics;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Commons - addresses, headers and the message body (with its codec)
+ *
+ * @author avgustinmm
+ */
+final class Common {
+
+  static final String ROOT = Ctx.prop("rpc.eventbus.root", "rpc");
+  static final String CANCEL_ADDRESS = ROOT + "/_cancel"; // published - the server which has the call cancels it
+
+  static final String AUTHORIZATION = "authorization";
+  static final String CALL_ID = "rpc-call"; // of a unary call - in order to be cancelled
+  static final String STREAM = "rpc-stream"; // the address the client receives the response stream items on
+  static final String CONTROL = "rpc-control"; // the address the server receives the stream demand (or cancel) on
+  static final String REQUEST = "rpc-request"; // stream demand, if missing - cancel
+  static final String END = "rpc-end"; // stream end - with error or null body
+  static final String PING = "rpc-ping"; // stream heartbeat - the caller replies while the stream is alive
+
+  // reply failure codes
+  static final int INVALID = 400;
+  static final int UNAUTHENTICATED = 401;
+  static final int DEADLINE_EXCEEDED = 504;
+
+  private Common() {}
+
+  static String address(final Protocol aProto, final Method method) {
+    return ROOT + '/' + aProto.getName() + '/' + Proto.methodName(method);
+  }
+
+  // once per vertx - by the first server or client
+  static void registerCodec(final Vertx vertx) {
+    try {
+      vertx.eventBus().registerDefaultCodec(Frame.class, new FrameCodec());
+    } catch (final IllegalStateException e) {
+      // already registered
+    }
+  }
+
+  // message body - the value, delivered as is to the local consumers, and its Avro binary encoding, sent to the remote
+  // ones and decoded by the receiver (which knows the schema)
+  static final class Frame {
+
+    private final Object value;
+    private final Function<Object, byte[]> encoder; // null if received encoded
+    private final Metrics.Call metered; // records the encoding, null if not metered (e.g. shared response)
+
+    private volatile byte[] bytes; // encoded once, when sent to a remote consumer
+
+    Frame(final Object value, final Function<Object, byte[]> encoder, final Metrics.Call metered) {
+      this.value = value;
+      this.encoder = encoder;
+      this.metered = metered;
+    }
+
+    private Frame(final byte[] bytes) {
+      value = null;
+      encoder = null;
+      metered = null;
+      this.bytes = bytes;
+    }
+
+    // returns the value - as is if local, decoded otherwise
+    Object value(final Function<InputStream, Object> decoder, final Metrics.Call metered) {
+      if (encoder != null) {
+        return value;
+      }
+      final long start = System.nanoTime();
+      final Object decoded = decoder.apply(new ByteArrayInputStream(bytes));
+      metered.decoded(System.nanoTime() - start, bytes.length);
+      return decoded;
+    }
+
+    private byte[] encoded() {
+      byte[] encoded = bytes;
+      if (encoded == null) {
+        final long start = System.nanoTime();
+        encoded = encoder.apply(value);
+        if (metered != null) {
+          metered.encoded(System.nanoTime() - start, encoded.length);
+        }
+        bytes = encoded;
+      }
+      return encoded;
+    }
+  }
+
+  static final class FrameCodec implements MessageCodec<Frame, Frame> {
+
+    @Override
+    public void encodeToWire(final Buffer buffer, final Frame frame) {
+      final byte[] encoded = frame.encoded();
+      buffer.appendInt(encoded.length).appendBytes(encoded);
+    }
+
+    @Override
+    public Frame decodeFromWire(final int pos, final Buffer buffer) {
+      final int length = buffer.getInt(pos);
+      return new Frame(buffer.getBytes(pos + 4, pos + 4 + length));
+    }
+
+    @Override
+    public Frame transform(final Frame frame) {
+      return frame; // local - not encoded at all
+    }
+
+    @Override
+    public String name() {
+      return "am24j.rpc.frame";
+    }
+
+    @Override
+    public byte systemCodecID() {
+      return -1;
+    }
+  }
+}
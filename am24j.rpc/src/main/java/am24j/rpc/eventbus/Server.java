@@ -0,0 +1,528 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.eventbus;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.slf4j.Logger;
+
+import am24j.commons.ASync;
+import am24j.commons.Ctx;
+import am24j.commons.Reflect;
+import am24j.commons.Utils;
+import am24j.rpc.Auth;
+import am24j.rpc.AuthVerfier;
+import am24j.rpc.BlockingExecutor;
+import am24j.rpc.Deadline;
+import am24j.rpc.Idempotent;
+import am24j.rpc.Invoker;
+import am24j.rpc.Local;
+import am24j.rpc.Metrics;
+import am24j.rpc.Remote;
+import am24j.rpc.Service;
+import am24j.rpc.SingleFlight;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.eventbus.Common.Frame;
+import am24j.vertx.VertxUtils;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Event bus RPC Server. Every method of the services is a consumer of the address
+ * <code>&lt;root&gt;/&lt;service&gt;/&lt;method&gt;</code>. If the caller is in the same Vert.x instance the arguments
+ * and the response are passed as they are - not encoded at all. Otherwise (clustered event bus) they are Avro binary
+ * encoded.
+ *
+ * @author avgustinmm
+ */
+@Singleton
+public class Server implements AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.eventbus.server");
+
+  public static final String DEFAULT_TIMEOUT = "defaultTimeout"; // ms, deadline of the unary calls without one, 0 - none
+  public static final String HEARTBEAT = "heartbeat"; // ms, period of the response stream pings, 0 - none
+
+  private final List<AuthVerfier<MultiMap>> authVerfiers;
+
+  private final Vertx vertx;
+  private final BlockingExecutor blockingExecutor;
+  private final Metrics metrics;
+  private final Tracer tracer;
+  private final long defaultTimeout;
+  private final long heartbeat;
+
+  private final SingleFlight singleFlight = new SingleFlight(); // coalesces the idempotent calls
+  private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>(); // unary calls by call id
+  private final List<MessageConsumer<?>> consumers = new ArrayList<>();
+  private final Runnable unregisterLocal;
+
+  public Server(final List<Object> services, final List<AuthVerfier<MultiMap>> authVerfiers, final Vertx vertx) {
+    this(services, authVerfiers, new JsonObject(), vertx);
+  }
+
+  @Inject
+  public Server(
+      @Remote final List<Object> services,
+      final List<AuthVerfier<MultiMap>> authVerfiers,
+      @Named("eventbus_server.json") final JsonObject config,
+      final Vertx vertx) {
+    LOG.info("Start (services: {})", services);
+    this.authVerfiers = authVerfiers;
+    this.vertx = vertx;
+    blockingExecutor = BlockingExecutor.create(config, vertx);
+    metrics = Metrics.register("eventbus.server", true, vertx);
+    tracer = Tracer.create(config, vertx);
+    // by default as the client's reply timeout - then nobody waits for the reply
+    defaultTimeout = config.getLong(DEFAULT_TIMEOUT, DeliveryOptions.DEFAULT_TIMEOUT);
+    heartbeat = config.getLong(HEARTBEAT, 10_000L);
+    Common.registerCodec(vertx);
+    final EventBus eventBus = vertx.eventBus();
+    services.stream().flatMap(this::methodHandlers).forEach(handler -> {
+      LOG.info("    > {}", handler.address);
+      consumers.add(eventBus.<Object>consumer(handler.address, handler::handle));
+    });
+    consumers.add(eventBus.<Object>consumer(Common.CANCEL_ADDRESS, message -> {
+      final CompletableFuture<?> call = inFlight.remove(message.headers().get(Common.CALL_ID));
+      if (call != null) {
+        LOG.debug("Cancel call: {}", message.headers().get(Common.CALL_ID));
+        call.cancel(false);
+      }
+    }));
+    // co-located clients (in local mode) call the services directly, authenticated by the same verifiers
+    unregisterLocal = Local.register(services, blockingExecutor, credentials -> {
+      final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+      if (credentials != null) {
+        headers.add(Common.AUTHORIZATION, credentials);
+      }
+      return ASync.sequentiallyGetSkipErrors(
+        Utils.map(
+          authVerfiers.iterator(),
+          authVerifier -> authVerifier.verify(headers)));
+    });
+  }
+
+  @Override
+  public void close() {
+    unregisterLocal.run();
+    consumers.forEach(MessageConsumer::unregister);
+    blockingExecutor.close();
+    metrics.close();
+    tracer.close();
+  }
+
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
+  private Stream<MethodHandler> methodHandlers(final Object service) {
+    return Arrays.stream(service.getClass().getInterfaces()) // only directly declared interfaces
+      .filter(iClass -> Objects.nonNull(iClass.getAnnotation(Service.class)))
+      .flatMap(iClass -> methodHandlers(iClass, service));
+  }
+
+  private Stream<MethodHandler> methodHandlers(final Class<?> iClass, final Object service) {
+    final Protocol aProto = Proto.protocol(iClass);
+    return Arrays.stream(iClass.getMethods()) // all methods - not only declared
+      .collect(Collectors.toMap(Reflect::methodSig, Function.identity()))
+      .values()
+      .stream()
+      .filter(method -> {
+        if (Proto.isRequestStream(method)) {
+          LOG.warn("Request streams are not supported by event bus RPC! Skip method: {}", method);
+          return false;
+        }
+        return true;
+      })
+      .map(method -> new MethodHandler(method, service, aProto));
+  }
+
+  private class MethodHandler {
+
+    private final Method method;
+    private final Object service;
+    private final Message aMessage;
+
+    private final String address;
+    private final boolean stream;
+    private final boolean idempotent;
+    private final boolean blocking;
+    private final Metrics.Method methodMetrics;
+    private final Function<Object, byte[]> respEncoder;
+
+    private MethodHandler(final Method method, final Object service, final Protocol aProto) {
+      this.method = method;
+      this.service = service;
+      aMessage = aProto.getMessages().get(Proto.methodName(method));
+
+      address = Common.address(aProto, method);
+      stream = Proto.isStream(method);
+      idempotent = !stream && method.isAnnotationPresent(Idempotent.class);
+      blocking = BlockingExecutor.isBlocking(method, service);
+      methodMetrics = metrics.method(aProto.getName() + '/' + aMessage.getName());
+      final Type respType = Proto.responsType(method);
+      respEncoder = resp -> Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), respType, resp, false);
+    }
+
+    private void handle(final io.vertx.core.eventbus.Message<Object> message) {
+      final Executor vExecutor = VertxUtils.ctxExecutor(vertx);
+      final MultiMap headers = message.headers();
+      final Metrics.Call metered = methodMetrics.start();
+      final Deadline deadline = Invoker.deadline(headers.get(Deadline.HTTP_HEADER));
+      if (deadline != null && deadline.expired()) { // don't even decode the args
+        LOG.debug("Deadline expired before call start: {}", address);
+        message.fail(Common.DEADLINE_EXCEEDED, "Deadline expired before call start!");
+        metered.end("DEADLINE_EXCEEDED");
+        return;
+      }
+      final Trace trace = tracer.server(headers.get(Trace.HEADER), metered);
+      final Object[] args;
+      try {
+        final Object decoded = ((Frame)message.body()).value(
+          is -> Proto.decodeReq(aMessage.getRequest(), Proto.requestTypes(method), is, false), metered);
+        args = decoded == null ? new Object[0] : (Object[])decoded;
+      } catch (final Throwable t) {
+        LOG.debug("[{}] Invalid request!", address, t);
+        message.fail(Common.INVALID, "Invalid request: " + t + "!");
+        metered.end(Metrics.FAILED);
+        return;
+      }
+      // fast path - if verified (e.g. all verifiers completed immediately) continues inline
+      ASync.whenComplete(
+        ASync.sequentiallyGetSkipErrors(
+          Utils.map(
+            authVerfiers.iterator(),
+            authVerifier -> authVerifier.verify(headers))),
+        (auth, error) -> {
+          if (error == null) {
+            metered.principal(auth);
+            if (stream) {
+              new ResponseStream(message, metered, vExecutor).start(args, auth, deadline, trace);
+            } else if (deadline == null && defaultTimeout > 0) { // doesn't run (and is not kept in flight) forever
+              call(message, args, metered, auth, Deadline.after(defaultTimeout, TimeUnit.MILLISECONDS), trace, vExecutor);
+            } else {
+              call(message, args, metered, auth, deadline, trace, vExecutor);
+            }
+          } else {
+            message.fail(Common.UNAUTHENTICATED, error.toString());
+            metered.end("UNAUTHENTICATED");
+          }
+        },
+        vExecutor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void call(
+        final io.vertx.core.eventbus.Message<Object> message, final Object[] args, final Metrics.Call metered, final Auth auth,
+        final Deadline deadline, final Trace trace, final Executor vExecutor) {
+      LOG.debug("[{}] Call {}, args: {}", address, method, args);
+      metered.invoking();
+      // idempotent - the result is the shared response frame (encoded once if sent to remote callers)
+      final CompletionStage<Object> result;
+      try {
+        result = idempotent ? coalesced(args, auth, deadline, trace) : (CompletionStage<Object>)invoke(args, auth, deadline, trace);
+      } catch (final Throwable t) {
+        reply(message, new Frame(Invoker.rpcExc(t instanceof InvocationTargetException && t.getCause() != null ? t.getCause() : t), respEncoder, metered));
+        metered.end(Metrics.ERROR);
+        return;
+      }
+      if (result instanceof CompletableFuture && !result.toCompletableFuture().isDone()) { // could be cancelled
+        final String callId = message.headers().get(Common.CALL_ID);
+        if (callId != null) { // by the caller
+          inFlight.put(callId, (CompletableFuture<Object>)result);
+          result.whenComplete((r, t) -> inFlight.remove(callId));
+        }
+        if (deadline != null) { // deadline reached - cancel the call
+          final long timerId = vertx.setTimer(Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)), id -> ((CompletableFuture<Object>)result).cancel(false));
+          result.whenComplete((r, t) -> vertx.cancelTimer(timerId));
+        }
+      }
+      ASync.whenComplete(result, (resp, error) -> { // already completed (e.g. sync implementation) - reply inline
+        if (error == null) {
+          reply(message, idempotent ? (Frame)resp : new Frame(resp, respEncoder, metered));
+          metered.end(Metrics.OK);
+        } else if (error instanceof CancellationException) {
+          LOG.debug("[{}] Call cancelled", address); // cancelled by the caller or timed out - nobody waits for reply
+          metered.end(Metrics.CANCELLED);
+        } else {
+          reply(message, new Frame(Invoker.rpcExc(error), respEncoder, metered));
+          metered.end(Metrics.ERROR);
+        }
+      }, vExecutor);
+    }
+
+    private void reply(final io.vertx.core.eventbus.Message<Object> message, final Frame frame) {
+      try {
+        message.reply(frame);
+      } catch (final Throwable t) {
+        LOG.error("[{}] Failed to reply!", address, t);
+      }
+    }
+
+    // joins the equal in-flight call, if any, sharing the invocation and the response frame
+    private CompletionStage<Object> coalesced(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) {
+      return singleFlight.call(
+        SingleFlight.key(method, Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false), auth, null),
+        () -> invokeAsync(args, auth, deadline, trace),
+        resp -> (Object)new Frame(resp, this::encodeShared, null));
+    }
+
+    // the shared response is recorded by the method only
+    private byte[] encodeShared(final Object resp) {
+      final long start = System.nanoTime();
+      final byte[] encoded = respEncoder.apply(resp);
+      methodMetrics.encoded(System.nanoTime() - start, encoded.length);
+      return encoded;
+    }
+
+    // blocking methods are invoked on the blocking executor - the result is a stage completed with invocation's
+    // result (null for streams)
+    private Object invoke(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) throws ReflectiveOperationException {
+      return Invoker.invoke(method, service, args, blocking ? blockingExecutor : null, trace, deadline, auth);
+    }
+
+    private CompletionStage<Object> invokeAsync(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) {
+      return Invoker.invokeAsync(method, service, args, blocking ? blockingExecutor : null, trace, deadline, auth);
+    }
+
+    // sends the items to the caller's stream address as demanded by the caller via the control address
+    private class ResponseStream implements Subscriber<Object> {
+
+      private final io.vertx.core.eventbus.Message<Object> message;
+      private final Metrics.Call metered;
+      private final Executor vExecutor; // all signals on the context - the items are sent in order
+      private final String streamAddress;
+      private final String controlAddress = Common.ROOT + "/_stream/" + UUID.randomUUID();
+
+      private MessageConsumer<Object> control;
+      private Subscription subscription;
+      private long demand; // demanded by the caller and not sent yet
+      private boolean requested; // an item is requested from the subscription
+      private boolean done; // completed, failed or cancelled
+      private long timerId = -1;
+      private long heartbeatId = -1;
+
+      private ResponseStream(final io.vertx.core.eventbus.Message<Object> message, final Metrics.Call metered, final Executor vExecutor) {
+        this.message = message;
+        this.metered = metered;
+        this.vExecutor = vExecutor;
+        streamAddress = message.headers().get(Common.STREAM);
+      }
+
+      private void start(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) {
+        if (streamAddress == null) {
+          message.fail(Common.INVALID, "No " + Common.STREAM + " header!");
+          metered.end(Metrics.FAILED);
+          return;
+        }
+        control = vertx.eventBus().consumer(controlAddress, this::control);
+        control.completionHandler(ar -> {
+          if (ar.failed()) {
+            message.fail(Common.INVALID, "Failed to register stream control: " + ar.cause() + "!");
+            metered.end(Metrics.FAILED);
+            return;
+          }
+          message.reply(null, new DeliveryOptions().addHeader(Common.CONTROL, controlAddress));
+          if (deadline != null) { // deadline reached - end with error and cancel
+            timerId = vertx.setTimer(
+              Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)),
+              id -> vExecutor.execute(() -> fail(new IllegalStateException("Deadline expired!"), "DEADLINE_EXCEEDED")));
+          }
+          if (heartbeat > 0) { // the caller doesn't reply (e.g. died) - end and cancel
+            heartbeatId = vertx.setPeriodic(heartbeat, id -> vExecutor.execute(this::ping));
+          }
+          final Object[] realArgs = new Object[args.length + 1];
+          System.arraycopy(args, 0, realArgs, 0, args.length);
+          realArgs[args.length] = this;
+          metered.invoking();
+          try {
+            final Object invocation = invoke(realArgs, auth, deadline, trace);
+            if (invocation instanceof CompletionStage) { // blocking - invoked asynchronously
+              ((CompletionStage<?>)invocation).whenComplete((r, t) -> {
+                if (t != null) {
+                  onError(t);
+                }
+              });
+            }
+          } catch (final InvocationTargetException e) {
+            onError(e.getCause() == null ? e : e.getCause());
+          } catch (final Throwable t) {
+            onError(t);
+          }
+        });
+      }
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        vExecutor.execute(() -> {
+          if (this.subscription != null) {
+            subscription.cancel(); // already subscribed
+            return;
+          }
+          this.subscription = subscription;
+          if (done) {
+            subscription.cancel();
+          } else {
+            requestNext();
+          }
+        });
+      }
+
+      @Override
+      public void onNext(final Object item) {
+        vExecutor.execute(() -> {
+          if (!done) {
+            metered.item();
+            vertx.eventBus().send(streamAddress, new Frame(item, respEncoder, metered));
+            requested = false;
+            demand--;
+            requestNext();
+          }
+        });
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        vExecutor.execute(() -> fail(throwable, Metrics.ERROR));
+      }
+
+      @Override
+      public void onComplete() {
+        vExecutor.execute(() -> {
+          if (end(Metrics.OK)) {
+            vertx.eventBus().send(streamAddress, null, new DeliveryOptions().addHeader(Common.END, Metrics.OK));
+          }
+        });
+      }
+
+      // demand or, if no demand header, cancel. A malformed or non positive demand ends the stream with error (RS 3.9)
+      private void control(final io.vertx.core.eventbus.Message<Object> controlMessage) {
+        vExecutor.execute(() -> {
+          final String request = controlMessage.headers().get(Common.REQUEST);
+          if (request == null) {
+            LOG.debug("[{}] Stream cancelled", address);
+            cancel();
+          } else if (!done) {
+            long n;
+            try {
+              n = Long.parseLong(request);
+            } catch (final NumberFormatException e) {
+              n = 0;
+            }
+            if (n <= 0) {
+              LOG.warn("[{}] Invalid stream request: {}!", address, request);
+              fail(new IllegalArgumentException("Invalid request: " + request + "!"), Metrics.ERROR);
+              return;
+            }
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // if less, overflow
+            requestNext();
+          }
+        });
+      }
+
+      // one item at a time from the subscription, while there is demand - the subscription doesn't get the caller's
+      // demand at once (e.g. all) and keeps the context free between the items
+      private void requestNext() {
+        if (subscription != null && !requested && demand > 0) {
+          requested = true;
+          subscription.request(1);
+        }
+      }
+
+      private void ping() {
+        if (!done) {
+          vertx.eventBus().request(streamAddress, null, new DeliveryOptions().addHeader(Common.PING, "").setSendTimeout(heartbeat))
+            .onComplete(ar -> vExecutor.execute(() -> {
+              if (ar.failed()) {
+                LOG.debug("[{}] Stream caller is gone: {}", address, ar.cause().toString());
+                cancel();
+              }
+            }));
+        }
+      }
+
+      private void cancel() {
+        if (end(Metrics.CANCELLED) && subscription != null) {
+          subscription.cancel();
+        }
+      }
+
+      private void fail(final Throwable throwable, final String status) {
+        if (end(status)) {
+          vertx.eventBus().send(streamAddress, new Frame(Invoker.rpcExc(throwable), respEncoder, metered), new DeliveryOptions().addHeader(Common.END, status));
+          if (subscription != null) {
+            subscription.cancel();
+          }
+        }
+      }
+
+      // returns false if already ended
+      private boolean end(final String status) {
+        if (done) {
+          return false;
+        }
+        done = true;
+        metered.end(status);
+        control.unregister();
+        if (timerId != -1) {
+          vertx.cancelTimer(timerId);
+        }
+        if (heartbeatId != -1) {
+          vertx.cancelTimer(heartbeatId);
+        }
+        return true;
+      }
+    }
+  }
+}
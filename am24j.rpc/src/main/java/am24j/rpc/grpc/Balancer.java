@@ -0,0 +1,312 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.grpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Status;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Client side balancer over the endpoints and their channels. Tracks in-flight calls per endpoint and per channel, and
+ * latency EWMA (of the unary calls) per endpoint. Picks the endpoint with power-of-two-choices (or least-outstanding, scanning
+ * all) by in-flight calls (the lower latency on tie), and then, the same way, the least loaded channel of the endpoint.
+ *
+ * @author avgustinmm
+ */
+class Balancer {
+
+  static final String P2C = "p2c";
+  static final String LEAST_OUTSTANDING = "leastOutstanding";
+
+  private static final double EWMA_ALPHA = 0.2;
+
+  private static final Comparator<Endpoint> ENDPOINT_LOAD =
+    Comparator.<Endpoint>comparingInt(endpoint -> endpoint.inFlight.get()).thenComparingLong(endpoint -> endpoint.latencyEwmaNanos.get());
+  private static final Comparator<Slot> SLOT_LOAD = Comparator.comparingInt(slot -> slot.inFlight.get());
+
+  private final boolean p2c;
+  private volatile List<Endpoint> endpoints = Collections.emptyList();
+
+  /**
+   * Creates balancer without endpoints. The endpoints are set by {@link #endpoints(List, Function)}
+   *
+   * @param strategy {@link #P2C} or {@link #LEAST_OUTSTANDING}
+   */
+  Balancer(final String strategy) {
+    if (P2C.equals(strategy)) {
+      p2c = true;
+    } else if (LEAST_OUTSTANDING.equals(strategy)) {
+      p2c = false;
+    } else {
+      throw new IllegalArgumentException("Unsupported balancer: " + strategy + "! Supported: " + P2C + ", " + LEAST_OUTSTANDING + "!");
+    }
+  }
+
+  /**
+   * @param addresses endpoint addresses
+   * @param channels endpoint channels - for every endpoint (in order of addresses) a non empty channel pool
+   * @param strategy {@link #P2C} or {@link #LEAST_OUTSTANDING}
+   */
+  Balancer(final List<String> addresses, final List<List<Channel>> channels, final String strategy) {
+    this(strategy);
+    if (addresses.isEmpty() || addresses.size() != channels.size()) {
+      throw new IllegalArgumentException("Endpoints / channels mismatch: " + addresses + " / " + channels + "!");
+    }
+    endpoints(addresses, address -> channels.get(addresses.indexOf(address)));
+  }
+
+  /**
+   * Sets the endpoints. The still present endpoints are kept (with their channels and metrics), the new ones get channels
+   * from the channel pool factory and the channels of the removed ones are shutdown (gracefully).
+   */
+  synchronized void endpoints(final List<String> addresses, final Function<String, List<Channel>> channelPool) {
+    final Map<String, Endpoint> current = new HashMap<>();
+    endpoints.forEach(endpoint -> current.put(endpoint.address, endpoint));
+    final List<Endpoint> endpoints = new ArrayList<>();
+    for (final String address : addresses) {
+      final Endpoint endpoint = current.remove(address);
+      endpoints.add(endpoint == null ? new Endpoint(address, channelPool.apply(address)) : endpoint);
+    }
+    this.endpoints = Collections.unmodifiableList(endpoints);
+    current.values().forEach(Endpoint::shutdown);
+  }
+
+  Channel channel() {
+    final List<Endpoint> endpoints = this.endpoints;
+    if (endpoints.isEmpty()) {
+      throw Status.UNAVAILABLE.withDescription("No endpoints available!").asRuntimeException();
+    }
+    final Endpoint endpoint = pick(endpoints, ENDPOINT_LOAD);
+    return pick(endpoint.slots, SLOT_LOAD).channel;
+  }
+
+  /**
+   * Picks among the preferred endpoints (e.g. the ones of the partition owner), if none of them is known - among all.
+   */
+  Channel channel(final List<String> preferred) {
+    if (!preferred.isEmpty()) {
+      final List<Endpoint> candidates = new ArrayList<>(preferred.size());
+      for (final Endpoint endpoint : endpoints) {
+        if (preferred.contains(endpoint.address)) {
+          candidates.add(endpoint);
+        }
+      }
+      if (!candidates.isEmpty()) {
+        return pick(pick(candidates, ENDPOINT_LOAD).slots, SLOT_LOAD).channel;
+      }
+    }
+    return channel();
+  }
+
+  /**
+   * Shutdowns the channels of all endpoints
+   */
+  synchronized void shutdown() {
+    endpoints.forEach(Endpoint::shutdown);
+    endpoints = Collections.emptyList();
+  }
+
+  List<Endpoint> endpoints() {
+    return endpoints;
+  }
+
+  JsonObject metrics() {
+    final JsonArray endpointsMetrics = new JsonArray();
+    endpoints.forEach(endpoint -> {
+      final JsonArray channelsInFlight = new JsonArray();
+      endpoint.slots.forEach(slot -> channelsInFlight.add(slot.inFlight.get()));
+      endpointsMetrics.add(
+        new JsonObject()
+          .put("address", endpoint.address)
+          .put("inFlight", endpoint.inFlight())
+          .put("latencyEwmaMs", endpoint.latencyEwmaMs())
+          .put("channelsInFlight", channelsInFlight));
+    });
+    return new JsonObject().put("balancer", p2c ? P2C : LEAST_OUTSTANDING).put("endpoints", endpointsMetrics);
+  }
+
+  private <T> T pick(final List<T> list, final Comparator<T> load) {
+    final int size = list.size();
+    if (size == 1) {
+      return list.get(0);
+    }
+    if (p2c) {
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
+      final int first = random.nextInt(size);
+      int second = random.nextInt(size - 1);
+      if (second >= first) {
+        second++; // distinct
+      }
+      final T a = list.get(first);
+      final T b = list.get(second);
+      return load.compare(a, b) <= 0 ? a : b;
+    } else {
+      // start from random position, so ties are spread
+      final int start = ThreadLocalRandom.current().nextInt(size);
+      T best = list.get(start);
+      for (int i = 1; i < size; i++) {
+        final T candidate = list.get((start + i) % size);
+        if (load.compare(candidate, best) < 0) {
+          best = candidate;
+        }
+      }
+      return best;
+    }
+  }
+
+  static final class Endpoint {
+
+    private final String address;
+    private final List<Slot> slots;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong latencyEwmaNanos = new AtomicLong(-1); // -1 - no samples yet (so preferred on tie)
+
+    private Endpoint(final String address, final List<Channel> channels) {
+      if (channels.isEmpty()) {
+        throw new IllegalArgumentException("No channels for endpoint " + address + "!");
+      }
+      this.address = address;
+      final List<Slot> slots = new ArrayList<>();
+      channels.forEach(channel -> slots.add(new Slot(this, channel)));
+      this.slots = Collections.unmodifiableList(slots);
+    }
+
+    String address() {
+      return address;
+    }
+
+    private void shutdown() {
+      slots.forEach(slot -> {
+        if (slot.rawChannel instanceof ManagedChannel) {
+          ((ManagedChannel)slot.rawChannel).shutdown(); // in-flight calls are completed
+        }
+      });
+    }
+
+    int inFlight() {
+      return inFlight.get();
+    }
+
+    double latencyEwmaMs() {
+      final long ewma = latencyEwmaNanos.get();
+      return ewma < 0 ? 0 : ewma / 1_000_000d;
+    }
+
+    private void latency(final long nanos) {
+      long current;
+      long next;
+      do {
+        current = latencyEwmaNanos.get();
+        next = current < 0 ? nanos : (long)(current + EWMA_ALPHA * (nanos - current));
+      } while (!latencyEwmaNanos.compareAndSet(current, next));
+    }
+  }
+
+  private static final class Slot {
+
+    private final Endpoint endpoint;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Channel rawChannel;
+    private final Channel channel;
+
+    private Slot(final Endpoint endpoint, final Channel channel) {
+      this.endpoint = endpoint;
+      rawChannel = channel;
+      this.channel = ClientInterceptors.intercept(channel, new ClientInterceptor() {
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(final MethodDescriptor<ReqT, RespT> method, final CallOptions callOptions, final Channel next) {
+          return new TrackedCall<>(next.newCall(method, callOptions), method.getType());
+        }
+      });
+    }
+
+    // tracks the call from start to the response (unary / client streaming) or close
+    private final class TrackedCall<ReqT, RespT> extends SimpleForwardingClientCall<ReqT, RespT> {
+
+      private final boolean singleResponse;
+      private final AtomicBoolean done = new AtomicBoolean();
+      private long startNanos;
+
+      private TrackedCall(final ClientCall<ReqT, RespT> call, final MethodType methodType) {
+        super(call);
+        singleResponse = methodType == MethodType.UNARY || methodType == MethodType.CLIENT_STREAMING;
+      }
+
+      @Override
+      public void start(final Listener<RespT> responseListener, final Metadata headers) {
+        startNanos = System.nanoTime();
+        inFlight.incrementAndGet();
+        endpoint.inFlight.incrementAndGet();
+        try {
+          super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+
+            @Override
+            public void onMessage(final RespT message) {
+              if (singleResponse) {
+                done(true);
+              }
+              super.onMessage(message);
+            }
+
+            @Override
+            public void onClose(final Status status, final Metadata trailers) {
+              done(status.isOk());
+              super.onClose(status, trailers);
+            }
+          }, headers);
+        } catch (final RuntimeException e) {
+          done(false);
+          throw e;
+        }
+      }
+
+      private void done(final boolean ok) {
+        if (done.compareAndSet(false, true)) {
+          inFlight.decrementAndGet();
+          endpoint.inFlight.decrementAndGet();
+          if (ok && singleResponse) {
+            endpoint.latency(System.nanoTime() - startNanos);
+          }
+        }
+      }
+    }
+  }
+}
@@ -19,38 +19,66 @@ import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Publisher;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.apache.avro.Protocol;
 import org.slf4j.Logger;
 
+import am24j.commons.Builder;
 import am24j.commons.Ctx;
+import am24j.rpc.Deadline;
+import am24j.rpc.Local;
+import am24j.rpc.Metrics;
+import am24j.rpc.NearCache;
+import am24j.rpc.Partition;
+import am24j.rpc.Registry;
+import am24j.rpc.Timeout;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
 import am24j.rpc.avro.Proto;
 import am24j.rpc.avro.RPCException;
 import io.grpc.CallCredentials;
 import io.grpc.CallOptions;
+import io.grpc.Channel;
 import io.grpc.ClientCall;
 import io.grpc.ClientCall.Listener;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
 import io.grpc.ManagedChannel;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
-import io.grpc.MethodDescriptor.MethodType;
 import io.grpc.Status;
 import io.grpc.StatusException;
 import io.vertx.core.Context;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.grpc.VertxChannelBuilder;
 
 /**
  * GRPC client
@@ -62,12 +90,61 @@ public class Client implements AutoCloseable {
 
   private static final Logger LOG = Ctx.logger("rpc.grpc.client");
 
+  public static final String STREAM_PREFETCH = "streamPrefetch";
+  public static final String STREAM_LOW_WATERMARK = "streamLowWatermark";
+  public static final String BALANCER = "balancer"; // p2c (default) or leastOutstanding
+  public static final String DISCOVERY = "discovery"; // if true - endpoints are resolved from the Registry by service name
+
+  private static final Throwable COMPLETED = new Throwable("Completed"); // marker
+
+  private final int streamPrefetch;
+  private final int streamLowWatermark;
+
   private final CompletableFuture<Runnable> undeploy = new CompletableFuture<>();
   private final List<ClientVerticle> clientVerticles = Collections.synchronizedList(new ArrayList<>());
+  private final Balancer balancer; // static endpoints
+
+  private final Registry registry; // discovery
+  private final Map<String, Balancer> balancers = new ConcurrentHashMap<>();
+  private final List<Runnable> stopListening = new CopyOnWriteArrayList<>();
+
+  private final Vertx vertx;
+  private final NearCache nearCache; // null if not enabled
+  private final Local local; // null if not enabled
+  private final Metrics metrics;
+  private final Tracer tracer;
+  private final Map<Method, MethodDescriptor<Object[], Object>> methodDescriptors = new ConcurrentHashMap<>();
+  private final JsonObject config;
+  private final String strategy;
+  private final int channelsPerEndpoint;
+
+  public Client(final DeploymentOptions options, final Vertx vertx) {
+    this(options, Optional.empty(), vertx);
+  }
 
   @Inject
-  public Client(@Named("grpc_client.json") final DeploymentOptions options, final Vertx vertx) {
+  public Client(@Named("grpc_client.json") final DeploymentOptions options, final Optional<Registry> registry, final Vertx vertx) {
     LOG.info("Start (options: {})", options.toJson());
+    this.vertx = vertx;
+    config = options.getConfig() == null ? new JsonObject() : options.getConfig();
+    nearCache = NearCache.create(config, vertx);
+    // as the remote calls fail
+    local = Local.create(config, (status, message) -> Status.fromCode(Status.Code.valueOf(status)).withDescription(message).asException(), vertx);
+    metrics = Metrics.register("grpc.client", false, vertx);
+    tracer = Tracer.create(config, vertx);
+    streamPrefetch = Math.max(1, config.getInteger(STREAM_PREFETCH, 64));
+    streamLowWatermark = Math.min(streamPrefetch - 1, Math.max(0, config.getInteger(STREAM_LOW_WATERMARK, streamPrefetch / 4)));
+    strategy = config.getString(BALANCER, Balancer.P2C);
+    channelsPerEndpoint = options.getInstances();
+    if (config.getBoolean(DISCOVERY, false)) {
+      // endpoints are resolved per service, channels are created when endpoints appear
+      this.registry = registry.orElseThrow(() -> new IllegalStateException("Discovery is enabled but there is no registry!"));
+      balancer = null;
+      undeploy.complete(() -> {});
+      return;
+    }
+
+    this.registry = null;
     vertx.deployVerticle(() -> {
       final ClientVerticle clientVerticle = new ClientVerticle();
       clientVerticles.add(clientVerticle);
@@ -81,16 +158,48 @@ public class Client implements AutoCloseable {
       }
     });
     undeploy.join();
+
+    final List<String> addresses = new ArrayList<>();
+    final List<List<Channel>> channels = new ArrayList<>();
+    ClientVerticle.endpoints(config).forEach(endpoint -> {
+      addresses.add(
+        endpoint.getString(ClientVerticle.SOCKET_PATH) == null ?
+          endpoint.getString(ClientVerticle.HOST) + ':' + endpoint.getInteger(ClientVerticle.PORT) :
+          "unix:" + endpoint.getString(ClientVerticle.SOCKET_PATH));
+      channels.add(new ArrayList<>());
+    });
+    clientVerticles.forEach(clientVerticle -> {
+      final List<ManagedChannel> verticleChannels = clientVerticle.channels();
+      for (int i = 0; i < verticleChannels.size(); i++) {
+        channels.get(i).add(verticleChannels.get(i));
+      }
+    });
+    balancer = new Balancer(addresses, channels, strategy);
   }
 
   @Override
   public void close() {
     LOG.info("Close");
+    if (nearCache != null) {
+      nearCache.close();
+    }
+    metrics.close();
+    tracer.close();
+    stopListening.forEach(Runnable::run);
+    balancers.values().forEach(Balancer::shutdown);
     undeploy.thenAccept(Runnable::run);
   }
 
-  @SuppressWarnings("unchecked")
   public <T> T service(final Supplier<String> credentialSupplier, final Class<T> clazz, final Class<?>... others) {
+    return service(credentialSupplier, null, clazz, others);
+  }
+
+  /**
+   * Creates service proxy which calls have the given timeout (if not null). Overrides the {@link Timeout} of the
+   * service interface and methods.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T service(final Supplier<String> credentialSupplier, final Duration timeout, final Class<T> clazz, final Class<?>... others) {
     final Class<?>[] interfaces = new Class<?>[1 + others.length];
     System.arraycopy(others, 0, interfaces, 0, others.length);
     interfaces[others.length] = clazz;
@@ -98,7 +207,39 @@ public class Client implements AutoCloseable {
 
       @Override
       public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final CallOptions callOptions;
+        if (nearCache != null && nearCache.caches(method)) { // a hit is served on the caller thread
+          return nearCache.get(method, args, credentialSupplier == null ? null : credentialSupplier.get(), () -> {
+            try {
+              return (CompletionStage<Object>)call(method, args);
+            } catch (final Throwable t) {
+              return CompletableFuture.failedFuture(t);
+            }
+          });
+        }
+        return call(method, args);
+      }
+
+      private Object call(final Method method, final Object[] args) throws Throwable {
+        if (local != null && local.serves(method)) { // co-located - directly to the implementation
+          return local.call(method, args, credentialSupplier == null ? null : credentialSupplier.get(), timeout);
+        }
+        final MethodDescriptor<Object[], Object> methodDescriptor = methodDescriptors.computeIfAbsent(method, m -> {
+          final Protocol aProto = Proto.protocol(m.getDeclaringClass());
+          return Common.methodDescriptor(m, aProto, metrics.method(MethodDescriptor.generateFullMethodName(aProto.getName(), Proto.methodName(m))));
+        });
+        final Metrics.Call metered = metrics.method(methodDescriptor.getFullMethodName()).start();
+        try {
+          return call(method, args, methodDescriptor, metered, tracer.client(metered));
+        } catch (final Throwable t) {
+          metered.end(Metrics.FAILED);
+          throw t;
+        }
+      }
+
+      private Object call(
+          final Method method, final Object[] args,
+          final MethodDescriptor<Object[], Object> methodDescriptor, final Metrics.Call metered, final Trace trace) throws Throwable {
+        CallOptions callOptions;
         final String credential = credentialSupplier == null ? null : credentialSupplier.get();
         if (credential == null) {
           callOptions = CallOptions.DEFAULT;
@@ -120,40 +261,193 @@ public class Client implements AutoCloseable {
           };
           callOptions = CallOptions.DEFAULT.withCallCredentials(credentials);
         }
+        final Deadline deadline = Deadline.forCall(method, timeout).orElse(null);
+        if (deadline != null) {
+          callOptions = callOptions.withDeadlineAfter(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
 
-        final MethodDescriptor<Object[], Object> methodDescriptor = Common.methodDescriptor(method, Proto.protocol(method.getDeclaringClass()));
-        final ClientCall<Object[], Object> call = channel().newCall(methodDescriptor, callOptions);
+        final ClientCall<Object[], Object> call = new MeteredCall(
+          channel(MethodDescriptor.extractFullServiceName(methodDescriptor.getFullMethodName()), method, args).newCall(methodDescriptor, callOptions),
+          metered,
+          trace,
+          !methodDescriptor.getType().serverSendsOneMessage());
         final Object result;
-        if (methodDescriptor.getType() == MethodType.UNARY) {
-          final CompletableFuture<Object> future = new CompletableFuture<>();
-          call.start(new Unaryistener(call, future), new Metadata());
-          result = future;
-          call.sendMessage(args);
-        } else {
-          final Object[] realArgs = new Object[args.length - 1];
-          System.arraycopy(args, 0, realArgs, 0, realArgs.length);
-          call.start(new StreamListener(call, (Subscriber<Object>)args[realArgs.length]), new Metadata());
-          result = null;
-          call.sendMessage(realArgs);
+        switch (methodDescriptor.getType()) {
+          case UNARY: {
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            call.start(new Unaryistener(call, future, null), new Metadata());
+            result = future;
+            call.sendMessage(args);
+            call.halfClose();
+            break;
+          }
+          case SERVER_STREAMING: {
+            final Object[] realArgs = new Object[args.length - 1];
+            System.arraycopy(args, 0, realArgs, 0, realArgs.length);
+            call.start(new StreamListener(call, (Subscriber<Object>)args[realArgs.length], null), new Metadata());
+            result = null;
+            call.sendMessage(realArgs);
+            call.halfClose();
+            break;
+          }
+          case CLIENT_STREAMING: {
+            final Object[] realArgs = new Object[args.length - 1];
+            System.arraycopy(args, 0, realArgs, 0, realArgs.length);
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            final RequestStream requestStream = new RequestStream(call);
+            call.start(new Unaryistener(call, future, requestStream), new Metadata());
+            result = future;
+            call.sendMessage(realArgs);
+            ((Publisher<Object>)args[realArgs.length]).subscribe(requestStream); // half closes when completed
+            break;
+          }
+          default: { // BIDI_STREAMING
+            final Object[] realArgs = new Object[args.length - 2];
+            System.arraycopy(args, 0, realArgs, 0, realArgs.length);
+            final RequestStream requestStream = new RequestStream(call);
+            call.start(new StreamListener(call, (Subscriber<Object>)args[realArgs.length + 1], requestStream), new Metadata());
+            result = null;
+            call.sendMessage(realArgs);
+            ((Publisher<Object>)args[realArgs.length]).subscribe(requestStream); // half closes when completed
+          }
         }
-        call.halfClose();
         return result;
       }
     });
   }
 
-  private ManagedChannel channel() {
-    return clientVerticles.get(ThreadLocalRandom.current().nextInt(clientVerticles.size())).channel();
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
+  /**
+   * Returns per endpoint metrics - in-flight calls (per endpoint and per channel) and unary call latency EWMA. With
+   * discovery - the metrics per service name.
+   */
+  public JsonObject metrics() {
+    if (registry == null) {
+      return balancer.metrics();
+    } else {
+      final JsonObject metrics = new JsonObject();
+      balancers.forEach((service, serviceBalancer) -> metrics.put(service, serviceBalancer.metrics()));
+      return metrics;
+    }
+  }
+
+  private Channel channel(final String service, final Method method, final Object[] args) {
+    if (registry == null) {
+      return balancer.channel();
+    } else {
+      final Balancer serviceBalancer = balancers.computeIfAbsent(service, this::discoveryBalancer);
+      final int keyIndex = Partition.keyIndex(method);
+      if (keyIndex < 0) {
+        return serviceBalancer.channel();
+      } else { // prefer partition owner
+        return serviceBalancer.channel(
+          registry.owner(args[keyIndex])
+            .map(owner -> registry.endpoints(Registry.GRPC, service, owner))
+            .orElse(Collections.emptyList()));
+      }
+    }
+  }
+
+  private Balancer discoveryBalancer(final String service) {
+    final Balancer serviceBalancer = new Balancer(strategy);
+    stopListening.add(registry.listen(Registry.GRPC, service, addresses -> {
+      LOG.info("Endpoints of {}: {}", service, addresses);
+      serviceBalancer.endpoints(addresses, this::channelPool);
+    }));
+    return serviceBalancer;
+  }
+
+  private List<Channel> channelPool(final String address) {
+    final int index = address.lastIndexOf(':');
+    final List<Channel> channels = new ArrayList<>();
+    for (int i = 0; i < channelsPerEndpoint; i++) {
+      final VertxChannelBuilder builder =
+        VertxChannelBuilder
+          .forAddress(vertx, address.substring(0, index), Integer.parseInt(address.substring(index + 1)));
+      Builder.inject(config, builder);
+      channels.add(builder.build());
+    }
+    return channels;
+  }
+
+  // records the call end by the close status (OK with received error - ERROR) and the stream items, sends the trace
+  private static final class MeteredCall extends ForwardingClientCall.SimpleForwardingClientCall<Object[], Object> {
+
+    private final Metrics.Call metered;
+    private final Trace trace;
+    private final boolean responseStream;
+
+    private volatile boolean failed;
+
+    private MeteredCall(final ClientCall<Object[], Object> call, final Metrics.Call metered, final Trace trace, final boolean responseStream) {
+      super(call);
+      this.metered = metered;
+      this.trace = trace;
+      this.responseStream = responseStream;
+    }
+
+    @Override
+    public void start(final Listener<Object> listener, final Metadata headers) {
+      metered.invoking();
+      if (trace != null) {
+        headers.put(Common.TRACEPARENT, trace.traceparent());
+      }
+      super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<Object>(listener) {
+
+        @Override
+        public void onMessage(final Object message) {
+          Common.decoded(metered);
+          if (message instanceof RPCException) {
+            failed = true;
+          } else if (responseStream) {
+            metered.item();
+          }
+          super.onMessage(message);
+        }
+
+        @Override
+        public void onClose(final Status status, final Metadata trailers) {
+          metered.end(status.isOk() ? (failed ? Metrics.ERROR : Metrics.OK) : status.getCode().name());
+          super.onClose(status, trailers);
+        }
+      }, headers);
+    }
+
+    @Override
+    public void sendMessage(final Object[] message) {
+      if (message != null && Common.isItem(message)) { // null - no args
+        metered.item();
+      }
+      super.sendMessage(message);
+      Common.encoded(metered);
+    }
   }
 
   private static final class Unaryistener extends Listener<Object> {
 
     private final ClientCall<Object[], Object> call;
     private final CompletableFuture<Object> future;
+    private final RequestStream requestStream;
 
-    private Unaryistener(final ClientCall<Object[], Object> call, final CompletableFuture<Object> future) {
+    private Unaryistener(final ClientCall<Object[], Object> call, final CompletableFuture<Object> future, final RequestStream requestStream) {
       this.call = call;
       this.future = future;
+      this.requestStream = requestStream;
+      future.whenComplete((r, t) -> {
+        if (future.isCancelled()) {
+          call.cancel("Cancelled by the caller!", null);
+        }
+      });
     }
 
     @Override
@@ -161,6 +455,13 @@ public class Client implements AutoCloseable {
       call.request(1);
     }
 
+    @Override
+    public void onReady() {
+      if (requestStream != null) {
+        requestStream.onReady();
+      }
+    }
+
     @Override
     public void onMessage(final Object message) {
       if (message instanceof RPCException) {
@@ -172,6 +473,9 @@ public class Client implements AutoCloseable {
 
     @Override
     public void onClose(final Status status, final Metadata trailers) {
+      if (requestStream != null) {
+        requestStream.onClose();
+      }
       if (status.isOk()) {
         if (!future.isDone()) {
           future.completeExceptionally(new IOException("Closed withoyt result!"));
@@ -186,51 +490,219 @@ public class Client implements AutoCloseable {
     }
   }
 
-  private final class StreamListener extends Listener<Object> {
+  // delivers the response stream on subscriber's demand. Keeps up to prefetch messages requested from the transport
+  // (in flight or buffered) and refills the window when it drops to the low watermark
+  private final class StreamListener extends Listener<Object> implements Subscription {
 
     private final ClientCall<Object[], Object> call;
     private final Subscriber<Object> subscriber;
+    private final RequestStream requestStream;
 
-    private StreamListener(final ClientCall<Object[], Object> call, final Subscriber<Object> subscriber) {
+    private final Queue<Object> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicReference<Throwable> terminal = new AtomicReference<>(); // COMPLETED or the error the stream is terminated with
+    private volatile boolean cancelled;
+
+    // accessed only in drain
+    private int window; // requested from the transport but not delivered yet
+    private boolean done;
+
+    private StreamListener(final ClientCall<Object[], Object> call, final Subscriber<Object> subscriber, final RequestStream requestStream) {
       this.call = call;
       this.subscriber = subscriber;
+      this.requestStream = requestStream;
     }
 
     @Override
     public void onHeaders(final Metadata headers) {
-      subscriber.onSubscribe(new Subscription() {
-
-        @Override
-        public void request(final long n) {
-          call.request(1);
-        }
-
-        @Override
-        public void cancel() {
-          call.cancel("Close", null);
-        }
-      });
+      subscribe();
+      drain();
     }
 
     @Override
     public void onReady() {
+      if (requestStream != null) {
+        requestStream.onReady();
+      }
     }
 
     @Override
     public void onMessage(final Object message) {
-      if (message instanceof RPCException) {
-        subscriber.onNext(((RPCException)message).toRPC());
-      } else {
-        subscriber.onNext(message);
-      }
+      buffer.offer(message);
+      drain();
     }
 
     @Override
     public void onClose(final Status status, final Metadata trailers) {
-      if (status.isOk()) {
-        subscriber.onComplete();
+      if (requestStream != null) {
+        requestStream.onClose();
+      }
+      subscribe(); // could be closed without headers
+      terminal.compareAndSet(null, status.isOk() ? COMPLETED : new StatusException(status, trailers));
+      drain();
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        terminal.compareAndSet(null, new IllegalArgumentException("Request must be positive! Found: " + n + "!"));
+        call.cancel("Invalid request!", null);
       } else {
-        subscriber.onError(new StatusException(status, trailers));
+        requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n); // cap on overflow
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        call.cancel("Cancelled by subscriber!", null);
+      }
+    }
+
+    private void subscribe() {
+      if (subscribed.compareAndSet(false, true)) {
+        subscriber.onSubscribe(this);
+      }
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return; // the drain loop is running - it will do the work
+      }
+      int missed = 1;
+      do {
+        if (cancelled && !done) {
+          done = true;
+          buffer.clear();
+        }
+        if (!done) {
+          final long r = requested.get();
+          long delivered = 0;
+          while (delivered != r && !done && !cancelled) {
+            final Object message = buffer.poll();
+            if (message == null) {
+              break;
+            }
+            window--;
+            delivered++;
+            if (message instanceof RPCException) {
+              done = true;
+              cancel();
+              subscriber.onError(((RPCException)message).toRPC());
+            } else {
+              subscriber.onNext(message);
+            }
+          }
+          if (delivered != 0 && r != Long.MAX_VALUE) {
+            requested.addAndGet(-delivered);
+          }
+          final Throwable terminal = this.terminal.get();
+          if (!done && terminal != null && (buffer.isEmpty() || terminal != COMPLETED)) {
+            done = true;
+            buffer.clear();
+            if (terminal == COMPLETED) {
+              subscriber.onComplete();
+            } else {
+              subscriber.onError(terminal);
+            }
+          } else if (!done && !cancelled && subscribed.get() && window <= streamLowWatermark) {
+            final int refill = streamPrefetch - window;
+            window += refill;
+            call.request(refill);
+          }
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+  }
+
+
+  // sends the request stream items to the call. Items are requested from the publisher only when the transport is ready
+  private static final class RequestStream implements Subscriber<Object> {
+
+    private static final int BATCH = 16;
+
+    private final ClientCall<Object[], Object> call;
+
+    private Subscription subscription;
+    private long pending;
+    private boolean done;
+    private boolean requesting;
+    private boolean missed;
+
+    private RequestStream(final ClientCall<Object[], Object> call) {
+      this.call = call;
+    }
+
+    @Override
+    public synchronized void onSubscribe(final Subscription subscription) {
+      if (this.subscription != null || done) {
+        subscription.cancel();
+        return;
+      }
+      this.subscription = subscription;
+      demand();
+    }
+
+    @Override
+    public synchronized void onNext(final Object item) {
+      if (done) {
+        return;
+      }
+      call.sendMessage(Common.item(item));
+      pending--;
+      demand();
+    }
+
+    @Override
+    public synchronized void onError(final Throwable throwable) {
+      if (!done) {
+        done = true;
+        call.cancel("Request stream failed!", throwable);
+      }
+    }
+
+    @Override
+    public synchronized void onComplete() {
+      if (!done) {
+        done = true;
+        call.halfClose();
+      }
+    }
+
+    private synchronized void onReady() {
+      demand();
+    }
+
+    private synchronized void onClose() {
+      if (!done) {
+        done = true;
+        if (subscription != null) {
+          subscription.cancel();
+        }
+      }
+    }
+
+    private void demand() {
+      if (requesting) { // re-entered from subscription.request (synchronous publisher)
+        missed = true;
+        return;
+      }
+      requesting = true;
+      try {
+        do {
+          missed = false;
+          if (subscription != null && !done && pending <= 0 && call.isReady()) {
+            pending = BATCH;
+            subscription.request(BATCH);
+          }
+        } while (missed);
+      } finally {
+        requesting = false;
       }
     }
   }
@@ -15,15 +15,27 @@
  */
 package am24j.rpc.grpc;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import am24j.commons.Builder;
 import io.grpc.ManagedChannel;
+import io.grpc.netty.NettyChannelBuilder;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
 import io.vertx.core.Promise;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.net.impl.transport.Transport;
 import io.vertx.grpc.VertxChannelBuilder;
 
 /**
- * GRPC Client veritcl
+ * GRPC Client veritcl. An endpoint with {@link #SOCKET_PATH} is connected via that unix domain socket (requires Vertx
+ * with native transport).
  *
  * @author avgustinmm
  */
@@ -31,27 +43,74 @@ public class ClientVerticle extends AbstractVerticle {
 
   public static final String HOST = "host";
   public static final String PORT = "port";
+  public static final String SOCKET_PATH = "socketPath"; // if set host / port are ignored
+  public static final String ENDPOINTS = "endpoints"; // array of {host, port} or {socketPath} objects, if set host / port are ignored
 
-  private ManagedChannel channel;
+  private final List<ManagedChannel> channels = new ArrayList<>();
 
   @Override
   public void start(final Promise<Void> startPromise) throws Exception {
     final JsonObject config = context.config();
-    final VertxChannelBuilder builder =
-      VertxChannelBuilder
-        .forAddress(vertx, config.getString(HOST), config.getInteger(PORT));
-    Builder.inject(config, builder);
-    channel = builder.build();
+    for (final JsonObject endpoint : endpoints(config)) {
+      if (endpoint.getString(SOCKET_PATH) != null) {
+        channels.add(udsChannel(endpoint.getString(SOCKET_PATH), config));
+        continue;
+      }
+      final VertxChannelBuilder builder =
+        VertxChannelBuilder
+          .forAddress(vertx, endpoint.getString(HOST), endpoint.getInteger(PORT));
+      Builder.inject(config, builder);
+      channels.add(builder.build());
+    }
     startPromise.complete();
   }
 
   @Override
   public void stop(final Promise<Void> stopPromise) throws Exception {
-    channel.shutdown();
+    channels.forEach(ManagedChannel::shutdown);
     stopPromise.complete();
   }
 
-  ManagedChannel channel() {
-    return channel;
+  // vertx grpc channel builder supports only tcp (inet) channels - netty channel on the vertx domain socket channel
+  // and the verticle event loop, callbacks are dispatched on the verticle context (as by vertx grpc channel)
+  private ManagedChannel udsChannel(final String socketPath, final JsonObject config) {
+    final Transport transport = ((VertxInternal)vertx).transport();
+    if (!vertx.isNativeTransportEnabled()) {
+      throw new IllegalStateException("Domain socket " + socketPath + " requires native transport!");
+    }
+    final ContextInternal contextInternal = (ContextInternal)context;
+    final NettyChannelBuilder builder =
+      NettyChannelBuilder
+        .forAddress(transport.convert(SocketAddress.domainSocketAddress(socketPath)))
+        .channelFactory(transport.channelFactory(true))
+        .eventLoopGroup(contextInternal.nettyEventLoop());
+    builder.executor(command -> {
+      if (Context.isOnEventLoopThread()) {
+        contextInternal.dispatch(v -> command.run());
+      } else {
+        command.run();
+      }
+    });
+    Builder.inject(config, builder);
+    return builder.build();
+  }
+
+  // a channel per endpoint, in order of endpoints
+  List<ManagedChannel> channels() {
+    return channels;
+  }
+
+  static List<JsonObject> endpoints(final JsonObject config) {
+    final JsonArray endpoints = config.getJsonArray(ENDPOINTS);
+    if (endpoints == null || endpoints.isEmpty()) {
+      if (config.getString(SOCKET_PATH) != null) {
+        return Collections.singletonList(new JsonObject().put(SOCKET_PATH, config.getString(SOCKET_PATH)));
+      }
+      return Collections.singletonList(new JsonObject().put(HOST, config.getString(HOST)).put(PORT, config.getInteger(PORT)));
+    } else {
+      final List<JsonObject> list = new ArrayList<>();
+      endpoints.forEach(endpoint -> list.add((JsonObject)endpoint));
+      return list;
+    }
   }
 }
@@ -16,7 +16,9 @@
 package am24j.rpc.grpc;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 
@@ -25,7 +27,10 @@ import org.apache.avro.Protocol.Message;
 import org.apache.avro.Schema;
 import org.slf4j.Logger;
 
+import am24j.avro.Avro;
 import am24j.commons.Ctx;
+import am24j.rpc.Metrics;
+import am24j.rpc.Trace;
 import am24j.rpc.avro.Proto;
 import io.grpc.Metadata;
 import io.grpc.Metadata.Key;
@@ -43,6 +48,7 @@ import io.vertx.core.json.JsonObject;
 public class Common {
 
   public static final Key<String> WWW_AUTHENTICATE = Key.of("WWW-Authenticate", Metadata.ASCII_STRING_MARSHALLER);
+  public static final Key<String> TRACEPARENT = Key.of(Trace.HEADER, Metadata.ASCII_STRING_MARSHALLER);
 
   private static final Logger LOG = Ctx.logger("rpc.grpc.commons");
 
@@ -50,14 +56,51 @@ public class Common {
 
   public static MethodDescriptor<Object[], Object> methodDescriptor(final Method method, final Protocol aProto) {
     final Message aMessage = aProto.getMessages().get(Proto.methodName(method));
+    final Type streamType = Proto.requestStreamType(method);
     return MethodDescriptor.<Object[], Object>newBuilder()
-      .setType(Proto.isStream(method) ? MethodType.SERVER_STREAMING : MethodType.UNARY)
+      .setType(methodType(method))
       .setFullMethodName(MethodDescriptor.generateFullMethodName(aProto.getName(), aMessage.getName()))
-      .setRequestMarshaller(new ReqMarshaller(aMessage.getRequest(), Proto.requestTypes(method)))
+      .setRequestMarshaller(
+        streamType == null ?
+          new ReqMarshaller(aMessage.getRequest(), Proto.requestTypes(method)) :
+          new StreamReqMarshaller(aMessage.getRequest(), Proto.requestTypes(method), Avro.forType(streamType), streamType))
       .setResponseMarshaller(new RespMarshaller(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method)))
       .build();
   }
 
+  /**
+   * Returns method descriptor which marshallers record the encoding / decoding of the messages to the metrics
+   */
+  public static MethodDescriptor<Object[], Object> methodDescriptor(final Method method, final Protocol aProto, final Metrics.Method metrics) {
+    final MethodDescriptor<Object[], Object> md = methodDescriptor(method, aProto);
+    return md
+      .toBuilder(new MeteredMarshaller<>(md.getRequestMarshaller(), metrics), new MeteredMarshaller<>(md.getResponseMarshaller(), metrics))
+      .build();
+  }
+
+  public static MethodType methodType(final Method method) {
+    if (Proto.isRequestStream(method)) {
+      return Proto.isStream(method) ? MethodType.BIDI_STREAMING : MethodType.CLIENT_STREAMING;
+    } else {
+      return Proto.isStream(method) ? MethodType.SERVER_STREAMING : MethodType.UNARY;
+    }
+  }
+
+  // request streams - the first message is the call arguments, next are the stream items wrapped by item(Object)
+  static Object[] item(final Object item) {
+    return new Object[] {STREAM_ITEM, item};
+  }
+
+  static boolean isItem(final Object[] message) {
+    return message.length == 2 && message[0] == STREAM_ITEM;
+  }
+
+  static Object unwrapItem(final Object[] message) {
+    return message[1];
+  }
+
+  private static final Object STREAM_ITEM = new Object();
+
   private static class ReqMarshaller implements Marshaller<Object[]> {
 
     private final Schema reqSchema;
@@ -70,8 +113,12 @@ public class Common {
 
     @Override
     public InputStream stream(final Object[] args) {
+      return new ByteArrayInputStream(encode(args));
+    }
+
+    protected byte[] encode(final Object[] args) {
       try {
-        return new ByteArrayInputStream(Proto.encodeReqy(reqSchema, types, args, false));
+        return Proto.encodeReqy(reqSchema, types, args, false);
       } catch (final RuntimeException | Error e) {
         LOG.error("Failed to stream request: {}!", args, e);
         throw e;
@@ -94,6 +141,162 @@ public class Common {
     }
   }
 
+  private static class StreamReqMarshaller extends ReqMarshaller {
+
+    private static final int ARGS = 0;
+    private static final int ITEM = 1;
+
+    private final Schema itemSchema;
+    private final Type itemType;
+
+    private StreamReqMarshaller(final Schema reqSchema, final Type[] types, final Schema itemSchema, final Type itemType) {
+      super(reqSchema, types);
+      this.itemSchema = itemSchema;
+      this.itemType = itemType;
+    }
+
+    @Override
+    public InputStream stream(final Object[] message) {
+      if (isItem(message)) {
+        try {
+          return tagged(ITEM, Proto.encodeItem(itemSchema, itemType, unwrapItem(message), false));
+        } catch (final RuntimeException | Error e) {
+          LOG.error("Failed to stream request item: {}!", message[1], e);
+          throw e;
+        }
+      } else {
+        return tagged(ARGS, encode(message));
+      }
+    }
+
+    // single array - so the stream knows its length
+    private static InputStream tagged(final int tag, final byte[] encoded) {
+      final byte[] tagged = new byte[encoded.length + 1];
+      tagged[0] = (byte)tag;
+      System.arraycopy(encoded, 0, tagged, 1, encoded.length);
+      return new ByteArrayInputStream(tagged);
+    }
+
+    @Override
+    public Object[] parse(final InputStream is) {
+      final int tag;
+      try {
+        tag = is.read();
+      } catch (final IOException e) {
+        LOG.error("Failed to pars request!", e);
+        throw new UncheckedIOException(e);
+      }
+      if (tag == ITEM) {
+        try {
+          return item(Proto.decodeItem(itemSchema, itemType, is, false));
+        } catch (final RuntimeException | Error e) {
+          LOG.error("Failed to pars request item!", e);
+          throw e;
+        }
+      } else if (tag == ARGS) {
+        return super.parse(is);
+      } else {
+        throw new IllegalArgumentException("Invalid request stream message tag: " + tag + "!");
+      }
+    }
+
+    @Override
+    public String toString() {
+      return super.toString() + "\nStream: " + (itemSchema.getType() == Schema.Type.RECORD ? new JsonObject(itemSchema.toString()).encodePrettily() : itemSchema.toString());
+    }
+  }
+
+  // already encoded response (e.g. shared by coalesced calls) - streamed as is
+  static final class Encoded {
+
+    private final byte[] bytes;
+
+    Encoded(final byte[] bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  // the last message marshalled by this thread - the marshallers are called synchronously by the calls' sendMessage and
+  // right before their listeners' onMessage, so the metered calls take their own (see Metrics.Call#recorded)
+  private static final ThreadLocal<Marshalled> MARSHALLED = ThreadLocal.withInitial(Marshalled::new);
+
+  static void decoded(final Metrics.Call call) {
+    MARSHALLED.get().take(true, call);
+  }
+
+  static void encoded(final Metrics.Call call) {
+    MARSHALLED.get().take(false, call);
+  }
+
+  private static final class Marshalled {
+
+    private Metrics.Method method; // null - taken
+    private boolean decoded;
+    private long nanos;
+    private long bytes;
+
+    private void set(final Metrics.Method method, final boolean decoded, final long nanos, final long bytes) {
+      this.method = method;
+      this.decoded = decoded;
+      this.nanos = nanos;
+      this.bytes = bytes;
+    }
+
+    private void take(final boolean decoded, final Metrics.Call call) {
+      if (method == call.method() && this.decoded == decoded) {
+        method = null;
+        call.recorded(decoded, nanos, bytes);
+      }
+    }
+  }
+
+  // records the encoding / decoding time and the message sizes
+  private static class MeteredMarshaller<T> implements Marshaller<T> {
+
+    private final Marshaller<T> marshaller;
+    private final Metrics.Method metrics;
+
+    private MeteredMarshaller(final Marshaller<T> marshaller, final Metrics.Method metrics) {
+      this.marshaller = marshaller;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public InputStream stream(final T value) {
+      final long start = System.nanoTime();
+      final InputStream is = marshaller.stream(value);
+      final long nanos = value instanceof Encoded ? -1 : System.nanoTime() - start;
+      final long bytes = available(is);
+      metrics.encoded(nanos, bytes);
+      MARSHALLED.get().set(metrics, false, nanos, bytes);
+      return is;
+    }
+
+    @Override
+    public T parse(final InputStream is) {
+      final long bytes = available(is);
+      final long start = System.nanoTime();
+      final T value = marshaller.parse(is);
+      final long nanos = System.nanoTime() - start;
+      metrics.decoded(nanos, bytes);
+      MARSHALLED.get().set(metrics, true, nanos, bytes);
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return marshaller.toString();
+    }
+
+    private static long available(final InputStream is) {
+      try {
+        return is.available();
+      } catch (final IOException e) {
+        return 0;
+      }
+    }
+  }
+
   private static class RespMarshaller implements Marshaller<Object> {
 
     private final Schema respSchema;
@@ -108,6 +311,9 @@ public class Common {
 
     @Override
     public InputStream stream(final Object resp) {
+      if (resp instanceof Encoded) {
+        return new ByteArrayInputStream(((Encoded)resp).bytes);
+      }
       try {
         return new ByteArrayInputStream(Proto.encodeResp(respSchema, errorSchema, type, resp, false));
       } catch (final RuntimeException | Error e) {
@@ -21,11 +21,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Publisher;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -35,19 +43,36 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
 import org.slf4j.Logger;
 
 import am24j.commons.ASync;
 import am24j.commons.Ctx;
+import am24j.commons.Ctx.RunAs;
 import am24j.commons.Reflect;
 import am24j.commons.Utils;
 import am24j.rpc.Auth;
 import am24j.rpc.AuthVerfier;
+import am24j.rpc.BlockingExecutor;
+import am24j.rpc.Cached;
+import am24j.rpc.ConcurrencyLimiter;
+import am24j.rpc.Deadline;
+import am24j.rpc.Idempotent;
+import am24j.rpc.Invoker;
+import am24j.rpc.Local;
+import am24j.rpc.Metrics;
+import am24j.rpc.Partition;
 import am24j.rpc.RPCException;
+import am24j.rpc.Registry;
 import am24j.rpc.Remote;
+import am24j.rpc.ResponseCache;
 import am24j.rpc.Service;
+import am24j.rpc.SingleFlight;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
 import am24j.rpc.avro.Proto;
 import am24j.vertx.VertxUtils;
+import io.grpc.ForwardingServerCall;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
@@ -57,9 +82,11 @@ import io.grpc.ServerCallHandler;
 import io.grpc.ServerMethodDefinition;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.Status;
+import io.vertx.core.Context;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 
 /**
  * GRCPC Server
@@ -71,22 +98,69 @@ public class Server implements AutoCloseable {
 
   private static final Logger LOG = Ctx.logger("rpc.grpc.server");
 
+  public static final String STREAM_HIGH_WATERMARK = "streamHighWatermark";
+  public static final String STREAM_LOW_WATERMARK = "streamLowWatermark";
+
   private final List<AuthVerfier<Metadata>> authVerfiers;
   private final Vertx vertx;
 
+  private final int streamHighWatermark;
+  private final int streamLowWatermark;
+
   private final List<ServerServiceDefinition> ssdList;
 
   private final Future<String> deployment;
+  private final Future<Runnable> registration;
+  private final Runnable unregisterLocal;
+  private final Registry registry;
+  private final ResponseCache cache;
+  private final ConcurrencyLimiter limiter; // null if not enabled
+  private final BlockingExecutor blockingExecutor;
+  private final Metrics metrics;
+  private final Tracer tracer;
+
+  private final SingleFlight singleFlight = new SingleFlight(); // coalesces the idempotent calls
+
+  public Server(
+      final List<Object> services,
+      final List<AuthVerfier<Metadata>> authVerfiers,
+      final DeploymentOptions options,
+      final Vertx vertx) {
+    this(services, authVerfiers, options, Optional.empty(), vertx);
+  }
+
+  public Server(
+      final List<Object> services,
+      final List<AuthVerfier<Metadata>> authVerfiers,
+      final DeploymentOptions options,
+      final Optional<Registry> registry,
+      final Vertx vertx) {
+    this(services, authVerfiers, options, registry, Optional.empty(), vertx);
+  }
 
+  /**
+   * If there is a response cache the responses of the {@link Cached} methods are cached.
+   */
   @Inject
   public Server(
       @Remote final List<Object> services,
       final List<AuthVerfier<Metadata>> authVerfiers,
       @Named("grpc_server.json") final DeploymentOptions options,
+      final Optional<Registry> registry,
+      final Optional<ResponseCache> cache,
       final Vertx vertx) {
     LOG.info("Start (options: {}, servicesL {})", options.toJson(), services);
     this.authVerfiers = authVerfiers;
     this.vertx = vertx;
+    this.registry = registry.orElse(null);
+    this.cache = cache.orElse(null);
+    final JsonObject config = options.getConfig() == null ? new JsonObject() : options.getConfig();
+    streamHighWatermark = Math.max(1, config.getInteger(STREAM_HIGH_WATERMARK, 128));
+    streamLowWatermark = Math.min(streamHighWatermark - 1, Math.max(0, config.getInteger(STREAM_LOW_WATERMARK, streamHighWatermark / 4)));
+    limiter = ConcurrencyLimiter.create(config);
+    blockingExecutor = BlockingExecutor.create(config, vertx);
+    metrics = Metrics.register("grpc.server", true, vertx);
+    tracer = Tracer.create(config, vertx);
     ssdList =
       services.stream()
         .flatMap(this::serviceDefinitions)
@@ -100,22 +174,69 @@ public class Server implements AutoCloseable {
       });
     }
     deployment = vertx.deployVerticle(() -> new ServerVerticle(ssdList), options);
+    // when started - advertise
+    registration = registry
+      .map(reg -> deployment.map(deploymentID -> reg.register(
+        Registry.GRPC,
+        ssdList.stream().map(ssd -> ssd.getServiceDescriptor().getName()).collect(Collectors.toList()),
+        config)))
+      .orElse(Future.succeededFuture(() -> {}));
+    // co-located clients (in local mode) call the services directly, authenticated by the same verifiers
+    unregisterLocal = Local.register(services, blockingExecutor, credentials -> {
+      final Metadata headers = new Metadata();
+      if (credentials != null) {
+        headers.put(Common.WWW_AUTHENTICATE, credentials);
+      }
+      return ASync
+        .sequentiallyGetSkipErrors(
+          Utils.map(
+            authVerfiers.iterator(),
+            authVerifier -> authVerifier.verify(headers)))
+        .thenApply(auth -> {
+          if (auth == null) {
+            throw new SecurityException("Not authenticated!");
+          }
+          return auth;
+        });
+    });
   }
 
   @Override
   public void close() {
     LOG.info("Close");
+    registration.onSuccess(Runnable::run);
+    unregisterLocal.run();
     deployment.map(deploymentID -> {
       vertx.undeploy(deploymentID);
       return null;
     });
+    blockingExecutor.close();
+    metrics.close();
+    tracer.close();
   }
 
-
   public List<ServerServiceDefinition> ssdList() {
     return new ArrayList<>(ssdList);
   }
 
+  /**
+   * Returns the concurrency limiter (its limits and rejections) or null if there is no {@link ConcurrencyLimiter#CONFIG}
+   */
+  public ConcurrencyLimiter limiter() {
+    return limiter;
+  }
+
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
   private Stream<ServerServiceDefinition> serviceDefinitions(final Object service) {
     return Arrays.stream(service.getClass().getInterfaces()) // only directly declared interfaces
       .filter(iClass -> Objects.nonNull(iClass.getAnnotation(Service.class)))
@@ -130,18 +251,30 @@ public class Server implements AutoCloseable {
       .collect(Collectors.toMap(Reflect::methodSig, Function.identity()))
       .values()
       .forEach(method -> {
-        final MethodDescriptor<Object[], Object> md = Common.methodDescriptor(method, aProto);
+        final Metrics.Method methodMetrics = metrics.method(MethodDescriptor.generateFullMethodName(aProto.getName(), Proto.methodName(method)));
+        final MethodDescriptor<Object[], Object> md = Common.methodDescriptor(method, aProto, methodMetrics);
+        final boolean blocking = BlockingExecutor.isBlocking(method, service);
         builder.addMethod(
           ServerMethodDefinition.create(
             md,
             new ServerCallHandler<Object[], Object>() {
 
               @Override
-              public Listener<Object[]> startCall(final ServerCall<Object[], Object> call, final Metadata headers) {
-                if (md.getType() == MethodType.UNARY) {
-                  return new UnaryListener(call, headers, method, service);
+              public Listener<Object[]> startCall(final ServerCall<Object[], Object> serverCall, final Metadata headers) {
+                final Metrics.Call metered = methodMetrics.start();
+                final ServerCall<Object[], Object> call = new MeteredCall(serverCall, metered);
+                final io.grpc.Deadline grpcDeadline = io.grpc.Context.current().getDeadline();
+                if (grpcDeadline != null && grpcDeadline.isExpired()) { // don't even decode the args
+                  LOG.debug("Deadline expired before call start: {}", method);
+                  call.close(Status.DEADLINE_EXCEEDED.withDescription("Deadline expired before call start!"), new Metadata());
+                  return new Listener<>() {};
+                }
+                final Deadline deadline = grpcDeadline == null ? null : Deadline.after(grpcDeadline.timeRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                final Trace trace = tracer.server(headers.get(Common.TRACEPARENT), metered);
+                if (md.getType() == MethodType.UNARY || md.getType() == MethodType.CLIENT_STREAMING) {
+                  return new UnaryListener(call, metered, headers, deadline, trace, method, service, blocking);
                 } else {
-                  return new ServerStreamListener(call, headers, method, service);
+                  return new ServerStreamListener(call, metered, headers, deadline, trace, method, service, blocking);
                 }
               }
             }));
@@ -151,81 +284,142 @@ public class Server implements AutoCloseable {
 
   private final class UnaryListener extends BaseListener {
 
+    private volatile CompletionStage<?> result;
+
     private UnaryListener(
-        final ServerCall<Object[], Object> call, final Metadata headers,
-        final Method method, final Object service) {
-      super(call, headers, method, service);
+        final ServerCall<Object[], Object> call, final Metrics.Call metered, final Metadata headers, final Deadline deadline,
+        final Trace trace, final Method method, final Object service, final boolean blocking) {
+      super(call, metered, headers, deadline, trace, method, service, blocking);
+    }
+
+    @Override
+    public void onCancel() {
+      super.onCancel();
+      if (result instanceof CompletableFuture) {
+        result.toCompletableFuture().cancel(false); // of a minimal stage (not cancellable) - cancels a copy
+      }
     }
 
     @Override
     protected void invoke(final Object[] args) {
       try {
-        final Object result = method.invoke(service, args);
-        ((CompletionStage<?>)result).whenCompleteAsync((r, t) -> {
-          if (t == null) {
+        if (requestStream == null && cache != null && method.isAnnotationPresent(Cached.class)) {
+          // the loader runs later (on the call's context or on the blocking executor) - in the contexts of the call
+          final RunAs[] ctxs = {Ctx.ctx(Partition.class).orElse(null), trace, deadline, Ctx.ctx(Auth.class).orElse(null)};
+          result = cache.get(method, args, false, blocking ? blockingExecutor : vExecutor, () -> Invoker.callAs(ctxs, () -> encoded(args)))
+            .thenApply(Common.Encoded::new);
+        } else if (requestStream == null && method.isAnnotationPresent(Idempotent.class)) { // joins the equal in-flight call, if any
+          final Message aMessage = Proto.protocol(method.getDeclaringClass()).getMessages().get(Proto.methodName(method));
+          result = singleFlight.call(
+            SingleFlight.key(method, Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false), Ctx.ctx(Auth.class).orElse(null), null),
+            () -> invoke0(args),
+            resp -> new Common.Encoded(Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), resp, false)));
+        } else {
+          result = (CompletionStage<?>)method.invoke(service, args);
+        }
+        result.whenCompleteAsync((r, t) -> {
+          if (permit != null) {
+            permit.release(t instanceof CancellationException);
+          }
+          if (cancelled) {
+            return; // client has gone
+          } else if (t == null) {
             call.sendMessage(r);
+            call.close(Status.OK, new Metadata()); // with request stream - the client could still stream
           } else {
-            error(t);
+            failed(t);
           }
         }, vExecutor);
       } catch (final InvocationTargetException e) {
-        error(e.getCause() == null ? e : e.getCause());
+        failed(e.getCause() == null ? e : e.getCause());
       } catch (final Throwable t) {
-        error(t);
+        failed(t);
+      }
+    }
+
+    // sends the error and closes the call, on the call's context
+    private void failed(final Throwable t) {
+      if (Vertx.currentContext() != context) {
+        vExecutor.execute(() -> failed(t));
+        return;
+      }
+      error(t);
+      call.close(Status.OK, new Metadata());
+    }
+
+    private CompletionStage<byte[]> encoded(final Object[] args) {
+      final Message aMessage = Proto.protocol(method.getDeclaringClass()).getMessages().get(Proto.methodName(method));
+      return invoke0(args).thenApply(resp -> Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), resp, false));
+    }
+
+    private CompletionStage<?> invoke0(final Object[] args) {
+      try {
+        return (CompletionStage<?>)method.invoke(service, args);
+      } catch (final InvocationTargetException e) {
+        return CompletableFuture.failedFuture(e.getCause() == null ? e : e.getCause());
+      } catch (final ReflectiveOperationException e) {
+        return CompletableFuture.failedFuture(e);
       }
     }
   }
 
+  // Subscriber signals are queued and processed on the call's context. The service subscription is asked for items
+  // in windows - while the call is ready up to streamHighWatermark items are kept requested and the window is refilled
+  // when the outstanding items drop to streamLowWatermark
   private final class ServerStreamListener extends BaseListener {
 
-    private final CompletableFuture<Subscription> subscriptionFuture = new CompletableFuture<>(); // TODO via vertx could we set and use it in single thread
+    private final Queue<Object> signals = new ConcurrentLinkedQueue<>(); // items or Signal-s
+    private final AtomicInteger wip = new AtomicInteger();
+
+    // accessed only on call's context
+    private Subscription subscription;
+    private long window; // requested from the subscription but not received yet
+    private boolean done;
+
     private final Subscriber<Object> subscriber = new Subscriber<>() {
 
       @Override
       public void onSubscribe(final Subscription subscription) {
-        vExecutor.execute(() -> subscriptionFuture.complete(subscription));
+        signal(new Signal(subscription, null));
       }
 
       @Override
       public void onNext(final Object item) {
-        vExecutor.execute(() -> {
-          call.sendMessage(item);
-          if (call.isReady()) {
-            onReady();
-          }
-        });
+        signal(item);
       }
 
       @Override
       public void onError(final Throwable throwable) {
-        vExecutor.execute(() -> {
-          if (!subscriptionFuture.isDone()) {
-            subscriptionFuture.completeExceptionally(throwable);
-          }
-          error(throwable);
-        });
+        signal(new Signal(null, throwable));
       }
 
       @Override
       public void onComplete() {
-        vExecutor.execute(() -> call.close(Status.OK, new Metadata()));
+        signal(Signal.COMPLETE);
       }
     };
 
     private ServerStreamListener(
-        final ServerCall<Object[], Object> call, final Metadata headers,
-        final Method method, final Object service) {
-      super(call, headers, method, service);
+        final ServerCall<Object[], Object> call, final Metrics.Call metered, final Metadata headers, final Deadline deadline,
+        final Trace trace, final Method method, final Object service, final boolean blocking) {
+      super(call, metered, headers, deadline, trace, method, service, blocking);
     }
 
     @Override
     public void onCancel() {
-
+      super.onCancel();
+      if (!done) {
+        done = true;
+        signals.clear();
+        if (subscription != null) {
+          subscription.cancel(); // if not subscribed yet - the subscription will be cancelled when received
+        }
+      }
     }
 
     @Override
     public void onReady() {
-      subscriptionFuture.thenAcceptAsync(subscription -> subscription.request(1), vExecutor);
+      refill(); // on call's context, as the drain
     }
 
     @Override
@@ -236,65 +430,348 @@ public class Server implements AutoCloseable {
         realArgs[args.length] = subscriber;
         method.invoke(service, realArgs);
       } catch (final InvocationTargetException e) {
-        error(e.getCause() == null ? e : e.getCause());
+        signal(new Signal(null, e.getCause() == null ? e : e.getCause()));
       } catch (final Throwable t) {
-        error(t);
+        signal(new Signal(null, t));
+      }
+    }
+
+    private void signal(final Object signal) {
+      signals.offer(signal);
+      if (wip.getAndIncrement() == 0) {
+        if (Vertx.currentContext() == context) {
+          drain(); // in context (e.g. synchronous producer) - no hop
+        } else {
+          context.runOnContext(v -> drain());
+        }
+      }
+    }
+
+    private void drain() {
+      int missed = 1;
+      do {
+        for (Object signal; (signal = signals.poll()) != null;) {
+          if (signal instanceof Signal) {
+            final Signal control = (Signal)signal;
+            if (control.subscription != null) {
+              if (subscription == null && !done) {
+                subscription = control.subscription;
+              } else {
+                control.subscription.cancel();
+              }
+            } else if (!done) {
+              done = true;
+              if (control != Signal.COMPLETE) {
+                error(control.error);
+              }
+              call.close(Status.OK, new Metadata());
+            }
+          } else if (!done) {
+            window--;
+            call.sendMessage(signal);
+          }
+        }
+        refill();
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void refill() {
+      if (subscription != null && !done && window <= streamLowWatermark && call.isReady()) {
+        final long n = streamHighWatermark - window;
+        window = streamHighWatermark;
+        subscription.request(n);
+      }
+    }
+  }
+
+  // records the call end by the close status (OK with sent error - ERROR) and the response stream items
+  private static final class MeteredCall extends ForwardingServerCall.SimpleForwardingServerCall<Object[], Object> {
+
+    private final Metrics.Call metered;
+    private final boolean responseStream;
+
+    private volatile boolean failed;
+
+    private MeteredCall(final ServerCall<Object[], Object> call, final Metrics.Call metered) {
+      super(call);
+      this.metered = metered;
+      responseStream = !call.getMethodDescriptor().getType().serverSendsOneMessage();
+    }
+
+    @Override
+    public void sendMessage(final Object message) {
+      if (message instanceof am24j.rpc.avro.RPCException) {
+        failed = true;
+      } else if (responseStream) {
+        metered.item();
       }
+      super.sendMessage(message);
+      Common.encoded(metered);
+    }
+
+    @Override
+    public void close(final Status status, final Metadata trailers) {
+      metered.end(status.isOk() ? (failed ? Metrics.ERROR : Metrics.OK) : status.getCode().name());
+      super.close(status, trailers);
+    }
+  }
+
+  private static final class Signal {
+
+    private static final Signal COMPLETE = new Signal(null, null);
+
+    private final Subscription subscription;
+    private final Throwable error;
+
+    private Signal(final Subscription subscription, final Throwable error) {
+      this.subscription = subscription;
+      this.error = error;
     }
   }
 
   private abstract class BaseListener extends Listener<Object[]> {
 
     protected final ServerCall<Object[], Object> call;
+    protected final Metrics.Call metered;
+    protected final Deadline deadline;
+    protected final Trace trace; // null if not traced
     protected final Method method;
     protected final Object service;
+    protected final boolean blocking;
 
+    protected final Context context;
     protected final Executor vExecutor;
 
+    protected final RequestPublisher requestStream;
+
     private final CompletionStage<Auth> authFuture;
     private final CompletableFuture<Void> ready = new CompletableFuture<>(); // when halfClosed is received, then can send message
 
+    private boolean argsReceived;
+    protected boolean cancelled;
+    protected volatile ConcurrencyLimiter.Permit permit; // of a limited call
+
     private BaseListener(
-        final ServerCall<Object[], Object> call, final Metadata headers,
-        final Method method, final Object service) {
+        final ServerCall<Object[], Object> call, final Metrics.Call metered, final Metadata headers, final Deadline deadline,
+        final Trace trace, final Method method, final Object service, final boolean blocking) {
       this.call = call;
+      this.metered = metered;
+      this.deadline = deadline;
+      this.trace = trace;
       this.method = method;
       this.service = service;
+      this.blocking = blocking;
 
+      context = vertx.getOrCreateContext();
       vExecutor = VertxUtils.ctxExecutor(vertx);
+      requestStream = Proto.isRequestStream(method) ? new RequestPublisher() : null;
 
-      authFuture = ASync
+      final CompletionStage<Auth> authenticated = ASync
         .sequentiallyGetSkipErrors(
           Utils.map(
             authVerfiers.iterator(),
-            authVerifier -> authVerifier.verify(headers)))
-        .whenCompleteAsync((auth, error) -> {
-          if (error == null && auth != null) {
-            call.request(1); // data, otherwise neither message non half is received
-          } else {
-            call.close(Status.UNAUTHENTICATED, new Metadata());
+            authVerifier -> authVerifier.verify(headers)));
+      final BiConsumer<Auth, Throwable> onVerified = (ctx, error) -> {
+        if (error == null && ctx != null) {
+          metered.principal(ctx);
+          if (limiter != null && call.getMethodDescriptor().getType() == MethodType.UNARY) {
+            permit = limiter.acquire(call.getMethodDescriptor().getFullMethodName(), ctx);
+            if (permit == null) { // over the limit - the args are not even requested
+              call.close(Status.RESOURCE_EXHAUSTED.withDescription("Concurrency limit exceeded!"), new Metadata());
+              return;
+            }
           }
-        }, vExecutor)
-        .thenCombine(ready, (auth, v) -> auth);
+          call.request(1); // data, otherwise neither message non half is received
+        } else {
+          call.close(Status.UNAUTHENTICATED, new Metadata());
+        }
+      };
+      // fast path - if verified (e.g. all verifiers completed immediately) and on the context continues inline
+      final CompletionStage<Auth> verified = Vertx.currentContext() == context ?
+        ASync.whenComplete(authenticated, onVerified, vExecutor) :
+        authenticated.whenCompleteAsync(onVerified, vExecutor);
+      // with request stream the call is invoked on the first message (the args), otherwise when the request is half closed
+      authFuture = requestStream == null ? verified.thenCombine(ready, (auth, v) -> auth) : verified;
     }
 
     @Override
-    public void onMessage(final Object[] args) {
-      authFuture.thenAccept(ctx -> ctx.runAs(() -> invoke(args)));
+    public void onMessage(final Object[] message) {
+      Common.decoded(metered);
+      if (argsReceived) {
+        if (requestStream == null || !Common.isItem(message)) {
+          call.close(Status.INVALID_ARGUMENT.withDescription("Unexpected message!"), new Metadata());
+        } else {
+          metered.item();
+          requestStream.onNext(Common.unwrapItem(message));
+        }
+      } else {
+        argsReceived = true;
+        authFuture.thenAccept(ctx -> ctx.runAs(() -> {
+          if (cancelled) {
+            LOG.debug("Call cancelled before invocation: {}", method);
+          } else if (deadline == null) {
+            start(message);
+          } else if (deadline.expired()) {
+            LOG.debug("Deadline expired before invocation: {}", method);
+            call.close(Status.DEADLINE_EXCEEDED.withDescription("Deadline expired before invocation!"), new Metadata());
+          } else {
+            deadline.runAs(() -> start(message));
+          }
+        }));
+      }
+    }
+
+    private void start(final Object[] message) {
+      if (trace == null) {
+        startPartitioned(message);
+      } else {
+        trace.runAs(() -> startPartitioned(message));
+      }
+    }
+
+    private void startPartitioned(final Object[] message) {
+      final Partition partition = registry == null ? null : registry.partition(method, message);
+      if (partition == null) {
+        start0(message);
+      } else {
+        partition.runAs(() -> start0(message));
+      }
+    }
+
+    private void start0(final Object[] message) {
+      if (requestStream == null) {
+        dispatch(message);
+      } else {
+        call.sendHeaders(new Metadata());
+        final Object[] args = new Object[message.length + 1];
+        System.arraycopy(message, 0, args, 0, message.length);
+        args[message.length] = requestStream;
+        dispatch(args);
+      }
+    }
+
+    // blocking methods are invoked on the blocking executor, in the contexts of the call
+    private void dispatch(final Object[] args) {
+      metered.invoking();
+      if (blocking) {
+        final RunAs[] ctxs = {Ctx.ctx(Partition.class).orElse(null), trace, deadline, Ctx.ctx(Auth.class).orElse(null)};
+        blockingExecutor.execute(() -> Invoker.callAs(ctxs, () -> {
+          invoke(args);
+          return null;
+        }));
+      } else {
+        invoke(args);
+      }
     }
 
     @Override
     public void onHalfClose() {
-      call.sendHeaders(new Metadata());
-      ready.complete(null);
+      if (requestStream == null) {
+        call.sendHeaders(new Metadata());
+        ready.complete(null);
+      } else {
+        requestStream.onComplete();
+      }
+    }
+
+    @Override
+    public void onCancel() {
+      cancelled = true;
+      metered.end(Metrics.CANCELLED);
+      if (permit != null) {
+        permit.release(true);
+      }
+      if (requestStream != null) {
+        requestStream.onCancel();
+      }
+    }
+
+    @Override
+    public void onComplete() {
+      if (permit != null) { // if not released on result (e.g. failed before invocation)
+        permit.release(false);
+      }
     }
 
     protected abstract void invoke(final Object[] args);
 
     protected void error(final Throwable t) {
+      if (Vertx.currentContext() != context) { // e.g. failed on the blocking executor
+        vExecutor.execute(() -> error(t));
+        return;
+      }
       final String uuid = RPCException.uuid();
       LOG.error("[{}] Call failed!", uuid, t);
       call.sendMessage(new am24j.rpc.avro.RPCException().setUUID(uuid).setMessage(t.getMessage()).setType(t.getClass().getName()));
     }
+
+    // request stream passed to the service. Messages are pulled from the call only on subscriber's demand
+    protected final class RequestPublisher implements Publisher<Object>, Subscription {
+
+      private Subscriber<? super Object> subscriber;
+      private boolean completed;
+      private boolean cancelled;
+
+      @Override
+      public void subscribe(final Subscriber<? super Object> subscriber) {
+        vExecutor.execute(() -> {
+          if (this.subscriber != null) {
+            subscriber.onSubscribe(this);
+            subscriber.onError(new IllegalStateException("Request stream supports only a single subscriber!"));
+            return;
+          }
+          this.subscriber = subscriber;
+          subscriber.onSubscribe(this);
+          if (BaseListener.this.cancelled) {
+            subscriber.onError(new CancellationException("Call cancelled by the client!"));
+          } else if (completed && !cancelled) {
+            subscriber.onComplete();
+          }
+        });
+      }
+
+      @Override
+      public void request(final long n) {
+        vExecutor.execute(() -> {
+          if (cancelled || completed) {
+            return;
+          }
+          if (n <= 0) {
+            cancelled = true;
+            subscriber.onError(new IllegalArgumentException("Request must be positive! Found: " + n + "!"));
+            return;
+          }
+          call.request(n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)n);
+        });
+      }
+
+      @Override
+      public void cancel() {
+        vExecutor.execute(() -> cancelled = true);
+      }
+
+      private void onNext(final Object item) {
+        if (!cancelled) {
+          subscriber.onNext(item);
+        }
+      }
+
+      private void onComplete() {
+        completed = true;
+        if (subscriber != null && !cancelled) {
+          subscriber.onComplete();
+        }
+      }
+
+      private void onCancel() {
+        if (!completed && !cancelled) {
+          cancelled = true;
+          if (subscriber != null) {
+            subscriber.onError(new CancellationException("Call cancelled by the client!"));
+          }
+        }
+      }
+    }
   }
 }
\ No newline at end of file
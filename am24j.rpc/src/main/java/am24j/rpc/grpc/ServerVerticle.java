@@ -21,14 +21,21 @@ import javax.inject.Inject;
 
 import am24j.commons.Builder;
 import io.grpc.ServerServiceDefinition;
+import io.grpc.netty.NettyServerBuilder;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.net.impl.transport.Transport;
 import io.vertx.grpc.VertxServer;
 import io.vertx.grpc.VertxServerBuilder;
 
 /**
- * GRPC Server Verticle
+ * GRPC Server Verticle. If {@link #SOCKET_PATH} is configured listens on that unix domain socket (instead of host / port),
+ * for same host clients. Domain sockets require Vertx with native transport (e.g. epoll on Linux, see
+ * <code>preferNativeTransport</code> of vertx options).
  *
  * @author avgustinmm
  */
@@ -36,9 +43,11 @@ public class ServerVerticle extends AbstractVerticle {
 
   public static final String HOST = "host";
   public static final String PORT = "port";
+  public static final String SOCKET_PATH = "socketPath";
 
   private final List<ServerServiceDefinition> services;
   private VertxServer server;
+  private io.grpc.Server udsServer; // if listens on domain socket
 
   @Inject
   public ServerVerticle(final List<ServerServiceDefinition> services) {
@@ -48,6 +57,12 @@ public class ServerVerticle extends AbstractVerticle {
   @Override
   public void start(final Promise<Void> startPromise) throws Exception {
     final JsonObject config = context.config();
+    if (config.getString(SOCKET_PATH) != null) {
+      udsServer = udsServer(config);
+      udsServer.start();
+      startPromise.complete();
+      return;
+    }
     final VertxServerBuilder builder =
       VertxServerBuilder
         .forAddress(vertx, config.getString(HOST), config.getInteger(PORT));
@@ -61,6 +76,34 @@ public class ServerVerticle extends AbstractVerticle {
 
   @Override
   public void stop(final Promise<Void> stopPromise) throws Exception {
-    server.shutdown(stopPromise);
+    if (udsServer == null) {
+      server.shutdown(stopPromise);
+    } else {
+      udsServer.shutdown();
+      stopPromise.complete();
+    }
+  }
+
+  // vertx grpc server builder supports only tcp (inet) channels - netty server on the vertx domain socket channels
+  // and event loops, calls are dispatched on the verticle context (as by vertx grpc server)
+  private io.grpc.Server udsServer(final JsonObject config) {
+    final VertxInternal vertxInternal = (VertxInternal)vertx;
+    final Transport transport = vertxInternal.transport();
+    if (!vertx.isNativeTransportEnabled()) {
+      throw new IllegalStateException("Domain socket " + config.getString(SOCKET_PATH) + " requires native transport!");
+    }
+    final ContextInternal contextInternal = (ContextInternal)context;
+    final NettyServerBuilder builder =
+      NettyServerBuilder
+        .forAddress(transport.convert(SocketAddress.domainSocketAddress(config.getString(SOCKET_PATH))))
+        .channelFactory(transport.serverChannelFactory(true))
+        .bossEventLoopGroup(vertxInternal.getAcceptorEventLoopGroup())
+        .workerEventLoopGroup(contextInternal.nettyEventLoop());
+    builder.executor(command -> contextInternal.dispatch(v -> command.run()));
+    Builder.inject(config, builder);
+    for (final ServerServiceDefinition service : services) {
+      builder.addService(service);
+    }
+    return builder.build();
   }
 }
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Batch call wire format. A batch request is a list of calls, each with method (<code>&lt;service&gt;/&lt;method&gt;</code>,
+ * i.e. the method path relative to the RPC root) and args (encoded as for a single call). The response is a stream of
+ * results, in completion order, each with the index of the call and the encoded response (as for a single call) or an error.
+ * <ul>
+ * <li>JSON - request: <code>[{"method": "...", "args": {...}, "traceparent": "..."}, ...]</code> (traceparent is
+ * optional), response: new line delimited <code>{"index": i, "result": {...}}</code> or <code>{"index": i, "error": "..."}</code></li>
+ * <li>Avro binary - request: array of (string method, bytes args, string traceparent - empty if none) records, response:
+ * sequence of (int index, boolean ok, bytes result or string error) records</li>
+ * </ul>
+ *
+ * @author avgustinmm
+ */
+class Batch {
+
+  static final String PATH = Server.HTTP_RPC_ROOT + "/_batch";
+
+  private static final EncoderFactory ENCODER_FACTORY = new EncoderFactory();
+  private static final DecoderFactory DECODER_FACTORY = new DecoderFactory();
+
+  private Batch() {}
+
+  static class Call {
+
+    final String method;
+    final byte[] args;
+    final String traceparent; // null if none
+
+    Call(final String method, final byte[] args, final String traceparent) {
+      this.method = method;
+      this.args = args;
+      this.traceparent = traceparent;
+    }
+  }
+
+  static class Result {
+
+    final int index;
+    final byte[] result; // null on error
+    final String error;
+
+    Result(final int index, final byte[] result, final String error) {
+      this.index = index;
+      this.result = result;
+      this.error = error;
+    }
+  }
+
+  static Buffer encodeCalls(final List<Call> calls, final boolean json) {
+    if (json) {
+      final JsonArray array = new JsonArray();
+      calls.forEach(call -> {
+        final JsonObject args = call.args.length == 0 ? new JsonObject() : new JsonObject(new String(call.args, StandardCharsets.UTF_8)); // no args
+        final JsonObject entry = new JsonObject().put("method", call.method).put("args", args);
+        if (call.traceparent != null) {
+          entry.put("traceparent", call.traceparent);
+        }
+        array.add(entry);
+      });
+      return array.toBuffer();
+    } else {
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      final BinaryEncoder encoder = ENCODER_FACTORY.binaryEncoder(baos, null);
+      try {
+        encoder.writeArrayStart();
+        encoder.setItemCount(calls.size());
+        for (final Call call : calls) {
+          encoder.startItem();
+          encoder.writeString(call.method);
+          encoder.writeBytes(call.args);
+          encoder.writeString(call.traceparent == null ? "" : call.traceparent);
+        }
+        encoder.writeArrayEnd();
+        encoder.flush();
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return Buffer.buffer(baos.toByteArray());
+    }
+  }
+
+  static List<Call> decodeCalls(final Buffer body, final boolean json) {
+    final List<Call> calls = new ArrayList<>();
+    if (json) {
+      for (final Object entry : new JsonArray(body)) {
+        final JsonObject call = (JsonObject)entry;
+        final JsonObject args = call.getJsonObject("args");
+        calls.add(
+          new Call(
+            call.getString("method"),
+            (args == null ? new JsonObject() : args).encode().getBytes(StandardCharsets.UTF_8),
+            call.getString("traceparent")));
+      }
+    } else {
+      final BinaryDecoder decoder = DECODER_FACTORY.binaryDecoder(body.getBytes(), null);
+      try {
+        for (long n = decoder.readArrayStart(); n > 0; n = decoder.arrayNext()) {
+          for (long i = 0; i < n; i++) {
+            final String method = decoder.readString();
+            final byte[] args = bytes(decoder);
+            final String traceparent = decoder.readString();
+            calls.add(new Call(method, args, traceparent.isEmpty() ? null : traceparent));
+          }
+        }
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return calls;
+  }
+
+  static Buffer encodeResult(final Result result, final boolean json) {
+    if (json) {
+      final JsonObject jsonResult = new JsonObject().put("index", result.index);
+      if (result.result == null) {
+        jsonResult.put("error", result.error);
+      } else {
+        jsonResult.put("result", new JsonObject(new String(result.result, StandardCharsets.UTF_8)));
+      }
+      return jsonResult.toBuffer().appendByte((byte)'\n');
+    } else {
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      final BinaryEncoder encoder = ENCODER_FACTORY.binaryEncoder(baos, null);
+      try {
+        encoder.writeInt(result.index);
+        encoder.writeBoolean(result.result != null);
+        if (result.result == null) {
+          encoder.writeString(result.error);
+        } else {
+          encoder.writeBytes(result.result);
+        }
+        encoder.flush();
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return Buffer.buffer(baos.toByteArray());
+    }
+  }
+
+  private static byte[] bytes(final BinaryDecoder decoder) throws IOException {
+    final ByteBuffer buff = decoder.readBytes(null);
+    final byte[] bytes = new byte[buff.remaining()];
+    buff.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Incrementally decodes the results from the response chunks, as they arrive.
+   */
+  static class ResultDecoder {
+
+    private final boolean json;
+    private final Consumer<Result> consumer;
+
+    private Buffer pending = Buffer.buffer();
+
+    ResultDecoder(final boolean json, final Consumer<Result> consumer) {
+      this.json = json;
+      this.consumer = consumer;
+    }
+
+    void handle(final Buffer chunk) {
+      pending.appendBuffer(chunk);
+      int start = 0;
+      if (json) {
+        for (int i = 0; i < pending.length(); i++) {
+          if (pending.getByte(i) == '\n') {
+            final JsonObject result = new JsonObject(pending.slice(start, i));
+            final JsonObject encoded = result.getJsonObject("result");
+            consumer.accept(
+              new Result(
+                result.getInteger("index"),
+                encoded == null ? null : encoded.encode().getBytes(StandardCharsets.UTF_8),
+                result.getString("error")));
+            start = i + 1;
+          }
+        }
+      } else {
+        final byte[] bytes = pending.getBytes();
+        while (start < bytes.length) {
+          final ByteArrayInputStream is = new ByteArrayInputStream(bytes, start, bytes.length - start);
+          final BinaryDecoder decoder = DECODER_FACTORY.directBinaryDecoder(is, null);
+          try {
+            final int index = decoder.readInt();
+            final Result result = decoder.readBoolean() ? new Result(index, bytes(decoder), null) : new Result(index, null, decoder.readString());
+            start = bytes.length - is.available();
+            consumer.accept(result);
+          } catch (final EOFException e) {
+            break; // incomplete - wait for more
+          } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      }
+      if (start > 0) {
+        pending = pending.getBuffer(start, pending.length());
+      }
+    }
+  }
+}
@@ -22,13 +22,25 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -40,18 +52,33 @@ import org.slf4j.Logger;
 
 import am24j.commons.Ctx;
 import am24j.commons.JsonReader;
+import am24j.rpc.Deadline;
+import am24j.rpc.Local;
+import am24j.rpc.Metrics;
+import am24j.rpc.NearCache;
+import am24j.rpc.Partition;
+import am24j.rpc.Registry;
+import am24j.rpc.Timeout;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
 import am24j.rpc.avro.Proto;
 import am24j.rpc.avro.RPCException;
 import am24j.vertx.VertxUtils;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
 
 /**
  * HTTP RPC client. Single threaded.
@@ -65,26 +92,93 @@ public class Client implements AutoCloseable {
 
   private static final String HTTP_RPC_ROOT = Ctx.prop("rpc.http.root", "/rpc");
 
+  public static final String DISCOVERY = "discovery"; // if true - endpoints are resolved from the Registry by service name
+  public static final String BATCH_WINDOW = "batchWindow"; // ms, if positive - unary calls issued within the window are sent as a batch
+  public static final String BATCH_MAX_SIZE = "batchMaxSize"; // max calls in a batch, when reached the batch is sent immediately
+  public static final String SOCKET_PATH = "socketPath"; // if set - the default endpoint is this unix domain socket (requires native transport)
+
   private final boolean json;
   private final HttpClient client;
 
   private final Vertx vertx;
+  private final NearCache nearCache; // null if not enabled
+  private final Local local; // null if not enabled
+  private final Metrics metrics;
+  private final Tracer tracer;
+  private final Context context;
+
+  private final Registry registry; // discovery
+  private final Map<String, List<String>> endpoints = new ConcurrentHashMap<>();
+  private final List<Runnable> stopListening = new CopyOnWriteArrayList<>();
+
+  private final SocketAddress socketAddress; // null if the default endpoint is default host / port
+  private final long batchWindow;
+  private final int batchMaxSize;
+  private final Map<String, Batcher> batchers = new ConcurrentHashMap<>(); // by address ("" for the default)
+
+  public Client(final JsonObject options, final Vertx vertx) {
+    this(options, Optional.empty(), vertx);
+  }
 
   @Inject
-  public Client(@Named("http_client.json") final JsonObject options, final Vertx vertx) {
+  public Client(@Named("http_client.json") final JsonObject options, final Optional<Registry> registry, final Vertx vertx) {
     LOG.info("Start (options: {})", options);
     this.vertx = vertx;
+    context = vertx.getOrCreateContext();
     json = options.getBoolean("json", true);
+    nearCache = NearCache.create(options, vertx);
+    local = Local.create(options, vertx);
+    metrics = Metrics.register("http.client", false, vertx);
+    tracer = Tracer.create(options, vertx);
     client = vertx.createHttpClient(new HttpClientOptions(options));
+    if (options.getString(SOCKET_PATH) == null) {
+      socketAddress = null;
+    } else if (vertx.isNativeTransportEnabled()) {
+      socketAddress = SocketAddress.domainSocketAddress(options.getString(SOCKET_PATH));
+    } else {
+      throw new IllegalStateException("Domain socket " + options.getString(SOCKET_PATH) + " requires native transport!");
+    }
+    batchWindow = options.getLong(BATCH_WINDOW, 0L);
+    batchMaxSize = options.getInteger(BATCH_MAX_SIZE, 64);
+    if (options.getBoolean(DISCOVERY, false)) {
+      this.registry = registry.orElseThrow(() -> new IllegalStateException("Discovery is enabled but there is no registry!"));
+    } else {
+      this.registry = null;
+    }
   }
 
   @Override
   public void close() {
+    if (nearCache != null) {
+      nearCache.close();
+    }
+    metrics.close();
+    tracer.close();
+    stopListening.forEach(Runnable::run);
     client.close();
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
   public <T> T service(final Supplier<String> credentialSupplier, final Class<T> clazz, final Class<?>... others) {
+    return service(credentialSupplier, null, clazz, others);
+  }
+
+  /**
+   * Creates service proxy which calls have the given timeout (if not null). Overrides the {@link Timeout} of the
+   * service interface and methods.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T service(final Supplier<String> credentialSupplier, final Duration timeout, final Class<T> clazz, final Class<?>... others) {
     final Class<?>[] interfaces = new Class<?>[1 + others.length];
     System.arraycopy(others, 0, interfaces, 0, others.length);
     interfaces[others.length] = clazz;
@@ -92,48 +186,108 @@ public class Client implements AutoCloseable {
 
       @Override
       public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (nearCache != null && nearCache.caches(method)) { // a hit is served on the caller thread
+          return nearCache.get(method, args, credentialSupplier == null ? null : credentialSupplier.get(), () -> {
+            try {
+              return (CompletionStage<Object>)call(method, args);
+            } catch (final Throwable t) {
+              return CompletableFuture.failedFuture(t);
+            }
+          });
+        }
+        return call(method, args);
+      }
+
+      private Object call(final Method method, final Object[] args) throws Throwable {
+        if (local != null && local.serves(method)) { // co-located - directly to the implementation
+          return local.call(method, args, credentialSupplier == null ? null : credentialSupplier.get(), timeout);
+        }
+        if (Proto.isRequestStream(method)) {
+          throw new UnsupportedOperationException("Request streams are not supported by HTTP RPC! Method: " + method + "!");
+        }
         final Class<?> iClass = method.getDeclaringClass();
         final Protocol aProto = Proto.protocol(iClass);
         final Message aMessage = aProto.getMessages().get(Proto.methodName(method));
         final String path = HTTP_RPC_ROOT + '/' + aProto.getName() + '/' + aMessage.getName();
+        final Deadline deadline = Deadline.forCall(method, timeout).orElse(null);
+        final Metrics.Call metered = metrics.method(aProto.getName() + '/' + aMessage.getName()).start();
+        final Trace trace = tracer.client(metered); // on the caller thread - child of its current trace
         final Object result;
         if (Proto.isStream(method)) {
           final Object[] realArgs = new Object[args.length - 1];
           System.arraycopy(args, 0, realArgs, 0, realArgs.length);
           final Subscriber<Object> subscriber = (Subscriber<Object>)args[args.length - 1];
-          client
-            .request(HttpMethod.POST, path)
+          onContext(() -> request(aProto.getName(), method, args, path)
             .compose(requst -> {
+              metered.invoking();
+              final long start = System.nanoTime();
               final Buffer buff = Buffer.buffer(Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), realArgs, json));
+              metered.encoded(System.nanoTime() - start, buff.length());
+              if (deadline != null) {
+                requst.putHeader(Deadline.HTTP_HEADER, String.valueOf(Math.max(0, deadline.remaining(TimeUnit.MILLISECONDS))));
+              }
+              if (trace != null) {
+                requst.putHeader(Trace.HEADER, trace.traceparent());
+              }
               return requst
                 .putHeader("content-type", json ? "application/json" : "avro/binary")
                 .putHeader("content-length", String.valueOf(buff.length()))
                 .send(buff);
             })
             .compose(response -> {
-              final StreamHandler streamHandler = new StreamHandler(aMessage, Proto.responsType(method), json, response, subscriber, VertxUtils.ctxExecutor(vertx));
+              final StreamHandler streamHandler = new StreamHandler(
+                aMessage, Proto.responsType(method), json, response, subscriber, metered, VertxUtils.ctxExecutor(vertx));
               subscriber.onSubscribe(streamHandler);
-              response.handler(streamHandler).end(ar -> {
-                if (ar.succeeded()) {
-                  subscriber.onComplete();
-                } else {
-                  subscriber.onError(ar.cause());
-                }
-              });
+              response.handler(streamHandler).end(streamHandler::end);
               return Future.succeededFuture();
             })
             .recover(t -> {
               LOG.error("Call failed!", t);
+              metered.end(Metrics.FAILED);
               subscriber.onError(t);
               return Future.failedFuture(t);
-            });
+            }));
           result = null;
+        } else if (batchWindow > 0 && deadline == null) { // coalesced with the other calls to the same endpoint
+          final String address;
+          try {
+            address = address(aProto.getName(), method, args);
+          } catch (final IllegalStateException e) {
+            metered.end(Metrics.FAILED);
+            return CompletableFuture.failedFuture(e);
+          }
+          final long start = System.nanoTime();
+          final byte[] encoded = Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, json);
+          metered.encoded(System.nanoTime() - start, encoded.length);
+          final CompletableFuture<Object> future = batchers
+            .computeIfAbsent(address == null ? "" : address, k -> new Batcher(address))
+            .add(
+              new Batch.Call(aProto.getName() + '/' + aMessage.getName(), encoded, trace == null ? null : trace.traceparent()),
+              aMessage, method, metered);
+          future.whenComplete((r, t) -> metered.end(status(t)));
+          result = future;
         } else {
           final CompletableFuture<Object> future = new CompletableFuture<>();
-          client
-            .request(HttpMethod.POST, path)
+          future.whenComplete((r, t) -> metered.end(status(t)));
+          onContext(() -> request(aProto.getName(), method, args, path)
             .compose(request -> {
+              future.whenComplete((r, t) -> {
+                if (future.isCancelled()) {
+                  request.reset(); // cancelled by the caller - abort the request
+                }
+              });
+              metered.invoking();
+              final long start = System.nanoTime();
               final Buffer buff = Buffer.buffer(Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, json));
+              metered.encoded(System.nanoTime() - start, buff.length());
+              if (deadline != null) {
+                final long remaining = Math.max(0, deadline.remaining(TimeUnit.MILLISECONDS));
+                request.putHeader(Deadline.HTTP_HEADER, String.valueOf(remaining));
+                request.setTimeout(Math.max(1, remaining)); // fails (and resets) the request when expired
+              }
+              if (trace != null) {
+                request.putHeader(Trace.HEADER, trace.traceparent());
+              }
               return request
                .putHeader("content-type", json ? "application/json" : "avro/binary")
                .putHeader("content-length", String.valueOf(buff.length()))
@@ -142,7 +296,9 @@ public class Client implements AutoCloseable {
             .compose(HttpClientResponse::body)
             .compose(body -> {
               LOG.debug("Response body: {}", body);
+              final long start = System.nanoTime();
               final Object reps = Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), new ByteArrayInputStream(body.getBytes()), json);
+              metered.decoded(System.nanoTime() - start, body.length());
               if (reps instanceof RPCException) {
                 future.completeExceptionally((RPCException)reps);
               } else {
@@ -151,10 +307,14 @@ public class Client implements AutoCloseable {
               return Future.succeededFuture();
             })
             .recover(t -> {
-              LOG.error("Call failed!", t);
-              future.completeExceptionally(t);
+              if (future.isCancelled()) {
+                LOG.debug("Call cancelled!");
+              } else {
+                LOG.error("Call failed!", t);
+                future.completeExceptionally(t);
+              }
               return Future.failedFuture(t);
-            });
+            }));
           result = future;
         }
         return result;
@@ -162,6 +322,180 @@ public class Client implements AutoCloseable {
     });
   }
 
+  private static String status(final Throwable error) {
+    if (error == null) {
+      return Metrics.OK;
+    } else if (error instanceof RPCException || error instanceof am24j.rpc.RPCException) {
+      return Metrics.ERROR;
+    } else if (error instanceof CancellationException) {
+      return Metrics.CANCELLED;
+    } else {
+      return Metrics.FAILED;
+    }
+  }
+
+  // calls are made on a Vert.x context - otherwise, if the response arrives before the callbacks (e.g. body) are set from
+  // the calling thread, it gets lost
+  private <T> Future<T> onContext(final Supplier<Future<T>> call) {
+    if (Vertx.currentContext() != null) {
+      return call.get();
+    }
+    final Promise<T> promise = Promise.promise();
+    context.runOnContext(v -> call.get().onComplete(promise));
+    return promise.future();
+  }
+
+  private Future<HttpClientRequest> request(final String service, final Method method, final Object[] args, final String path) {
+    final String address;
+    try {
+      address = address(service, method, args);
+    } catch (final IllegalStateException e) {
+      return Future.failedFuture(e);
+    }
+    return request(address, path);
+  }
+
+  private Future<HttpClientRequest> request(final String address, final String path) {
+    if (address == null) {
+      return socketAddress == null ?
+        client.request(HttpMethod.POST, path) :
+        client.request(new RequestOptions().setMethod(HttpMethod.POST).setServer(socketAddress).setURI(path));
+    }
+    final int index = address.lastIndexOf(':');
+    return client.request(HttpMethod.POST, Integer.parseInt(address.substring(index + 1)), address.substring(0, index), path);
+  }
+
+  // null for the default host / port
+  private String address(final String service, final Method method, final Object[] args) {
+    if (registry == null) {
+      return null;
+    }
+    List<String> serviceEndpoints = endpoints.get(service);
+    if (serviceEndpoints == null) {
+      synchronized (endpoints) {
+        if (!endpoints.containsKey(service)) { // keeps local snapshot up to date
+          stopListening.add(registry.listen(Registry.HTTP, service, addresses -> endpoints.put(service, addresses)));
+        }
+      }
+      serviceEndpoints = endpoints.get(service);
+    }
+    if (serviceEndpoints.isEmpty()) {
+      throw new IllegalStateException("No endpoints available for " + service + "!");
+    }
+    final int keyIndex = Partition.keyIndex(method);
+    if (keyIndex >= 0) { // prefer partition owner
+      final List<String> ownerEndpoints = registry.owner(args[keyIndex])
+        .map(owner -> registry.endpoints(Registry.HTTP, service, owner))
+        .orElse(Collections.emptyList());
+      if (!ownerEndpoints.isEmpty()) {
+        serviceEndpoints = ownerEndpoints;
+      }
+    }
+    return serviceEndpoints.get(ThreadLocalRandom.current().nextInt(serviceEndpoints.size()));
+  }
+
+  // collects the calls to an endpoint issued within the batch window and sends them as a batch
+  private class Batcher {
+
+    private final String address;
+
+    private List<Pending> pending = new ArrayList<>();
+    private long timerId = -1;
+
+    private Batcher(final String address) {
+      this.address = address;
+    }
+
+    private synchronized CompletableFuture<Object> add(
+        final Batch.Call call, final Message aMessage, final Method method, final Metrics.Call metered) {
+      final Pending added = new Pending(call, aMessage, method, metered);
+      pending.add(added);
+      if (pending.size() >= batchMaxSize) {
+        vertx.cancelTimer(timerId);
+        flush();
+      } else if (pending.size() == 1) {
+        timerId = vertx.setTimer(batchWindow, id -> {
+          synchronized (this) {
+            if (id == timerId) {
+              flush();
+            }
+          }
+        });
+      }
+      return added.future;
+    }
+
+    private void flush() {
+      final List<Pending> batch = pending;
+      pending = new ArrayList<>();
+      timerId = -1;
+      batch.forEach(p -> p.metered.invoking());
+      final Buffer body = Batch.encodeCalls(batch.stream().map(p -> p.call).collect(Collectors.toList()), json);
+      LOG.debug("Send batch of {} calls", batch.size());
+      onContext(() -> request(address, Batch.PATH)
+        .compose(request -> request
+          .putHeader("content-type", json ? "application/json" : "avro/binary")
+          .putHeader("content-length", String.valueOf(body.length()))
+          .send(body))
+        .compose(response -> {
+          if (response.statusCode() != 200) {
+            return response.body().compose(error -> Future.failedFuture(new IllegalStateException("Batch failed with " + response.statusCode() + ": " + error)));
+          }
+          final Promise<Void> done = Promise.promise();
+          final Batch.ResultDecoder decoder = new Batch.ResultDecoder(json, result -> {
+            if (result.index >= 0 && result.index < batch.size()) {
+              batch.get(result.index).complete(result, json);
+            }
+          });
+          response.handler(decoder::handle).exceptionHandler(done::tryFail).endHandler(v -> done.tryComplete());
+          return done.future();
+        }))
+        .onComplete(ar -> batch.forEach(p -> {
+          if (!p.future.isDone()) {
+            if (ar.failed()) {
+              LOG.error("Batch call failed!", ar.cause());
+            }
+            p.future.completeExceptionally(ar.failed() ? ar.cause() : new IllegalStateException("No result in batch response!"));
+          }
+        }));
+    }
+  }
+
+  private static class Pending {
+
+    private final Batch.Call call;
+    private final Message aMessage;
+    private final Method method;
+    private final Metrics.Call metered;
+    private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+    private Pending(final Batch.Call call, final Message aMessage, final Method method, final Metrics.Call metered) {
+      this.call = call;
+      this.aMessage = aMessage;
+      this.method = method;
+      this.metered = metered;
+    }
+
+    private void complete(final Batch.Result result, final boolean json) {
+      if (result.result == null) {
+        future.completeExceptionally(new am24j.rpc.RPCException(null, result.error, null));
+        return;
+      }
+      try {
+        final long start = System.nanoTime();
+        final Object reps = Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), new ByteArrayInputStream(result.result), json);
+        metered.decoded(System.nanoTime() - start, result.result.length);
+        if (reps instanceof RPCException) {
+          future.completeExceptionally((RPCException)reps);
+        } else {
+          future.complete(reps);
+        }
+      } catch (final Throwable t) {
+        future.completeExceptionally(t);
+      }
+    }
+  }
+
   private static class StreamHandler extends InputStream implements Handler<Buffer>, Subscription {
 
     private final Message aMessage;
@@ -169,57 +503,116 @@ public class Client implements AutoCloseable {
     private final boolean json;
     private final HttpClientResponse response;
     private final Subscriber<Object> subscriber;
+    private final Metrics.Call metered;
     private final Executor vExecutor;
 
     private final List<Buffer> buffers = new LinkedList<>();
     private int bufPos;
     private int pos;
+    private long read; // bytes
 
     private long requested;
+    private volatile boolean cancelled;
+    private boolean done; // completed or failed
+    private AsyncResult<Void> end; // null until the response ends
 
-    private StreamHandler(final Message aMessage, final Type streamType, final boolean json, final HttpClientResponse response, final Subscriber<Object> subscriber, final Executor vExecutor) {
+    private StreamHandler(
+        final Message aMessage, final Type streamType, final boolean json, final HttpClientResponse response, final Subscriber<Object> subscriber,
+        final Metrics.Call metered, final Executor vExecutor) {
       this.aMessage = aMessage;
       this.streamType = streamType;
       this.json = json;
       this.response = response;
       this.subscriber = subscriber;
+      this.metered = metered;
       this.vExecutor = vExecutor;
       response.pause();
     }
 
     @Override
     public void handle(final Buffer buff) {
-      buffers.add(buff);
-      if (requested <= 0) {
-        response.pause();
-        return; // no requested
+      if (cancelled) {
+        return; // drop
       }
-      while (!buffers.isEmpty()) {
+      buffers.add(buff);
+      drain();
+    }
+
+    // on response end
+    private void end(final AsyncResult<Void> end) {
+      this.end = end;
+      drain();
+    }
+
+    // delivers the received items as requested and then (when all delivered) the end - pauses the response while
+    // there is no demand, so a slow subscriber slows down the server
+    private void drain() {
+      boolean incomplete = false;
+      while (requested > 0 && remaining() > 0 && !cancelled && !done) {
         final int bufPos = this.bufPos;
         final int pos = this.pos;
+        final long read = this.read;
+        final Object decoded;
         try {
-          final Object decoded = Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), streamType, JsonReader.wrapper(this), json);
-          if (decoded instanceof RPCException) {
-            subscriber.onError(((RPCException)decoded).toRPC());
-          } else {
-            subscriber.onNext(decoded);
-          }
-          if (requested <= 0) {
-            response.pause();
-          }
-          if (this.bufPos > 0) { // remove read
-            for (int i = 0; i < this.bufPos; i++) {
-              buffers.remove(0);
-            }
-            this.bufPos = 0;
-          }
+          final long start = System.nanoTime();
+          decoded = Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), streamType, json ? JsonReader.wrapper(this) : this, json, true);
+          metered.decoded(System.nanoTime() - start, this.read - read);
         } catch (final Exception e) {
           // incomplete record, return mark back
           this.bufPos = bufPos;
           this.pos = pos;
-          return;
+          this.read = read;
+          incomplete = true;
+          break;
+        }
+        if (this.bufPos > 0) { // remove read
+          for (int i = 0; i < this.bufPos; i++) {
+            buffers.remove(0);
+          }
+          this.bufPos = 0;
         }
+        if (decoded instanceof RPCException) {
+          done = true;
+          metered.end(Metrics.ERROR);
+          subscriber.onError(((RPCException)decoded).toRPC());
+        } else {
+          if (requested != Long.MAX_VALUE) {
+            requested--;
+          }
+          metered.item();
+          subscriber.onNext(decoded);
+        }
+      }
+      if (cancelled) {
+        if (end != null && !done) {
+          done = true;
+          LOG.debug("Stream cancelled!");
+          metered.end(Metrics.CANCELLED);
+        }
+      } else if (end != null && !done && (remaining() == 0 || end.failed() || incomplete)) { // nothing more to deliver
+        done = true;
+        if (end.failed()) {
+          metered.end(Metrics.FAILED);
+          subscriber.onError(end.cause());
+        } else if (incomplete) {
+          metered.end(Metrics.FAILED);
+          subscriber.onError(new IllegalStateException("Stream ended with incomplete item!"));
+        } else {
+          metered.end(Metrics.OK);
+          subscriber.onComplete();
+        }
+      } else if (requested <= 0 && end == null) {
+        response.pause();
+      }
+    }
+
+    // received and not read bytes
+    private long remaining() {
+      long remaining = 0;
+      for (int i = bufPos; i < buffers.size(); i++) {
+        remaining += buffers.get(i).length() - (i == bufPos ? pos : 0);
       }
+      return remaining;
     }
 
     @Override
@@ -231,7 +624,8 @@ public class Client implements AutoCloseable {
           pos = 0;
           return read();
         }
-        return buff.getByte(pos++);
+        read++;
+        return buff.getUnsignedByte(pos++);
       } else {
         return -1;
       }
@@ -245,7 +639,10 @@ public class Client implements AutoCloseable {
           final long newRquested = requested + n;
           requested = newRquested > requested ? newRquested : Long.MAX_VALUE; // if less, overflow
           if (requested > 0) {
-            response.resume();
+            drain(); // the already received first
+            if (requested > 0 && end == null) {
+              response.resume();
+            }
           }
         }
       });
@@ -253,7 +650,11 @@ public class Client implements AutoCloseable {
 
     @Override
     public void cancel() {
-      vExecutor.execute(response::end);
+      cancelled = true;
+      vExecutor.execute(() -> {
+        buffers.clear();
+        response.request().reset(); // abort the stream, so the server could cancel it too
+      });
     }
   }
 }
@@ -16,23 +16,29 @@
 package am24j.rpc.http;
 
 import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.apache.avro.Protocol;
@@ -44,16 +50,33 @@ import am24j.commons.Ctx;
 import am24j.commons.Reflect;
 import am24j.commons.Types;
 import am24j.commons.Utils;
+import am24j.rpc.Auth;
 import am24j.rpc.AuthVerfier;
+import am24j.rpc.BlockingExecutor;
+import am24j.rpc.Cached;
+import am24j.rpc.ConcurrencyLimiter;
+import am24j.rpc.Deadline;
+import am24j.rpc.Idempotent;
+import am24j.rpc.Invoker;
+import am24j.rpc.Metrics;
+import am24j.rpc.Partition;
 import am24j.rpc.RPCException;
+import am24j.rpc.Registry;
 import am24j.rpc.Remote;
+import am24j.rpc.ResponseCache;
 import am24j.rpc.Service;
+import am24j.rpc.SingleFlight;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
 import am24j.rpc.avro.Proto;
 import am24j.vertx.VertxUtils;
 import am24j.vertx.http.Http;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
@@ -65,25 +88,72 @@ import io.vertx.core.json.JsonObject;
  * @author avgustinmm
  */
 @Singleton
-public class Server implements Http.HttpHandler {
+public class Server implements Http.HttpHandler, AutoCloseable {
 
   public static final String HTTP_RPC_ROOT = Ctx.prop("rpc.http.root", "/rpc");
 
+  public static final String STREAM_BATCH = "streamBatch"; // items requested at once from a response stream, default 16
+  public static final String BATCH_MAX_SIZE = "batchMaxSize"; // max calls in a batch, larger are rejected, default 256
+
   private static final Logger LOG = Ctx.logger("rpc.http.server");
 
+  private static final int INITIAL_BUFFER_SIZE = 256; // of the encoded responses, grows as needed
+
   private final List<AuthVerfier<HttpServerRequest>> authVerfiers;
   private final Map<String, MethodHandler> methodsMap;
 
   private final Vertx vertx;
+  private final Runnable unregister;
+  private final Registry registry;
+  private final ResponseCache cache;
+  private final ConcurrencyLimiter limiter; // null if not enabled
+  private final BlockingExecutor blockingExecutor;
+  private final Metrics metrics;
+  private final Tracer tracer;
+  private final int streamBatch;
+  private final int batchMaxSize;
+
+  private final SingleFlight singleFlight = new SingleFlight(); // coalesces the idempotent calls
+
+  public Server(
+      final List<Object> services,
+      final List<AuthVerfier<HttpServerRequest>> authVerfiers,
+      final Vertx vertx) {
+    this(services, authVerfiers, new DeploymentOptions(), Optional.empty(), vertx);
+  }
 
+  public Server(
+      final List<Object> services,
+      final List<AuthVerfier<HttpServerRequest>> authVerfiers,
+      final DeploymentOptions httpOptions,
+      final Optional<Registry> registry,
+      final Vertx vertx) {
+    this(services, authVerfiers, httpOptions, registry, Optional.empty(), vertx);
+  }
+
+  /**
+   * If there is a registry the server advertises its services with the http server's (advertised) host and port.
+   * If there is a response cache the responses of the {@link Cached} methods are cached.
+   */
   @Inject
   public Server(
       @Remote final List<Object> services,
       final List<AuthVerfier<HttpServerRequest>> authVerfiers,
+      @Named("http_server.json") final DeploymentOptions httpOptions,
+      final Optional<Registry> registry,
+      final Optional<ResponseCache> cache,
       final Vertx vertx) {
     LOG.info("Start (services: {})", services);
     this.authVerfiers = authVerfiers;
     this.vertx = vertx;
+    this.registry = registry.orElse(null);
+    this.cache = cache.orElse(null);
+    limiter = ConcurrencyLimiter.create(httpOptions.getConfig() == null ? new JsonObject() : httpOptions.getConfig());
+    blockingExecutor = BlockingExecutor.create(httpOptions.getConfig() == null ? new JsonObject() : httpOptions.getConfig(), vertx);
+    metrics = Metrics.register("http.server", true, vertx);
+    tracer = Tracer.create(httpOptions.getConfig() == null ? new JsonObject() : httpOptions.getConfig(), vertx);
+    streamBatch = Math.max(1, (httpOptions.getConfig() == null ? new JsonObject() : httpOptions.getConfig()).getInteger(STREAM_BATCH, 16));
+    batchMaxSize = Math.max(1, (httpOptions.getConfig() == null ? new JsonObject() : httpOptions.getConfig()).getInteger(BATCH_MAX_SIZE, 256));
     methodsMap =
       services.stream()
         .flatMap(this::methodDescriptors)
@@ -91,6 +161,25 @@ public class Server implements Http.HttpHandler {
     if (LOG.isInfoEnabled()) {
       methodsMap.values().forEach(md -> LOG.info("    > {}", md.path()));
     }
+    unregister = registry
+      .map(reg -> reg.register(
+        Registry.HTTP,
+        services.stream()
+          .flatMap(service -> Arrays.stream(service.getClass().getInterfaces()))
+          .filter(iClass -> Objects.nonNull(iClass.getAnnotation(Service.class)))
+          .map(iClass -> Proto.protocol(iClass).getName())
+          .distinct()
+          .collect(Collectors.toList()),
+        httpOptions.getConfig() == null ? new JsonObject() : httpOptions.getConfig()))
+      .orElse(() -> {});
+  }
+
+  @Override
+  public void close() {
+    unregister.run();
+    blockingExecutor.close();
+    metrics.close();
+    tracer.close();
   }
 
   @Override
@@ -98,26 +187,68 @@ public class Server implements Http.HttpHandler {
     return HTTP_RPC_ROOT + "/*";
   }
 
+  /**
+   * Returns the concurrency limiter (its limits and rejections) or null if there is no {@link ConcurrencyLimiter#CONFIG}
+   */
+  public ConcurrencyLimiter limiter() {
+    return limiter;
+  }
+
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
   @Override
   public void handle(final HttpServerRequest request) {
     final Executor vExecutor = VertxUtils.ctxExecutor(vertx);
+    final Deadline deadline = Invoker.deadline(request.getHeader(Deadline.HTTP_HEADER));
+    final MethodHandler handler = methodsMap.get(request.path());
+    final Metrics.Call metered = handler == null ? null : handler.methodMetrics.start();
+    final Trace trace = metered == null ? null : tracer.server(request.getHeader(Trace.HEADER), metered);
+    if (metered != null) { // on end or on close (before the end)
+      final HttpServerResponse response = request.response();
+      response.endHandler(v -> metered.end(response.ended() ? status(response.getStatusCode()) : Metrics.CANCELLED));
+    }
     request.pause(); // otherwise ? mark as read ?
-    ASync
-      .sequentiallyGetSkipErrors(
+    // fast path - if verified (e.g. all verifiers completed immediately) continues inline on the event loop
+    ASync.whenComplete(
+      ASync.sequentiallyGetSkipErrors(
         Utils.map(
           authVerfiers.iterator(),
-          authVerifier -> authVerifier.verify(request)))
-      .whenCompleteAsync((auth, error) -> {
+          authVerifier -> authVerifier.verify(request))),
+      (auth, error) -> {
         if (error == null) {
-          final MethodHandler handler = methodsMap.get(request.path());
-          if (handler == null) {
+          if (handler == null && Batch.PATH.equals(request.path()) && request.method() == HttpMethod.POST) {
+            if (deadline != null && deadline.expired()) {
+              LOG.debug("Deadline expired before batch start");
+              respond(request.response(), 504, true, new JsonObject().put("error", "Deadline expired before call start!").encodePrettily());
+            } else {
+              batch(request, auth, deadline, vExecutor);
+            }
+          } else if (handler == null) {
             LOG.debug("Method not found: {}!", request.uri());
             respond(request.response(), 404, true, new JsonObject().put("error", "Not found: " + request.path() + "!").encodePrettily());
           } else {
-            if (auth == null) {
-              handler.handle(request, vExecutor);
+            if (deadline != null && deadline.expired()) { // don't even read and decode the args
+              LOG.debug("Deadline expired before call start: {}", request.uri());
+              respond(request.response(), 504, true, new JsonObject().put("error", "Deadline expired before call start!").encodePrettily());
+            } else if (limiter == null || handler.stream) {
+              handler.handle(request, metered, auth, deadline, trace, vExecutor);
             } else {
-              auth.runAs(() -> handler.handle(request, vExecutor));
+              final ConcurrencyLimiter.Permit permit = limiter.acquire(handler.name, auth);
+              if (permit == null) { // over the limit - don't even read and decode the args
+                respond(request.response(), 503, true, new JsonObject().put("error", "Concurrency limit exceeded!").encodePrettily());
+              } else {
+                final HttpServerResponse response = request.response();
+                handler.handle(request, metered, auth, deadline, trace, vExecutor).onComplete(ar -> permit.release(response.closed() && !response.ended()));
+              }
             }
           }
         } else {
@@ -128,7 +259,120 @@ public class Server implements Http.HttpHandler {
             respond(request.response(), 403, true, new JsonObject().put("error", error.toString()).encodePrettily());
           }
         }
+      },
+      vExecutor);
+  }
+
+  // authenticates once, dispatches the calls concurrently and streams the results in completion order
+  private void batch(final HttpServerRequest request, final Auth auth, final Deadline deadline, final Executor vExecutor) {
+    final boolean json = !"avro/binary".equals(request.getHeader("content-type"));
+    final HttpServerResponse response = request.response();
+    request.resume();
+    request.body().onComplete(ar -> {
+      final List<Batch.Call> calls;
+      try {
+        if (ar.failed()) {
+          throw ar.cause();
+        }
+        calls = Batch.decodeCalls(ar.result(), json);
+      } catch (final Throwable t) {
+        LOG.debug("Invalid batch!", t);
+        respond(response, 400, true, new JsonObject().put("error", "Invalid batch: " + t + "!").encodePrettily());
+        return;
+      }
+      if (calls.size() > batchMaxSize) {
+        LOG.debug("Batch too large: {} calls", calls.size());
+        respond(response, 413, true, new JsonObject().put("error", "Batch too large: " + calls.size() + " calls (max: " + batchMaxSize + ")!").encodePrettily());
+        return;
+      }
+      LOG.debug("Batch of {} calls", calls.size());
+      response
+        .setStatusCode(200)
+        .setChunked(true)
+        .putHeader("content-type", json ? "application/x-ndjson" : "avro/binary");
+      if (calls.isEmpty()) {
+        response.end();
+        return;
+      }
+      new BatchResponse(calls, response, auth, deadline, json, vExecutor).dispatch();
+    });
+  }
+
+  // dispatches the calls of a batch concurrently, while the response's write queue is not full, and writes the results
+  // in completion order - a slow client (or network) delays the rest of the calls instead of the results buffering
+  // without bound. Accessed on the context only
+  private class BatchResponse {
+
+    private final List<Batch.Call> calls;
+    private final HttpServerResponse response;
+    private final Auth auth;
+    private final Deadline deadline;
+    private final boolean json;
+    private final Executor vExecutor;
+
+    private final List<CompletableFuture<?>> pending = new ArrayList<>();
+    private int next; // the next call to dispatch
+    private int remaining;
+
+    private BatchResponse(
+        final List<Batch.Call> calls, final HttpServerResponse response, final Auth auth, final Deadline deadline, final boolean json,
+        final Executor vExecutor) {
+      this.calls = calls;
+      this.response = response;
+      this.auth = auth;
+      this.deadline = deadline;
+      this.json = json;
+      this.vExecutor = vExecutor;
+      remaining = calls.size();
+      response.drainHandler(v -> dispatch());
+      response.closeHandler(v -> { // connection lost before the end - cancel the pending calls
+        if (!response.ended()) {
+          pending.forEach(future -> future.cancel(false));
+        }
+      });
+    }
+
+    private void dispatch() {
+      while (next < calls.size() && !response.writeQueueFull() && !response.closed()) {
+        dispatch(next++);
+      }
+    }
+
+    private void dispatch(final int index) {
+      final Batch.Call call = calls.get(index);
+      final MethodHandler handler = methodsMap.get(HTTP_RPC_ROOT + '/' + call.method);
+      final CompletionStage<byte[]> result;
+      if (handler == null || handler.stream) {
+        result = CompletableFuture.failedFuture(new IllegalArgumentException("Not found (or stream): " + call.method + "!"));
+      } else {
+        final Metrics.Call metered = handler.methodMetrics.start();
+        metered.principal(auth);
+        final ConcurrencyLimiter.Permit permit = limiter == null ? null : limiter.acquire(handler.name, auth);
+        if (limiter != null && permit == null) {
+          metered.end(status(503));
+          result = CompletableFuture.failedFuture(new IllegalStateException("Concurrency limit exceeded!"));
+        } else {
+          result = handler.call(call.args, metered, auth, deadline, tracer.server(call.traceparent, metered), json, vExecutor);
+          if (result instanceof CompletableFuture) {
+            pending.add((CompletableFuture<?>)result);
+          }
+          if (permit != null) {
+            result.whenComplete((r, t) -> permit.release(t instanceof CancellationException));
+          }
+        }
+      }
+      ASync.whenComplete(result, (encoded, error) -> {
+        if (!response.closed()) {
+          response.write(
+            Batch.encodeResult(
+              new Batch.Result(index, encoded, error == null ? null : String.valueOf(error.getMessage())),
+              json));
+          if (--remaining == 0) {
+            response.end();
+          }
+        }
       }, vExecutor);
+    }
   }
 
   public Map<String, Message> info() {
@@ -145,15 +389,32 @@ public class Server implements Http.HttpHandler {
       .flatMap(iClass -> methodDescriptors(iClass, service));
   }
 
+  private static String status(final int statusCode) {
+    if (statusCode >= 200 && statusCode < 300) {
+      return Metrics.OK;
+    } else if (statusCode == 500) {
+      return Metrics.ERROR;
+    } else {
+      return String.valueOf(statusCode);
+    }
+  }
+
   private Future<Void> respond(final HttpServerResponse response, final int status, final boolean json, final String content)  {
-    LOG.debug("Response content: {}", content);
+    return respond(response, status, json, Buffer.buffer(content));
+  }
+
+  private Future<Void> respond(final HttpServerResponse response, final int status, final boolean json, final Buffer content)  {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Response content: {} bytes", content.length());
+    }
     return response.setStatusCode(status)
-      .putHeader("content-tyoe", json ? "application/json" : "avro/binary")
-      .putHeader("content-length", String.valueOf(content.length()))
-      .write(content).map(v -> {
-        response.end();
-        return null;
-      });
+      .putHeader("content-type", contentType(json))
+      .putHeader("content-length", String.valueOf(content.length())) // bytes
+      .end(content);
+  }
+
+  private static String contentType(final boolean json) {
+    return json ? "application/json" : "avro/binary";
   }
 
   private Stream<MethodHandler> methodDescriptors(final Class<?> iClass, final Object service) {
@@ -162,6 +423,13 @@ public class Server implements Http.HttpHandler {
       .collect(Collectors.toMap(Reflect::methodSig, Function.identity()))
       .values()
       .stream()
+      .filter(method -> {
+        if (Proto.isRequestStream(method)) {
+          LOG.warn("Request streams are not supported by HTTP RPC! Skip method: {}", method);
+          return false;
+        }
+        return true;
+      })
       .map(method -> new MethodHandler(method, service, aProto));
   }
 
@@ -172,7 +440,12 @@ public class Server implements Http.HttpHandler {
     private final Message aMessage;
 
     private final String path;
+    private final String name; // <service>/<method>
     private final boolean stream;
+    private final boolean idempotent;
+    private final boolean cached;
+    private final boolean blocking;
+    private final Metrics.Method methodMetrics;
 
     private MethodHandler(final Method method, final Object service, final Protocol aProto) {
       this.method = method;
@@ -180,25 +453,34 @@ public class Server implements Http.HttpHandler {
       aMessage = aProto.getMessages().get(Proto.methodName(method));
 
       path = HTTP_RPC_ROOT + '/' + aProto.getName() + '/'  + aMessage.getName();
+      name = aProto.getName() + '/' + aMessage.getName();
       stream = Proto.isStream(method);
+      idempotent = !stream && method.isAnnotationPresent(Idempotent.class);
+      cached = !stream && cache != null && method.isAnnotationPresent(Cached.class);
+      blocking = BlockingExecutor.isBlocking(method, service);
+      methodMetrics = metrics.method(name);
     }
 
-    private Future<Void> handle(final HttpServerRequest request, final Executor vExecutor) {
+    private Future<Void> handle(
+        final HttpServerRequest request, final Metrics.Call metered, final Auth auth, final Deadline deadline, final Trace trace,
+        final Executor vExecutor) {
       final boolean json = request.method() == HttpMethod.GET || !"avro/binary".equals(request.getHeader("content-type"));
-      return handle0(request, json, vExecutor).recover(t -> {
+      metered.principal(auth);
+      return handle0(request, metered, auth, deadline, trace, json, vExecutor).recover(t -> {
         final String uuid = RPCException.uuid();
         LOG.error("[{}] Call failed!", uuid, t);
         am24j.rpc.avro.RPCException rpcExc = new am24j.rpc.avro.RPCException().setUUID(uuid).setMessage(t.getMessage()).setType(t.getClass().getName());
-        final String jsonTesp = stream(rpcExc, json);
-        return respond(request.response(), 500, json, jsonTesp);
+        return respond(request.response(), 500, json, buffer(rpcExc, json, metered));
       });
     }
-    private Future<Void> handle0(final HttpServerRequest request, final boolean json, final Executor vExecutor) {
+    private Future<Void> handle0(
+        final HttpServerRequest request, final Metrics.Call metered, final Auth auth, final Deadline deadline, final Trace trace,
+        final boolean json, final Executor vExecutor) {
       try {
         if (stream) {
-          return parse(request, json, stream).compose(args -> stream(args, request.response(), json, vExecutor));
+          return parse(request, metered, json, stream).compose(args -> stream(args, request.response(), metered, auth, deadline, trace, json, vExecutor));
         } else {
-          return parse(request, json, stream).compose(args -> call(args, request, json, vExecutor));
+          return parse(request, metered, json, stream).compose(args -> call(args, request, metered, auth, deadline, trace, json, vExecutor));
         }
       } catch (final Throwable t) {
         return Future.failedFuture(t);
@@ -210,19 +492,45 @@ public class Server implements Http.HttpHandler {
     }
 
     @SuppressWarnings("unchecked")
-    private Future<Void> call(final Object[] args, final HttpServerRequest request, final boolean json, final Executor vExecutor) {
+    private Future<Void> call(
+        final Object[] args, final HttpServerRequest request, final Metrics.Call metered, final Auth auth, final Deadline deadline,
+        final Trace trace, final boolean json, final Executor vExecutor) {
       final Promise<Void> promise = Promise.promise();
       try {
         LOG.info("[{}] Call {}, args: {}", path(), method, args);
-        ((CompletionStage<Object>)method.invoke(service, args)).whenCompleteAsync((resp, error) -> {
+        metered.invoking();
+        final HttpServerResponse response = request.response();
+        // cached or idempotent - the result is the cached / shared encoded response
+        final CompletionStage<Object> result =
+          cached ?
+            cache.get(method, args, json, vExecutor, () -> encoded(args, auth, deadline, trace, json)).<Object>thenApply(bytes -> bytes) :
+            idempotent ? coalesced(args, auth, deadline, trace, json) : (CompletionStage<Object>)invoke(args, auth, deadline, trace);
+        if (result instanceof CompletableFuture && deadline != null) {
+          // deadline reached - cancel the call
+          final long timerId = vertx.setTimer(Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)), id -> ((CompletableFuture<Object>)result).cancel(false));
+          result.whenComplete((r, t) -> vertx.cancelTimer(timerId));
+        }
+        if (result instanceof CompletableFuture) {
+          // connection lost before the response - cancel the call
+          response.closeHandler(v -> {
+            if (!response.ended()) {
+              LOG.debug("[{}] Connection closed, cancel call", path());
+              ((CompletableFuture<Object>)result).cancel(false);
+            }
+          });
+        }
+        ASync.whenComplete(result, (resp, error) -> { // already completed (e.g. sync implementation) - respond inline
           try {
-            if (error == null) {
-              final String jsonTesp = stream(resp, json);
-              respond(request.response(), jsonTesp.length() == 0 ? 204 : 200, json, jsonTesp).onComplete(promise);
+            if (response.closed()) {
+              promise.complete(); // nothing to respond to
+            } else if (error == null) {
+              // shared encoded response - wrapped, not copied
+              final Buffer encoded = cached || idempotent ? Buffer.buffer(Unpooled.wrappedBuffer((byte[])resp)) : buffer(resp, json, metered);
+              respond(request.response(), encoded.length() == 0 ? 204 : 200, json, encoded).onComplete(promise);
             } else {
               final String uuid = RPCException.uuid();
-              final String jsonTesp = stream(new am24j.rpc.avro.RPCException().setUUID(uuid).setMessage(error.getMessage()).setType(error.getClass().getName()), json);
-              respond(request.response(), 500, json, jsonTesp).onComplete(promise);
+              final Buffer encoded = buffer(new am24j.rpc.avro.RPCException().setUUID(uuid).setMessage(error.getMessage()).setType(error.getClass().getName()), json, metered);
+              respond(request.response(), 500, json, encoded).onComplete(promise);
             }
           } catch (final Throwable t) {
             promise.fail(t);
@@ -234,48 +542,173 @@ public class Server implements Http.HttpHandler {
       return promise.future();
     }
 
-    private Future<Void> stream(final Object[] args, final HttpServerResponse response, final boolean json, final Executor vExecutor) {
+    // joins the equal in-flight call, if any, sharing the invocation and the encoded response
+    private CompletionStage<Object> coalesced(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace, final boolean json) {
+      return singleFlight.call(
+        SingleFlight.key(method, Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false), auth, json),
+        () -> invokeAsync(args, auth, deadline, trace),
+        resp -> encode(resp, json, null));
+    }
+
+    // loads a response to be cached
+    private CompletionStage<byte[]> encoded(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace, final boolean json) {
+      return invokeAsync(args, auth, deadline, trace).thenApply(resp -> encode(resp, json, null));
+    }
+
+    private CompletionStage<Object> invokeAsync(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) {
+      return Invoker.invokeAsync(method, service, args, blocking ? blockingExecutor : null, partition(args), trace, deadline, auth);
+    }
+
+    // a call of a batch - decodes the args, invokes (in auth context) and returns the encoded response
+    @SuppressWarnings("unchecked")
+    private CompletionStage<byte[]> call(
+        final byte[] encodedArgs, final Metrics.Call metered, final Auth auth, final Deadline deadline, final Trace trace,
+        final boolean json, final Executor vExecutor) {
+      final CompletionStage<Object> result;
+      try {
+        final long start = System.nanoTime();
+        final Object[] args = Proto.decodeReq(aMessage.getRequest(), Proto.requestTypes(method), new ByteArrayInputStream(encodedArgs), json);
+        metered.decoded(System.nanoTime() - start, encodedArgs.length);
+        LOG.debug("[{}] Batch call {}, args: {}", path(), method, args);
+        metered.invoking();
+        if (cached) {
+          return cache.get(method, args, json, vExecutor, () -> encoded(args, auth, deadline, trace, json))
+            .whenComplete((r, t) -> metered.end(t == null ? Metrics.OK : Metrics.ERROR));
+        }
+        result = (CompletionStage<Object>)invoke(args, auth, deadline, trace);
+      } catch (final Throwable t) {
+        metered.end(Metrics.ERROR);
+        return CompletableFuture.failedFuture(t instanceof InvocationTargetException && t.getCause() != null ? t.getCause() : t);
+      }
+      if (result instanceof CompletableFuture && deadline != null) {
+        // deadline reached - cancel the call
+        final long timerId = vertx.setTimer(Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)), id -> ((CompletableFuture<Object>)result).cancel(false));
+        result.whenComplete((r, t) -> vertx.cancelTimer(timerId));
+      }
+      final CompletableFuture<byte[]> encoded = new CompletableFuture<>();
+      result.whenComplete((resp, error) -> {
+        metered.end(error == null ? Metrics.OK : error instanceof CancellationException ? Metrics.CANCELLED : Metrics.ERROR);
+        try {
+          encoded.complete(
+            encode(
+              error == null ? resp : Invoker.rpcExc(error),
+              json, metered));
+        } catch (final Throwable t) {
+          encoded.completeExceptionally(t);
+        }
+      });
+      if (result instanceof CompletableFuture) { // cancels the call on cancel
+        encoded.whenComplete((r, t) -> {
+          if (encoded.isCancelled()) {
+            ((CompletableFuture<Object>)result).cancel(false);
+          }
+        });
+      }
+      return encoded;
+    }
+
+    private Future<Void> stream(
+        final Object[] args, final HttpServerResponse response, final Metrics.Call metered, final Auth auth, final Deadline deadline,
+        final Trace trace, final boolean json, final Executor vExecutor) {
       final Promise<Void> promise = Promise.promise();
-      response.setChunked(true);
+      response.setChunked(true).putHeader("content-type", contentType(json));
       try {
+        // requests in batches, while the response's write queue is not full - a slow client (or network) slows down
+        // the publisher instead of the response buffering without bound
         final Subscriber<Object> subscriber = new Subscriber<>() {
 
           private Subscription subscription;
+          private long outstanding; // requested and not received yet
+          private boolean cancelled;
+          private boolean done; // completed or failed
 
           @Override
           public void onSubscribe(final Subscription subscription) {
             vExecutor.execute(() -> {
+              if (this.subscription != null) {
+                subscription.cancel(); // already subscribed
+                return;
+              }
               this.subscription = subscription;
               promise.complete();
-              subscription.request(1);
+              if (response.closed()) {
+                cancel();
+              } else {
+                // connection lost before the end of the stream - cancel subscription
+                response.closeHandler(v -> {
+                  if (!response.ended()) {
+                    cancel();
+                  }
+                });
+                response.drainHandler(v -> requestMore());
+                requestMore();
+              }
             });
           }
 
           @Override
           public void onNext(final Object item) {
             vExecutor.execute(() -> {
-              response.write(stream(item, json));
-              subscription.request(1); // no backpressure
+              if (!cancelled && !done) {
+                metered.item();
+                response.write(buffer(item, json, metered));
+                outstanding--;
+                requestMore();
+              }
             });
           }
 
           @Override
           public void onError(final Throwable throwable) {
             vExecutor.execute(() -> {
-              response.write(stream(throwable, json));
+              if (!cancelled && !done) {
+                done = true;
+                metered.end(Metrics.ERROR);
+                response.end(buffer(throwable, json, metered));
+              }
             });
           }
 
           @Override
           public void onComplete() {
-            vExecutor.execute(() -> response.end());
+            vExecutor.execute(() -> {
+              if (!cancelled && !done) {
+                done = true;
+                response.end();
+              }
+            });
+          }
+
+          // tops up the demand to a batch when half of it is received - if the write queue is full, when drained
+          private void requestMore() {
+            if (!cancelled && !done && outstanding <= streamBatch / 2 && !response.writeQueueFull()) {
+              final long n = streamBatch - outstanding;
+              outstanding = streamBatch;
+              subscription.request(n);
+            }
+          }
+
+          private void cancel() {
+            if (!cancelled) {
+              LOG.debug("[{}] Connection closed, cancel stream", path());
+              cancelled = true;
+              subscription.cancel();
+            }
           }
         };
         try {
           final Object[] realArgs = new Object[args.length + 1];
           System.arraycopy(args, 0, realArgs, 0, args.length);
           realArgs[args.length] = subscriber;
-          method.invoke(service, realArgs);
+          metered.invoking();
+          final Object invocation = invoke(realArgs, auth, deadline, trace);
+          if (invocation instanceof CompletionStage) { // blocking - invoked asynchronously
+            ((CompletionStage<?>)invocation).whenComplete((r, t) -> {
+              if (t != null) {
+                vExecutor.execute(() -> promise.tryFail(t));
+              }
+            });
+          }
         } catch (final InvocationTargetException e) {
           promise.fail(e.getCause() == null ? e : e.getCause());
         } catch (final Throwable t) {
@@ -287,8 +720,19 @@ public class Server implements Http.HttpHandler {
       return promise.future();
     }
 
-    private Future<Object[]> parse(final HttpServerRequest request, final boolean json, final boolean stream) {
+    // blocking methods are invoked on the blocking executor - the result is a stage completed with invocation's
+    // result (null for streams)
+    private Object invoke(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) throws ReflectiveOperationException {
+      return Invoker.invoke(method, service, args, blocking ? blockingExecutor : null, partition(args), trace, deadline, auth);
+    }
+
+    private Partition partition(final Object[] args) {
+      return registry == null ? null : registry.partition(method, args);
+    }
+
+    private Future<Object[]> parse(final HttpServerRequest request, final Metrics.Call metered, final boolean json, final boolean stream) {
       if (request.method() == HttpMethod.GET) {
+        final long start = System.nanoTime();
         final Object[] params = new Object[method.getParameterCount() + (stream ? -1 : 0)];
         for (int i = params.length; i-- > 0;) {
           String value = request.getParam("arg_" + i);
@@ -300,6 +744,7 @@ public class Server implements Http.HttpHandler {
             params[i] = Types.toType(value, method.getParameterTypes()[i]);
           }
         }
+        metered.decoded(System.nanoTime() - start, 0);
         return Future.succeededFuture(params);
       }
 
@@ -309,11 +754,53 @@ public class Server implements Http.HttpHandler {
       return request.body().map(body -> {
         LOG.debug("Request body: {}", body);
         return body;
-      }).map(body -> Proto.decodeReq(aMessage.getRequest(), Proto.requestTypes(method), new ByteArrayInputStream(body.getBytes()), json));
+      }).map(body -> {
+        final long start = System.nanoTime();
+        final Object[] args = Proto.decodeReq(aMessage.getRequest(), Proto.requestTypes(method), new ByteArrayInputStream(body.getBytes()), json);
+        metered.decoded(System.nanoTime() - start, body.length());
+        return args;
+      });
+    }
+
+    // encodes straight into the buffer - no intermediate array or string
+    private Buffer buffer(final Object resp, final boolean json, final Metrics.Call metered) {
+      final long start = System.nanoTime();
+      final Buffer buffer = Buffer.buffer(INITIAL_BUFFER_SIZE);
+      Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), resp, json, new BufferOutputStream(buffer));
+      metered.encoded(System.nanoTime() - start, buffer.length());
+      return buffer;
+    }
+
+    // metered - null if the encoded response is shared by calls (e.g. cached)
+    private byte[] encode(final Object resp, final boolean json, final Metrics.Call metered) {
+      final long start = System.nanoTime();
+      final byte[] encoded = Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), resp, json);
+      if (metered == null) {
+        methodMetrics.encoded(System.nanoTime() - start, encoded.length);
+      } else {
+        metered.encoded(System.nanoTime() - start, encoded.length);
+      }
+      return encoded;
+    }
+  }
+
+  // appends to a buffer
+  private static class BufferOutputStream extends OutputStream {
+
+    private final Buffer buffer;
+
+    private BufferOutputStream(final Buffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void write(final int b) {
+      buffer.appendByte((byte)b);
     }
 
-    private String stream(final Object resp, final boolean json) {
-      return new String(Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), resp, json), StandardCharsets.UTF_8);
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      buffer.appendBytes(b, off, len);
     }
   }
 }
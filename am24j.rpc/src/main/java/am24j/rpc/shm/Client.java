@@ -0,0 +1,450 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.shm;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.rpc.Deadline;
+import am24j.rpc.Local;
+import am24j.rpc.Metrics;
+import am24j.rpc.Timeout;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.avro.RPCException;
+import am24j.rpc.shm.Common.Channel;
+import io.vertx.core.Context;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Shared memory RPC client. Maps the rings of a channel created by the {@link Server} (which shall be started first)
+ * and sends the calls to the request ring. Unary calls are request-response, response streams are sequences of items
+ * sent by the server as demanded by the subscriber. The calls of all the client's proxies share the channel.<br>
+ * Config: <code>{"dir": ..., "name": ..., "wait": ... - as the server's, "sendTimeout": &lt;ms, response timeout of
+ * the calls without deadline and max wait for the server to take a call, default 30000&gt;}</code>
+ *
+ * @author avgustinmm
+ */
+@Singleton
+public class Client implements AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.shm.client");
+
+  public static final String SEND_TIMEOUT = Common.SEND_TIMEOUT; // ms, response timeout of the calls without deadline
+
+  private final Vertx vertx;
+  private final Context context;
+  private final Executor vExecutor;
+  private final Channel channel;
+  private final long sendTimeout;
+  private final Local local; // null if not enabled
+  private final Metrics metrics;
+  private final Tracer tracer;
+
+  private final AtomicLong callIds = new AtomicLong();
+  private final Map<Long, Call> calls = new ConcurrentHashMap<>(); // in progress, by call id
+
+  public Client(final Vertx vertx) {
+    this(new JsonObject(), vertx);
+  }
+
+  @Inject
+  public Client(@Named("shm_client.json") final JsonObject config, final Vertx vertx) {
+    LOG.info("Start (config: {})", config);
+    this.vertx = vertx;
+    context = vertx.getOrCreateContext();
+    vExecutor = command -> context.runOnContext(v -> command.run());
+    sendTimeout = config.getLong(SEND_TIMEOUT, 30_000L);
+    // as the calls rejected by the server fail
+    local = Local.create(
+      config,
+      (status, message) -> new am24j.rpc.RPCException(
+        null, message, "shm:" + (Local.UNAUTHENTICATED.equals(status) ? Common.UNAUTHENTICATED : Common.DEADLINE_EXCEEDED)),
+      vertx);
+    metrics = Metrics.register("shm.client", false, vertx);
+    tracer = Tracer.create(config, vertx);
+    channel = new Channel(
+      Ring.open(Common.responseRing(config)), Ring.open(Common.requestRing(config)), Common.waitStrategy(config), sendTimeout,
+      "rpc-shm-client-" + config.getString(Common.NAME, "rpc"),
+      frame -> vExecutor.execute(() -> handle(frame)));
+  }
+
+  @Override
+  public void close() {
+    channel.close();
+    vExecutor.execute(() -> calls.values().forEach(call -> call.fail(new IllegalStateException("Client closed!"))));
+    metrics.close();
+    tracer.close();
+  }
+
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
+  public <T> T service(final Supplier<String> credentialSupplier, final Class<T> clazz, final Class<?>... others) {
+    return service(credentialSupplier, null, clazz, others);
+  }
+
+  /**
+   * Creates service proxy which calls have the given timeout (if not null). Overrides the {@link Timeout} of the
+   * service interface and methods.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T service(final Supplier<String> credentialSupplier, final Duration timeout, final Class<T> clazz, final Class<?>... others) {
+    final Class<?>[] interfaces = new Class<?>[1 + others.length];
+    System.arraycopy(others, 0, interfaces, 0, others.length);
+    interfaces[others.length] = clazz;
+    return (T)Proxy.newProxyInstance(clazz.getClassLoader(), interfaces, new InvocationHandler() {
+
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (local != null && local.serves(method)) { // co-located - directly to the implementation
+          return local.call(method, args, credentialSupplier == null ? null : credentialSupplier.get(), timeout);
+        }
+        if (Proto.isRequestStream(method)) {
+          throw new UnsupportedOperationException("Request streams are not supported by shared memory RPC! Method: " + method + "!");
+        }
+        final Protocol aProto = Proto.protocol(method.getDeclaringClass());
+        final Message aMessage = aProto.getMessages().get(Proto.methodName(method));
+        final String address = Common.address(aProto, method);
+        final Deadline deadline = Deadline.forCall(method, timeout).orElse(null);
+        final Metrics.Call metered = metrics.method(aProto.getName() + '/' + aMessage.getName()).start();
+        final Trace trace = tracer.client(metered); // on the caller thread - child of its current trace
+        final Type respType = Proto.responsType(method);
+        final Function<InputStream, Object> respDecoder = is -> Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), respType, is, false);
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        final String credentials = credentialSupplier == null ? null : credentialSupplier.get();
+        if (credentials != null) {
+          headers.add(Common.AUTHORIZATION, credentials);
+        }
+        final long responseTimeout;
+        if (deadline != null) {
+          final long remaining = Math.max(0, deadline.remaining(TimeUnit.MILLISECONDS));
+          headers.add(Deadline.HTTP_HEADER, String.valueOf(remaining));
+          responseTimeout = Math.max(1, remaining); // fails the call when expired
+        } else {
+          responseTimeout = sendTimeout;
+        }
+        if (trace != null) {
+          headers.add(Trace.HEADER, trace.traceparent());
+        }
+        final boolean stream = Proto.isStream(method);
+        final Object[] reqArgs;
+        if (stream) {
+          reqArgs = new Object[args.length - 1];
+          System.arraycopy(args, 0, reqArgs, 0, reqArgs.length);
+        } else {
+          reqArgs = args;
+        }
+        final long callId = callIds.incrementAndGet();
+        final long start = System.nanoTime();
+        final byte[] encoded = Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), reqArgs, false);
+        metered.encoded(System.nanoTime() - start, encoded.length);
+        final byte[] frame = Common.frame(Common.CALL, callId, out -> {
+          out.writeUTF(address);
+          Common.writeHeaders(out, headers);
+          out.writeBoolean(stream);
+          out.write(encoded);
+        });
+        if (frame.length > channel.maxFrame()) {
+          metered.end(Metrics.FAILED);
+          throw new IllegalArgumentException("Request too large (" + frame.length + " bytes, max: " + channel.maxFrame() + ")!");
+        }
+        if (stream) {
+          final Subscriber<Object> subscriber = (Subscriber<Object>)args[args.length - 1];
+          final RequestStream requestStream = new RequestStream(callId, respDecoder, subscriber, metered);
+          subscriber.onSubscribe(requestStream);
+          vExecutor.execute(() -> requestStream.start(frame));
+          return null;
+        } else {
+          final Unary call = new Unary(callId, respDecoder, metered);
+          calls.put(callId, call);
+          final long timerId = vertx.setTimer(
+            responseTimeout,
+            id -> call.future.completeExceptionally(new TimeoutException("No response within " + responseTimeout + " ms!")));
+          call.future.whenComplete((r, t) -> {
+            vertx.cancelTimer(timerId);
+            calls.remove(callId);
+            metered.end(status(t));
+            if (t instanceof CancellationException || t instanceof TimeoutException) { // nobody waits - cancel on the server too
+              send(Common.frame(Common.CANCEL, callId));
+            }
+          });
+          metered.invoking();
+          send(frame, responseTimeout, call);
+          return call.future;
+        }
+      }
+    });
+  }
+
+  private static String status(final Throwable error) {
+    if (error == null) {
+      return Metrics.OK;
+    } else if (error instanceof RPCException || error instanceof am24j.rpc.RPCException) {
+      return Metrics.ERROR;
+    } else if (error instanceof CancellationException) {
+      return Metrics.CANCELLED;
+    } else {
+      return Metrics.FAILED;
+    }
+  }
+
+  // queued - never waits for the server
+  private void send(final byte[] frame) {
+    channel.send(frame);
+  }
+
+  // the call is failed if the frame is not taken by the server in time
+  private void send(final byte[] frame, final long timeout, final Call call) {
+    channel.send(frame, timeout, error -> {
+      if (error != null) {
+        vExecutor.execute(() -> call.fail(error));
+      }
+    });
+  }
+
+  // on the context
+  private void handle(final byte[] frame) {
+    final DataInputStream in = Common.input(frame);
+    long callId = -1;
+    try {
+      final byte type = in.readByte();
+      callId = in.readLong();
+      final Call call = calls.get(callId);
+      if (call == null) {
+        LOG.debug("[{}] No call for frame of type {} - dropped", callId, type);
+      } else if (type == Common.FAILURE) {
+        final int code = in.readInt();
+        call.fail(new am24j.rpc.RPCException(null, in.readUTF(), "shm:" + code));
+      } else {
+        call.frame(type, in, frame.length);
+      }
+    } catch (final IOException e) {
+      LOG.error("[{}] Invalid frame!", callId, e);
+    }
+  }
+
+  private interface Call {
+
+    // on the context
+    void frame(byte type, DataInputStream in, int length);
+
+    // on the context
+    void fail(Throwable t);
+  }
+
+  private class Unary implements Call {
+
+    private final long callId;
+    private final Function<InputStream, Object> respDecoder;
+    private final Metrics.Call metered;
+    private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+    private Unary(final long callId, final Function<InputStream, Object> respDecoder, final Metrics.Call metered) {
+      this.callId = callId;
+      this.respDecoder = respDecoder;
+      this.metered = metered;
+    }
+
+    @Override
+    public void frame(final byte type, final DataInputStream in, final int length) {
+      if (type != Common.RESPONSE) {
+        LOG.warn("[{}] Unexpected frame of type {}!", callId, type);
+        return;
+      }
+      try {
+        final long start = System.nanoTime();
+        final Object resp = respDecoder.apply(in);
+        metered.decoded(System.nanoTime() - start, length);
+        if (resp instanceof RPCException) {
+          future.completeExceptionally((RPCException)resp);
+        } else {
+          future.complete(resp);
+        }
+      } catch (final Throwable t) {
+        fail(t);
+      }
+    }
+
+    @Override
+    public void fail(final Throwable t) {
+      if (!future.isDone()) {
+        LOG.error("Call failed!", t);
+        future.completeExceptionally(t);
+      }
+    }
+  }
+
+  // receives the items (and the end) from the response ring and sends the demand to the request ring - all on the
+  // client's context, so the demand always follows the call
+  private class RequestStream implements Call, Subscription {
+
+    private final long callId;
+    private final Function<InputStream, Object> respDecoder;
+    private final Subscriber<Object> subscriber;
+    private final Metrics.Call metered;
+
+    private boolean started; // the call is sent
+    private long requested; // demanded before the call is sent
+    private boolean cancelled;
+    private boolean done;
+
+    private RequestStream(final long callId, final Function<InputStream, Object> respDecoder, final Subscriber<Object> subscriber, final Metrics.Call metered) {
+      this.callId = callId;
+      this.respDecoder = respDecoder;
+      this.subscriber = subscriber;
+      this.metered = metered;
+    }
+
+    private void start(final byte[] frame) {
+      if (cancelled) {
+        return;
+      }
+      calls.put(callId, this);
+      metered.invoking();
+      send(frame, sendTimeout, this);
+      started = true;
+      if (requested > 0) {
+        demand(requested);
+        requested = 0;
+      }
+    }
+
+    @Override
+    public void frame(final byte type, final DataInputStream in, final int length) {
+      if (done) {
+        return; // drop
+      }
+      final Object decoded;
+      try {
+        final long start = System.nanoTime();
+        decoded = in.available() == 0 ? null : respDecoder.apply(in);
+        metered.decoded(System.nanoTime() - start, length);
+      } catch (final Throwable t) {
+        LOG.error("Failed to decode stream frame!", t);
+        if (!cancelled) {
+          cancel();
+          fail(t);
+        }
+        return;
+      }
+      if (type == Common.ITEM) {
+        if (!cancelled) {
+          metered.item();
+          subscriber.onNext(decoded);
+        }
+      } else if (decoded instanceof RPCException) {
+        finish(Metrics.ERROR);
+        if (!cancelled) {
+          subscriber.onError(((RPCException)decoded).toRPC());
+        }
+      } else {
+        finish(Metrics.OK);
+        if (!cancelled) {
+          subscriber.onComplete();
+        }
+      }
+    }
+
+    @Override
+    public void request(final long n) {
+      vExecutor.execute(() -> {
+        if (n < 0) throw new IllegalArgumentException("Request must be non-negative! Found: " + n + "!");
+        if (n > 0 && !done && !cancelled) {
+          if (started) {
+            demand(n);
+          } else {
+            final long newRquested = requested + n;
+            requested = newRquested > requested ? newRquested : Long.MAX_VALUE; // if less, overflow
+          }
+        }
+      });
+    }
+
+    @Override
+    public void cancel() {
+      vExecutor.execute(() -> {
+        if (!done && !cancelled) {
+          cancelled = true;
+          if (started) { // otherwise - never sent
+            send(Common.frame(Common.CANCEL, callId));
+          }
+          LOG.debug("Stream cancelled!");
+          finish(Metrics.CANCELLED);
+        }
+      });
+    }
+
+    @Override
+    public void fail(final Throwable t) {
+      if (!done) {
+        LOG.error("Call failed!", t);
+        finish(Metrics.FAILED);
+        subscriber.onError(t);
+      }
+    }
+
+    private void demand(final long n) {
+      send(Common.frame(Common.DEMAND, callId, out -> out.writeLong(n)));
+    }
+
+    private void finish(final String status) {
+      if (!done) {
+        done = true;
+        metered.end(status);
+        calls.remove(callId);
+      }
+    }
+  }
+}
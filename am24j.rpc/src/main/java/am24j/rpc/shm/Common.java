@@ -0,0 +1,293 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.shm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.apache.avro.Protocol;
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Commons - config, frames and the channel (a pair of rings)
+ *
+ * @author avgustinmm
+ */
+final class Common {
+
+  private static final Logger LOG = Ctx.logger("rpc.shm");
+
+  // config
+  static final String DIR = "dir"; // of the ring files, default <rw dir>/shm
+  static final String NAME = "name"; // of the channel, default rpc - the ring files are <name>.req and <name>.resp
+  static final String WAIT = "wait"; // spin, yield or park (default)
+  static final String SEND_TIMEOUT = "sendTimeout"; // ms, see the client and the server
+
+  static final String AUTHORIZATION = "authorization";
+
+  // frame types, a frame is: type (byte), call id (long) and the type specific rest
+  static final byte CALL = 1; // client -> server: address (utf), headers, stream (boolean), Avro request
+  static final byte DEMAND = 2; // client -> server: stream demand (long)
+  static final byte CANCEL = 3; // client -> server: cancel of unary call or stream
+  static final byte RESPONSE = 4; // server -> client: Avro response (or error)
+  static final byte ITEM = 5; // server -> client: Avro stream item
+  static final byte END = 6; // server -> client: stream end - ok (no rest) or Avro error
+  static final byte FAILURE = 7; // server -> client: call not processed - code (int) and message (utf)
+
+  // failure codes
+  static final int INVALID = 400;
+  static final int UNAUTHENTICATED = 401;
+  static final int NOT_FOUND = 404;
+  static final int TOO_LARGE = 413;
+  static final int DEADLINE_EXCEEDED = 504;
+
+  private Common() {}
+
+  static String address(final Protocol aProto, final Method method) {
+    return aProto.getName() + '/' + Proto.methodName(method);
+  }
+
+  static File requestRing(final JsonObject config) {
+    return new File(dir(config), config.getString(NAME, "rpc") + ".req");
+  }
+
+  static File responseRing(final JsonObject config) {
+    return new File(dir(config), config.getString(NAME, "rpc") + ".resp");
+  }
+
+  static WaitStrategy waitStrategy(final JsonObject config) {
+    return WaitStrategy.of(config.getString(WAIT, WaitStrategy.PARK.name()));
+  }
+
+  private static File dir(final JsonObject config) {
+    final String dir = config.getString(DIR);
+    return dir == null ? Ctx.readWriteFile("shm") : new File(dir);
+  }
+
+  static byte[] frame(final byte type, final long callId, final Body body) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (final DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(type);
+      out.writeLong(callId);
+      body.write(out);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static byte[] frame(final byte type, final long callId) {
+    return frame(type, callId, out -> {});
+  }
+
+  static DataInputStream input(final byte[] frame) {
+    return new DataInputStream(new ByteArrayInputStream(frame));
+  }
+
+  static void writeHeaders(final DataOutputStream out, final MultiMap headers) throws IOException {
+    out.writeInt(headers.size());
+    for (final Map.Entry<String, String> header : headers) {
+      out.writeUTF(header.getKey());
+      out.writeUTF(header.getValue());
+    }
+  }
+
+  static MultiMap readHeaders(final DataInputStream in) throws IOException {
+    final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+    for (int i = in.readInt(); i-- > 0; headers.add(in.readUTF(), in.readUTF()));
+    return headers;
+  }
+
+  interface Body {
+
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  // the rings of a side - receives by a reader thread (the single consumer) and sends by a writer thread (the single
+  // producer) from an outbound queue, so the senders (e.g. the event loop) never wait for space in the ring
+  static final class Channel implements AutoCloseable {
+
+    private final Ring in;
+    private final Ring out;
+    private final WaitStrategy waitStrategy;
+    private final long sendTimeout;
+    private final Thread reader;
+    private final Thread writer;
+    private final Queue<Outbound> outbound = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean closed;
+    private volatile boolean writerIdle; // the outbound queue is empty - the writer shall be unparked on send
+
+    Channel(
+        final Ring in, final Ring out, final WaitStrategy waitStrategy, final long sendTimeout,
+        final String name, final Consumer<byte[]> handler) {
+      this.in = in;
+      this.out = out;
+      this.waitStrategy = waitStrategy;
+      this.sendTimeout = sendTimeout;
+      reader = new Thread(() -> {
+        int idle = 0;
+        while (!closed) {
+          final byte[] frame = in.poll();
+          if (frame == null) {
+            waitStrategy.idle(idle);
+            idle = idle == Integer.MAX_VALUE ? idle : idle + 1;
+          } else {
+            idle = 0;
+            try {
+              handler.accept(frame);
+            } catch (final Throwable t) {
+              LOG.error("[{}] Failed to handle frame!", name, t);
+            }
+          }
+        }
+      }, name);
+      reader.setDaemon(true);
+      reader.start();
+      writer = new Thread(this::write, name + "-writer");
+      writer.setDaemon(true);
+      writer.start();
+    }
+
+    /**
+     * Queues the frame, doesn't wait. If it isn't written within the send timeout it is dropped
+     */
+    void send(final byte[] frame) {
+      send(frame, sendTimeout, null);
+    }
+
+    /**
+     * Queues the frame, doesn't wait. The callback (if not null) is called by the writer thread - with null when the
+     * frame is written to the ring, or with the error if it isn't written within the timeout (ms, e.g. the other side
+     * doesn't take the frames) or the channel is closed
+     */
+    void send(final byte[] frame, final long timeout, final Consumer<Throwable> callback) {
+      if (closed) {
+        if (callback != null) {
+          callback.accept(new IllegalStateException("Channel closed!"));
+        }
+        return;
+      }
+      outbound.add(new Outbound(frame, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeout)), callback));
+      if (writerIdle) {
+        LockSupport.unpark(writer);
+      }
+    }
+
+    /**
+     * Max length of a frame
+     */
+    int maxFrame() {
+      return Math.min(in.maxLength(), out.maxLength());
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      LockSupport.unpark(writer);
+      try {
+        reader.join(TimeUnit.SECONDS.toMillis(1));
+        writer.join(TimeUnit.SECONDS.toMillis(1));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      fail(null); // queued meanwhile
+    }
+
+    // the writer thread - writes the queued frames in order, waits (per wait strategy) while the ring is full
+    private void write() {
+      int idle = 0;
+      Outbound next = null;
+      while (!closed) {
+        if (next == null) {
+          next = outbound.poll();
+          if (next == null) {
+            writerIdle = true;
+            if (outbound.isEmpty()) { // re-check - the sender could have missed the flag
+              waitStrategy.idle(idle);
+              idle = idle == Integer.MAX_VALUE ? idle : idle + 1;
+            }
+            writerIdle = false;
+            continue;
+          }
+          idle = 0;
+        }
+        if (out.offer(next.frame)) {
+          next.done(null);
+          next = null;
+          idle = 0;
+        } else if (System.nanoTime() - next.deadline > 0) { // the other side doesn't take the frames
+          LOG.warn("Frame not taken in time - dropped!");
+          next.done(new TimeoutException("Frame not taken in time!"));
+          next = null;
+        } else {
+          waitStrategy.idle(idle);
+          idle = idle == Integer.MAX_VALUE ? idle : idle + 1;
+        }
+      }
+      fail(next);
+    }
+
+    // fails the given and the queued frames - the channel is closed
+    private void fail(final Outbound current) {
+      final IllegalStateException closedExc = new IllegalStateException("Channel closed!");
+      for (Outbound next = current == null ? outbound.poll() : current; next != null; next = outbound.poll()) {
+        next.done(closedExc);
+      }
+    }
+
+    private static final class Outbound {
+
+      private final byte[] frame;
+      private final long deadline; // nanos
+      private final Consumer<Throwable> callback;
+
+      private Outbound(final byte[] frame, final long deadline, final Consumer<Throwable> callback) {
+        this.frame = frame;
+        this.deadline = deadline;
+        this.callback = callback;
+      }
+
+      private void done(final Throwable error) {
+        if (callback != null) {
+          try {
+            callback.accept(error);
+          } catch (final Throwable t) {
+            LOG.error("Send callback failed!", t);
+          }
+        }
+      }
+    }
+  }
+}
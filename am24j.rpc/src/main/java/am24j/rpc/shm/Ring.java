@@ -0,0 +1,179 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Single producer / single consumer ring buffer of byte records in a memory-mapped file - shared between processes on
+ * the same host. The producer and the consumer sequences (total bytes written / read) are in separate cache lines, set
+ * with release and read with acquire semantic (lock-free), so a record is fully written before it becomes visible to
+ * the consumer and its space is reused only after it is fully read.<br>
+ * A record is 8 bytes aligned - length (int) and the bytes. If a record doesn't fit before the end of the buffer the
+ * rest is skipped (marked with {@link #PADDING} length) and the record is written at the beginning.<br>
+ * Not thread safe - at most one thread produces and one consumes at a time.
+ *
+ * @author avgustinmm
+ */
+final class Ring {
+
+  private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+  private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+  // header
+  private static final int PRODUCER = 0; // producer sequence
+  private static final int CONSUMER = 64; // consumer sequence, other cache line
+  private static final int MAGIC = 128; // set (last) when initialized
+  private static final int CAPACITY = 132;
+  private static final int DATA = 192;
+
+  private static final int MAGIC_VALUE = 0x52494e47;
+  private static final int PADDING = -1;
+
+  private final ByteBuffer header;
+  private final ByteBuffer producerData; // positioned by the producer only
+  private final ByteBuffer consumerData; // positioned by the consumer only
+  private final int capacity;
+  private final int mask;
+
+  // the other side's sequence as last read - the shared one is read only if there is no space / no records
+  private long consumerCache;
+  private long producerCache;
+
+  private Ring(final MappedByteBuffer buffer) {
+    buffer.order(ByteOrder.nativeOrder());
+    header = buffer;
+    if ((int)INT.getAcquire(header, MAGIC) != MAGIC_VALUE) {
+      throw new IllegalStateException("Not a ring!");
+    }
+    capacity = header.getInt(CAPACITY);
+    mask = capacity - 1;
+    producerData = header.duplicate().position(DATA).slice().order(ByteOrder.nativeOrder());
+    consumerData = producerData.duplicate().order(ByteOrder.nativeOrder());
+    consumerCache = (long)LONG.getAcquire(header, CONSUMER);
+    producerCache = (long)LONG.getAcquire(header, PRODUCER);
+  }
+
+  /**
+   * Creates (or recreates) the ring file with the capacity (power of two) and maps it
+   */
+  static Ring create(final File file, final int capacity) {
+    if (capacity < 64 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two, at least 64! Found: " + capacity + "!");
+    }
+    file.getAbsoluteFile().getParentFile().mkdirs();
+    file.delete(); // the mapping of the previous (if any) remains valid for its processes
+    final MappedByteBuffer buffer = map(file, DATA + capacity);
+    buffer.order(ByteOrder.nativeOrder());
+    buffer.putInt(CAPACITY, capacity);
+    INT.setRelease(buffer, MAGIC, MAGIC_VALUE);
+    return new Ring(buffer);
+  }
+
+  /**
+   * Maps existing ring file
+   */
+  static Ring open(final File file) {
+    if (!file.isFile()) {
+      throw new IllegalStateException("No ring " + file + "!");
+    }
+    return new Ring(map(file, file.length()));
+  }
+
+  /**
+   * Max length of a record
+   */
+  int maxLength() {
+    return capacity / 2 - 4; // on wrap the record and the padding must fit
+  }
+
+  /**
+   * Writes the record, returns false if there is no space (yet)
+   */
+  boolean offer(final byte[] record) {
+    final int length = record.length;
+    if (length > maxLength()) {
+      throw new IllegalArgumentException("Record too large (" + length + " bytes, max: " + maxLength() + ")!");
+    }
+    final long producer = (long)LONG.getOpaque(header, PRODUCER); // own
+    final int offset = (int)producer & mask;
+    final int size = align(4 + length);
+    final int padding = size > capacity - offset ? capacity - offset : 0;
+    if (producer + padding + size - consumerCache > capacity) {
+      consumerCache = (long)LONG.getAcquire(header, CONSUMER);
+      if (producer + padding + size - consumerCache > capacity) {
+        return false;
+      }
+    }
+    int position = offset;
+    if (padding > 0) {
+      producerData.putInt(offset, PADDING);
+      position = 0;
+    }
+    producerData.putInt(position, length);
+    producerData.position(position + 4);
+    producerData.put(record);
+    LONG.setRelease(header, PRODUCER, producer + padding + size); // publish
+    return true;
+  }
+
+  /**
+   * Reads the next record, returns null if there is none (yet)
+   */
+  byte[] poll() {
+    long consumer = (long)LONG.getOpaque(header, CONSUMER); // own
+    if (consumer == producerCache) {
+      producerCache = (long)LONG.getAcquire(header, PRODUCER);
+      if (consumer == producerCache) {
+        return null;
+      }
+    }
+    int offset = (int)consumer & mask;
+    int length = consumerData.getInt(offset);
+    if (length == PADDING) {
+      consumer += capacity - offset;
+      offset = 0;
+      length = consumerData.getInt(0);
+    }
+    final byte[] record = new byte[length];
+    consumerData.position(offset + 4);
+    consumerData.get(record);
+    LONG.setRelease(header, CONSUMER, consumer + align(4 + length)); // release the space
+    return record;
+  }
+
+  private static int align(final int size) {
+    return (size + 7) & ~7;
+  }
+
+  private static MappedByteBuffer map(final File file, final long size) {
+    try (final RandomAccessFile raf = new RandomAccessFile(file, "rw"); final FileChannel channel = raf.getChannel()) {
+      return channel.map(MapMode.READ_WRITE, 0, size); // remains valid after the channel is closed
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
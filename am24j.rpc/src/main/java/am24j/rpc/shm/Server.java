@@ -0,0 +1,591 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.shm;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.slf4j.Logger;
+
+import am24j.commons.ASync;
+import am24j.commons.Ctx;
+import am24j.commons.Reflect;
+import am24j.commons.Utils;
+import am24j.rpc.Auth;
+import am24j.rpc.AuthVerfier;
+import am24j.rpc.BlockingExecutor;
+import am24j.rpc.Deadline;
+import am24j.rpc.Idempotent;
+import am24j.rpc.Invoker;
+import am24j.rpc.Local;
+import am24j.rpc.Metrics;
+import am24j.rpc.Remote;
+import am24j.rpc.Service;
+import am24j.rpc.SingleFlight;
+import am24j.rpc.Trace;
+import am24j.rpc.Tracer;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.shm.Common.Channel;
+import am24j.vertx.VertxUtils;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Shared memory RPC Server - for a client process on the same host. Creates the channel's rings (request and response)
+ * as memory-mapped files, receives the calls from the request ring and sends the responses (and the stream items) to
+ * the response ring. The rings are single producer / single consumer, so a channel (see {@link Common#NAME}) serves a
+ * single client at a time.<br>
+ * The responses are sent by the channel's writer thread, so a client that doesn't take them doesn't block the context -
+ * a response or a stream item not taken within the send timeout (or the call's deadline) is dropped and the stream is
+ * cancelled.<br>
+ * Config: <code>{"dir": &lt;of the ring files, default &lt;rw dir&gt;/shm&gt;, "name": &lt;channel name, default
+ * rpc&gt;, "ringSize": &lt;bytes per direction, power of two, default 1 MiB&gt;, "wait": &lt;spin, yield or park
+ * (default)&gt;, "sendTimeout": &lt;ms, max wait for the client to take a frame, default 30000&gt;}</code>
+ *
+ * @author avgustinmm
+ */
+@Singleton
+public class Server implements AutoCloseable {
+
+  private static final Logger LOG = Ctx.logger("rpc.shm.server");
+
+  public static final String RING_SIZE = "ringSize";
+  public static final String SEND_TIMEOUT = Common.SEND_TIMEOUT; // ms, max wait for the client to take a frame
+
+  private final List<AuthVerfier<MultiMap>> authVerfiers;
+
+  private final Vertx vertx;
+  private final Executor vExecutor; // the frames are handled in order, on a single context
+  private final Channel channel;
+  private final long sendTimeout;
+  private final List<java.io.File> rings;
+  private final Map<String, MethodHandler> methods;
+  private final BlockingExecutor blockingExecutor;
+  private final Metrics metrics;
+  private final Tracer tracer;
+
+  private final SingleFlight singleFlight = new SingleFlight(); // coalesces the idempotent calls
+  private final Map<Long, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>(); // unary calls by call id
+  private final Map<Long, MethodHandler.ResponseStream> streams = new ConcurrentHashMap<>(); // by call id
+  private final Runnable unregisterLocal;
+
+  public Server(final List<Object> services, final List<AuthVerfier<MultiMap>> authVerfiers, final Vertx vertx) {
+    this(services, authVerfiers, new JsonObject(), vertx);
+  }
+
+  @Inject
+  public Server(
+      @Remote final List<Object> services,
+      final List<AuthVerfier<MultiMap>> authVerfiers,
+      @Named("shm_server.json") final JsonObject config,
+      final Vertx vertx) {
+    LOG.info("Start (services: {}, config: {})", services, config);
+    this.authVerfiers = authVerfiers;
+    this.vertx = vertx;
+    vExecutor = VertxUtils.ctxExecutor(vertx);
+    blockingExecutor = BlockingExecutor.create(config, vertx);
+    metrics = Metrics.register("shm.server", true, vertx);
+    tracer = Tracer.create(config, vertx);
+    methods =
+      services.stream()
+        .flatMap(this::methodHandlers)
+        .collect(Collectors.toMap(handler -> handler.address, Function.identity()));
+    if (LOG.isInfoEnabled()) {
+      methods.keySet().forEach(address -> LOG.info("    > {}", address));
+    }
+    final int ringSize = config.getInteger(RING_SIZE, 1 << 20);
+    sendTimeout = config.getLong(SEND_TIMEOUT, 30_000L);
+    rings = Arrays.asList(Common.requestRing(config), Common.responseRing(config));
+    final Ring responses = Ring.create(rings.get(1), ringSize);
+    final Ring requests = Ring.create(rings.get(0), ringSize); // the last - clients wait for it
+    channel = new Channel(
+      requests, responses, Common.waitStrategy(config), sendTimeout, "rpc-shm-server-" + config.getString(Common.NAME, "rpc"),
+      frame -> vExecutor.execute(() -> handle(frame)));
+    // co-located clients (in local mode) call the services directly, authenticated by the same verifiers
+    unregisterLocal = Local.register(services, blockingExecutor, credentials -> {
+      final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+      if (credentials != null) {
+        headers.add(Common.AUTHORIZATION, credentials);
+      }
+      return verify(headers);
+    });
+  }
+
+  @Override
+  public void close() {
+    unregisterLocal.run();
+    channel.close();
+    rings.forEach(java.io.File::delete);
+    blockingExecutor.close();
+    metrics.close();
+    tracer.close();
+  }
+
+  /**
+   * Returns the per method call metrics
+   */
+  public Metrics callMetrics() {
+    return metrics;
+  }
+
+  public Tracer tracer() {
+    return tracer;
+  }
+
+  private Stream<MethodHandler> methodHandlers(final Object service) {
+    return Arrays.stream(service.getClass().getInterfaces()) // only directly declared interfaces
+      .filter(iClass -> Objects.nonNull(iClass.getAnnotation(Service.class)))
+      .flatMap(iClass -> methodHandlers(iClass, service));
+  }
+
+  private Stream<MethodHandler> methodHandlers(final Class<?> iClass, final Object service) {
+    final Protocol aProto = Proto.protocol(iClass);
+    return Arrays.stream(iClass.getMethods()) // all methods - not only declared
+      .collect(Collectors.toMap(Reflect::methodSig, Function.identity()))
+      .values()
+      .stream()
+      .filter(method -> {
+        if (Proto.isRequestStream(method)) {
+          LOG.warn("Request streams are not supported by shared memory RPC! Skip method: {}", method);
+          return false;
+        }
+        return true;
+      })
+      .map(method -> new MethodHandler(method, service, aProto));
+  }
+
+  private CompletionStage<Auth> verify(final MultiMap headers) {
+    return ASync.sequentiallyGetSkipErrors(
+      Utils.map(
+        authVerfiers.iterator(),
+        authVerifier -> authVerifier.verify(headers)));
+  }
+
+  // on the context
+  private void handle(final byte[] frame) {
+    final DataInputStream in = Common.input(frame);
+    long callId = -1;
+    try {
+      final byte type = in.readByte();
+      callId = in.readLong();
+      switch (type) {
+        case Common.CALL: {
+          final String address = in.readUTF();
+          final MultiMap headers = Common.readHeaders(in);
+          final boolean stream = in.readBoolean();
+          final MethodHandler handler = methods.get(address);
+          if (handler == null) {
+            fail(callId, Common.NOT_FOUND, "No method " + address + "!");
+          } else {
+            handler.handle(callId, headers, stream, in, frame.length);
+          }
+          break;
+        }
+        case Common.DEMAND: {
+          final MethodHandler.ResponseStream stream = streams.get(callId);
+          if (stream != null) {
+            stream.request(in.readLong());
+          }
+          break;
+        }
+        case Common.CANCEL: {
+          LOG.debug("Cancel call: {}", callId);
+          final CompletableFuture<?> call = inFlight.remove(callId);
+          if (call != null) {
+            call.cancel(false);
+          }
+          final MethodHandler.ResponseStream stream = streams.get(callId);
+          if (stream != null) {
+            stream.cancel();
+          }
+          break;
+        }
+        default: {
+          LOG.warn("[{}] Unknown frame type: {}", callId, type);
+        }
+      }
+    } catch (final IOException e) {
+      LOG.error("[{}] Invalid frame!", callId, e);
+    }
+  }
+
+  // queued - never waits for the client
+  private void send(final byte[] frame) {
+    channel.send(frame);
+  }
+
+  // returns false if the frame doesn't fit the ring - then the call is failed. The callback (if not null) is called on
+  // the context when the frame is written to the ring (with null) or not taken within the send timeout / deadline
+  private boolean send(final long callId, final byte[] frame, final Deadline deadline, final Consumer<Throwable> callback) {
+    if (frame.length > channel.maxFrame()) {
+      LOG.warn("[{}] Frame too large: {} bytes, max: {}!", callId, frame.length, channel.maxFrame());
+      fail(callId, Common.TOO_LARGE, "Response too large (" + frame.length + " bytes, max: " + channel.maxFrame() + ")!");
+      return false;
+    }
+    channel.send(
+      frame,
+      deadline == null ? sendTimeout : Math.min(sendTimeout, deadline.remaining(TimeUnit.MILLISECONDS)),
+      callback == null ? null : error -> vExecutor.execute(() -> callback.accept(error)));
+    return true;
+  }
+
+  private void fail(final long callId, final int code, final String message) {
+    send(Common.frame(Common.FAILURE, callId, out -> {
+      out.writeInt(code);
+      out.writeUTF(message);
+    }));
+  }
+
+  private class MethodHandler {
+
+    private final Method method;
+    private final Object service;
+    private final Message aMessage;
+
+    private final String address;
+    private final boolean stream;
+    private final boolean idempotent;
+    private final boolean blocking;
+    private final Metrics.Method methodMetrics;
+    private final Type respType;
+
+    private MethodHandler(final Method method, final Object service, final Protocol aProto) {
+      this.method = method;
+      this.service = service;
+      aMessage = aProto.getMessages().get(Proto.methodName(method));
+
+      address = Common.address(aProto, method);
+      stream = Proto.isStream(method);
+      idempotent = !stream && method.isAnnotationPresent(Idempotent.class);
+      blocking = BlockingExecutor.isBlocking(method, service);
+      methodMetrics = metrics.method(aProto.getName() + '/' + aMessage.getName());
+      respType = Proto.responsType(method);
+    }
+
+    private void handle(final long callId, final MultiMap headers, final boolean streamCall, final DataInputStream in, final int length) {
+      final Metrics.Call metered = methodMetrics.start();
+      if (streamCall != stream) {
+        fail(callId, Common.INVALID, "Stream mismatch!");
+        metered.end(Metrics.FAILED);
+        return;
+      }
+      // registered at once - the demand and the cancel could come before the verification completes
+      final ResponseStream responseStream = stream ? new ResponseStream(callId, metered) : null;
+      if (responseStream != null) {
+        streams.put(callId, responseStream);
+      }
+      final Deadline deadline = Invoker.deadline(headers.get(Deadline.HTTP_HEADER));
+      if (deadline != null && deadline.expired()) { // don't even decode the args
+        LOG.debug("Deadline expired before call start: {}", address);
+        reject(callId, responseStream, Common.DEADLINE_EXCEEDED, "Deadline expired before call start!");
+        metered.end("DEADLINE_EXCEEDED");
+        return;
+      }
+      final Trace trace = tracer.server(headers.get(Trace.HEADER), metered);
+      final Object[] args;
+      try {
+        final long start = System.nanoTime();
+        args = Proto.decodeReq(aMessage.getRequest(), Proto.requestTypes(method), in, false);
+        metered.decoded(System.nanoTime() - start, length);
+      } catch (final Throwable t) {
+        LOG.debug("[{}] Invalid request!", address, t);
+        reject(callId, responseStream, Common.INVALID, "Invalid request: " + t + "!");
+        metered.end(Metrics.FAILED);
+        return;
+      }
+      // fast path - if verified (e.g. all verifiers completed immediately) continues inline
+      ASync.whenComplete(
+        verify(headers),
+        (auth, error) -> {
+          if (error == null) {
+            metered.principal(auth);
+            if (responseStream == null) {
+              call(callId, args, metered, auth, deadline, trace);
+            } else {
+              responseStream.start(args, auth, deadline, trace);
+            }
+          } else {
+            reject(callId, responseStream, Common.UNAUTHENTICATED, error.toString());
+            metered.end("UNAUTHENTICATED");
+          }
+        },
+        vExecutor);
+    }
+
+    private void reject(final long callId, final ResponseStream responseStream, final int code, final String message) {
+      if (responseStream != null) {
+        responseStream.done = true;
+        streams.remove(callId);
+      }
+      fail(callId, code, message);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void call(final long callId, final Object[] args, final Metrics.Call metered, final Auth auth, final Deadline deadline, final Trace trace) {
+      LOG.debug("[{}] Call {}, args: {}", address, method, args);
+      metered.invoking();
+      // idempotent - the result is the shared encoded response
+      final CompletionStage<Object> result;
+      try {
+        result = idempotent ? coalesced(args, auth, deadline, trace) : (CompletionStage<Object>)invoke(args, auth, deadline, trace);
+      } catch (final Throwable t) {
+        reply(callId, encode(Invoker.rpcExc(t instanceof InvocationTargetException && t.getCause() != null ? t.getCause() : t), metered), deadline);
+        metered.end(Metrics.ERROR);
+        return;
+      }
+      if (result instanceof CompletableFuture && !result.toCompletableFuture().isDone()) { // could be cancelled
+        inFlight.put(callId, (CompletableFuture<Object>)result);
+        result.whenComplete((r, t) -> inFlight.remove(callId));
+        if (deadline != null) { // deadline reached - cancel the call
+          final long timerId = vertx.setTimer(Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)), id -> ((CompletableFuture<Object>)result).cancel(false));
+          result.whenComplete((r, t) -> vertx.cancelTimer(timerId));
+        }
+      }
+      ASync.whenComplete(result, (resp, error) -> { // already completed (e.g. sync implementation) - reply inline
+        if (error == null) {
+          reply(callId, idempotent ? (byte[])resp : encode(resp, metered), deadline);
+          metered.end(Metrics.OK);
+        } else if (error instanceof CancellationException) {
+          LOG.debug("[{}] Call cancelled", address); // cancelled by the caller or timed out - nobody waits for reply
+          metered.end(Metrics.CANCELLED);
+        } else {
+          reply(callId, encode(Invoker.rpcExc(error), metered), deadline);
+          metered.end(Metrics.ERROR);
+        }
+      }, vExecutor);
+    }
+
+    // if not taken in time the response is dropped - the caller times out
+    private void reply(final long callId, final byte[] encoded, final Deadline deadline) {
+      send(callId, Common.frame(Common.RESPONSE, callId, out -> out.write(encoded)), deadline, null);
+    }
+
+    private byte[] encode(final Object resp, final Metrics.Call metered) {
+      final long start = System.nanoTime();
+      final byte[] encoded = Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), respType, resp, false);
+      metered.encoded(System.nanoTime() - start, encoded.length);
+      return encoded;
+    }
+
+    // joins the equal in-flight call, if any, sharing the invocation and the encoded response
+    private CompletionStage<Object> coalesced(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) {
+      return singleFlight.call(
+        SingleFlight.key(method, Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), args, false), auth, null),
+        () -> invokeAsync(args, auth, deadline, trace),
+        this::encodeShared);
+    }
+
+    // the shared response is recorded by the method only
+    private Object encodeShared(final Object resp) {
+      final long start = System.nanoTime();
+      final byte[] encoded = Proto.encodeResp(aMessage.getResponse(), aMessage.getErrors(), respType, resp, false);
+      methodMetrics.encoded(System.nanoTime() - start, encoded.length);
+      return encoded;
+    }
+
+    // blocking methods are invoked on the blocking executor - the result is a stage completed with invocation's
+    // result (null for streams)
+    private Object invoke(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) throws ReflectiveOperationException {
+      return Invoker.invoke(method, service, args, blocking ? blockingExecutor : null, trace, deadline, auth);
+    }
+
+    private CompletionStage<Object> invokeAsync(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) {
+      return Invoker.invokeAsync(method, service, args, blocking ? blockingExecutor : null, trace, deadline, auth);
+    }
+
+    // sends the items to the response ring as demanded by the caller - all signals on the context, so the items are
+    // sent in order
+    private class ResponseStream implements Subscriber<Object> {
+
+      private final long callId;
+      private final Metrics.Call metered;
+
+      private Subscription subscription;
+      private Deadline deadline;
+      private long demand; // demanded by the caller and not sent yet
+      private boolean requested; // an item is requested from the subscription or its frame is not written yet
+      private boolean done; // completed, failed or cancelled
+      private long timerId = -1;
+
+      private ResponseStream(final long callId, final Metrics.Call metered) {
+        this.callId = callId;
+        this.metered = metered;
+      }
+
+      private void start(final Object[] args, final Auth auth, final Deadline deadline, final Trace trace) {
+        if (done) { // cancelled meanwhile
+          return;
+        }
+        this.deadline = deadline;
+        if (deadline != null) { // deadline reached - end with error and cancel
+          timerId = vertx.setTimer(
+            Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)),
+            id -> vExecutor.execute(() -> fail(new IllegalStateException("Deadline expired!"), "DEADLINE_EXCEEDED")));
+        }
+        final Object[] realArgs = new Object[args.length + 1];
+        System.arraycopy(args, 0, realArgs, 0, args.length);
+        realArgs[args.length] = this;
+        metered.invoking();
+        try {
+          final Object invocation = invoke(realArgs, auth, deadline, trace);
+          if (invocation instanceof CompletionStage) { // blocking - invoked asynchronously
+            ((CompletionStage<?>)invocation).whenComplete((r, t) -> {
+              if (t != null) {
+                onError(t);
+              }
+            });
+          }
+        } catch (final InvocationTargetException e) {
+          onError(e.getCause() == null ? e : e.getCause());
+        } catch (final Throwable t) {
+          onError(t);
+        }
+      }
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        vExecutor.execute(() -> {
+          if (this.subscription != null) {
+            subscription.cancel(); // already subscribed
+            return;
+          }
+          this.subscription = subscription;
+          if (done) {
+            subscription.cancel();
+          } else {
+            requestNext();
+          }
+        });
+      }
+
+      @Override
+      public void onNext(final Object item) {
+        vExecutor.execute(() -> {
+          if (!done) {
+            metered.item();
+            final byte[] encoded = encode(item, metered);
+            demand--;
+            // the next item is requested when this is written to the ring - at most one queued item per stream
+            if (!send(callId, Common.frame(Common.ITEM, callId, out -> out.write(encoded)), deadline, this::written)) { // failed
+              end(Metrics.FAILED);
+              subscription.cancel();
+            }
+          }
+        });
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        vExecutor.execute(() -> fail(throwable, Metrics.ERROR));
+      }
+
+      @Override
+      public void onComplete() {
+        vExecutor.execute(() -> {
+          if (end(Metrics.OK)) {
+            send(Common.frame(Common.END, callId));
+          }
+        });
+      }
+
+      // on the context
+      private void request(final long n) {
+        if (!done && n > 0) {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // if less, overflow
+          requestNext();
+        }
+      }
+
+      // on the context
+      private void cancel() {
+        LOG.debug("[{}] Stream cancelled", address);
+        if (end(Metrics.CANCELLED) && subscription != null) {
+          subscription.cancel();
+        }
+      }
+
+      // one item at a time from the subscription, while there is demand - the subscription doesn't get the caller's
+      // demand at once (e.g. all) and keeps the context free between the items
+      private void requestNext() {
+        if (subscription != null && !done && !requested && demand > 0) {
+          requested = true;
+          subscription.request(1);
+        }
+      }
+
+      // on the context
+      private void written(final Throwable error) {
+        if (error == null) {
+          requested = false;
+          requestNext();
+        } else if (end(Metrics.FAILED)) { // not taken by the caller - nothing more could be sent
+          LOG.warn("[{}] Stream item not taken - stream cancelled!", address);
+          subscription.cancel();
+        }
+      }
+
+      private void fail(final Throwable throwable, final String status) {
+        if (end(status)) {
+          final byte[] encoded = encode(Invoker.rpcExc(throwable), metered);
+          send(callId, Common.frame(Common.END, callId, out -> out.write(encoded)), null, null);
+          if (subscription != null) {
+            subscription.cancel();
+          }
+        }
+      }
+
+      // returns false if already ended
+      private boolean end(final String status) {
+        if (done) {
+          return false;
+        }
+        done = true;
+        metered.end(status);
+        streams.remove(callId);
+        if (timerId != -1) {
+          vertx.cancelTimer(timerId);
+        }
+        return true;
+      }
+    }
+  }
+}
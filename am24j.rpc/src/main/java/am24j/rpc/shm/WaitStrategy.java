@@ -0,0 +1,71 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.shm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a ring side waits for records (consumer) or for space (producer). The idle count is the number of the
+ * consecutive unsuccessful attempts.
+ *
+ * @author avgustinmm
+ */
+enum WaitStrategy {
+
+  /** busy spin - lowest latency, occupies a core */
+  SPIN {
+    @Override
+    void idle(final int count) {
+      Thread.onSpinWait();
+    }
+  },
+
+  /** spin for a while, then yield */
+  YIELD {
+    @Override
+    void idle(final int count) {
+      if (count < SPINS) {
+        Thread.onSpinWait();
+      } else {
+        Thread.yield();
+      }
+    }
+  },
+
+  /** spin, yield and then park - for the idle periods */
+  PARK {
+    @Override
+    void idle(final int count) {
+      if (count < SPINS) {
+        Thread.onSpinWait();
+      } else if (count < 2 * SPINS) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(PARK_NANOS);
+      }
+    }
+  };
+
+  private static final int SPINS = 100;
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  abstract void idle(int count);
+
+  static WaitStrategy of(final String name) {
+    return WaitStrategy.valueOf(name.toUpperCase());
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.commons.Log4j2Config;
+import am24j.rpc.grpc.ClientVerticle;
+import am24j.rpc.grpc.GRPCTest;
+import am24j.rpc.grpc.ServerVerticle;
+import am24j.rpc.http.HttpTest;
+import am24j.vertx.http.Http;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Latency of sequential authenticated unary calls (gRPC and Http). Not run with the build (not a *Test), run it with
+ * <code>mvn test -Dtest=AuthLatencyBenchmark</code>.
+ *
+ * @author avgustinmm
+ */
+public class AuthLatencyBenchmark {
+
+  static {
+    Log4j2Config.setUp(Level.WARN, Level.INFO, "am24j.rpc.benchmark");
+  }
+
+  private static final Logger LOG = Ctx.logger("rpc.benchmark");
+
+  private static final int WARMUP = Integer.getInteger("benchmark.warmup", 2_000);
+  private static final int CALLS = Integer.getInteger("benchmark.calls", 10_000);
+
+  @Test
+  public void grpc() throws Exception {
+    final Vertx sVertx = Vertx.vertx();
+    final Vertx cVertx = Vertx.vertx();
+    final am24j.rpc.grpc.Server server = new am24j.rpc.grpc.Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new GRPCTest.TestAuthVerfier()),
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ServerVerticle.HOST, "localhost")
+            .put(ServerVerticle.PORT,  1720)),
+      sVertx);
+    final am24j.rpc.grpc.Client client = new am24j.rpc.grpc.Client(
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ClientVerticle.HOST, "localhost")
+            .put(ClientVerticle.PORT,  1720)),
+        cVertx);
+    try {
+      measure("gRPC", client.service(() -> "user:pass", IService.class));
+    } finally {
+      client.close();
+      cVertx.close();
+      server.close();
+      sVertx.close();
+    }
+  }
+
+  @Test
+  public void http() throws Exception {
+    final Vertx sVertx = Vertx.vertx();
+    final Vertx cVertx = Vertx.vertx();
+    final am24j.rpc.http.Server server = new am24j.rpc.http.Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new HttpTest.TestAuthVerfier()),
+      sVertx);
+    final Http http = new Http(
+      Collections.<Http.HttpHandler>singletonList(server),
+      new DeploymentOptions().setConfig(
+        new JsonObject()
+          .put(ServerVerticle.HOST, "localhost")
+          .put(ServerVerticle.PORT, 1721)),
+      sVertx);
+    final am24j.rpc.http.Client client = new am24j.rpc.http.Client(
+      new JsonObject()
+        .put("ssl", false)
+        .put("defaultHost", "localhost")
+        .put("defaultPort", 1721),
+      cVertx);
+    try {
+      measure("Http", client.service(() -> "user:pass", IService.class));
+    } finally {
+      client.close();
+      cVertx.close();
+      http.close();
+      sVertx.close();
+    }
+  }
+
+  private static void measure(final String transport, final IService service) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      service.getCall(1, "warmup").toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+    final long[] latencies = new long[CALLS];
+    final long start = System.nanoTime();
+    for (int i = 0; i < CALLS; i++) {
+      final long callStart = System.nanoTime();
+      service.getCall(1, "call").toCompletableFuture().get(10, TimeUnit.SECONDS);
+      latencies[i] = System.nanoTime() - callStart;
+    }
+    final long total = System.nanoTime() - start;
+    Arrays.sort(latencies);
+    LOG.info(
+      "{}: {} calls, avg {} us, p50 {} us, p90 {} us, p99 {} us",
+      transport, CALLS,
+      total / CALLS / 1_000,
+      latencies[CALLS / 2] / 1_000,
+      latencies[CALLS * 9 / 10] / 1_000,
+      latencies[CALLS * 99 / 100] / 1_000);
+  }
+}
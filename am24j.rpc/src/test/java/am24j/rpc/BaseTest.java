@@ -15,12 +15,20 @@
  */
 package am24j.rpc;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.concurrent.Flow.Publisher;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
 
@@ -79,6 +87,37 @@ public class BaseTest {
     Assert.assertEquals(expected, received);
   }
 
+  @Test
+  public void testStreamRequestAll() {
+    final List<Object> received = Collections.synchronizedList(new ArrayList<>());
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+    service.stream(1000, new Subscriber<String>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(final String item) {
+        received.add(item);
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        finished.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        finished.complete(null);
+      }
+    });
+    finished.join();
+
+    Assert.assertEquals(IntStream.range(0, 1000).mapToObj(String::valueOf).collect(Collectors.toList()), received);
+  }
+
   @Test
   public void testGetCallB() {
     final B b = new B().i(4).str("test");
@@ -116,6 +155,226 @@ public class BaseTest {
     Assert.assertEquals(expected, received);
   }
 
+  @Test
+  public void testNonAscii() {
+    final String str = "\u00e4\u00df\u00e7 \u0436\u0449 \u65e5\u672c \ud83d\ude00 \"\\\n";
+    Assert.assertEquals(str + str, service.getCall(2, str).toCompletableFuture().join());
+    final B b = new B().i(2).str(str);
+    Assert.assertEquals(b.x(2), service.getCallB(2, b).toCompletableFuture().join());
+  }
+
+  @Test
+  public void testBytes() {
+    final byte[] all = new byte[256]; // all values
+    for (int i = 0; i < all.length; i++) {
+      all[i] = (byte)(255 - i);
+    }
+    final byte[] reversed = service.reverse(all).toCompletableFuture().join();
+    for (int i = 0; i < all.length; i++) {
+      Assert.assertEquals((byte)i, reversed[i]);
+    }
+    final byte[] random = new byte[10_000];
+    new Random().nextBytes(random);
+    final byte[] twice = service.reverse(service.reverse(random).toCompletableFuture().join()).toCompletableFuture().join();
+    Assert.assertArrayEquals(random, twice);
+    Assert.assertArrayEquals(new byte[0], service.reverse(new byte[0]).toCompletableFuture().join());
+  }
+
+  @Test
+  public void testStreamBytes() {
+    final byte[] random = new byte[10_000];
+    new Random().nextBytes(random);
+    final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+    service.chunks(random, 333, new Subscriber<byte[]>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(final byte[] item) {
+        received.writeBytes(item);
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        finished.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        finished.complete(null);
+      }
+    });
+    finished.join();
+    Assert.assertArrayEquals(random, received.toByteArray());
+  }
+
+  @Test
+  public void testClientStream() {
+    final List<Integer> items = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+    Assert.assertEquals(Long.valueOf(10 + 999 * 1000 / 2), service.sum(10, new ListPublisher<>(items)).toCompletableFuture().join());
+  }
+
+  @Test
+  public void testBidiStream() {
+    final List<Object> expected = Arrays.asList(new Object[] {-1, "x0", "x1", "x2", "x3", "x4", "x5", -2});
+    final List<Object> received = Collections.synchronizedList(new ArrayList<>());
+
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+    service.echo("x", new ListPublisher<>(Arrays.asList("0", "1", "2", "3", "4", "5")), new StreamHandler<String>(received, finished));
+    finished.join();
+
+    Assert.assertEquals(expected, received);
+  }
+
+  @Test
+  public void testCancelCall() throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    final CompletableFuture<Void> future = service.hang(id).toCompletableFuture();
+    waitFor(() -> ServiceImpl.STARTED.contains(id));
+    future.cancel(false);
+    waitFor(() -> ServiceImpl.CANCELLED.contains(id));
+  }
+
+  @Test
+  public void testCancelStream() throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+    service.ticks(id, new Subscriber<Integer>() {
+
+      private Subscription subscription;
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(3);
+      }
+
+      @Override
+      public void onNext(final Integer item) {
+        received.add(item);
+        if (received.size() == 3) {
+          subscription.cancel();
+        }
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {}
+
+      @Override
+      public void onComplete() {}
+    });
+    waitFor(() -> ServiceImpl.CANCELLED.contains(id));
+    Assert.assertEquals(Arrays.asList(0, 1, 2), received.subList(0, 3));
+  }
+
+  @Test
+  public void testDeadline() {
+    final long remaining = service.remaining().toCompletableFuture().join();
+    Assert.assertTrue("Remaining: " + remaining, remaining > 0 && remaining <= 5_000);
+  }
+
+  @Test
+  public void testDeadlineExpired() throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    try {
+      service.hangWithTimeout(id).toCompletableFuture().join();
+      Assert.fail("Deadline expected!");
+    } catch (final CompletionException e) {
+      // expected
+    }
+    waitFor(() -> ServiceImpl.CANCELLED.contains(id)); // cancelled on the server too
+  }
+
+  @Test
+  public void testCoalesced() throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    final List<CompletableFuture<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < 4; i++) { // less than the default http client pool size (5) - all in flight together
+      results.add(service.coalesced(id).toCompletableFuture());
+    }
+    waitFor(() -> ServiceImpl.STARTED.contains(id));
+    Thread.sleep(200); // all calls reach the server
+    ServiceImpl.RELEASE.get(id).complete(null);
+    results.forEach(result -> Assert.assertEquals(1, (int)result.join())); // single invocation
+    Assert.assertEquals(2, (int)service.coalesced(id).toCompletableFuture().join()); // no caching
+  }
+
+  // servers are deployed asynchronously - waits until a call succeeds
+  public static void awaitStarted(final IService service) {
+    final long end = System.currentTimeMillis() + 10_000;
+    while (true) {
+      try {
+        service.voidCall().toCompletableFuture().join();
+        return;
+      } catch (final CompletionException e) {
+        if (System.currentTimeMillis() > end) {
+          throw e;
+        }
+        try {
+          Thread.sleep(10);
+        } catch (final InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  // waits (up to 10 s) for the condition
+  public static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+    waitFor(condition, 10_000);
+  }
+
+  public static void waitFor(final BooleanSupplier condition, final long timeoutMs) throws InterruptedException {
+    final long end = System.currentTimeMillis() + timeoutMs;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > end) {
+        Assert.fail("Timeout!");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static class ListPublisher<T> implements Publisher<T> {
+
+    private final List<T> items;
+
+    private ListPublisher(final List<T> items) {
+      this.items = items;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super T> subscriber) {
+      final Iterator<T> iterator = items.iterator();
+      subscriber.onSubscribe(new Subscription() {
+
+        private boolean done;
+
+        @Override
+        public synchronized void request(final long n) {
+          for (long i = 0; i < n && !done; i++) {
+            if (iterator.hasNext()) {
+              subscriber.onNext(iterator.next());
+            }
+            if (!iterator.hasNext()) {
+              done = true;
+              subscriber.onComplete();
+            }
+          }
+        }
+
+        @Override
+        public synchronized void cancel() {
+          done = true;
+        }
+      });
+    }
+  }
+
   private static class StreamHandler<T> implements Subscriber<T> {
 
     private final List<Object> received;
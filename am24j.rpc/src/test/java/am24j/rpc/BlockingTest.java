@@ -0,0 +1,93 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class BlockingTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.blocking");
+  }
+
+  private static final int PORT = 1760;
+
+  private static final JsonObject MAX_CONCURRENCY_2 = new JsonObject().put("maxConcurrency", 2);
+
+  @Test
+  public void testGrpc() {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.Grpc grpc = Fixture.grpc(PORT, new JsonObject().put(BlockingExecutor.CONFIG, MAX_CONCURRENCY_2), new JsonObject(), vertx)) {
+      test(grpc.service());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  @Test
+  public void testHttp() {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.HttpRPC http = Fixture.http(PORT + 1, new JsonObject().put(BlockingExecutor.CONFIG, MAX_CONCURRENCY_2), new JsonObject(), vertx)) {
+      test(http.service());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  // co-located - dispatched to the server's blocking executor, so capped as the remote calls
+  @Test
+  public void testLocal() {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.Grpc grpc = Fixture.grpc(
+        PORT + 2, new JsonObject().put(BlockingExecutor.CONFIG, MAX_CONCURRENCY_2), new JsonObject().put(Local.CONFIG, new JsonObject()), vertx)) {
+      test(grpc.service());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void test(final IService service) {
+    BaseTest.awaitStarted(service);
+    ServiceImpl.BLOCKING_MAX.set(0);
+    final List<CompletableFuture<String>> calls = new ArrayList<>();
+    for (int i = 0; i < 4; i++) { // http client pool is 5
+      calls.add(service.blocking(200).toCompletableFuture());
+    }
+    for (final CompletableFuture<String> call : calls) {
+      final String thread = call.join();
+      Assert.assertFalse("Executed on: " + thread, thread.contains("eventloop"));
+    }
+    Assert.assertEquals(2, ServiceImpl.BLOCKING_MAX.get()); // queued over the max concurrency
+    // non blocking calls are not delayed by the blocking ones
+    final CompletableFuture<String> blocking = service.blocking(500).toCompletableFuture();
+    Assert.assertEquals("ab", service.getCall(1, "ab").toCompletableFuture().join());
+    Assert.assertFalse(blocking.isDone());
+    blocking.join();
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author avgustinmm
+ */
+public class CachingAuthVerfierTest {
+
+  @Test
+  public void testSingleFlight() throws InterruptedException, ExecutionException {
+    final CountingVerfier delegate = new CountingVerfier(false);
+    final CachingAuthVerfier<String> verfier = verfier(delegate, 10, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    final List<CompletableFuture<Auth>> results = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      results.add(verfier.verify("token").toCompletableFuture());
+    }
+    Assert.assertEquals(1, delegate.calls.get());
+    results.forEach(r -> Assert.assertFalse(r.isDone()));
+    delegate.complete();
+    for (final CompletableFuture<Auth> result : results) {
+      Assert.assertEquals("token", ((TokenAuth)result.get()).token);
+    }
+    verfier.verify("token").toCompletableFuture().get();
+    Assert.assertEquals(1, delegate.calls.get());
+  }
+
+  @Test
+  public void testTtl() throws InterruptedException, ExecutionException {
+    final CountingVerfier delegate = new CountingVerfier(true);
+    final CachingAuthVerfier<String> verfier = verfier(delegate, 10, Duration.ofMillis(50), Duration.ofMillis(50));
+    verfier.verify("token").toCompletableFuture().get();
+    verfier.verify("token").toCompletableFuture().get();
+    Assert.assertEquals(1, delegate.calls.get());
+    Thread.sleep(100);
+    verfier.verify("token").toCompletableFuture().get();
+    Assert.assertEquals(2, delegate.calls.get());
+  }
+
+  @Test
+  public void testNegative() throws InterruptedException {
+    final CountingVerfier delegate = new CountingVerfier(true);
+    final CachingAuthVerfier<String> verfier = verfier(delegate, 10, Duration.ofMinutes(1), Duration.ofMillis(50));
+    assertRejected(verfier.verify("bad"));
+    assertRejected(verfier.verify("bad"));
+    Assert.assertEquals(1, delegate.calls.get());
+    Thread.sleep(100);
+    assertRejected(verfier.verify("bad"));
+    Assert.assertEquals(2, delegate.calls.get());
+  }
+
+  @Test
+  public void testMaxSize() throws InterruptedException, ExecutionException {
+    final CountingVerfier delegate = new CountingVerfier(true);
+    final CachingAuthVerfier<String> verfier = verfier(delegate, 10, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    for (int i = 0; i < 100; i++) {
+      verfier.verify("token" + i).toCompletableFuture().get();
+      Assert.assertTrue(verfier.size() <= 10);
+    }
+    Assert.assertEquals(100, delegate.calls.get());
+  }
+
+  @Test
+  public void testNoCredential() throws InterruptedException, ExecutionException {
+    final CountingVerfier delegate = new CountingVerfier(true);
+    final CachingAuthVerfier<String> verfier = verfier(delegate, 10, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    verfier.verify("").toCompletableFuture().get();
+    verfier.verify("").toCompletableFuture().get();
+    Assert.assertEquals(2, delegate.calls.get());
+    Assert.assertEquals(0, verfier.size());
+  }
+
+  private static CachingAuthVerfier<String> verfier(
+      final CountingVerfier delegate, final int maxSize, final Duration ttl, final Duration negativeTtl) {
+    final Function<String, String> credential = token -> token.isEmpty() ? null : token;
+    return new CachingAuthVerfier<>(delegate, credential, maxSize, ttl, negativeTtl);
+  }
+
+  private static void assertRejected(final CompletionStage<Auth> stage) throws InterruptedException {
+    try {
+      stage.toCompletableFuture().get();
+      Assert.fail("Must be rejected!");
+    } catch (final ExecutionException e) {
+      // expected
+    }
+  }
+
+  private static class CountingVerfier implements AuthVerfier<String> {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final boolean completeImmediately;
+    private final List<CompletableFuture<Auth>> pending = new ArrayList<>();
+
+    private CountingVerfier(final boolean completeImmediately) {
+      this.completeImmediately = completeImmediately;
+    }
+
+    @Override
+    public CompletionStage<Auth> verify(final String token) {
+      calls.incrementAndGet();
+      final CompletableFuture<Auth> future = new CompletableFuture<>();
+      if (completeImmediately) {
+        complete(token, future);
+      } else {
+        synchronized (pending) {
+          pending.add(future);
+        }
+      }
+      return future;
+    }
+
+    private void complete() {
+      synchronized (pending) {
+        pending.forEach(future -> complete("token", future));
+      }
+    }
+
+    private static void complete(final String token, final CompletableFuture<Auth> future) {
+      if (token.startsWith("bad")) {
+        future.completeExceptionally(new SecurityException("Rejected: " + token));
+      } else {
+        future.complete(new TokenAuth(token));
+      }
+    }
+  }
+
+  private static class TokenAuth extends Auth {
+
+    private final String token;
+
+    private TokenAuth(final String token) {
+      this.token = token;
+    }
+  }
+}
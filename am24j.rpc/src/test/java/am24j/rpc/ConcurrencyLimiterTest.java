@@ -0,0 +1,162 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class ConcurrencyLimiterTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.limiter");
+  }
+
+  private static final int PORT = 1750;
+
+  private static final JsonObject FIXED_LIMIT_2 = new JsonObject().put("initialLimit", 2).put("minLimit", 2).put("maxLimit", 2).put("reserved", 0);
+
+  @Test
+  public void testLimitAndPriority() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(new JsonObject().put("initialLimit", 4).put("reserved", 0.25));
+    final List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      permits.add(limiter.acquire("s/m", Auth.ANONYMOUS));
+    }
+    permits.forEach(Assert::assertNotNull);
+    Assert.assertNull(limiter.acquire("s/m", Auth.ANONYMOUS)); // the reserved share
+    final ConcurrencyLimiter.Permit priority = limiter.acquire("s/m", new PriorityAuth());
+    Assert.assertNotNull(priority);
+    Assert.assertNull(limiter.acquire("s/m", new PriorityAuth()));
+    Assert.assertNotNull(limiter.acquire("s/other", Auth.ANONYMOUS)); // per method
+
+    final JsonObject stats = limiter.stats().getJsonObject("s/m");
+    Assert.assertEquals(4, (int)stats.getInteger("limit"));
+    Assert.assertEquals(4, (int)stats.getInteger("inFlight"));
+    Assert.assertEquals(4, (long)stats.getLong("accepted"));
+    Assert.assertEquals(2, (long)stats.getLong("rejected"));
+
+    priority.release(false);
+    priority.release(false); // only the first counts
+    Assert.assertEquals(3, (int)limiter.stats().getJsonObject("s/m").getInteger("inFlight"));
+  }
+
+  @Test
+  public void testAIMD() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(new JsonObject().put("initialLimit", 10).put("backoffRatio", 0.5));
+    // loaded and in time - increases by 1/limit per call
+    for (int j = 0; j < 4; j++) {
+      final List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        permits.add(limiter.acquire("s/m", Auth.ANONYMOUS));
+      }
+      permits.forEach(permit -> permit.release(false));
+    }
+    final int increased = limiter.stats().getJsonObject("s/m").getInteger("limit");
+    Assert.assertEquals(11, increased);
+    // dropped - decreases
+    limiter.acquire("s/m", Auth.ANONYMOUS).release(true);
+    Assert.assertTrue(limiter.stats().getJsonObject("s/m").getInteger("limit") < increased);
+  }
+
+  @Test
+  public void testSingleBackoff() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(new JsonObject().put("initialLimit", 10).put("backoffRatio", 0.5));
+    // a burst of dropped calls, all started before the first decrease - backs off once
+    final List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      permits.add(limiter.acquire("s/m", Auth.ANONYMOUS));
+    }
+    permits.forEach(permit -> permit.release(true));
+    Assert.assertEquals(5, (int)limiter.stats().getJsonObject("s/m").getInteger("limit"));
+    // started after the decrease - next window
+    limiter.acquire("s/m", Auth.ANONYMOUS).release(true);
+    Assert.assertEquals(2, (int)limiter.stats().getJsonObject("s/m").getInteger("limit"));
+  }
+
+  @Test
+  public void testGrpc() throws InterruptedException {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.Grpc grpc = Fixture.grpc(PORT, new JsonObject().put(ConcurrencyLimiter.CONFIG, FIXED_LIMIT_2), new JsonObject(), vertx)) {
+      test(grpc.service(), grpc.server.limiter());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  @Test
+  public void testHttp() throws InterruptedException {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.HttpRPC http = Fixture.http(PORT + 1, new JsonObject().put(ConcurrencyLimiter.CONFIG, FIXED_LIMIT_2), new JsonObject(), vertx)) {
+      test(http.service(), http.server.limiter());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void test(final IService service, final ConcurrencyLimiter limiter) throws InterruptedException {
+    BaseTest.awaitStarted(service);
+    final String id1 = UUID.randomUUID().toString();
+    final String id2 = UUID.randomUUID().toString();
+    final CompletableFuture<Integer> call1 = service.coalesced(id1).toCompletableFuture();
+    final CompletableFuture<Integer> call2 = service.coalesced(id2).toCompletableFuture();
+    BaseTest.waitFor(() -> ServiceImpl.STARTED.contains(id1) && ServiceImpl.STARTED.contains(id2));
+    final String id3 = UUID.randomUUID().toString();
+    try {
+      service.coalesced(id3).toCompletableFuture().join();
+      Assert.fail("Must be rejected!");
+    } catch (final CompletionException e) {
+      // expected
+    }
+    Assert.assertFalse(ServiceImpl.STARTED.contains(id3));
+    Assert.assertEquals("1", service.getCall(1, "1").toCompletableFuture().join()); // the limits are per method
+    Assert.assertEquals(1, (long)stats(limiter).getLong("rejected"));
+
+    ServiceImpl.RELEASE.get(id1).complete(null);
+    ServiceImpl.RELEASE.get(id2).complete(null);
+    Assert.assertEquals(1, (int)call1.join());
+    Assert.assertEquals(1, (int)call2.join());
+    BaseTest.waitFor(() -> stats(limiter).getInteger("inFlight") == 0);
+    ServiceImpl.RELEASE.computeIfAbsent(id3, k -> new CompletableFuture<>()).complete(null);
+    Assert.assertEquals(1, (int)service.coalesced(id3).toCompletableFuture().join()); // accepted again
+  }
+
+  private static JsonObject stats(final ConcurrencyLimiter limiter) {
+    final JsonObject stats = limiter.stats();
+    return stats.getJsonObject(stats.fieldNames().stream().filter(name -> name.endsWith("/coalesced")).findFirst().get());
+  }
+
+  private static class PriorityAuth extends Auth {
+
+    @Override
+    public int priority() {
+      return 1;
+    }
+  }
+}
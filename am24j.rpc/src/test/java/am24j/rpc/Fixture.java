@@ -0,0 +1,150 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import am24j.rpc.grpc.ClientVerticle;
+import am24j.rpc.grpc.GRPCTest;
+import am24j.rpc.grpc.ServerVerticle;
+import am24j.rpc.http.HttpTest;
+import am24j.vertx.http.Http;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The common setup of the transport tests - gRPC or HTTP RPC server of a {@link ServiceImpl} on localhost and a client
+ * to it
+ *
+ * @author avgustinmm
+ */
+public final class Fixture {
+
+  private Fixture() {}
+
+  public static Grpc grpc(final int port, final JsonObject serverConfig, final JsonObject clientConfig, final Vertx vertx) {
+    return grpc(port, serverConfig, clientConfig, null, vertx, vertx);
+  }
+
+  /**
+   * Starts gRPC server (on the server vertx) and client (on the client vertx). The response cache is optional (null)
+   */
+  public static Grpc grpc(
+      final int port, final JsonObject serverConfig, final JsonObject clientConfig, final ResponseCache cache,
+      final Vertx sVertx, final Vertx cVertx) {
+    final am24j.rpc.grpc.Server server = new am24j.rpc.grpc.Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new GRPCTest.TestAuthVerfier()),
+      new DeploymentOptions()
+        .setConfig(
+          serverConfig.copy()
+            .put("usePlaintext", true)
+            .put(ServerVerticle.HOST, "localhost")
+            .put(ServerVerticle.PORT, port)),
+      Optional.empty(),
+      Optional.ofNullable(cache),
+      sVertx);
+    final am24j.rpc.grpc.Client client = new am24j.rpc.grpc.Client(
+      new DeploymentOptions()
+        .setConfig(
+          clientConfig.copy()
+            .put("usePlaintext", true)
+            .put(ClientVerticle.HOST, "localhost")
+            .put(ClientVerticle.PORT, port)),
+      cVertx);
+    return new Grpc(server, client);
+  }
+
+  public static HttpRPC http(final int port, final JsonObject serverConfig, final JsonObject clientConfig, final Vertx vertx) {
+    return http(port, serverConfig, clientConfig, null, vertx, vertx);
+  }
+
+  /**
+   * Starts HTTP RPC server (on the server vertx) and client (on the client vertx). The response cache is optional (null)
+   */
+  public static HttpRPC http(
+      final int port, final JsonObject serverConfig, final JsonObject clientConfig, final ResponseCache cache,
+      final Vertx sVertx, final Vertx cVertx) {
+    final am24j.rpc.http.Server server = new am24j.rpc.http.Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new HttpTest.TestAuthVerfier()),
+      new DeploymentOptions().setConfig(serverConfig.copy()),
+      Optional.empty(),
+      Optional.ofNullable(cache),
+      sVertx);
+    final Http http = new Http(
+      Collections.<Http.HttpHandler>singletonList(server),
+      new DeploymentOptions().setConfig(
+        new JsonObject()
+          .put(ServerVerticle.HOST, "localhost")
+          .put(ServerVerticle.PORT, port)),
+      sVertx);
+    final am24j.rpc.http.Client client = new am24j.rpc.http.Client(
+      clientConfig.copy()
+        .put("ssl", false)
+        .put("defaultHost", "localhost")
+        .put("defaultPort", port),
+      cVertx);
+    return new HttpRPC(server, http, client);
+  }
+
+  public static final class Grpc implements AutoCloseable {
+
+    public final am24j.rpc.grpc.Server server;
+    public final am24j.rpc.grpc.Client client;
+
+    private Grpc(final am24j.rpc.grpc.Server server, final am24j.rpc.grpc.Client client) {
+      this.server = server;
+      this.client = client;
+    }
+
+    public IService service() {
+      return client.service(() -> "user:pass", IService.class);
+    }
+
+    @Override
+    public void close() {
+      client.close();
+      server.close();
+    }
+  }
+
+  public static final class HttpRPC implements AutoCloseable {
+
+    public final am24j.rpc.http.Server server;
+    public final Http http;
+    public final am24j.rpc.http.Client client;
+
+    private HttpRPC(final am24j.rpc.http.Server server, final Http http, final am24j.rpc.http.Client client) {
+      this.server = server;
+      this.http = http;
+      this.client = client;
+    }
+
+    public IService service() {
+      return client.service(() -> "user:pass", IService.class);
+    }
+
+    @Override
+    public void close() {
+      client.close();
+      server.close();
+      http.close();
+    }
+  }
+}
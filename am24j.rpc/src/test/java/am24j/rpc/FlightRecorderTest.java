@@ -0,0 +1,150 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.inject.Injector;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * @author avgustinmm
+ */
+public class FlightRecorderTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.jfr");
+  }
+
+  private static final int PORT = 1780;
+
+  @Test
+  public void testEvents() throws IOException, ParseException {
+    final Path file = Files.createTempFile("am24j", ".jfr");
+    try (final Recording recording = new Recording(configuration())) {
+      recording.start();
+      Injector.newInstance().getInstance(Component.class);
+      grpc();
+      http();
+      recording.stop();
+      recording.dump(file);
+
+      final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+      assertCalls(events, "grpc");
+      assertCalls(events, "http");
+      Assert.assertTrue(
+        events.stream().anyMatch(e ->
+          e.getEventType().getName().equals("am24j.inject.Resolve") &&
+          e.getString("key").equals(Dependency.class.getName()) &&
+          e.getString("point").contains(Component.class.getName())));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void assertCalls(final List<RecordedEvent> events, final String transport) {
+    final List<RecordedEvent> server = calls(events, "am24j.rpc.ServerCall", transport + ".server");
+    final List<RecordedEvent> client = calls(events, "am24j.rpc.ClientCall", transport + ".client");
+    Assert.assertEquals(transport, 3, server.size());
+    Assert.assertEquals(transport, 3, client.size());
+    for (final RecordedEvent event : server) {
+      Assert.assertEquals(Proto.protocol(IService.class).getName(), event.getString("service"));
+      Assert.assertEquals("anonymous", event.getString("principal"));
+      Assert.assertEquals(Metrics.OK, event.getString("status"));
+      Assert.assertTrue(event.getLong("requestBytes") > 0);
+      Assert.assertTrue(event.getLong("responseBytes") > 0);
+      Assert.assertTrue(event.getDuration("invoke").compareTo(Duration.ofMillis(20)) >= 0);
+      Assert.assertTrue(event.getDuration().compareTo(event.getDuration("invoke")) >= 0);
+    }
+    for (final RecordedEvent event : client) {
+      Assert.assertEquals(Metrics.OK, event.getString("status"));
+      Assert.assertTrue(event.getLong("requestBytes") > 0);
+      Assert.assertTrue(event.getLong("responseBytes") > 0);
+      Assert.assertTrue(event.getDuration().compareTo(Duration.ofMillis(20)) >= 0);
+    }
+  }
+
+  // the blocking calls only - the rest are under the threshold
+  private static List<RecordedEvent> calls(final List<RecordedEvent> events, final String type, final String metrics) {
+    return events.stream()
+      .filter(e -> e.getEventType().getName().equals(type) && metrics.equals(e.getString("metrics")) && "blocking".equals(e.getString("method")))
+      .collect(Collectors.toList());
+  }
+
+  private static Configuration configuration() throws IOException, ParseException {
+    try (final Reader reader = new InputStreamReader(FlightRecorderTest.class.getResourceAsStream("/am24j.jfc"), StandardCharsets.UTF_8)) {
+      return Configuration.create(reader);
+    }
+  }
+
+  private static void grpc() {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.Grpc grpc = Fixture.grpc(PORT, new JsonObject(), new JsonObject(), vertx)) {
+      call(grpc.service());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void http() {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.HttpRPC http = Fixture.http(PORT + 1, new JsonObject(), new JsonObject(), vertx)) {
+      call(http.service());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void call(final IService service) {
+    BaseTest.awaitStarted(service);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals("ab", service.getCall(1, "ab").toCompletableFuture().join());
+    }
+    for (int i = 0; i < 3; i++) {
+      service.blocking(20).toCompletableFuture().join();
+    }
+  }
+
+  public static class Dependency {}
+
+  public static class Component {
+
+    @Inject
+    public Component(final Dependency dependency) {}
+  }
+}
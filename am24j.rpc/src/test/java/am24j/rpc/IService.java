@@ -16,6 +16,7 @@
 package am24j.rpc;
 
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Publisher;
 import java.util.concurrent.Flow.Subscriber;
 
 import am24j.bean.Bean;
@@ -44,6 +45,47 @@ public interface IService {
 
   public void streamBOfB(final int i, final Subscriber<BOfB> subscriber);
 
+  public CompletionStage<Long> sum(final long base, final Publisher<Integer> items);
+
+  public void echo(final String prefix, final Publisher<String> items, final Subscriber<String> subscriber);
+
+  public CompletionStage<Void> hang(final String id);
+
+  public void ticks(final String id, final Subscriber<Integer> subscriber);
+
+  @Timeout(5_000)
+  public CompletionStage<Long> remaining();
+
+  @Timeout(200)
+  public CompletionStage<Void> hangWithTimeout(final String id);
+
+  public CompletionStage<Boolean> isLocal(@PartitionKey final String key);
+
+  @Idempotent
+  public CompletionStage<Integer> coalesced(final String id); // returns the invocation number
+
+  @Cached(ttl = 60_000)
+  public CompletionStage<Integer> cached(final String id); // returns the invocation number
+
+  @Cached(ttl = 200)
+  public CompletionStage<Integer> cachedShort(final String id); // as cached, short ttl
+
+  @Cached(ttl = 60_000)
+  public CompletionStage<Void> cachedHang(final String id); // as hang
+
+  @Blocking
+  public CompletionStage<String> blocking(final int sleepMs); // sleeps and returns the name of the executing thread
+
+  public CompletionStage<String> traceparent(); // returns the traceparent of the current trace or empty string
+
+  public CompletionStage<byte[]> reverse(final byte[] bytes); // returns the bytes in reverse order
+
+  public void chunks(final byte[] bytes, final int size, final Subscriber<byte[]> subscriber); // streams the bytes in chunks
+
+  public void payloads(final String id, final int size, final Subscriber<byte[]> subscriber); // infinite, of the size
+
+  public void asyncPayloads(final String id, final int size, final Subscriber<byte[]> subscriber); // as payloads, emitted one by one by another thread
+
   public static class B extends Bean<B> {
 
     private int i;
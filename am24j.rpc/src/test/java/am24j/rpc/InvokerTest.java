@@ -0,0 +1,103 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author avgustinmm
+ */
+public class InvokerTest {
+
+  private static final Calls CALLS = new Calls();
+
+  @Test
+  public void testInline() throws ReflectiveOperationException {
+    final Deadline deadline = Deadline.after(1, TimeUnit.MINUTES);
+    Assert.assertEquals(Thread.currentThread().getName(), Invoker.invoke(Calls.class.getMethod("current"), CALLS, new Object[0], null, null, deadline, null));
+    Assert.assertSame(deadline, CALLS.deadline);
+    Invoker.invoke(Calls.class.getMethod("current"), CALLS, new Object[0], null);
+    Assert.assertNull(CALLS.deadline);
+    try {
+      Invoker.invoke(Calls.class.getMethod("fail"), CALLS, new Object[0], null);
+      Assert.fail("Exception expected!");
+    } catch (final InvocationTargetException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertTrue(Invoker.invokeAsync(Calls.class.getMethod("fail"), CALLS, new Object[0], null).toCompletableFuture().isCompletedExceptionally());
+  }
+
+  @Test
+  public void testBlocking() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "blocking"));
+    try {
+      final Deadline deadline = Deadline.after(1, TimeUnit.MINUTES);
+      Assert.assertEquals(
+        "blocking",
+        ((CompletionStage<?>)Invoker.invoke(Calls.class.getMethod("current"), CALLS, new Object[0], executor, deadline)).toCompletableFuture().join());
+      Assert.assertSame(deadline, CALLS.deadline);
+      try {
+        Invoker.invokeAsync(Calls.class.getMethod("fail"), CALLS, new Object[0], executor).toCompletableFuture().join();
+        Assert.fail("Exception expected!");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      // the cancel reaches the invocation
+      final CompletableFuture<Object> hang = new CompletableFuture<>();
+      CALLS.hang = hang;
+      ((CompletableFuture<?>)Invoker.invoke(Calls.class.getMethod("hang"), CALLS, new Object[0], executor)).cancel(false);
+      Assert.assertTrue(executor.submit(() -> hang).get().isCancelled());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testDeadline() {
+    Assert.assertNull(Invoker.deadline(null));
+    Assert.assertNull(Invoker.deadline("invalid"));
+    final long remaining = Invoker.deadline("1000").remaining(TimeUnit.MILLISECONDS);
+    Assert.assertTrue(String.valueOf(remaining), remaining > 0 && remaining <= 1000);
+  }
+
+  public static class Calls {
+
+    private volatile Deadline deadline; // of the last current call
+    private volatile CompletableFuture<Object> hang;
+
+    public String current() {
+      deadline = Deadline.current().orElse(null);
+      return Thread.currentThread().getName();
+    }
+
+    public CompletionStage<Object> fail() {
+      throw new IllegalStateException();
+    }
+
+    public CompletionStage<Object> hang() {
+      return hang;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class MetricsTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.metrics");
+  }
+
+  private static final int PORT = 1770;
+
+  @Test
+  public void testHistogram() {
+    final Histogram histogram = new Histogram();
+    Assert.assertEquals(0, histogram.percentile(50));
+    final List<Long> values = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      final long value = ThreadLocalRandom.current().nextLong(1_000_000_000L);
+      values.add(value);
+      histogram.record(value);
+    }
+    histogram.record(-1); // ignored
+    Collections.sort(values);
+    Assert.assertEquals(values.size(), histogram.count());
+    Assert.assertEquals((long)values.get(values.size() - 1), histogram.max());
+    for (final double percentile : new double[] {50, 90, 99, 99.9}) {
+      final long expected = values.get((int)Math.ceil(values.size() * percentile / 100) - 1);
+      Assert.assertEquals("p" + percentile, expected, histogram.percentile(percentile), expected * 0.07);
+    }
+    for (long value = 0; value < 1_000_000; value += 7) { // bucket value in the bucket range
+      Assert.assertEquals(value, Histogram.value(Histogram.index(value)), value / 16.0);
+    }
+  }
+
+  @Test
+  public void testGrpc() throws InterruptedException {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.Grpc grpc = Fixture.grpc(PORT, new JsonObject(), new JsonObject(), vertx)) {
+      test(grpc.service());
+      assertMetrics(grpc.server.callMetrics());
+      assertMetrics(grpc.client.callMetrics());
+      final JsonObject all = Metrics.snapshot(vertx);
+      Assert.assertTrue(all.toString(), all.containsKey(grpc.server.callMetrics().name()));
+      Assert.assertTrue(all.toString(), all.containsKey(grpc.client.callMetrics().name()));
+    } finally {
+      vertx.close();
+    }
+  }
+
+  @Test
+  public void testHttp() throws InterruptedException {
+    final Vertx vertx = Vertx.vertx();
+    try (final Fixture.HttpRPC http = Fixture.http(PORT + 1, new JsonObject(), new JsonObject(), vertx)) {
+      test(http.service());
+      assertMetrics(http.server.callMetrics());
+      assertMetrics(http.client.callMetrics());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void test(final IService service) {
+    BaseTest.awaitStarted(service);
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals("ab".repeat(i), service.getCall(i, "ab").toCompletableFuture().join());
+    }
+    try {
+      service.throwExc(true).toCompletableFuture().join();
+      Assert.fail("Must fail!");
+    } catch (final CompletionException e) {
+      // expected
+    }
+    final List<String> items = Collections.synchronizedList(new ArrayList<>());
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+    service.stream(3, new Subscriber<String>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(final String item) {
+        items.add(item);
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        done.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        done.complete(null);
+      }
+    });
+    done.join();
+    Assert.assertEquals(3, items.size());
+  }
+
+  // the call end could be recorded just after the response is received - waits for no calls in flight
+  private static void assertMetrics(final Metrics metrics) throws InterruptedException {
+    final long end = System.currentTimeMillis() + 5_000;
+    while (inFlight(metrics.snapshot()) != 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    final JsonObject snapshot = metrics.snapshot();
+    final JsonObject getCall = method(snapshot, "/getCall");
+    Assert.assertEquals(getCall.toString(), 5, (long)getCall.getJsonObject("calls").getLong(Metrics.OK));
+    Assert.assertEquals(0, (long)getCall.getLong("inFlight"));
+    Assert.assertTrue(getCall.getLong("requestBytes") > 0);
+    Assert.assertTrue(getCall.getLong("responseBytes") > 0);
+    final JsonObject latency = getCall.getJsonObject("latency");
+    Assert.assertEquals(5, (long)latency.getJsonObject("total").getLong("count"));
+    Assert.assertEquals(5, (long)latency.getJsonObject("invoke").getLong("count"));
+    Assert.assertTrue(latency.getJsonObject("decode").getLong("count") >= 5);
+    Assert.assertTrue(latency.getJsonObject("encode").getLong("count") >= 5);
+    Assert.assertTrue(latency.getJsonObject("total").getDouble("max") > 0);
+
+    final JsonObject throwExc = method(snapshot, "/throwExc");
+    Assert.assertEquals(throwExc.toString(), 1, (long)throwExc.getJsonObject("calls").getLong(Metrics.ERROR));
+
+    final JsonObject stream = method(snapshot, "/stream");
+    Assert.assertEquals(stream.toString(), 1, (long)stream.getJsonObject("calls").getLong(Metrics.OK));
+    Assert.assertEquals(3, (long)stream.getLong("items"));
+  }
+
+  private static long inFlight(final JsonObject snapshot) {
+    return snapshot.stream().mapToLong(method -> ((JsonObject)method.getValue()).getLong("inFlight")).sum();
+  }
+
+  private static JsonObject method(final JsonObject snapshot, final String suffix) {
+    return (JsonObject)snapshot.stream()
+      .filter(method -> method.getKey().endsWith(suffix))
+      .findFirst()
+      .orElseThrow(() -> new AssertionError("No " + suffix + " in " + snapshot))
+      .getValue();
+  }
+}
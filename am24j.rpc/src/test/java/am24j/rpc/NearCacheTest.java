@@ -0,0 +1,131 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class NearCacheTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.nearCache");
+  }
+
+  private static final int PORT = 1740;
+
+  private static Method cached;
+
+  private static Vertx vertx; // single vertx - the event bus is shared as a clustered one
+  private static Fixture.Grpc grpc;
+  private static Fixture.HttpRPC http;
+
+  @BeforeClass
+  public static void before() throws NoSuchMethodException {
+    cached = IService.class.getMethod("cached", String.class);
+    vertx = Vertx.vertx();
+    final JsonObject clientConfig = new JsonObject().put(NearCache.CONFIG, new JsonObject().put("maxSize", 100));
+    grpc = Fixture.grpc(PORT, new JsonObject(), clientConfig, vertx);
+    http = Fixture.http(PORT + 1, new JsonObject(), clientConfig, vertx);
+  }
+
+  @AfterClass
+  public static void after() {
+    grpc.close();
+    http.close();
+    vertx.close();
+  }
+
+  @Test
+  public void testGrpc() throws InterruptedException {
+    test(grpc.service());
+  }
+
+  @Test
+  public void testHttp() throws InterruptedException {
+    test(http.service());
+  }
+
+  @Test
+  public void testGrpcCredentials() {
+    testCredentials(grpc.service(), grpc.client.service(null, IService.class));
+  }
+
+  @Test
+  public void testHttpCredentials() {
+    testCredentials(http.service(), http.client.service(null, IService.class));
+  }
+
+  // an unauthenticated proxy doesn't get the response cached by an authenticated one
+  private static void testCredentials(final IService authenticated, final IService unauthenticated) {
+    final String id = UUID.randomUUID().toString();
+    Assert.assertEquals(1, (int)authenticated.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(2, (int)unauthenticated.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(1, (int)authenticated.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(2, (int)unauthenticated.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(2, ServiceImpl.INVOCATIONS.get(id).get());
+  }
+
+  private static void test(final IService service) throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    Assert.assertEquals(1, (int)service.cached(id).toCompletableFuture().join());
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(service.cached(id).toCompletableFuture().isDone()); // served on the calling thread
+      Assert.assertEquals(1, (int)service.cached(id).toCompletableFuture().join());
+    }
+    Assert.assertEquals(1, ServiceImpl.INVOCATIONS.get(id).get());
+
+    NearCache.invalidate(vertx, cached, id);
+    BaseTest.waitFor(() -> service.cached(id).toCompletableFuture().join() != 1);
+    Assert.assertEquals(2, (int)service.cached(id).toCompletableFuture().join());
+
+    NearCache.invalidate(vertx, cached);
+    BaseTest.waitFor(() -> service.cached(id).toCompletableFuture().join() != 2);
+    Assert.assertEquals(3, (int)service.cached(id).toCompletableFuture().join());
+
+    NearCache.invalidateAll(vertx);
+    BaseTest.waitFor(() -> service.cached(id).toCompletableFuture().join() != 3);
+    Assert.assertEquals(4, (int)service.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(4, ServiceImpl.INVOCATIONS.get(id).get());
+
+    // expires with the method's ttl (200 ms), not with the config's (default 10 min)
+    final String shortId = UUID.randomUUID().toString();
+    Assert.assertEquals(1, (int)service.cachedShort(shortId).toCompletableFuture().join());
+    Assert.assertEquals(1, (int)service.cachedShort(shortId).toCompletableFuture().join());
+    Thread.sleep(300);
+    Assert.assertEquals(2, (int)service.cachedShort(shortId).toCompletableFuture().join());
+
+    // the cancel reaches the call
+    final String hangId = UUID.randomUUID().toString();
+    final CompletableFuture<Void> hang = service.cachedHang(hangId).toCompletableFuture();
+    BaseTest.waitFor(() -> ServiceImpl.STARTED.contains(hangId));
+    hang.cancel(false);
+    BaseTest.waitFor(() -> ServiceImpl.CANCELLED.contains(hangId));
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.grpc.Client;
+import am24j.rpc.grpc.GRPCTest.TestAuthVerfier;
+import am24j.rpc.grpc.Server;
+import am24j.rpc.grpc.ServerVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class RegistryTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.registry");
+  }
+
+  private static final int PORT = 1710;
+
+  private static HazelcastInstance hzServer;
+  private static HazelcastInstance hzClient;
+  private static Registry serverRegistry;
+  private static Registry clientRegistry;
+
+  @BeforeClass
+  public static void before() {
+    hzServer = hazelcast();
+    hzClient = hazelcast();
+    serverRegistry = new Registry(hzServer);
+    clientRegistry = new Registry(hzClient);
+  }
+
+  @AfterClass
+  public static void after() {
+    clientRegistry.close();
+    serverRegistry.close();
+    hzClient.shutdown();
+    hzServer.shutdown();
+  }
+
+  @Test
+  public void testDiscovery() throws InterruptedException {
+    final String serviceName = Proto.protocol(IService.class).getName();
+    final List<List<String>> updates = new CopyOnWriteArrayList<>();
+    final Runnable stopListening = clientRegistry.listen(Registry.GRPC, serviceName, updates::add);
+    Assert.assertEquals(Collections.emptyList(), clientRegistry.endpoints(Registry.GRPC, serviceName));
+
+    final Vertx sVertx = Vertx.vertx();
+    final Vertx cVertx = Vertx.vertx();
+    final Server server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new TestAuthVerfier()),
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ServerVerticle.HOST, "0.0.0.0")
+            .put(ServerVerticle.PORT, PORT)
+            .put(Registry.ADVERTISED_HOST, "localhost")),
+      Optional.of(serverRegistry),
+      sVertx);
+    final Client client = new Client(
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(Client.DISCOVERY, true)),
+      Optional.of(clientRegistry),
+      cVertx);
+    try {
+      waitFor(() -> clientRegistry.endpoints(Registry.GRPC, serviceName).equals(Collections.singletonList("localhost:" + PORT)));
+      Assert.assertEquals(Collections.singletonList("localhost:" + PORT), updates.get(updates.size() - 1));
+
+      final IService service = client.service(() -> "user:pass", IService.class);
+      Assert.assertEquals("abab", service.getCall(2, "ab").toCompletableFuture().join());
+      Assert.assertTrue(client.metrics().containsKey(serviceName));
+    } finally {
+      client.close();
+      server.close();
+      stopListening.run();
+      cVertx.close();
+      sVertx.close();
+    }
+    // unregistered on close
+    waitFor(() -> clientRegistry.endpoints(Registry.GRPC, serviceName).isEmpty());
+  }
+
+  @Test
+  public void testPartitionRouting() throws InterruptedException {
+    final String serviceName = Proto.protocol(IService.class).getName();
+    // a server on each member
+    final Vertx sVertx1 = Vertx.vertx();
+    final Vertx sVertx2 = Vertx.vertx();
+    final Vertx cVertx = Vertx.vertx();
+    final Server server1 = server(serverRegistry, PORT + 2, sVertx1);
+    final Server server2 = server(clientRegistry, PORT + 3, sVertx2);
+    final Client client = new Client(
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(Client.DISCOVERY, true)),
+      Optional.of(clientRegistry),
+      cVertx);
+    try {
+      waitFor(() -> clientRegistry.endpoints(Registry.GRPC, serviceName).size() == 2);
+      final IService service = client.service(() -> "user:pass", IService.class);
+      for (int i = 0; i < 20; i++) {
+        Assert.assertTrue("Key " + i, service.isLocal("key_" + i).toCompletableFuture().join());
+      }
+    } finally {
+      client.close();
+      server1.close();
+      server2.close();
+      cVertx.close();
+      sVertx1.close();
+      sVertx2.close();
+    }
+    waitFor(() -> clientRegistry.endpoints(Registry.GRPC, serviceName).isEmpty());
+  }
+
+  @Test
+  public void testMemberLeft() throws InterruptedException {
+    final HazelcastInstance hzLeaving = hazelcast();
+    final Registry leavingRegistry = new Registry(hzLeaving);
+    leavingRegistry.register(Registry.HTTP, "left", "localhost", 1711);
+    waitFor(() -> clientRegistry.endpoints(Registry.HTTP, "left").equals(Collections.singletonList("localhost:1711")));
+
+    hzLeaving.getLifecycleService().terminate(); // no graceful unregister
+    waitFor(() -> clientRegistry.endpoints(Registry.HTTP, "left").isEmpty());
+    waitFor(() -> serverRegistry.endpoints(Registry.HTTP, "left").isEmpty());
+  }
+
+  @Test
+  public void testSocketOnly() throws InterruptedException {
+    final List<String> services = Collections.singletonList("uds");
+    // not reachable by the other members - not registered
+    serverRegistry.register(Registry.GRPC, services, new JsonObject().put(ServerVerticle.SOCKET_PATH, "/tmp/uds.sock")).run();
+    Assert.assertEquals(Collections.emptyList(), serverRegistry.endpoints(Registry.GRPC, "uds"));
+    // unless advertised explicitly
+    final Runnable unregister = serverRegistry.register(
+      Registry.GRPC,
+      services,
+      new JsonObject()
+        .put(ServerVerticle.SOCKET_PATH, "/tmp/uds.sock")
+        .put(Registry.ADVERTISED_HOST, "localhost")
+        .put(Registry.ADVERTISED_PORT, 1712));
+    waitFor(() -> clientRegistry.endpoints(Registry.GRPC, "uds").equals(Collections.singletonList("localhost:1712")));
+    unregister.run();
+    waitFor(() -> clientRegistry.endpoints(Registry.GRPC, "uds").isEmpty());
+    // neither port nor socket - invalid
+    try {
+      serverRegistry.register(Registry.GRPC, services, new JsonObject().put(ServerVerticle.HOST, "localhost"));
+      Assert.fail("No port!");
+    } catch (final IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains(Registry.ADVERTISED_PORT));
+    }
+  }
+
+  private static Server server(final Registry registry, final int port, final Vertx vertx) {
+    return new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new TestAuthVerfier()),
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ServerVerticle.HOST, "localhost")
+            .put(ServerVerticle.PORT, port)),
+      Optional.of(registry),
+      vertx);
+  }
+
+  private static HazelcastInstance hazelcast() {
+    System.setProperty("hazelcast.logging.type", "slf4j");
+    final Config config = new Config();
+    config.setClusterName("am24j-registry-test");
+    config.setProperty("hazelcast.phone.home.enabled", "false");
+    config.setProperty("hazelcast.wait.seconds.before.join", "0");
+    config.getNetworkConfig().setPort(5801);
+    final JoinConfig join = config.getNetworkConfig().getJoin();
+    join.getMulticastConfig().setEnabled(false);
+    join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+    return Hazelcast.newHazelcastInstance(config);
+  }
+
+  // the membership changes could take a while
+  private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+    BaseTest.waitFor(condition, 30_000);
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.hz.HZInstance;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class ResponseCacheTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.cache");
+  }
+
+  private static final int PORT = 1730;
+
+  private static HZInstance hzInstance;
+  private static ResponseCache cache;
+  private static Method cached;
+
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+  private static Fixture.Grpc grpc;
+  private static Fixture.HttpRPC http;
+
+  private static IService grpcService;
+  private static IService httpService;
+
+  @BeforeClass
+  public static void before() throws IOException, NoSuchMethodException {
+    System.setProperty("hazelcast.phone.home.enabled", "false");
+    hzInstance = new HZInstance(
+      new JsonObject()
+        .put("clusterName", "am24j-cache-test")
+        .put("networkConfig", new JsonObject().put("port", 5811).put("join", new JsonObject().put("multicastConfig", new JsonObject().put("enabled", false))))
+        .put(HZInstance.MAP_CONFIGS, new JsonObject().put(ResponseCache.MAP_PREFIX + "*", new JsonObject().put("nearCacheConfig", new JsonObject().put("inMemoryFormat", "OBJECT").put("cacheLocalEntries", true)))));
+    cache = new ResponseCache(hzInstance.get());
+    cached = IService.class.getMethod("cached", String.class);
+
+    sVertx = Vertx.vertx();
+    cVertx = Vertx.vertx();
+    grpc = Fixture.grpc(PORT, new JsonObject(), new JsonObject(), cache, sVertx, cVertx);
+    http = Fixture.http(PORT + 1, new JsonObject(), new JsonObject(), cache, sVertx, cVertx);
+    grpcService = grpc.service();
+    httpService = http.service();
+  }
+
+  @AfterClass
+  public static void after() {
+    grpc.close();
+    http.close();
+    cVertx.close();
+    sVertx.close();
+    hzInstance.close();
+  }
+
+  @Test
+  public void testCached() {
+    final String id = UUID.randomUUID().toString();
+    final JsonObject before = cache.stats(cached);
+    Assert.assertEquals(1, (int)grpcService.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(1, (int)grpcService.cached(id).toCompletableFuture().join()); // hit
+    // another encoding - cached separately
+    Assert.assertEquals(2, (int)httpService.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(2, (int)httpService.cached(id).toCompletableFuture().join()); // hit
+    Assert.assertEquals(2, ServiceImpl.INVOCATIONS.get(id).get());
+
+    final JsonObject after = cache.stats(cached);
+    Assert.assertEquals(2, after.getLong("hits") - before.getLong("hits"));
+    Assert.assertEquals(2, after.getLong("misses") - before.getLong("misses"));
+    Assert.assertEquals(2, after.getLong("loads") - before.getLong("loads"));
+    Assert.assertTrue(cache.stats().containsKey(Proto.protocol(IService.class).getName() + "/cached"));
+    Assert.assertNotNull( // near cache configured by the wildcard map config
+      hzInstance.get().getMap(ResponseCache.MAP_PREFIX + Proto.protocol(IService.class).getName() + ".cached")
+        .getLocalMapStats().getNearCacheStats());
+  }
+
+  // loaded on the call's context, not on the Hazelcast thread completing the cache get
+  @Test
+  public void testLoadedOnContext() {
+    final String id = UUID.randomUUID().toString();
+    Assert.assertEquals(1, (int)grpcService.cached(id).toCompletableFuture().join());
+    Assert.assertTrue(ServiceImpl.THREADS.get(id), ServiceImpl.THREADS.get(id).startsWith("vert.x-eventloop-thread"));
+    ServiceImpl.THREADS.remove(id);
+    Assert.assertEquals(2, (int)httpService.cached(id).toCompletableFuture().join());
+    Assert.assertTrue(ServiceImpl.THREADS.get(id), ServiceImpl.THREADS.get(id).startsWith("vert.x-eventloop-thread"));
+  }
+
+  @Test
+  public void testEvict() {
+    final String id = UUID.randomUUID().toString();
+    Assert.assertEquals(1, (int)grpcService.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(1, (int)grpcService.cached(id).toCompletableFuture().join());
+    cache.evict(cached, id);
+    Assert.assertEquals(2, (int)grpcService.cached(id).toCompletableFuture().join());
+    cache.evict(cached);
+    Assert.assertEquals(3, (int)grpcService.cached(id).toCompletableFuture().join());
+    cache.evictAll();
+    Assert.assertEquals(4, (int)grpcService.cached(id).toCompletableFuture().join());
+    Assert.assertEquals(4, (int)grpcService.cached(id).toCompletableFuture().join());
+  }
+}
@@ -15,11 +15,23 @@
  */
 package am24j.rpc;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Publisher;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Test remote object.<br>
@@ -40,6 +52,21 @@ import java.util.concurrent.Semaphore;
 @Remote
 public class ServiceImpl implements IService {
 
+  // ids of started / cancelled hang and ticks calls
+  public static final Set<String> STARTED = ConcurrentHashMap.newKeySet();
+  public static final Set<String> CANCELLED = ConcurrentHashMap.newKeySet();
+  // invocations of coalesced / cached calls and release of the coalesced results by id
+  public static final Map<String, AtomicInteger> INVOCATIONS = new ConcurrentHashMap<>();
+  public static final Map<String, CompletableFuture<Void>> RELEASE = new ConcurrentHashMap<>();
+  // thread of the last cached call invocation by id
+  public static final Map<String, String> THREADS = new ConcurrentHashMap<>();
+  // emitted payloads and the requests (n) of their subscription by id
+  public static final Map<String, AtomicLong> EMITTED = new ConcurrentHashMap<>();
+  public static final Map<String, Queue<Long>> REQUESTED = new ConcurrentHashMap<>();
+  // currently running and max concurrently running blocking calls
+  public static final AtomicInteger BLOCKING = new AtomicInteger();
+  public static final AtomicInteger BLOCKING_MAX = new AtomicInteger();
+
   @Override
   public CompletionStage<Void> voidCall() {
     return CompletableFuture.completedStage(null);
@@ -139,4 +166,254 @@ public class ServiceImpl implements IService {
       }
     });
   }
+
+  @Override
+  public CompletionStage<Long> sum(final long base, final Publisher<Integer> items) {
+    final CompletableFuture<Long> future = new CompletableFuture<>();
+    items.subscribe(new Subscriber<Integer>() {
+
+      private Subscription subscription;
+      private long sum = base;
+      private int received;
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(8);
+      }
+
+      @Override
+      public void onNext(final Integer item) {
+        sum += item;
+        if (++received % 8 == 0) {
+          subscription.request(8);
+        }
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        future.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        future.complete(sum);
+      }
+    });
+    return future;
+  }
+
+  @Override
+  public void echo(final String prefix, final Publisher<String> items, final Subscriber<String> subscriber) {
+    items.subscribe(new Subscriber<String>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscriber.onSubscribe(subscription); // pulls an item per requested response
+      }
+
+      @Override
+      public void onNext(final String item) {
+        subscriber.onNext(prefix + item);
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        subscriber.onError(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        subscriber.onComplete();
+      }
+    });
+  }
+
+  @Override
+  public CompletionStage<Void> hang(final String id) {
+    final CompletableFuture<Void> future = new CompletableFuture<>(); // never completed by the service
+    future.whenComplete((v, t) -> {
+      if (future.isCancelled()) {
+        CANCELLED.add(id);
+      }
+    });
+    STARTED.add(id);
+    return future;
+  }
+
+  @Override
+  public void ticks(final String id, final Subscriber<Integer> subscriber) {
+    STARTED.add(id);
+    subscriber.onSubscribe(new Subscription() {
+
+      private int tick;
+      private volatile boolean cancelled;
+
+      @Override
+      public synchronized void request(final long n) {
+        for (long j = 0; j < n && !cancelled; j++) {
+          subscriber.onNext(tick++); // infinite
+        }
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+        CANCELLED.add(id);
+      }
+    });
+  }
+
+  @Override
+  public CompletionStage<Long> remaining() {
+    return CompletableFuture.completedStage(Deadline.current().map(deadline -> deadline.remaining(TimeUnit.MILLISECONDS)).orElse(-1L));
+  }
+
+  @Override
+  public CompletionStage<Void> hangWithTimeout(final String id) {
+    return hang(id);
+  }
+
+  @Override
+  public CompletionStage<Boolean> isLocal(final String key) {
+    return CompletableFuture.completedStage(Partition.isLocal());
+  }
+
+  @Override
+  public CompletionStage<Integer> coalesced(final String id) {
+    final int invocation = INVOCATIONS.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+    STARTED.add(id);
+    return RELEASE.computeIfAbsent(id, k -> new CompletableFuture<>()).thenApply(v -> invocation);
+  }
+
+  @Override
+  public CompletionStage<Integer> cached(final String id) {
+    THREADS.put(id, Thread.currentThread().getName());
+    return CompletableFuture.completedFuture(INVOCATIONS.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet());
+  }
+
+  @Override
+  public CompletionStage<Integer> cachedShort(final String id) {
+    return cached(id);
+  }
+
+  @Override
+  public CompletionStage<Void> cachedHang(final String id) {
+    return hang(id);
+  }
+
+  @Override
+  public CompletionStage<String> blocking(final int sleepMs) {
+    final int running = BLOCKING.incrementAndGet();
+    BLOCKING_MAX.accumulateAndGet(running, Math::max);
+    try {
+      Thread.sleep(sleepMs);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      BLOCKING.decrementAndGet();
+    }
+    return CompletableFuture.completedFuture(Thread.currentThread().getName());
+  }
+
+  @Override
+  public CompletionStage<String> traceparent() {
+    return CompletableFuture.completedFuture(Trace.current().map(Trace::traceparent).orElse(""));
+  }
+
+  @Override
+  public void payloads(final String id, final int size, final Subscriber<byte[]> subscriber) {
+    STARTED.add(id);
+    final AtomicLong emitted = EMITTED.computeIfAbsent(id, k -> new AtomicLong());
+    final Queue<Long> requested = REQUESTED.computeIfAbsent(id, k -> new ConcurrentLinkedQueue<>());
+    final byte[] payload = new byte[size];
+    Arrays.fill(payload, (byte)'x');
+    subscriber.onSubscribe(new Subscription() {
+
+      private volatile boolean cancelled;
+
+      @Override
+      public synchronized void request(final long n) {
+        requested.add(n);
+        for (long j = 0; j < n && !cancelled; j++) {
+          emitted.incrementAndGet();
+          subscriber.onNext(payload); // infinite
+        }
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+        CANCELLED.add(id);
+      }
+    });
+  }
+
+  @Override
+  public void asyncPayloads(final String id, final int size, final Subscriber<byte[]> subscriber) {
+    STARTED.add(id);
+    final AtomicLong emitted = EMITTED.computeIfAbsent(id, k -> new AtomicLong());
+    final Queue<Long> requested = REQUESTED.computeIfAbsent(id, k -> new ConcurrentLinkedQueue<>());
+    final byte[] payload = new byte[size];
+    Arrays.fill(payload, (byte)'x');
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    subscriber.onSubscribe(new Subscription() {
+
+      private volatile boolean cancelled;
+
+      @Override
+      public synchronized void request(final long n) {
+        requested.add(n);
+        for (long j = 0; j < n && !cancelled; j++) {
+          executor.execute(() -> {
+            if (!cancelled) {
+              emitted.incrementAndGet();
+              subscriber.onNext(payload); // infinite
+            }
+          });
+        }
+      }
+
+      @Override
+      public synchronized void cancel() {
+        cancelled = true;
+        executor.shutdown();
+        CANCELLED.add(id);
+      }
+    });
+  }
+
+  @Override
+  public CompletionStage<byte[]> reverse(final byte[] bytes) {
+    final byte[] reversed = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      reversed[i] = bytes[bytes.length - 1 - i];
+    }
+    return CompletableFuture.completedStage(reversed);
+  }
+
+  @Override
+  public void chunks(final byte[] bytes, final int size, final Subscriber<byte[]> subscriber) {
+    final AtomicInteger offset = new AtomicInteger();
+    subscriber.onSubscribe(new Subscription() {
+
+      @Override
+      public void request(final long n) {
+        for (int j = 0; j < n; j++) {
+          final int from = offset.getAndAdd(size);
+          if (from < bytes.length) {
+            subscriber.onNext(Arrays.copyOfRange(bytes, from, Math.min(from + size, bytes.length)));
+          } else {
+            subscriber.onComplete();
+            return;
+          }
+        }
+      }
+
+      @Override
+      public void cancel() {
+
+      }
+    });
+  }
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.logging.log4j.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.grpc.ServerVerticle;
+import am24j.rpc.shm.Client;
+import am24j.rpc.shm.Server;
+import am24j.rpc.shm.ShmTest;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Shared memory (per wait strategy) vs loopback TCP (gRPC and Http) - latency of sequential unary calls and throughput
+ * of response streams. Spin and yield strategies need a free core per waiting side. Not run with the build (not a
+ * *Test), run it with <code>mvn test -Dtest=ShmBenchmark</code>.
+ *
+ * @author avgustinmm
+ */
+public class ShmBenchmark {
+
+  static {
+    Log4j2Config.setUp(Level.WARN, Level.INFO, "am24j.rpc.benchmark");
+  }
+
+  private File dir;
+  private Vertx sVertx;
+  private Vertx cVertx;
+
+  @Before
+  public void before() throws Exception {
+    dir = Files.createTempDirectory("shm").toFile();
+    sVertx = Vertx.vertx();
+    cVertx = Vertx.vertx();
+  }
+
+  @After
+  public void after() {
+    cVertx.close();
+    sVertx.close();
+    dir.delete();
+  }
+
+  @Test
+  public void shm() throws Exception {
+    for (final String wait : new String[] {"park", "yield", "spin"}) {
+      final JsonObject config = new JsonObject().put("dir", dir.getAbsolutePath()).put("name", wait).put("wait", wait);
+      final Server server = new Server(
+        Collections.singletonList(new ServiceImpl()),
+        Collections.singletonList(new ShmTest.TestAuthVerfier()),
+        config,
+        sVertx);
+      final Client client = new Client(config, cVertx);
+      try {
+        UdsBenchmark.measure("Shm " + wait, client.service(() -> "user:pass", IService.class));
+      } finally {
+        client.close();
+        server.close();
+      }
+    }
+  }
+
+  @Test
+  public void tcp() throws Exception {
+    UdsBenchmark.grpc("gRPC TCP", new JsonObject().put(ServerVerticle.HOST, "localhost").put(ServerVerticle.PORT, 1732), sVertx, cVertx);
+    UdsBenchmark.http("Http TCP", new JsonObject().put(ServerVerticle.HOST, "localhost").put(ServerVerticle.PORT, 1733), sVertx, cVertx);
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author avgustinmm
+ */
+public class SingleFlightTest {
+
+  private static final byte[] ARGS = {1, 2, 3};
+
+  @Test
+  public void testByAuth() throws NoSuchMethodException {
+    final Method byAuth = Calls.class.getMethod("byAuth");
+    final SingleFlight singleFlight = new SingleFlight();
+    final CompletableFuture<String> pending = new CompletableFuture<>();
+    final AtomicInteger invocations = new AtomicInteger();
+
+    // new auth per call (as created by the verifiers) with equal credentials - coalesced
+    final CompletableFuture<String> first = singleFlight.call(SingleFlight.key(byAuth, ARGS, new UserAuth("user"), null), () -> invoke(invocations, pending), r -> r);
+    final CompletableFuture<String> second = singleFlight.call(SingleFlight.key(byAuth, ARGS, new UserAuth("user"), null), () -> invoke(invocations, pending), r -> r);
+    Assert.assertEquals(1, invocations.get());
+    // other principal - not coalesced
+    singleFlight.call(SingleFlight.key(byAuth, ARGS, new UserAuth("other"), null), () -> invoke(invocations, pending), r -> r);
+    Assert.assertEquals(2, invocations.get());
+    // not named principal - not coalesced
+    singleFlight.call(SingleFlight.key(byAuth, ARGS, new UserAuth(null), null), () -> invoke(invocations, pending), r -> r);
+    singleFlight.call(SingleFlight.key(byAuth, ARGS, new UserAuth(null), null), () -> invoke(invocations, pending), r -> r);
+    Assert.assertEquals(4, invocations.get());
+    // anonymous, with or without auth - coalesced
+    singleFlight.call(SingleFlight.key(byAuth, ARGS, null, null), () -> invoke(invocations, pending), r -> r);
+    singleFlight.call(SingleFlight.key(byAuth, ARGS, Auth.ANONYMOUS, null), () -> invoke(invocations, pending), r -> r);
+    Assert.assertEquals(5, invocations.get());
+
+    pending.complete("done");
+    Assert.assertEquals("done", first.join());
+    Assert.assertEquals("done", second.join());
+    Assert.assertEquals(0, singleFlight.inFlight());
+  }
+
+  @Test
+  public void testNotByAuth() throws NoSuchMethodException {
+    final Method notByAuth = Calls.class.getMethod("notByAuth");
+    final SingleFlight singleFlight = new SingleFlight();
+    final CompletableFuture<String> pending = new CompletableFuture<>();
+    final AtomicInteger invocations = new AtomicInteger();
+    singleFlight.call(SingleFlight.key(notByAuth, ARGS, new UserAuth("user"), null), () -> invoke(invocations, pending), r -> r);
+    singleFlight.call(SingleFlight.key(notByAuth, ARGS, new UserAuth("other"), null), () -> invoke(invocations, pending), r -> r);
+    singleFlight.call(SingleFlight.key(notByAuth, ARGS, new UserAuth(null), null), () -> invoke(invocations, pending), r -> r);
+    Assert.assertEquals(1, invocations.get());
+    pending.complete("done");
+  }
+
+  private static CompletionStage<String> invoke(final AtomicInteger invocations, final CompletableFuture<String> result) {
+    invocations.incrementAndGet();
+    return result;
+  }
+
+  public interface Calls {
+
+    @Idempotent(byAuth = true)
+    public CompletionStage<String> byAuth();
+
+    @Idempotent
+    public CompletionStage<String> notByAuth();
+  }
+
+  private static class UserAuth extends Auth {
+
+    private final String user;
+
+    private UserAuth(final String user) {
+      this.user = user;
+    }
+
+    @Override
+    public String principal() {
+      return user;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.commons.Log4j2Config;
+import am24j.rpc.grpc.ClientVerticle;
+import am24j.rpc.grpc.GRPCTest;
+import am24j.rpc.grpc.Server;
+import am24j.rpc.grpc.ServerVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Throughput of a gRPC response stream by the server's stream watermarks (the window the service subscription is asked
+ * for). Not run with the build (not a *Test), run it with <code>mvn test -Dtest=StreamBenchmark</code>.
+ *
+ * @author avgustinmm
+ */
+public class StreamBenchmark {
+
+  static {
+    Log4j2Config.setUp(Level.WARN, Level.INFO, "am24j.rpc.benchmark");
+  }
+
+  private static final Logger LOG = Ctx.logger("rpc.benchmark");
+
+  private static final int WARMUP = Integer.getInteger("benchmark.warmup", 50_000);
+  private static final int ITEMS = Integer.getInteger("benchmark.items", 500_000);
+  private static final int SIZE = Integer.getInteger("benchmark.size", 1024);
+
+  @Test
+  public void grpc() throws Exception {
+    for (final int[] watermarks : new int[][] {{1, 0}, {16, 4}, {128, 32}, {512, 128}}) {
+      measure(watermarks[0], watermarks[1]);
+    }
+  }
+
+  private static void measure(final int high, final int low) throws Exception {
+    final Vertx sVertx = Vertx.vertx();
+    final Vertx cVertx = Vertx.vertx();
+    final Server server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new GRPCTest.TestAuthVerfier()),
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ServerVerticle.HOST, "localhost")
+            .put(ServerVerticle.PORT,  1722)
+            .put(Server.STREAM_HIGH_WATERMARK, high)
+            .put(Server.STREAM_LOW_WATERMARK, low)),
+      sVertx);
+    final am24j.rpc.grpc.Client client = new am24j.rpc.grpc.Client(
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ClientVerticle.HOST, "localhost")
+            .put(ClientVerticle.PORT,  1722)),
+        cVertx);
+    try {
+      final IService service = client.service(() -> "user:pass", IService.class);
+      receive(service, WARMUP);
+      final long start = System.nanoTime();
+      receive(service, ITEMS);
+      final long total = System.nanoTime() - start;
+      LOG.info(
+        "gRPC stream (watermarks {}/{}): {} items of {} bytes, {} items/s, {} MB/s",
+        high, low, ITEMS, SIZE,
+        ITEMS * 1_000_000_000L / total,
+        (long)ITEMS * SIZE * 1_000L / total);
+    } finally {
+      client.close();
+      cVertx.close();
+      server.close();
+      sVertx.close();
+    }
+  }
+
+  // receives the items and cancels the (infinite) stream
+  private static void receive(final IService service, final int items) throws Exception {
+    final CompletableFuture<Void> received = new CompletableFuture<>();
+    service.payloads(UUID.randomUUID().toString(), SIZE, new Subscriber<byte[]>() {
+
+      private Subscription subscription;
+      private int count;
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(final byte[] item) {
+        if (++count == items) {
+          subscription.cancel();
+          received.complete(null);
+        }
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        received.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {}
+    });
+    received.get(5, TimeUnit.MINUTES);
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class TraceTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.trace");
+  }
+
+  private static final int PORT = 1790;
+
+  @Test
+  public void testParse() {
+    final Trace root = Trace.root(true);
+    Assert.assertEquals(root, Trace.parse(root.traceparent()));
+    Assert.assertTrue(Trace.parse(root.traceparent()).sampled());
+    Assert.assertFalse(Trace.parse(Trace.root(false).traceparent()).sampled());
+
+    final Trace child = root.child();
+    Assert.assertEquals(root.traceId(), child.traceId());
+    Assert.assertNotEquals(root.spanId(), child.spanId());
+
+    final String traceparent = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+    final Trace trace = Trace.parse(traceparent);
+    Assert.assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", trace.traceId());
+    Assert.assertEquals("00f067aa0ba902b7", trace.spanId());
+    Assert.assertTrue(trace.sampled());
+    Assert.assertEquals(traceparent, trace.traceparent());
+    Assert.assertNotNull(Trace.parse("01-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01-future")); // future version
+
+    Assert.assertNull(Trace.parse(null));
+    Assert.assertNull(Trace.parse(""));
+    Assert.assertNull(Trace.parse("00-4BF92F3577B34DA6A3CE929D0E0E4736-00f067aa0ba902b7-01")); // upper case
+    Assert.assertNull(Trace.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01")); // zero trace id
+    Assert.assertNull(Trace.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-0000000000000000-01")); // zero span id
+    Assert.assertNull(Trace.parse("ff-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01")); // invalid version
+    Assert.assertNull(Trace.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01-x")); // version 00 with more
+    Assert.assertNull(Trace.parse("00-4bf92f3577b34da6a3ce929d0e0e473-600f067aa0ba902b7-01"));
+  }
+
+  @Test
+  public void testGrpc() throws IOException {
+    final Path file = Files.createTempFile("am24j", ".jsonl");
+    final Vertx vertx = Vertx.vertx();
+    final JsonObject config = new JsonObject().put(Tracer.CONFIG, tracing(file));
+    try (final Fixture.Grpc grpc = Fixture.grpc(PORT, config, config, vertx)) {
+      assertTraced(grpc.service(), file, "grpc");
+    } finally {
+      vertx.close();
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void testHttp() throws IOException {
+    http(new JsonObject(), PORT + 1);
+  }
+
+  @Test
+  public void testHttpBatch() throws IOException {
+    http(new JsonObject().put(am24j.rpc.http.Client.BATCH_WINDOW, 20), PORT + 2);
+  }
+
+  private static void http(final JsonObject clientConfig, final int port) throws IOException {
+    final Path file = Files.createTempFile("am24j", ".jsonl");
+    final Vertx vertx = Vertx.vertx();
+    final JsonObject serverConfig = new JsonObject().put(Tracer.CONFIG, tracing(file));
+    try (final Fixture.HttpRPC http = Fixture.http(port, serverConfig, clientConfig.put(Tracer.CONFIG, tracing(file)), vertx)) {
+      assertTraced(http.service(), file, "http");
+    } finally {
+      vertx.close();
+      Files.deleteIfExists(file);
+    }
+  }
+
+  // no sampling of the new traces - only the calls in the sampled roots of the test have spans
+  private static JsonObject tracing(final Path file) {
+    return new JsonObject()
+      .put("sampleRatio", 0.0)
+      .put("exportIntervalMs", 10)
+      .put("exporter", new JsonObject().put("type", FileSpanExporter.TYPE).put("file", file.toString()));
+  }
+
+  private static void assertTraced(final IService service, final Path file, final String transport) throws IOException {
+    BaseTest.awaitStarted(service);
+    Assert.assertFalse(Trace.parse(service.traceparent().toCompletableFuture().join()).sampled()); // new, not sampled root
+
+    final Trace unsampled = Trace.root(false);
+    final Trace unsampledServer = Trace.parse(unsampled.callAs(service::traceparent).toCompletableFuture().join());
+    Assert.assertEquals(unsampled.traceId(), unsampledServer.traceId());
+    Assert.assertFalse(unsampledServer.sampled());
+
+    final Trace root = Trace.root(true);
+    final Trace server = Trace.parse(root.callAs(service::traceparent).toCompletableFuture().join());
+    Assert.assertEquals(root.traceId(), server.traceId());
+    Assert.assertTrue(server.sampled());
+
+    final List<JsonObject> spans = awaitSpans(file, 2);
+    Assert.assertEquals(spans.toString(), 2, spans.size()); // only the sampled
+    final JsonObject clientSpan = span(spans, Span.Kind.CLIENT);
+    final JsonObject serverSpan = span(spans, Span.Kind.SERVER);
+    final String name = Proto.protocol(IService.class).getName() + "/traceparent";
+    for (final JsonObject span : spans) {
+      Assert.assertEquals(root.traceId(), span.getString("traceId"));
+      Assert.assertEquals(name, span.getString("name"));
+      Assert.assertEquals(Metrics.OK, span.getString("status"));
+    }
+    Assert.assertEquals(root.spanId(), clientSpan.getString("parentSpanId"));
+    Assert.assertEquals(transport + ".client", clientSpan.getString("component"));
+    Assert.assertEquals(clientSpan.getString("spanId"), serverSpan.getString("parentSpanId"));
+    Assert.assertEquals(server.spanId(), serverSpan.getString("spanId"));
+    Assert.assertEquals(transport + ".server", serverSpan.getString("component"));
+    Assert.assertTrue(clientSpan.getLong("duration") >= serverSpan.getLong("duration"));
+  }
+
+  private static List<JsonObject> awaitSpans(final Path file, final int count) throws IOException {
+    final long end = System.currentTimeMillis() + 10_000;
+    while (true) {
+      final List<JsonObject> spans = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+        .filter(line -> !line.isEmpty())
+        .map(JsonObject::new)
+        .collect(Collectors.toList());
+      if (spans.size() >= count || System.currentTimeMillis() > end) {
+        return spans;
+      }
+      try {
+        Thread.sleep(10);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return spans;
+      }
+    }
+  }
+
+  private static JsonObject span(final List<JsonObject> spans, final Span.Kind kind) {
+    return spans.stream()
+      .filter(span -> kind.name().equals(span.getString("kind")))
+      .findFirst()
+      .orElseThrow(() -> new AssertionError("No " + kind + " span: " + spans + "!"));
+  }
+}
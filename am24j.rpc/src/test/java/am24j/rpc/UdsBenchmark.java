@@ -0,0 +1,209 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import am24j.commons.Ctx;
+import am24j.commons.Log4j2Config;
+import am24j.rpc.grpc.ClientVerticle;
+import am24j.rpc.grpc.GRPCTest;
+import am24j.rpc.grpc.ServerVerticle;
+import am24j.rpc.http.HttpTest;
+import am24j.vertx.http.Http;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Loopback TCP vs unix domain socket - latency of sequential unary calls and throughput of response streams (gRPC and
+ * Http). Requires native transport. Not run with the build (not a *Test), run it with
+ * <code>mvn test -Pnative -Dtest=UdsBenchmark</code>.
+ *
+ * @author avgustinmm
+ */
+public class UdsBenchmark {
+
+  static {
+    Log4j2Config.setUp(Level.WARN, Level.INFO, "am24j.rpc.benchmark");
+  }
+
+  private static final Logger LOG = Ctx.logger("rpc.benchmark");
+
+  private static final int WARMUP = Integer.getInteger("benchmark.warmup", 2_000);
+  private static final int CALLS = Integer.getInteger("benchmark.calls", 10_000);
+  private static final int STREAMS = Integer.getInteger("benchmark.streams", 20);
+  private static final int STREAM_ITEMS = Integer.getInteger("benchmark.streamItems", 10_000);
+
+  private Vertx sVertx;
+  private Vertx cVertx;
+
+  @Before
+  public void before() {
+    sVertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    cVertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    Assume.assumeTrue("No native transport!", sVertx.isNativeTransportEnabled());
+  }
+
+  @After
+  public void after() {
+    cVertx.close();
+    sVertx.close();
+  }
+
+  @Test
+  public void grpc() throws Exception {
+    grpc("gRPC TCP", new JsonObject().put(ServerVerticle.HOST, "localhost").put(ServerVerticle.PORT, 1730), sVertx, cVertx);
+    grpc("gRPC UDS", new JsonObject().put(ServerVerticle.SOCKET_PATH, socketPath()), sVertx, cVertx);
+  }
+
+  @Test
+  public void http() throws Exception {
+    http("Http TCP", new JsonObject().put(ServerVerticle.HOST, "localhost").put(ServerVerticle.PORT, 1731), sVertx, cVertx);
+    http("Http UDS", new JsonObject().put(Http.SOCKET_PATH, socketPath()), sVertx, cVertx);
+  }
+
+  static void grpc(final String transport, final JsonObject endpoint, final Vertx sVertx, final Vertx cVertx) throws Exception {
+    final am24j.rpc.grpc.Server server = new am24j.rpc.grpc.Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new GRPCTest.TestAuthVerfier()),
+      new DeploymentOptions().setConfig(endpoint.copy().put("usePlaintext", true)),
+      sVertx);
+    final am24j.rpc.grpc.Client client = new am24j.rpc.grpc.Client(
+      new DeploymentOptions().setConfig(endpoint.copy().put("usePlaintext", true)),
+      cVertx);
+    try {
+      final IService service = client.service(() -> "user:pass", IService.class);
+      BaseTest.awaitStarted(service);
+      measure(transport, service);
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+
+  static void http(final String transport, final JsonObject endpoint, final Vertx sVertx, final Vertx cVertx) throws Exception {
+    final am24j.rpc.http.Server server = new am24j.rpc.http.Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new HttpTest.TestAuthVerfier()),
+      sVertx);
+    final Http http = new Http(
+      Collections.<Http.HttpHandler>singletonList(server),
+      new DeploymentOptions().setConfig(endpoint),
+      sVertx);
+    final am24j.rpc.http.Client client = new am24j.rpc.http.Client(
+      endpoint.containsKey(Http.SOCKET_PATH) ?
+        new JsonObject()
+          .put("ssl", false)
+          .put(am24j.rpc.http.Client.SOCKET_PATH, endpoint.getString(Http.SOCKET_PATH)) :
+        new JsonObject()
+          .put("ssl", false)
+          .put("defaultHost", endpoint.getString(ServerVerticle.HOST))
+          .put("defaultPort", endpoint.getInteger(ServerVerticle.PORT)),
+      cVertx);
+    try {
+      measure(transport, client.service(() -> "user:pass", IService.class));
+    } finally {
+      client.close();
+      http.close();
+    }
+  }
+
+  static void measure(final String transport, final IService service) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      service.getCall(1, "warmup").toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+    final long[] latencies = new long[CALLS];
+    final long start = System.nanoTime();
+    for (int i = 0; i < CALLS; i++) {
+      final long callStart = System.nanoTime();
+      service.getCall(1, "call").toCompletableFuture().get(10, TimeUnit.SECONDS);
+      latencies[i] = System.nanoTime() - callStart;
+    }
+    final long total = System.nanoTime() - start;
+    Arrays.sort(latencies);
+    LOG.info(
+      "{} unary: {} calls, avg {} us, p50 {} us, p90 {} us, p99 {} us",
+      transport, CALLS,
+      total / CALLS / 1_000,
+      latencies[CALLS / 2] / 1_000,
+      latencies[CALLS * 9 / 10] / 1_000,
+      latencies[CALLS * 99 / 100] / 1_000);
+
+    stream(service); // warmup
+    final long streamStart = System.nanoTime();
+    for (int i = 0; i < STREAMS; i++) {
+      stream(service);
+    }
+    final long streamTotal = System.nanoTime() - streamStart;
+    LOG.info(
+      "{} stream: {} streams of {} items, avg {} ms per stream, {} items/s",
+      transport, STREAMS, STREAM_ITEMS,
+      streamTotal / STREAMS / 1_000_000,
+      (long)STREAMS * STREAM_ITEMS * 1_000_000_000L / streamTotal);
+  }
+
+  private static void stream(final IService service) throws Exception {
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+    final AtomicInteger received = new AtomicInteger();
+    service.stream(STREAM_ITEMS, new Subscriber<String>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(final String item) {
+        received.incrementAndGet();
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        finished.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        finished.complete(null);
+      }
+    });
+    finished.get(60, TimeUnit.SECONDS);
+    if (received.get() != STREAM_ITEMS) {
+      throw new IllegalStateException("Received " + received.get() + " of " + STREAM_ITEMS + "!");
+    }
+  }
+
+  private static String socketPath() {
+    return new File(System.getProperty("java.io.tmpdir"), "rpc-" + UUID.randomUUID() + ".sock").getPath();
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.eventbus;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.Auth;
+import am24j.rpc.AuthVerfier;
+import am24j.rpc.BaseTest;
+import am24j.rpc.IService;
+import am24j.rpc.IService.B;
+import am24j.rpc.Metrics;
+import am24j.rpc.ServiceImpl;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.eventbus.Common.Frame;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class EventBusTest extends BaseTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.eventbus");
+  }
+
+  private static Vertx vertx;
+
+  private static Server server;
+  private static Client client;
+
+  @BeforeClass
+  public static void before() {
+    vertx = Vertx.vertx();
+    server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new TestAuthVerfier()),
+      vertx);
+    client = new Client(vertx);
+    service = client.service(() -> "user:pass", IService.class);
+  }
+
+  @AfterClass
+  public static void after() {
+    client.close();
+    server.close();
+    vertx.close();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClientStream() {
+    super.testClientStream();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBidiStream() {
+    super.testBidiStream();
+  }
+
+  @Test
+  public void testNoCredentials() {
+    Assert.assertEquals("xx", client.service(null, IService.class).getCall(2, "x").toCompletableFuture().join());
+  }
+
+  // local delivery passes the frames as they are, remote (clustered) - Avro encoded
+  @Test
+  public void testWireCodec() throws NoSuchMethodException {
+    final Method method = IService.class.getMethod("getCallB", int.class, B.class);
+    final Protocol aProto = Proto.protocol(IService.class);
+    final Message aMessage = aProto.getMessages().get(Proto.methodName(method));
+    final Object[] args = {3, new B().i(4).str("test")};
+    final Frame frame = new Frame(args, reqArgs -> Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), (Object[])reqArgs, false), null);
+
+    final MessageCodec<Frame, Frame> codec = new Common.FrameCodec();
+    Assert.assertSame(frame, codec.transform(frame));
+
+    final Buffer buffer = Buffer.buffer().appendString("prefix");
+    codec.encodeToWire(buffer, frame);
+    final Frame received = codec.decodeFromWire("prefix".length(), buffer);
+    final Metrics.Call metered = server.callMetrics().method(aProto.getName() + '/' + aMessage.getName()).start();
+    final Object[] decoded = (Object[])received.value(is -> Proto.decodeReq(aMessage.getRequest(), Proto.requestTypes(method), is, false), metered);
+    metered.end(Metrics.OK);
+    Assert.assertArrayEquals(args, decoded);
+    Assert.assertNotSame(args[1], decoded[1]);
+  }
+
+  // the caller gives up (the reply times out) and the call has no deadline - cancelled by the default one
+  @Test
+  public void testOrphanedCall() throws NoSuchMethodException, InterruptedException {
+    final Vertx vertx = Vertx.vertx();
+    try (final Server server = new Server(
+        Collections.singletonList(new ServiceImpl()),
+        Collections.singletonList(new TestAuthVerfier()),
+        new JsonObject().put(Server.DEFAULT_TIMEOUT, 300),
+        vertx)) {
+      final String id = "orphanedCall";
+      vertx.eventBus().request(address("hang", String.class), frame(id), new DeliveryOptions().setSendTimeout(100));
+      waitFor(() -> ServiceImpl.STARTED.contains(id));
+      waitFor(() -> ServiceImpl.CANCELLED.contains(id));
+    } finally {
+      vertx.close();
+    }
+  }
+
+  // the caller doesn't receive on the stream address (e.g. died) - the pings fail and the stream is cancelled
+  @Test
+  public void testOrphanedStream() throws NoSuchMethodException, InterruptedException {
+    final Vertx vertx = Vertx.vertx();
+    try (final Server server = new Server(
+        Collections.singletonList(new ServiceImpl()),
+        Collections.singletonList(new TestAuthVerfier()),
+        new JsonObject().put(Server.HEARTBEAT, 100),
+        vertx)) {
+      final String id = "orphanedStream";
+      final DeliveryOptions options = new DeliveryOptions().addHeader(Common.STREAM, Common.ROOT + "/_stream/" + id);
+      vertx.eventBus().request(address("ticks", String.class, Subscriber.class), frame(id), options);
+      waitFor(() -> ServiceImpl.STARTED.contains(id));
+      waitFor(() -> ServiceImpl.CANCELLED.contains(id));
+    } finally {
+      vertx.close();
+    }
+  }
+
+  // a malformed or non positive demand ends the stream with error and cancels it
+  @Test
+  public void testInvalidDemand() throws Exception {
+    for (final String request : new String[] {"invalid", "0", "-1"}) {
+      final String id = "invalidDemand" + request;
+      final String streamAddress = Common.ROOT + "/_stream/" + id;
+      final CompletableFuture<String> end = new CompletableFuture<>();
+      final MessageConsumer<Object> consumer = vertx.eventBus().consumer(streamAddress, message -> {
+        if (message.headers().contains(Common.END)) {
+          end.complete(message.headers().get(Common.END));
+        }
+      });
+      try {
+        final String control = vertx.eventBus()
+          .request(address("ticks", String.class, Subscriber.class), frame(id), new DeliveryOptions().addHeader(Common.STREAM, streamAddress))
+          .toCompletionStage().toCompletableFuture().join()
+          .headers().get(Common.CONTROL);
+        vertx.eventBus().send(control, null, new DeliveryOptions().addHeader(Common.REQUEST, request));
+        Assert.assertEquals(Metrics.ERROR, end.get(10, TimeUnit.SECONDS));
+        waitFor(() -> ServiceImpl.CANCELLED.contains(id));
+      } finally {
+        consumer.unregister();
+      }
+    }
+  }
+
+  private static String address(final String name, final Class<?>... parameterTypes) throws NoSuchMethodException {
+    return Common.address(Proto.protocol(IService.class), IService.class.getMethod(name, parameterTypes));
+  }
+
+  // local delivery - never encoded
+  private static Frame frame(final Object... args) {
+    return new Frame(args, reqArgs -> {
+      throw new UnsupportedOperationException();
+    }, null);
+  }
+
+  public static class TestAuthVerfier implements AuthVerfier<MultiMap> {
+
+    @Override
+    public CompletionStage<Auth> verify(final MultiMap headers) { // add real check
+      return CompletableFuture.completedStage(Auth.ANONYMOUS);
+    }
+  }
+}
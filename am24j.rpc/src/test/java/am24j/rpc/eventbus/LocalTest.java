@@ -0,0 +1,136 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.eventbus;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.Auth;
+import am24j.rpc.AuthVerfier;
+import am24j.rpc.BaseTest;
+import am24j.rpc.IService;
+import am24j.rpc.IService.B;
+import am24j.rpc.Local;
+import am24j.rpc.ServiceImpl;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Calls through a client with local mode enabled. The client has its own vertx (event bus) so the calls
+ * could succeed only if dispatched in process.
+ *
+ * @author avgustinmm
+ */
+public class LocalTest extends BaseTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc");
+  }
+
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+
+  private static Server server;
+  private static Client client;
+
+  @BeforeClass
+  public static void before() {
+    sVertx = Vertx.vertx();
+    cVertx = Vertx.vertx();
+    server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new RecordingAuthVerfier()),
+      sVertx);
+    client = new Client(new JsonObject().put(Local.CONFIG, new JsonObject().put("copy", true)), cVertx);
+    service = client.service(() -> "user:pass", IService.class);
+  }
+
+  @AfterClass
+  public static void after() {
+    client.close();
+    cVertx.close();
+    server.close();
+    sVertx.close();
+  }
+
+  @Test
+  public void testCopied() throws NoSuchMethodException {
+    final Local local = new Local(true, cVertx);
+    final B b = new B().i(4).str("test");
+    final B result = (B)((CompletionStage<?>)local.call(
+      IService.class.getMethod("getCallB", int.class, B.class), new Object[] {3, b}, "user:pass", null)).toCompletableFuture().join();
+    Assert.assertEquals(new B().i(12).str("testtesttesttest"), result);
+    Assert.assertEquals(new B().i(4).str("test"), b); // argument not modified
+  }
+
+  @Test
+  public void testVerified() {
+    client.service(() -> "verified", IService.class).voidCall().toCompletableFuture().join();
+    Assert.assertTrue(RecordingAuthVerfier.VERIFIED.contains("verified")); // by the server verifiers
+  }
+
+  // fails as a remote call timed out
+  @Test
+  public void testDeadlineExceeded() {
+    try {
+      service.hangWithTimeout("localDeadline").toCompletableFuture().join();
+      Assert.fail("Deadline expected!");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof ReplyException);
+      Assert.assertEquals(ReplyFailure.TIMEOUT, ((ReplyException)e.getCause()).failureType());
+    }
+  }
+
+  @Test
+  public void testRegistrationRemoved() throws NoSuchMethodException {
+    final Vertx vertx = Vertx.vertx();
+    try {
+      final Server other = new Server(
+        Collections.singletonList(new ServiceImpl()),
+        Collections.singletonList(new RecordingAuthVerfier()),
+        vertx);
+      other.close(); // the first server remains registered
+      Assert.assertTrue(new Local(false, cVertx).serves(IService.class.getMethod("voidCall")));
+    } finally {
+      vertx.close();
+    }
+  }
+
+  public static class RecordingAuthVerfier implements AuthVerfier<MultiMap> {
+
+    private static final Set<String> VERIFIED = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public CompletionStage<Auth> verify(final MultiMap headers) {
+      VERIFIED.add(headers.get(Common.AUTHORIZATION));
+      return CompletableFuture.completedStage(Auth.ANONYMOUS);
+    }
+  }
+}
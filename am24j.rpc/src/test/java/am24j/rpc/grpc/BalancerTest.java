@@ -0,0 +1,156 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.grpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Status;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class BalancerTest {
+
+  private static final MethodDescriptor<Object, Object> UNARY = method(MethodType.UNARY);
+  private static final MethodDescriptor<Object, Object> STREAM = method(MethodType.SERVER_STREAMING);
+
+  @Test
+  public void testLeastOutstanding() {
+    final Balancer balancer = balancer(Balancer.LEAST_OUTSTANDING, 3, 2);
+    final List<StubCall> calls = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      calls.add(start(balancer, STREAM));
+    }
+    // evenly spread over endpoints and channels
+    for (final Object endpoint : balancer.metrics().getJsonArray("endpoints")) {
+      Assert.assertEquals(2, ((JsonObject)endpoint).getInteger("inFlight").intValue());
+      Assert.assertEquals(Arrays.asList(1, 1), ((JsonObject)endpoint).getJsonArray("channelsInFlight").getList());
+    }
+
+    calls.forEach(call -> call.listener.onClose(Status.OK, new Metadata()));
+    for (final Object endpoint : balancer.metrics().getJsonArray("endpoints")) {
+      Assert.assertEquals(0, ((JsonObject)endpoint).getInteger("inFlight").intValue());
+    }
+  }
+
+  @Test
+  public void testP2CAvoidsBusy() {
+    final Balancer balancer = balancer(Balancer.P2C, 2, 1);
+    final StubCall busy = start(balancer, STREAM);
+    // with two endpoints p2c always compares both - the idle one must be picked
+    for (int i = 0; i < 10; i++) {
+      final StubCall call = start(balancer, UNARY);
+      Assert.assertNotSame(busy.channel, call.channel);
+      call.listener.onMessage("response"); // unary is done on the response
+    }
+    final JsonObject idle = (JsonObject)balancer.metrics().getJsonArray("endpoints").stream()
+      .filter(endpoint -> ((JsonObject)endpoint).getInteger("inFlight") == 0)
+      .findFirst().get();
+    Assert.assertTrue(idle.getDouble("latencyEwmaMs") > 0);
+  }
+
+  private static Balancer balancer(final String strategy, final int endpoints, final int channels) {
+    final List<String> addresses = new ArrayList<>();
+    final List<List<Channel>> endpointChannels = new ArrayList<>();
+    for (int i = 0; i < endpoints; i++) {
+      addresses.add("host" + i + ":1700");
+      final List<Channel> list = new ArrayList<>();
+      for (int j = 0; j < channels; j++) {
+        list.add(new StubChannel());
+      }
+      endpointChannels.add(list);
+    }
+    return new Balancer(addresses, endpointChannels, strategy);
+  }
+
+  private static StubCall start(final Balancer balancer, final MethodDescriptor<Object, Object> method) {
+    final ClientCall<Object, Object> call = balancer.channel().newCall(method, CallOptions.DEFAULT);
+    call.start(new ClientCall.Listener<Object>() {}, new Metadata());
+    return StubChannel.last;
+  }
+
+  private static MethodDescriptor<Object, Object> method(final MethodType type) {
+    final MethodDescriptor.Marshaller<Object> marshaller = new MethodDescriptor.Marshaller<>() {
+
+      @Override
+      public java.io.InputStream stream(final Object value) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Object parse(final java.io.InputStream stream) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    return MethodDescriptor.newBuilder(marshaller, marshaller).setType(type).setFullMethodName("test/" + type).build();
+  }
+
+  private static class StubChannel extends Channel {
+
+    private static StubCall last;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(final MethodDescriptor<ReqT, RespT> methodDescriptor, final CallOptions callOptions) {
+      last = new StubCall(this);
+      return (ClientCall<ReqT, RespT>)last;
+    }
+
+    @Override
+    public String authority() {
+      return "stub";
+    }
+  }
+
+  private static class StubCall extends ClientCall<Object, Object> {
+
+    private final StubChannel channel;
+    private Listener<Object> listener;
+
+    private StubCall(final StubChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void start(final Listener<Object> responseListener, final Metadata headers) {
+      listener = responseListener;
+    }
+
+    @Override
+    public void request(final int numMessages) {}
+
+    @Override
+    public void cancel(final String message, final Throwable cause) {}
+
+    @Override
+    public void halfClose() {}
+
+    @Override
+    public void sendMessage(final Object message) {}
+  }
+}
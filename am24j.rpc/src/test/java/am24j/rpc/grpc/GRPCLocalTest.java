@@ -0,0 +1,166 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.grpc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.Auth;
+import am24j.rpc.AuthVerfier;
+import am24j.rpc.BaseTest;
+import am24j.rpc.IService;
+import am24j.rpc.Local;
+import am24j.rpc.ServiceImpl;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.StatusException;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Calls through a gRPC client with local mode enabled - the failures are as of the remote calls.
+ *
+ * @author avgustinmm
+ */
+public class GRPCLocalTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc");
+  }
+
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+
+  private static Server server;
+  private static Client client;
+
+  @BeforeClass
+  public static void before() {
+    sVertx = Vertx.vertx();
+    cVertx = Vertx.vertx();
+    server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new RejectingAuthVerfier()),
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ServerVerticle.HOST, "localhost")
+            .put(ServerVerticle.PORT,  1702)),
+      sVertx);
+    client = new Client(
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ClientVerticle.HOST, "localhost")
+            .put(ClientVerticle.PORT,  1702)
+            .put(Local.CONFIG, new JsonObject())),
+        cVertx);
+  }
+
+  @AfterClass
+  public static void after() {
+    client.close();
+    cVertx.close();
+    server.close();
+    sVertx.close();
+  }
+
+  @Test
+  public void testUnauthenticated() {
+    try {
+      client.service(() -> "reject", IService.class).voidCall().toCompletableFuture().join();
+      Assert.fail("Unauthenticated expected!");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof StatusException);
+      Assert.assertEquals(Status.Code.UNAUTHENTICATED, ((StatusException)e.getCause()).getStatus().getCode());
+    }
+  }
+
+  // the subscriber gets a subscription before the error
+  @Test
+  public void testStreamUnauthenticated() {
+    final List<String> signals = new CopyOnWriteArrayList<>();
+    final CompletableFuture<Throwable> error = new CompletableFuture<>();
+    client.service(() -> "reject", IService.class).stream(1, new Subscriber<String>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        signals.add("onSubscribe");
+      }
+
+      @Override
+      public void onNext(final String item) {
+        signals.add("onNext");
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {
+        signals.add("onError");
+        error.complete(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        signals.add("onComplete");
+      }
+    });
+    final Throwable t = error.join();
+    Assert.assertTrue(String.valueOf(t), t instanceof StatusException);
+    Assert.assertEquals(Status.Code.UNAUTHENTICATED, ((StatusException)t).getStatus().getCode());
+    Assert.assertEquals(Arrays.asList("onSubscribe", "onError"), signals);
+  }
+
+  @Test
+  public void testDeadlineExceeded() throws InterruptedException {
+    final String id = "grpcLocalDeadline";
+    try {
+      client.service(() -> "user:pass", IService.class).hangWithTimeout(id).toCompletableFuture().join();
+      Assert.fail("Deadline expected!");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof StatusException);
+      Assert.assertEquals(Status.Code.DEADLINE_EXCEEDED, ((StatusException)e.getCause()).getStatus().getCode());
+    }
+    BaseTest.waitFor(() -> ServiceImpl.CANCELLED.contains(id)); // cancelled as well
+  }
+
+  public static class RejectingAuthVerfier implements AuthVerfier<Metadata> {
+
+    @Override
+    public CompletionStage<Auth> verify(final Metadata headers) {
+      if ("reject".equals(headers.get(Common.WWW_AUTHENTICATE))) {
+        return CompletableFuture.failedStage(new SecurityException("Rejected!"));
+      }
+      return CompletableFuture.completedStage(Auth.ANONYMOUS);
+    }
+  }
+}
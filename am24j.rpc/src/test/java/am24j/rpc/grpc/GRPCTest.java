@@ -16,12 +16,18 @@
 package am24j.rpc.grpc;
 
 import java.util.Collections;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.Level;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import am24j.commons.Log4j2Config;
 import am24j.rpc.Auth;
@@ -43,6 +49,9 @@ public class GRPCTest extends BaseTest {
     Log4j2Config.setUp(Level.INFO, Level.TRACE, "am24j.rcp.grpc");
   }
 
+  private static final int HIGH_WATERMARK = 64;
+  private static final int LOW_WATERMARK = 16;
+
   private static Vertx sVertx;
   private static Vertx cVertx;
 
@@ -62,7 +71,9 @@ public class GRPCTest extends BaseTest {
           new JsonObject()
             .put("usePlaintext", true)
             .put(ServerVerticle.HOST, "localhost")
-            .put(ServerVerticle.PORT,  1700)),
+            .put(ServerVerticle.PORT,  1700)
+            .put(Server.STREAM_HIGH_WATERMARK, HIGH_WATERMARK)
+            .put(Server.STREAM_LOW_WATERMARK, LOW_WATERMARK)),
       sVertx);
     client = new Client(
       new DeploymentOptions()
@@ -73,6 +84,7 @@ public class GRPCTest extends BaseTest {
             .put(ClientVerticle.PORT,  1700)),
         cVertx);
     service = client.service(() -> "user:pass", IService.class);
+    awaitStarted(service);
   }
 
   @AfterClass
@@ -83,6 +95,76 @@ public class GRPCTest extends BaseTest {
     sVertx.close();
   }
 
+  // the subscription is asked for a full window first and then refilled (up to the high watermark) when the outstanding
+  // items drop to the low watermark - never more than the high watermark outstanding
+  @Test
+  public void testStreamWindows() throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    final AtomicInteger received = new AtomicInteger();
+    final CompletableFuture<Subscription> subscribed = new CompletableFuture<>();
+    service.asyncPayloads(id, 16, subscriber(subscribed, Long.MAX_VALUE, received));
+    waitFor(() -> received.get() >= 10 * HIGH_WATERMARK);
+    subscribed.join().cancel();
+    waitFor(() -> ServiceImpl.CANCELLED.contains(id));
+    final Long[] requested = ServiceImpl.REQUESTED.get(id).toArray(new Long[0]);
+    Assert.assertEquals(HIGH_WATERMARK, (long)requested[0]);
+    long total = 0;
+    for (final long n : requested) {
+      Assert.assertTrue("Requested: " + n, n >= HIGH_WATERMARK - LOW_WATERMARK && n <= HIGH_WATERMARK);
+      total += n;
+    }
+    Assert.assertTrue("Outstanding: " + (total - ServiceImpl.EMITTED.get(id).get()), total - ServiceImpl.EMITTED.get(id).get() <= HIGH_WATERMARK);
+  }
+
+  // the client doesn't request - the call becomes not ready (flow control) and the server stops refilling, instead of
+  // buffering the infinite stream in memory. When the client requests again - refilled on ready. Cancelled mid window
+  @Test
+  public void testSlowConsumer() throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    final int size = 16 * 1024;
+    final AtomicInteger received = new AtomicInteger();
+    final CompletableFuture<Subscription> subscribed = new CompletableFuture<>();
+    service.payloads(id, size, subscriber(subscribed, 10, received));
+    waitFor(() -> received.get() == 10);
+    Thread.sleep(1_000); // fills the buffers
+    final long emitted = ServiceImpl.EMITTED.get(id).get();
+    Thread.sleep(500);
+    Assert.assertEquals(emitted, ServiceImpl.EMITTED.get(id).get()); // stalled
+    Assert.assertTrue("Emitted: " + emitted, emitted < 4096); // less than 64MB, the flow control windows are few MB
+    Assert.assertEquals(10, received.get()); // no more than requested
+
+    final Subscription subscription = subscribed.join();
+    subscription.request(10); // resumes
+    waitFor(() -> received.get() == 20);
+    subscription.cancel(); // with outstanding items
+    waitFor(() -> ServiceImpl.CANCELLED.contains(id)); // cancelled on the server too
+    final long cancelled = ServiceImpl.EMITTED.get(id).get();
+    Thread.sleep(200);
+    Assert.assertEquals(cancelled, ServiceImpl.EMITTED.get(id).get());
+  }
+
+  private static Subscriber<byte[]> subscriber(final CompletableFuture<Subscription> subscribed, final long request, final AtomicInteger received) {
+    return new Subscriber<byte[]>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscribed.complete(subscription);
+        subscription.request(request);
+      }
+
+      @Override
+      public void onNext(final byte[] item) {
+        received.incrementAndGet();
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {}
+
+      @Override
+      public void onComplete() {}
+    };
+  }
+
   public static class TestAuthVerfier implements AuthVerfier<Metadata> {
 
     @Override
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.grpc;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.BaseTest;
+import am24j.rpc.IService;
+import am24j.rpc.ServiceImpl;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * gRPC over unix domain socket. Requires native transport, skipped if not available (run with <code>-Pnative</code>).
+ *
+ * @author avgustinmm
+ */
+public class GRPCUdsTest extends BaseTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.TRACE, "am24j.rcp.grpc");
+  }
+
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+
+  private static Server server;
+  private static Client client;
+
+  @BeforeClass
+  public static void before() {
+    sVertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    cVertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    Assume.assumeTrue("No native transport!", sVertx.isNativeTransportEnabled());
+
+    final String socketPath = new File(System.getProperty("java.io.tmpdir"), "grpc-" + UUID.randomUUID() + ".sock").getPath();
+    server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new GRPCTest.TestAuthVerfier()),
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put(ServerVerticle.SOCKET_PATH, socketPath)),
+      sVertx);
+    client = new Client(
+      new DeploymentOptions()
+        .setConfig(
+          new JsonObject()
+            .put("usePlaintext", true)
+            .put(ClientVerticle.SOCKET_PATH, socketPath)),
+        cVertx);
+    service = client.service(() -> "user:pass", IService.class);
+    awaitStarted(service);
+  }
+
+  @AfterClass
+  public static void after() {
+    if (client != null) {
+      client.close();
+      server.close();
+    }
+    cVertx.close();
+    sVertx.close();
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.IService;
+import am24j.rpc.ServiceImpl;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.grpc.ServerVerticle;
+import am24j.rpc.http.HttpTest.TestAuthVerfier;
+import am24j.vertx.http.Http;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * @author avgustinmm
+ */
+public class HttpBatchTest {
+
+  private static final int PORT = 1082;
+  private static final int BATCH_MAX_SIZE = 300;
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.http");
+  }
+
+  private static final AtomicInteger REQUESTS = new AtomicInteger();
+
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+
+  private static Http http;
+
+  @BeforeClass
+  public static void before() {
+    sVertx = Vertx.vertx();
+    cVertx = Vertx.vertx();
+
+    final Server server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new TestAuthVerfier()),
+      new DeploymentOptions().setConfig(new JsonObject().put(Server.BATCH_MAX_SIZE, BATCH_MAX_SIZE)),
+      Optional.empty(),
+      sVertx);
+    http =
+      new Http(
+        Collections.<Http.HttpHandler>singletonList(new Http.HttpHandler() { // counts the http requests
+
+          @Override
+          public void handle(final HttpServerRequest request) {
+            REQUESTS.incrementAndGet();
+            server.handle(request);
+          }
+
+          @Override
+          public String path() {
+            return server.path();
+          }
+        }),
+        new DeploymentOptions().setConfig(
+          new JsonObject()
+            .put(ServerVerticle.HOST, "localhost")
+            .put(ServerVerticle.PORT, PORT)),
+        sVertx);
+  }
+
+  @AfterClass
+  public static void after() {
+    cVertx.close();
+    http.close();
+    sVertx.close();
+  }
+
+  @Test
+  public void testBatchJson() {
+    testBatch(true);
+  }
+
+  @Test
+  public void testBatchBinary() {
+    testBatch(false);
+  }
+
+  @Test
+  public void testRawJson() {
+    final String service = Proto.protocol(IService.class).getName();
+    final HttpClient client = cVertx.createHttpClient();
+    try {
+      final Buffer response = client
+        .request(HttpMethod.POST, PORT, "localhost", Batch.PATH)
+        .compose(request -> request.send(
+          new JsonArray()
+            .add(new JsonObject().put("method", service + "/getCall").put("args", new JsonObject().put("arg_0", 2).put("arg_1", "ab")))
+            .add(new JsonObject().put("method", service + "/unknown"))
+            .toBuffer()))
+        .compose(HttpClientResponse::body)
+        .toCompletionStage().toCompletableFuture().join();
+      final Set<Integer> indexes = new HashSet<>();
+      for (final String line : response.toString().split("\n")) {
+        final JsonObject result = new JsonObject(line);
+        indexes.add(result.getInteger("index"));
+        if (result.getInteger("index") == 0) {
+          Assert.assertEquals("abab", result.getJsonObject("result").getJsonObject("value").getString("string"));
+        } else {
+          Assert.assertNotNull(result.getString("error"));
+        }
+      }
+      Assert.assertEquals(Set.of(0, 1), indexes);
+    } finally {
+      client.close();
+    }
+  }
+
+  // the results exceed the response's write queue - the rest of the calls are dispatched when drained
+  @Test
+  public void testLargeResults() {
+    final String service = Proto.protocol(IService.class).getName();
+    final JsonArray calls = new JsonArray();
+    for (int i = 0; i < BATCH_MAX_SIZE; i++) {
+      calls.add(new JsonObject().put("method", service + "/getCall").put("args", new JsonObject().put("arg_0", 4_000).put("arg_1", "x")));
+    }
+    final HttpClient client = cVertx.createHttpClient();
+    try {
+      final Buffer response = client
+        .request(HttpMethod.POST, PORT, "localhost", Batch.PATH)
+        .compose(request -> request.send(calls.toBuffer()))
+        .compose(HttpClientResponse::body)
+        .toCompletionStage().toCompletableFuture().join();
+      final Set<Integer> indexes = new HashSet<>();
+      for (final String line : response.toString().split("\n")) {
+        final JsonObject result = new JsonObject(line);
+        indexes.add(result.getInteger("index"));
+        Assert.assertEquals(4_000, result.getJsonObject("result").getJsonObject("value").getString("string").length());
+      }
+      Assert.assertEquals(BATCH_MAX_SIZE, indexes.size());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void testTooLarge() {
+    final String service = Proto.protocol(IService.class).getName();
+    final JsonArray calls = new JsonArray();
+    for (int i = 0; i <= BATCH_MAX_SIZE; i++) {
+      calls.add(new JsonObject().put("method", service + "/voidCall"));
+    }
+    final HttpClient client = cVertx.createHttpClient();
+    try {
+      final HttpClientResponse response = client
+        .request(HttpMethod.POST, PORT, "localhost", Batch.PATH)
+        .compose(request -> request.send(calls.toBuffer()))
+        .toCompletionStage().toCompletableFuture().join();
+      Assert.assertEquals(413, response.statusCode());
+    } finally {
+      client.close();
+    }
+  }
+
+  private static void testBatch(final boolean json) {
+    final Client client = new Client(
+      new JsonObject()
+        .put("json", json)
+        .put(Client.BATCH_WINDOW, 50)
+        .put("defaultHost", "localhost")
+        .put("defaultPort", PORT),
+      cVertx);
+    try {
+      final IService service = client.service(() -> "user:pass", IService.class);
+      final int requests = REQUESTS.get();
+      final List<CompletableFuture<String>> results = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        results.add(service.getCall(i, "x").toCompletableFuture());
+      }
+      final CompletableFuture<String> failed = service.throwExc(true).toCompletableFuture();
+      for (int i = 0; i < results.size(); i++) {
+        Assert.assertEquals("x".repeat(i), results.get(i).join());
+      }
+      try {
+        failed.join();
+        Assert.fail("Must fail!");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof RuntimeException);
+      }
+      Assert.assertEquals(1, REQUESTS.get() - requests); // all in a single batch
+    } finally {
+      client.close();
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.http;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.BaseTest;
+import am24j.rpc.IService;
+import am24j.rpc.ServiceImpl;
+import am24j.rpc.avro.Proto;
+import am24j.rpc.grpc.ServerVerticle;
+import am24j.vertx.http.Http;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Avro binary (not json) requests and responses
+ *
+ * @author avgustinmm
+ */
+public class HttpBinaryTest extends BaseTest {
+
+  private static final int PORT = 1083;
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.http");
+  }
+
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+
+  private static Server server;
+  private static Client client;
+  private static Http http;
+
+  @BeforeClass
+  public static void before() {
+    sVertx = Vertx.vertx();
+    cVertx = Vertx.vertx();
+
+    server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new HttpTest.TestAuthVerfier()),
+      sVertx);
+    client = new Client(
+      new JsonObject()
+        .put("ssl", false)
+        .put("json", false)
+        .put("defaultHost", "localhost")
+        .put("defaultPort", PORT),
+      cVertx);
+    service = client.service(() -> "user:pass", IService.class);
+    http =
+      new Http(
+        Collections.<Http.HttpHandler>singletonList(server),
+        new DeploymentOptions().setConfig(
+          new JsonObject()
+            .put(ServerVerticle.HOST, "localhost")
+            .put(ServerVerticle.PORT, PORT)),
+        sVertx);
+  }
+
+  @AfterClass
+  public static void after() {
+    client.close();
+    cVertx.close();
+    http.close();
+    sVertx.close();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClientStream() {
+    super.testClientStream();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBidiStream() {
+    super.testBidiStream();
+  }
+
+  // content length is the encoded bytes count, not the character count
+  @Test
+  public void testContentLength() throws NoSuchMethodException {
+    final Method method = IService.class.getMethod("getCall", int.class, String.class);
+    final Protocol aProto = Proto.protocol(IService.class);
+    final Message aMessage = aProto.getMessages().get(Proto.methodName(method));
+    final String str = "\u00e4\u65e5\ud83d\ude00";
+    final Buffer body = Buffer.buffer(Proto.encodeReqy(aMessage.getRequest(), Proto.requestTypes(method), new Object[] {3, str}, false));
+    final HttpClient httpClient = cVertx.createHttpClient();
+    try {
+      final HttpClientResponse[] response = new HttpClientResponse[1];
+      final Buffer received = httpClient
+        .request(
+          new RequestOptions()
+            .setMethod(HttpMethod.POST)
+            .setHost("localhost")
+            .setPort(PORT)
+            .setURI(Server.HTTP_RPC_ROOT + '/' + aProto.getName() + '/' + aMessage.getName())
+            .putHeader("content-type", "avro/binary")
+            .putHeader("authorization", "user:pass"))
+        .compose(request -> request.send(body))
+        .compose(resp -> {
+          response[0] = resp;
+          return resp.body();
+        })
+        .toCompletionStage().toCompletableFuture().join();
+      Assert.assertEquals(200, response[0].statusCode());
+      Assert.assertEquals("avro/binary", response[0].getHeader("content-type"));
+      Assert.assertEquals(String.valueOf(received.length()), response[0].getHeader("content-length"));
+      Assert.assertEquals(
+        str + str + str,
+        Proto.decodeResp(aMessage.getResponse(), aMessage.getErrors(), Proto.responsType(method), new ByteArrayInputStream(received.getBytes()), false));
+    } finally {
+      httpClient.close();
+    }
+  }
+}
@@ -18,6 +18,7 @@ package am24j.rpc.http;
 import org.apache.logging.log4j.Level;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import am24j.commons.Log4j2Config;
 import am24j.inject.Injector.Key;
@@ -69,4 +70,16 @@ public class HttpIoCTest extends BaseTest {
     cStarter.close();
     sStarter.close();
   }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClientStream() {
+    super.testClientStream();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBidiStream() {
+    super.testBidiStream();
+  }
 }
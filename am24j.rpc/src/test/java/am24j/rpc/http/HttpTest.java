@@ -16,12 +16,18 @@
 package am24j.rpc.http;
 
 import java.util.Collections;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.Level;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import am24j.commons.Log4j2Config;
 import am24j.rpc.Auth;
@@ -88,6 +94,61 @@ public class HttpTest extends BaseTest {
     sVertx.close();
   }
 
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClientStream() {
+    super.testClientStream();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBidiStream() {
+    super.testBidiStream();
+  }
+
+  // the client doesn't request - the server stops pulling items when the buffers (client's, socket and its write queue)
+  // are full, instead of buffering the infinite stream in memory
+  @Test
+  public void testSlowConsumer() throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    final int size = 16 * 1024;
+    final AtomicInteger received = new AtomicInteger();
+    final CompletableFuture<Subscription> subscribed = new CompletableFuture<>();
+    service.payloads(id, size, new Subscriber<byte[]>() {
+
+      @Override
+      public void onSubscribe(final Subscription subscription) {
+        subscribed.complete(subscription);
+        subscription.request(10);
+      }
+
+      @Override
+      public void onNext(final byte[] item) {
+        Assert.assertEquals(size, item.length);
+        received.incrementAndGet();
+      }
+
+      @Override
+      public void onError(final Throwable throwable) {}
+
+      @Override
+      public void onComplete() {}
+    });
+    waitFor(() -> received.get() == 10);
+    Thread.sleep(1_000); // fills the buffers
+    final long emitted = ServiceImpl.EMITTED.get(id).get();
+    Thread.sleep(500);
+    Assert.assertEquals(emitted, ServiceImpl.EMITTED.get(id).get()); // stalled
+    Assert.assertTrue("Emitted: " + emitted, emitted < 4096); // less than 64MB, the socket buffers are few MB
+    Assert.assertEquals(10, received.get()); // no more than requested
+
+    final Subscription subscription = subscribed.join();
+    subscription.request(10); // resumes
+    waitFor(() -> received.get() == 20);
+    subscription.cancel();
+    waitFor(() -> ServiceImpl.CANCELLED.contains(id)); // cancelled on the server too
+  }
+
   public static class TestAuthVerfier implements AuthVerfier<HttpServerRequest> {
 
     @Override
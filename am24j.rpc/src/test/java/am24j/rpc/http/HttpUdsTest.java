@@ -0,0 +1,101 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.http;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.BaseTest;
+import am24j.rpc.IService;
+import am24j.rpc.ServiceImpl;
+import am24j.vertx.http.Http;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * HTTP RPC over unix domain socket. Requires native transport, skipped if not available (run with <code>-Pnative</code>).
+ *
+ * @author avgustinmm
+ */
+public class HttpUdsTest extends BaseTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.TRACE, "am24j.rpc.http");
+  }
+
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+
+  private static Server server;
+  private static Client client;
+  private static Http http;
+
+  @BeforeClass
+  public static void before() {
+    sVertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    cVertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    Assume.assumeTrue("No native transport!", sVertx.isNativeTransportEnabled());
+
+    final String socketPath = new File(System.getProperty("java.io.tmpdir"), "http-" + UUID.randomUUID() + ".sock").getPath();
+    server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new HttpTest.TestAuthVerfier()),
+      sVertx);
+    http =
+      new Http(
+        Collections.<Http.HttpHandler>singletonList(server),
+        new DeploymentOptions().setConfig(new JsonObject().put(Http.SOCKET_PATH, socketPath)),
+        sVertx);
+    client = new Client(
+      new JsonObject()
+        .put("ssl", false)
+        .put(Client.SOCKET_PATH, socketPath),
+      cVertx);
+    service = client.service(() -> "user:pass", IService.class);
+  }
+
+  @AfterClass
+  public static void after() {
+    if (client != null) {
+      client.close();
+      http.close();
+    }
+    cVertx.close();
+    sVertx.close();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClientStream() {
+    super.testClientStream();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBidiStream() {
+    super.testBidiStream();
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.shm;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author avgustinmm
+ */
+public class RingTest {
+
+  private File file;
+
+  @Before
+  public void before() throws Exception {
+    file = File.createTempFile("ring", ".test");
+  }
+
+  @After
+  public void after() {
+    file.delete();
+  }
+
+  @Test
+  public void testOfferPoll() {
+    final Ring producer = Ring.create(file, 1024);
+    final Ring consumer = Ring.open(file);
+    Assert.assertNull(consumer.poll());
+    Assert.assertTrue(producer.offer(bytes("first")));
+    Assert.assertTrue(producer.offer(new byte[0]));
+    Assert.assertTrue(producer.offer(bytes("third")));
+    Assert.assertEquals("first", string(consumer.poll()));
+    Assert.assertEquals(0, consumer.poll().length);
+    Assert.assertEquals("third", string(consumer.poll()));
+    Assert.assertNull(consumer.poll());
+  }
+
+  @Test
+  public void testWrap() {
+    final Ring producer = Ring.create(file, 256);
+    final Ring consumer = Ring.open(file);
+    for (int i = 0; i < 1_000; i++) { // wraps many times, with padding of different size
+      final byte[] record = new byte[ThreadLocalRandom.current().nextInt(producer.maxLength() + 1)];
+      ThreadLocalRandom.current().nextBytes(record);
+      Assert.assertTrue(producer.offer(record));
+      Assert.assertArrayEquals(record, consumer.poll());
+    }
+    Assert.assertNull(consumer.poll());
+  }
+
+  @Test
+  public void testFull() {
+    final Ring producer = Ring.create(file, 256);
+    final Ring consumer = Ring.open(file);
+    final byte[] record = new byte[28]; // 32 with the length
+    for (int i = 0; i < 8; i++) {
+      Assert.assertTrue(producer.offer(record));
+    }
+    Assert.assertFalse(producer.offer(record));
+    Assert.assertNotNull(consumer.poll());
+    Assert.assertTrue(producer.offer(record)); // space is freed
+    Assert.assertFalse(producer.offer(record));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooLarge() {
+    final Ring producer = Ring.create(file, 256);
+    producer.offer(new byte[producer.maxLength() + 1]);
+  }
+
+  @Test
+  public void testConcurrent() throws InterruptedException {
+    final Ring producer = Ring.create(file, 1024);
+    final Ring consumer = Ring.open(file);
+    final int count = 20_000;
+    final Thread thread = new Thread(() -> {
+      for (int i = 0; i < count; i++) {
+        final byte[] record = bytes(String.valueOf(i));
+        while (!producer.offer(record)) {
+          Thread.yield();
+        }
+      }
+    });
+    thread.start();
+    for (int i = 0; i < count; i++) {
+      byte[] record;
+      while ((record = consumer.poll()) == null) {
+        Thread.yield(); // the other side could share the core
+      }
+      Assert.assertEquals(String.valueOf(i), string(record));
+    }
+    thread.join();
+    Assert.assertNull(consumer.poll());
+  }
+
+  private static byte[] bytes(final String str) {
+    return str.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String string(final byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2021 Avgustin Marinov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am24j.rpc.shm;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Protocol;
+
+import org.apache.logging.log4j.Level;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import am24j.commons.Log4j2Config;
+import am24j.rpc.Auth;
+import am24j.rpc.AuthVerfier;
+import am24j.rpc.BaseTest;
+import am24j.rpc.IService;
+import am24j.rpc.ServiceImpl;
+import am24j.rpc.avro.Proto;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The client has its own vertx, as if in other process.
+ *
+ * @author avgustinmm
+ */
+public class ShmTest extends BaseTest {
+
+  static {
+    Log4j2Config.setUp(Level.INFO, Level.INFO, "am24j.rpc.shm");
+  }
+
+  private static File dir;
+  private static Vertx sVertx;
+  private static Vertx cVertx;
+
+  private static Server server;
+  private static Client client;
+
+  @BeforeClass
+  public static void before() throws Exception {
+    dir = Files.createTempDirectory("shm").toFile();
+    final JsonObject config = new JsonObject().put(Common.DIR, dir.getAbsolutePath()).put(Common.NAME, "test");
+    sVertx = Vertx.vertx();
+    cVertx = Vertx.vertx();
+    server = new Server(
+      Collections.singletonList(new ServiceImpl()),
+      Collections.singletonList(new TestAuthVerfier()),
+      config.copy().put(Server.RING_SIZE, 1 << 16),
+      sVertx);
+    client = new Client(config, cVertx);
+    service = client.service(() -> "user:pass", IService.class);
+  }
+
+  @AfterClass
+  public static void after() {
+    client.close();
+    cVertx.close();
+    server.close();
+    sVertx.close();
+    dir.delete();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClientStream() {
+    super.testClientStream();
+  }
+
+  @Override
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBidiStream() {
+    super.testBidiStream();
+  }
+
+  @Test
+  public void testTooLarge() {
+    final char[] str = new char[1 << 16];
+    Arrays.fill(str, 'x');
+    try {
+      service.getCall(1, new String(str));
+      Assert.fail("Request larger than the ring!");
+    } catch (final IllegalArgumentException e) {
+      // expected
+    }
+    // response too large - the call fails, the channel remains usable
+    try {
+      service.getCall(4, new String(str, 0, 1 << 13)).toCompletableFuture().join();
+      Assert.fail("Response larger than the ring!");
+    } catch (final Exception e) {
+      Assert.assertTrue(e.getCause() instanceof am24j.rpc.RPCException);
+    }
+    Assert.assertEquals("testtest", service.getCall(2, "test").toCompletableFuture().join());
+  }
+
+  @Test
+  public void testNoCredentials() {
+    Assert.assertEquals("xx", client.service(null, IService.class).getCall(2, "x").toCompletableFuture().join());
+  }
+
+  // a client requests an infinite stream and doesn't take the items - the server's event loop must remain free and the
+  // stream is cancelled when the items are not taken in time
+  @Test
+  public void testClientNotTaking() throws Exception {
+    final File stuck = new File(dir, "stuck");
+    final JsonObject config = new JsonObject()
+      .put(Common.DIR, stuck.getAbsolutePath())
+      .put(Server.RING_SIZE, 1 << 12)
+      .put(Server.SEND_TIMEOUT, 500);
+    final Vertx vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(1)); // all contexts on a single event loop
+    final Server stuckServer = new Server(
+      Collections.singletonList(new ServiceImpl()), Collections.singletonList(new TestAuthVerfier()), config, vertx);
+    try {
+      final Ring requests = Ring.open(Common.requestRing(config));
+      final Method payloads = IService.class.getMethod("payloads", String.class, int.class, Subscriber.class);
+      final Protocol aProto = Proto.protocol(IService.class);
+      final String id = UUID.randomUUID().toString();
+      final byte[] encoded = Proto.encodeReqy(
+        aProto.getMessages().get(Proto.methodName(payloads)).getRequest(), Proto.requestTypes(payloads), new Object[] {id, 512}, false);
+      Assert.assertTrue(requests.offer(Common.frame(Common.CALL, 1, out -> {
+        out.writeUTF(Common.address(aProto, payloads));
+        Common.writeHeaders(out, MultiMap.caseInsensitiveMultiMap());
+        out.writeBoolean(true);
+        out.write(encoded);
+      })));
+      Assert.assertTrue(requests.offer(Common.frame(Common.DEMAND, 1, out -> out.writeLong(Long.MAX_VALUE))));
+      waitFor(() -> ServiceImpl.STARTED.contains(id));
+      Thread.sleep(100); // the response ring is full
+
+      // the event loop is not blocked - a timer fires (in a few ms, the bound is for a loaded machine) before the stream is
+      // cancelled by the send timeout, while the service could emit only about a ring of items
+      final CompletableFuture<Void> timer = new CompletableFuture<>();
+      vertx.setTimer(1, timerId -> timer.complete(null));
+      timer.get(10, TimeUnit.SECONDS);
+      Assert.assertTrue("Emitted: " + ServiceImpl.EMITTED.get(id), ServiceImpl.EMITTED.get(id).get() < 16);
+      waitFor(() -> ServiceImpl.CANCELLED.contains(id)); // the item is not taken within the send timeout
+      Assert.assertTrue("Emitted: " + ServiceImpl.EMITTED.get(id), ServiceImpl.EMITTED.get(id).get() < 16);
+    } finally {
+      stuckServer.close();
+      vertx.close();
+      stuck.delete();
+    }
+  }
+
+  @Test
+  public void testRingFilesDeleted() {
+    final File other = new File(dir, "other");
+    final JsonObject config = new JsonObject().put(Common.DIR, other.getAbsolutePath());
+    final Server otherServer = new Server(Collections.singletonList(new ServiceImpl()), Collections.emptyList(), config, sVertx);
+    Assert.assertTrue(Common.requestRing(config).isFile());
+    Assert.assertTrue(Common.responseRing(config).isFile());
+    otherServer.close();
+    Assert.assertFalse(Common.requestRing(config).exists());
+    Assert.assertFalse(Common.responseRing(config).exists());
+    other.delete();
+  }
+
+  public static class TestAuthVerfier implements AuthVerfier<MultiMap> {
+
+    @Override
+    public CompletionStage<Auth> verify(final MultiMap headers) { // add real check
+      return CompletableFuture.completedStage(Auth.ANONYMOUS);
+    }
+  }
+}
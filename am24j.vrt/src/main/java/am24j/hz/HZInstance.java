@@ -25,6 +25,7 @@ import javax.inject.Singleton;
 import org.slf4j.Logger;
 
 import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 
@@ -33,13 +34,17 @@ import am24j.commons.Ctx;
 import io.vertx.core.json.JsonObject;
 
 /**
- * Provides hazelcast instnace
+ * Provides hazelcast instnace. The json config is injected in the hazelcast config (see {@link Builder}) except
+ * {@link #MAP_CONFIGS} - a json object with map configs by map name (could be a wildcard), e.g.
+ * <code>"mapConfigs": {"am24j.rpc.cache.*": {"nearCacheConfig": {"inMemoryFormat": "OBJECT"}}}</code>
  *
  * @author avgustinmm
  */
 @Singleton
 public class HZInstance implements Provider<HazelcastInstance>, AutoCloseable {
 
+  public static final String MAP_CONFIGS = "mapConfigs";
+
   private static final Logger LOG = Ctx.logger("Hazelcast");
 
   private final HazelcastInstance hazelcast;
@@ -65,7 +70,12 @@ public class HZInstance implements Provider<HazelcastInstance>, AutoCloseable {
     final Config config = new Config();
 
     LOG.info("Apply cluster json config");
-    Builder.inject(clusterConfig, config);
+    final JsonObject json = clusterConfig.copy();
+    final JsonObject mapConfigs = (JsonObject)json.remove(MAP_CONFIGS);
+    Builder.inject(json, config);
+    if (mapConfigs != null) {
+      mapConfigs.forEach(e -> config.addMapConfig(Builder.create((JsonObject)e.getValue(), MapConfig.class).setName(e.getKey())));
+    }
 
     LOG.info("Creating cluster (config: {}) ...", config);
     return Hazelcast.newHazelcastInstance(config);
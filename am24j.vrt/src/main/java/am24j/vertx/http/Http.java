@@ -39,9 +39,11 @@ import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.net.SocketAddress;
 
 /**
- * Provides http server in Vertx that routes to plugable {@link HttpHandler}s
+ * Provides http server in Vertx that routes to plugable {@link HttpHandler}s. If {@link #SOCKET_PATH} is configured
+ * listens on that unix domain socket instead of host / port (requires Vertx with native transport).
  *
  * @author avgustinmm
  */
@@ -50,6 +52,8 @@ public class Http extends Component<Verticle> {
 
   private static final Logger LOG = Ctx.logger("HTTP");
 
+  public static final String SOCKET_PATH = "socketPath";
+
   @Inject
   public Http(final List<HttpHandler> handlers, @Named("http_server.json") final DeploymentOptions options, final Vertx vertx) {
     super(() -> new AbstractVerticle() {
@@ -71,7 +75,14 @@ public class Http extends Component<Verticle> {
             }
           }
         });
-        server.listen().map(v -> (Void)null).onComplete(startPromise);
+        final String socketPath = config().getString(SOCKET_PATH);
+        if (socketPath == null) {
+          server.listen().map(v -> (Void)null).onComplete(startPromise);
+        } else if (vertx.isNativeTransportEnabled()) {
+          server.listen(SocketAddress.domainSocketAddress(socketPath)).map(v -> (Void)null).onComplete(startPromise);
+        } else {
+          startPromise.fail(new IllegalStateException("Domain socket " + socketPath + " requires native transport!"));
+        }
       }
 
       @Override